@@ -0,0 +1,332 @@
+package org.archive.extract;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.archive.resource.ResourceProducer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Extracts a batch of ARC, WARC or WAT files, several at once on a fixed
+ * pool of threads, writing the output of each file to its own file in an
+ * output directory.
+ *
+ * The output of each file is the same as ResourceExtractor produces for it.
+ * A line of progress is reported as each file finishes. A file which fails
+ * is reported, and its partial output removed, and the rest of the batch
+ * carries on.
+ */
+public class BatchResourceExtractor implements Tool {
+
+	private final static Logger LOG =
+		Logger.getLogger(BatchResourceExtractor.class.getName());
+
+	public final static String TOOL_NAME = "batchextractor";
+	public static final String TOOL_DESCRIPTION =
+		"A tool for extracting metadata from many WARC, ARC, and WAT files at once";
+
+	private final static String[] INPUT_SUFFIXES = {
+		".warc.gz", ".warc", ".arc.gz", ".arc", ".wat.gz", ".wat"
+	};
+
+	private Configuration conf;
+
+	private PrintStream progress = System.err;
+	private File outputDir = null;
+	private String opt = null;
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	public void setConf(Configuration conf) {
+		this.conf = conf;
+	}
+	public Configuration getConf() {
+		return conf;
+	}
+
+	private static int USAGE(int exitCode) {
+		System.err.println("Usage:\n");
+		System.err.println("batchextractor [-strict] [-threads N] [-manifest FILE] -output DIR [OPT] [SRC ...]");
+		System.err.println("\tSRC is the local path, HTTP or HDFS URL to an " +
+				"arc, warc, arc.gz, or warc.gz, or a local directory of them.");
+		System.err.println("\t-manifest FILE reads more SRC from FILE, one per line.");
+		System.err.println("\t-output DIR is where the output of each SRC is written,");
+		System.err.println("\t\tnamed after SRC, without .gz, with a suffix for OPT.");
+		System.err.println("\t-threads N extracts N files at once (default: one per CPU).");
+		System.err.println("\tOPT can be one of:");
+		System.err.println("\t\t-cdxURL\tProduce output in old URL Wayback CDX format (.cdx)");
+		System.err.println("\t\t-cdx\tProduce output in NEW-SURT-Wayback CDX format (.cdx)");
+		System.err.println("\t\t\t (note that column 1 is NOT standard Wayback canonicalized)\n");
+		System.err.println("\t\t-wat\tembed JSON output in a compressed WARC" +
+				"wrapper, for storage, or sharing (.wat.gz)");
+		System.err.println("\t\t-json FILTER\tProduce JSONView output for FILTER (.json)");
+		System.err.println("\t\twithout OPT, all metadata is dumped as JSON (.json)");
+		System.err.println("\tExits with 1 if any SRC failed.");
+		return exitCode;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int res = ToolRunner.run(new Configuration(), new BatchResourceExtractor(), args);
+		System.exit(res);
+	}
+
+	public int run(String[] args) throws IOException {
+		Logger.getLogger("org.archive").setLevel(Level.WARNING);
+		List<String> paths = new ArrayList<String>();
+		int arg = 0;
+		while(arg < args.length) {
+			if(args[arg].equals("-strict")) {
+				ProducerUtils.STRICT_GZ = true;
+				arg++;
+			} else if(args[arg].equals("-cdx") || args[arg].equals("-cdxURL")
+					|| args[arg].equals("-wat")) {
+				opt = args[arg];
+				arg++;
+			} else if(arg + 1 >= args.length) {
+				break;
+			} else if(args[arg].equals("-threads")) {
+				numThreads = Integer.parseInt(args[arg+1]);
+				arg += 2;
+			} else if(args[arg].equals("-manifest")) {
+				paths.addAll(readManifest(new File(args[arg+1])));
+				arg += 2;
+			} else if(args[arg].equals("-output")) {
+				outputDir = new File(args[arg+1]);
+				arg += 2;
+			} else if(args[arg].equals("-json")) {
+				opt = args[arg+1];
+				arg += 2;
+			} else {
+				break;
+			}
+		}
+		for(; arg < args.length; arg++) {
+			File dir = new File(args[arg]);
+			if(dir.isDirectory()) {
+				paths.addAll(listInputs(dir));
+			} else {
+				paths.add(args[arg]);
+			}
+		}
+		if((outputDir == null) || paths.isEmpty() || (numThreads < 1)) {
+			return USAGE(1);
+		}
+		if(!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new IOException("Unable to create " + outputDir);
+		}
+		int failed = extractAll(paths);
+		return failed == 0 ? 0 : 1;
+	}
+
+	/**
+	 * @return the non-empty lines of manifest, other than # comments
+	 */
+	protected static List<String> readManifest(File manifest) throws IOException {
+		List<String> paths = new ArrayList<String>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(
+				new FileInputStream(manifest), Charset.forName("UTF-8")));
+		try {
+			String line;
+			while((line = br.readLine()) != null) {
+				line = line.trim();
+				if((line.length() > 0) && !line.startsWith("#")) {
+					paths.add(line);
+				}
+			}
+		} finally {
+			br.close();
+		}
+		return paths;
+	}
+
+	/**
+	 * @return the ARC, WARC and WAT files in dir, sorted by name
+	 */
+	protected static List<String> listInputs(File dir) {
+		List<String> paths = new ArrayList<String>();
+		File[] files = dir.listFiles();
+		if(files == null) {
+			return paths;
+		}
+		Arrays.sort(files);
+		for(File file : files) {
+			if(!file.isFile()) {
+				continue;
+			}
+			for(String suffix : INPUT_SUFFIXES) {
+				if(file.getName().endsWith(suffix)) {
+					paths.add(file.getPath());
+					break;
+				}
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * @return the name of the output file for path
+	 */
+	protected String getOutputName(String path) {
+		String name = path.substring(path.lastIndexOf('/') + 1);
+		if(name.endsWith(".gz")) {
+			name = name.substring(0, name.length() - 3);
+		}
+		if(opt == null) {
+			return name + ".json";
+		} else if(opt.equals("-cdx") || opt.equals("-cdxURL")) {
+			return name + ".cdx";
+		} else if(opt.equals("-wat")) {
+			return name + ".wat.gz";
+		}
+		return name + ".json";
+	}
+
+	/**
+	 * Extract every path on the pool, reporting progress as each one
+	 * finishes
+	 *
+	 * @return the number of paths which failed
+	 */
+	protected int extractAll(List<String> paths) {
+		int total = paths.size();
+		AtomicInteger done = new AtomicInteger(0);
+		int failed = 0;
+		long start = System.currentTimeMillis();
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("batch-extractor-%d").build());
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(total);
+		Set<String> outputNames = new HashSet<String>();
+		try {
+			for(String path : paths) {
+				String name = getOutputName(path);
+				if(!outputNames.add(name)) {
+					report(String.format("[%d/%d] %s: FAILED: output %s is used by an earlier file",
+							done.incrementAndGet(), total, path, name));
+					failed++;
+					continue;
+				}
+				results.add(executor.submit(
+						new ExtractFileTask(path, new File(outputDir, name), done, total)));
+			}
+			for(Future<Boolean> result : results) {
+				try {
+					if(!result.get()) {
+						failed++;
+					}
+				} catch(ExecutionException e) {
+					// ExtractFileTask catches everything but Errors
+					LOG.severe(e.getCause().toString());
+					failed++;
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					failed += total - done.get();
+					break;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		report(String.format("Extracted %d of %d files in %.1fs, %d failed",
+				total - failed, total, (System.currentTimeMillis() - start) / 1000.0, failed));
+		return failed;
+	}
+
+	protected void report(String message) {
+		synchronized(progress) {
+			progress.println(message);
+			progress.flush();
+		}
+	}
+
+	/**
+	 * Extracts path to outputFile
+	 *
+	 * @return the number of records extracted
+	 */
+	protected int extractFile(String path, File outputFile) throws Exception {
+		ResourceProducer producer = ProducerUtils.getProducer(path);
+		if(producer == null) {
+			throw new IOException("not a readable arc, warc or wat file");
+		}
+		ResourceProducer exProducer = new ExtractingResourceProducer(producer,
+				new ExtractingResourceFactoryMapper());
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(outputFile));
+		try {
+			ExtractorOutput out = ResourceExtractor.makeOutput(opt, os);
+			return ResourceExtractor.extract(exProducer, out);
+		} finally {
+			try {
+				exProducer.close();
+			} finally {
+				os.close();
+			}
+		}
+	}
+
+	protected class ExtractFileTask implements Callable<Boolean> {
+		final String path;
+		final File outputFile;
+		final AtomicInteger done;
+		final int total;
+
+		ExtractFileTask(String path, File outputFile, AtomicInteger done, int total) {
+			this.path = path;
+			this.outputFile = outputFile;
+			this.done = done;
+			this.total = total;
+		}
+
+		public Boolean call() {
+			long start = System.currentTimeMillis();
+			try {
+				int count = extractFile(path, outputFile);
+				report(String.format("[%d/%d] %s: %d records in %.1fs",
+						done.incrementAndGet(), total, path, count,
+						(System.currentTimeMillis() - start) / 1000.0));
+				return true;
+			} catch(Exception e) {
+				LOG.log(Level.WARNING, "Failed extracting " + path, e);
+				outputFile.delete();
+				report(String.format("[%d/%d] %s: FAILED: %s",
+						done.incrementAndGet(), total, path, e));
+				return false;
+			}
+		}
+	}
+
+	public PrintStream getProgress() {
+		return progress;
+	}
+
+	/**
+	 * @param progress where a line is reported as each file finishes
+	 */
+	public void setProgress(PrintStream progress) {
+		this.progress = progress;
+	}
+}
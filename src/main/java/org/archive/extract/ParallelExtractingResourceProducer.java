@@ -0,0 +1,459 @@
+package org.archive.extract;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Logger;
+
+import org.archive.RecoverableRecordFormatException;
+import org.archive.format.gzip.GZIPConstants;
+import org.archive.format.gzip.GZIPFormatException;
+import org.archive.format.gzip.GZIPMemberSeries;
+import org.archive.format.gzip.GZIPSeriesMember;
+import org.archive.format.index.RecordIndex;
+import org.archive.format.index.RecordIndexEntry;
+import org.archive.resource.AbstractResource;
+import org.archive.resource.Resource;
+import org.archive.resource.ResourceFactory;
+import org.archive.resource.ResourceParseException;
+import org.archive.resource.ResourceProducer;
+import org.archive.resource.TransformingResourceProducer;
+import org.archive.resource.arc.ARCResourceFactory;
+import org.archive.resource.gzip.GZIPResourceContainer;
+import org.archive.resource.warc.WARCResourceFactory;
+import org.archive.streamcontext.RandomAccessFileStream;
+import org.archive.streamcontext.Stream;
+import org.archive.util.StreamCopy;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * ResourceProducer for local gzipped ARC, WARC and WAT files, which extracts
+ * the records on a pool of worker threads and returns them in file order.
+ *
+ * A reader thread finds the gzip member boundaries, and hands chunks of
+ * consecutive members to the workers. Each worker reads its chunk through
+ * its own stream and ExtractingResourceProducer, and reads every Resource to
+ * EOF, so the output only formats already extracted metadata, and gets an
+ * already consumed Resource. Exceptions thrown by getNext() are returned in
+ * order too, so the caller sees the same Resources and exceptions as with a single
+ * ExtractingResourceProducer over the file.
+ *
+ * If the reader hits a gzip error, everything from the end of the last good
+ * member is handed to a single worker, which reads it just as the serial
+ * producer would.
+ *
+ * If the file has a complete RecordIndex sidecar, the member boundaries
+ * come from it, and the file is not inflated by the reader at all. Failing
+ * that, members with an SL extra field (see GZIPMemberWriter) are skipped
+ * by their length. Otherwise the reader inflates every member serially, at
+ * much the cost of a serial extraction, so more threads only pay off with
+ * a sidecar or SL lengths.
+ */
+public class ParallelExtractingResourceProducer implements ResourceProducer {
+
+	private static final Logger LOG =
+		Logger.getLogger(ParallelExtractingResourceProducer.class.getName());
+
+	private static final Item END = new Item(null, null, null);
+
+	private File file;
+	private String name;
+	private boolean strict;
+
+	private int numThreads;
+
+	// Compressed bytes of the members handed to a worker at once
+	private long chunkBytes = 1024 * 1024;
+
+	// Max chunks being extracted or waiting to be returned, per thread
+	private int maxPendingPerThread = 2;
+
+	private ExecutorService executor = null;
+	private Thread reader = null;
+	private BlockingQueue<Future<List<Item>>> pending = null;
+	private Future<List<Item>> endOfChunks = null;
+
+	private List<Item> current = null;
+	private int currentIdx = 0;
+	private boolean finished = false;
+	private String context;
+
+	/**
+	 * A Resource read to EOF, or the exception thrown instead
+	 */
+	private static class Item {
+		final Resource resource;
+		final Exception error;
+		final String context;
+
+		Item(Resource resource, Exception error, String context) {
+			this.resource = resource;
+			this.error = error;
+			this.context = context;
+		}
+	}
+
+	/**
+	 * A Resource already read to EOF by a worker. Its stream is empty, or
+	 * throws the exception the worker got reading it, so the output gets
+	 * the same exception it would have got reading it serially.
+	 */
+	private static class ExtractedResource extends AbstractResource {
+		final Exception readError;
+
+		ExtractedResource(Resource resource, Exception readError) {
+			super(resource.getMetaData(), resource.getContainer());
+			this.readError = readError;
+		}
+
+		public InputStream getInputStream() {
+			if(readError == null) {
+				return new ByteArrayInputStream(new byte[0]);
+			}
+			return new InputStream() {
+				public int read() throws IOException {
+					if(readError instanceof IOException) {
+						throw (IOException)readError;
+					}
+					throw (RuntimeException)readError;
+				}
+			};
+		}
+	}
+
+	public ParallelExtractingResourceProducer(String path, int numThreads) {
+		this.file = new File(path);
+		this.name = file.getName();
+		this.strict = ProducerUtils.STRICT_GZ;
+		this.numThreads = Math.max(1, numThreads);
+		this.context = String.format("Context(%s)(%d)", name, 0);
+	}
+
+	/**
+	 * @return true if path is a readable local file this class can produce
+	 * from, false if it needs the serial ProducerUtils producer
+	 */
+	public static boolean canProduce(String path) {
+		if(path.startsWith("hdfs://") || path.startsWith("http://")) {
+			return false;
+		}
+		if(!path.endsWith(".gz")) {
+			return false;
+		}
+		File file = new File(path);
+		return file.isFile() && file.canRead();
+	}
+
+	/**
+	 * @return a new factory for the records of the file, as used by
+	 * ProducerUtils, or null for gzip members with no envelope
+	 */
+	protected ResourceFactory createFactory() {
+		String path = file.getName();
+		if(path.endsWith(".warc.gz") || path.endsWith(".wat.gz")) {
+			return new WARCResourceFactory();
+		} else if(path.endsWith(".arc.gz")) {
+			return new ARCResourceFactory();
+		}
+		return null;
+	}
+
+	protected synchronized void start() {
+		if(executor != null) {
+			return;
+		}
+		executor = Executors.newFixedThreadPool(numThreads,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("extractor-%d").build());
+
+		pending = new ArrayBlockingQueue<Future<List<Item>>>(numThreads * Math.max(1, maxPendingPerThread));
+
+		FutureTask<List<Item>> end = new FutureTask<List<Item>>(new Callable<List<Item>>() {
+			public List<Item> call() {
+				return Collections.singletonList(END);
+			}
+		});
+		end.run();
+		endOfChunks = end;
+
+		reader = new Thread(new Runnable() {
+			public void run() {
+				try {
+					splitChunks();
+				} catch (InterruptedException e) {
+					// closed
+				}
+			}
+		}, "extractor-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Find member boundaries, from the file's record index if it has a
+	 * complete one, and queue chunks of members for the workers
+	 */
+	protected void splitChunks() throws InterruptedException {
+		RecordIndex index = RecordIndex.forArchive(file);
+		if((index != null) && index.isContiguous()) {
+			splitChunks(index);
+		} else {
+			scanChunks();
+		}
+		pending.put(endOfChunks);
+	}
+
+	protected void splitChunks(RecordIndex index) throws InterruptedException {
+		long chunkStart = 0;
+		int chunkMembers = 0;
+		for(RecordIndexEntry entry : index.getEntries()) {
+			chunkMembers++;
+			if(entry.getEndOffset() - chunkStart >= chunkBytes) {
+				submit(chunkStart, chunkMembers);
+				chunkStart = entry.getEndOffset();
+				chunkMembers = 0;
+			}
+		}
+		if(chunkMembers > 0) {
+			submit(chunkStart, chunkMembers);
+		}
+	}
+
+	/**
+	 * Find member boundaries from the members' SL extra fields, or by
+	 * inflating those without one
+	 */
+	protected void scanChunks() throws InterruptedException {
+		GZIPMemberSeries series = null;
+		long chunkStart = 0;
+		long lastEnd = 0;
+		int chunkMembers = 0;
+
+		try {
+			series = new GZIPMemberSeries(new RandomAccessFileStream(file), name, 0, strict);
+
+			while(true) {
+				GZIPSeriesMember member = series.getNextMember();
+				if(member == null) {
+					break;
+				}
+				long length =
+					member.getHeader().getIntRecord(GZIPConstants.SL_RECORD);
+				if((length <= 0) || !series.skipCurrentMember(
+						member.getRecordStartOffset() + length)) {
+					member.skipMember();
+				}
+				lastEnd = series.getOffset();
+				chunkMembers++;
+
+				if(lastEnd - chunkStart >= chunkBytes) {
+					submit(chunkStart, chunkMembers);
+					chunkStart = lastEnd;
+					chunkMembers = 0;
+				}
+			}
+			if(chunkMembers > 0) {
+				submit(chunkStart, chunkMembers);
+			}
+
+		} catch(IOException e) {
+			submitRemaining(e, chunkStart, chunkMembers, lastEnd);
+		} catch(RuntimeException e) {
+			submitRemaining(e, chunkStart, chunkMembers, lastEnd);
+		} finally {
+			if(series != null) {
+				try {
+					series.close();
+				} catch (IOException e) {
+					LOG.warning(e.toString());
+				}
+			}
+		}
+	}
+
+	protected void submitRemaining(Exception e, long chunkStart, int chunkMembers,
+			long lastEnd) throws InterruptedException {
+		LOG.warning(String.format("%s at offset %d of %s, extracting the rest serially",
+				e.toString(), lastEnd, name));
+		if(chunkMembers > 0) {
+			submit(chunkStart, chunkMembers);
+		}
+		submit(lastEnd, -1);
+	}
+
+	protected void submit(long startOffset, int numMembers) throws InterruptedException {
+		pending.put(executor.submit(new ExtractTask(startOffset, numMembers)));
+	}
+
+	/**
+	 * Extracts numMembers gzip members, or all remaining if -1, starting at
+	 * startOffset
+	 */
+	protected class ExtractTask implements Callable<List<Item>> {
+		final long startOffset;
+		final int numMembers;
+
+		ExtractTask(long startOffset, int numMembers) {
+			this.startOffset = startOffset;
+			this.numMembers = numMembers;
+		}
+
+		public List<Item> call() throws IOException {
+			List<Item> items = new ArrayList<Item>();
+
+			Stream stream = new RandomAccessFileStream(file);
+			if(startOffset > 0) {
+				stream.setOffset(startOffset);
+			}
+			// as the serial series is, at the start and end of each member
+			GZIPMemberSeries series =
+				GZIPMemberSeries.startAligned(stream, name, startOffset, strict);
+
+			ResourceProducer producer = new GZIPResourceContainer(series);
+			ResourceFactory factory = createFactory();
+			if(factory != null) {
+				producer = new TransformingResourceProducer(producer, factory);
+			}
+			producer = new ExtractingResourceProducer(producer,
+					new ExtractingResourceFactoryMapper());
+
+			try {
+				for(int i = 0; (numMembers < 0) || (i < numMembers); i++) {
+					Resource r;
+					try {
+						r = producer.getNext();
+					} catch(Exception e) {
+						items.add(new Item(null, e, producer.getContext()));
+						if(isRecoverable(e)) {
+							continue;
+						}
+						break;
+					}
+					if(r == null) {
+						items.add(END);
+						break;
+					}
+					Exception readError = null;
+					try {
+						StreamCopy.readToEOF(r.getInputStream());
+					} catch(IOException e) {
+						readError = e;
+					} catch(RuntimeException e) {
+						readError = e;
+					}
+					items.add(new Item(new ExtractedResource(r, readError), null, null));
+				}
+			} finally {
+				producer.close();
+			}
+			return items;
+		}
+	}
+
+	/**
+	 * @return true if ResourceExtractor carries on after e from getNext()
+	 */
+	protected boolean isRecoverable(Exception e) {
+		if(e instanceof RecoverableRecordFormatException) {
+			return true;
+		}
+		if((e instanceof GZIPFormatException) || (e instanceof ResourceParseException)) {
+			return !strict;
+		}
+		return false;
+	}
+
+	public Resource getNext() throws ResourceParseException, IOException {
+		start();
+
+		while(true) {
+			if(finished) {
+				return null;
+			}
+			if((current != null) && (currentIdx < current.size())) {
+				Item item = current.get(currentIdx++);
+				if(item == END) {
+					close();
+					return null;
+				}
+				if(item.error != null) {
+					context = item.context;
+					throwError(item.error);
+				}
+				return item.resource;
+			}
+			current = nextChunk();
+			currentIdx = 0;
+		}
+	}
+
+	protected List<Item> nextChunk() throws IOException {
+		try {
+			return pending.take().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e.toString());
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new IOException(e.getCause().toString());
+		}
+	}
+
+	protected void throwError(Exception e) throws ResourceParseException, IOException {
+		if(e instanceof ResourceParseException) {
+			throw (ResourceParseException)e;
+		}
+		if(e instanceof IOException) {
+			throw (IOException)e;
+		}
+		if(e instanceof RuntimeException) {
+			throw (RuntimeException)e;
+		}
+		throw new IOException(e.toString());
+	}
+
+	public void close() throws IOException {
+		finished = true;
+		current = null;
+		if(reader != null) {
+			reader.interrupt();
+		}
+		if(executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	public String getContext() {
+		return context;
+	}
+
+	public long getChunkBytes() {
+		return chunkBytes;
+	}
+
+	public void setChunkBytes(long chunkBytes) {
+		this.chunkBytes = chunkBytes;
+	}
+
+	public int getMaxPendingPerThread() {
+		return maxPendingPerThread;
+	}
+
+	public void setMaxPendingPerThread(int maxPendingPerThread) {
+		this.maxPendingPerThread = maxPendingPerThread;
+	}
+}
@@ -15,8 +15,8 @@ import org.archive.format.json.JSONUtils;
 import org.archive.format.json.SimpleJSONPathSpec;
 import org.archive.resource.MetaData;
 import org.archive.resource.Resource;
+import org.archive.url.FastWaybackURLKeyMaker;
 import org.archive.url.URLKeyMaker;
-import org.archive.url.WaybackURLKeyMaker;
 import org.archive.util.IAUtils;
 import org.archive.util.StreamCopy;
 import org.json.JSONArray;
@@ -67,7 +67,7 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 	}
 
 	public RealCDXExtractorOutput(PrintWriter out) {
-		this(out,new WaybackURLKeyMaker());
+		this(out,new FastWaybackURLKeyMaker());
 	}
 //	SimpleJSONPathSpec gzFooterLengthSpec = new SimpleJSONPathSpec("Container.Gzip-Metadata.Footer-Length");
 //	SimpleJSONPathSpec gzHeaderLengthSpec = new SimpleJSONPathSpec("Container.Gzip-Metadata.Header-Length");
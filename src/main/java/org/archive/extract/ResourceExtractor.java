@@ -1,5 +1,6 @@
 package org.archive.extract;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -15,11 +16,14 @@ import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.archive.RecoverableRecordFormatException;
 import org.archive.format.gzip.GZIPFormatException;
+import org.archive.format.index.RecordIndex;
+import org.archive.resource.FilteringResourceProducer;
+import org.archive.resource.HeaderRecordFilter;
 import org.archive.resource.Resource;
 import org.archive.resource.ResourceConstants;
 import org.archive.resource.ResourceParseException;
 import org.archive.resource.ResourceProducer;
-import org.archive.url.WaybackURLKeyMaker;
+import org.archive.url.FastWaybackURLKeyMaker;
 
 public class ResourceExtractor implements ResourceConstants, Tool {
 	
@@ -44,7 +48,7 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 	
 	private static int USAGE(int exitCode) {
 		System.err.println("Usage:\n");
-		System.err.println("extractor [OPT] SRC");
+		System.err.println("extractor [-strict] [-threads N] [-types T,...] [OPT] SRC");
 		System.err.println("\tSRC is the local path, HTTP or HDFS URL to an " +
 				"arc, warc, arc.gz, or warc.gz.");
 		System.err.println("\tOPT can be one of:");		
@@ -53,6 +57,13 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 		System.err.println("\t\t\t (note that column 1 is NOT standard Wayback canonicalized)\n");
 		System.err.println("\t\t-wat\tembed JSON output in a compressed WARC" +
 				"wrapper, for storage, or sharing.");
+		System.err.println("\t-threads N extracts the records of a local gzipped SRC");
+		System.err.println("\t\ton N threads, with the same output. Member boundaries come");
+		System.err.println("\t\tfrom a record index sidecar or SL lengths, if present, or");
+		System.err.println("\t\telse by inflating SRC once serially, which limits speedup.");
+		System.err.println("\t-types T,... extracts only the records of the given WARC-Types,");
+		System.err.println("\t\tARC records being response or filedesc. Others are skipped");
+		System.err.println("\t\twithout inflating, where their length is known. Serial only.");
 		return exitCode;
 	}
 
@@ -62,11 +73,30 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 		System.exit(res);
 	}
 	
-	private PrintWriter makePrintWriter(OutputStream os)
+	private static PrintWriter makePrintWriter(OutputStream os)
 	{
 		return new PrintWriter(new OutputStreamWriter(os, Charset.forName("UTF-8")));
 	}
 
+	/**
+	 * @param opt one of -cdx, -cdxURL or -wat, a JSONView filter, or null
+	 * for the metadata dump
+	 * @param os where the output is written
+	 * @return the ExtractorOutput for opt
+	 */
+	static ExtractorOutput makeOutput(String opt, OutputStream os) {
+		if(opt == null) {
+			return new DumpingExtractorOutput(os);
+		} else if(opt.equals("-cdx")) {
+			return new RealCDXExtractorOutput(makePrintWriter(os));
+		} else if(opt.equals("-cdxURL")) {
+			return new RealCDXExtractorOutput(makePrintWriter(os), new FastWaybackURLKeyMaker(false));
+		} else if(opt.equals("-wat")) {
+			return new WATExtractorOutput(os);
+		}
+		return new JSONViewExtractorOutput(os, opt);
+	}
+
 	public int run(String[] args) 
 	throws IndexOutOfBoundsException, FileNotFoundException, IOException,
 	ResourceParseException, URISyntaxException {
@@ -74,50 +104,77 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 		if(args.length < 1) {
 			return USAGE(1);
 		}
-		if(args.length > 3) {
-			return USAGE(1);
-		}
-		int max = Integer.MAX_VALUE;
 		OutputStream os = this.out == null ? System.out : this.out;
 	    Logger.getLogger("org.archive").setLevel(Level.WARNING);
 	    ExtractorOutput out;
 	    int arg = 0;
-	    if(args.length > 0) {
-	    	if(args[0].equals("-strict")) {
+	    int threads = 1;
+	    HeaderRecordFilter filter = null;
+	    while(arg < args.length) {
+	    	if(args[arg].equals("-strict")) {
 	    		ProducerUtils.STRICT_GZ = true;
 	    		arg++;
-	    	}	   
+	    	} else if(args[arg].equals("-threads") && (arg + 1 < args.length)) {
+	    		threads = Integer.parseInt(args[arg+1]);
+	    		arg += 2;
+	    	} else if(args[arg].equals("-types") && (arg + 1 < args.length)) {
+	    		filter = new HeaderRecordFilter();
+	    		filter.setTypes(HeaderRecordFilter.split(args[arg+1]));
+	    		arg += 2;
+	    	} else {
+	    		break;
+	    	}
+	    }
+	    if((args.length - arg < 1) || (args.length - arg > 2)) {
+	    	return USAGE(1);
 	    }
 	    String path = args[arg];
 	    if(args.length == arg + 2) {
-	    	if(args[arg].equals("-cdx")) {
-	    		path = args[arg+1];
-	    		out = new RealCDXExtractorOutput(makePrintWriter(os));
-	    		
-	    	} else if(args[arg].equals("-cdxURL")) {
+	    	if(args[arg].equals("-cdx") || args[arg].equals("-cdxURL")
+	    			|| args[arg].equals("-wat")) {
 	    		path = args[arg+1];
-	    		out = new RealCDXExtractorOutput(makePrintWriter(os), new WaybackURLKeyMaker(false));
-
-	    	} else if(args[arg].equals("-wat")) {
-	    		path = args[arg+1];
-	    		out = new WATExtractorOutput(os);
+	    		out = makeOutput(args[arg], os);
 	    	} else {
-	    		String filter = args[arg+1];
-	    		out = new JSONViewExtractorOutput(os, filter);
+	    		// the JSONView filter comes after SRC
+	    		out = makeOutput(args[arg+1], os);
 	    	}
 	    } else {
-	    	out = new DumpingExtractorOutput(os);
+	    	out = makeOutput(null, os);
 	    }
-	    ResourceProducer producer = ProducerUtils.getProducer(path);
-	    if(producer == null) {
-	    	return USAGE(1);
+	    ResourceProducer exProducer;
+	    if((threads > 1) && (filter == null)
+	    		&& ParallelExtractingResourceProducer.canProduce(path)) {
+	    	exProducer = new ParallelExtractingResourceProducer(path, threads);
+	    } else {
+	    	ResourceProducer producer = ProducerUtils.getProducer(path);
+	    	if(producer == null) {
+	    		return USAGE(1);
+	    	}
+	    	if(filter != null) {
+	    		File file = new File(path);
+	    		RecordIndex index = file.isFile() ? RecordIndex.forArchive(file) : null;
+	    		producer = new FilteringResourceProducer(producer, filter, index);
+	    	}
+	    	ResourceFactoryMapper mapper = new ExtractingResourceFactoryMapper();
+	    	exProducer = new ExtractingResourceProducer(producer, mapper);
 	    }
-	    ResourceFactoryMapper mapper = new ExtractingResourceFactoryMapper();
-	    ExtractingResourceProducer exProducer = 
-	    	new ExtractingResourceProducer(producer, mapper);
 
 	    Logger.getLogger("org.archive").setLevel(Level.WARNING);
 
+	    extract(exProducer, out);
+		exProducer.close();
+		return 0;
+	}
+
+	/**
+	 * Outputs every Resource of exProducer, logging and skipping the ones
+	 * that fail to parse, unless ProducerUtils.STRICT_GZ is set.
+	 * 
+	 * @return the number of Resources output
+	 */
+	static int extract(ResourceProducer exProducer, ExtractorOutput out)
+	throws IOException, ResourceParseException {
+		int max = Integer.MAX_VALUE;
 		int count = 0;
 		int incr = 1;
 		while(count < max) {
@@ -157,7 +214,7 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 				
 			}
 		}
-		return 0;
+		return count;
 	}
 	/**
 	 * @return the out
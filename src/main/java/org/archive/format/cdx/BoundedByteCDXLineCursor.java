@@ -0,0 +1,87 @@
+package org.archive.format.cdx;
+
+import java.io.IOException;
+
+/**
+ * Byte-level equivalent of wrapping an iterator in a StartBoundedStringIterator
+ * and a BoundedStringIterator: skips lines before start, and stops at the
+ * first line at or after end. If endInclusive, lines starting with end are
+ * still returned, which makes end a prefix match.
+ *
+ * An empty or null start or end means unbounded.
+ */
+public class BoundedByteCDXLineCursor implements ByteCDXLineCursor {
+
+	protected ByteCDXLineCursor inner;
+	protected byte[] start;
+	protected byte[] end;
+	protected boolean endInclusive;
+
+	protected boolean started = false;
+	protected boolean done = false;
+
+	public BoundedByteCDXLineCursor(ByteCDXLineCursor inner, String start, String end, boolean endInclusive)
+	{
+		this.inner = inner;
+		this.start = toBytes(start);
+		this.end = toBytes(end);
+		this.endInclusive = endInclusive;
+		this.started = (this.start == null);
+	}
+
+	/**
+	 * Lines from prefix on, with the same end bound as ZipNumIndex.wrapPrefix()
+	 */
+	public static BoundedByteCDXLineCursor wrapPrefix(ByteCDXLineCursor inner, String prefix, boolean exact)
+	{
+		if (exact) {
+			return new BoundedByteCDXLineCursor(inner, prefix, prefix + "!", false);
+		} else {
+			return new BoundedByteCDXLineCursor(inner, prefix, prefix, true);
+		}
+	}
+
+	protected static byte[] toBytes(String bound)
+	{
+		if ((bound == null) || bound.isEmpty()) {
+			return null;
+		}
+		return bound.getBytes(ByteCDXLine.UTF8);
+	}
+
+	public ByteCDXLine next() throws IOException
+	{
+		if (done) {
+			return null;
+		}
+
+		ByteCDXLine line = null;
+
+		while ((line = inner.next()) != null) {
+			if (!started) {
+				if (line.compareTo(start) < 0) {
+					continue;
+				}
+				started = true;
+			}
+
+			if ((end != null) && (line.compareTo(end) >= 0) && (!endInclusive || !line.startsWith(end))) {
+				break;
+			}
+
+			return line;
+		}
+
+		done = true;
+		close();
+		return null;
+	}
+
+	public void close() throws IOException
+	{
+		if (inner != null) {
+			inner.close();
+			inner = null;
+		}
+	}
+}
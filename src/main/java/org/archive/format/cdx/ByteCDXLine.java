@@ -0,0 +1,246 @@
+package org.archive.format.cdx;
+
+import java.nio.charset.Charset;
+
+/**
+ * Reusable, byte-level view of a single CDX line within a larger buffer,
+ * such as a decompressed zipnum block.
+ *
+ * Unlike CDXLine, nothing is decoded or copied up front: fields are located
+ * lazily on first access, and comparisons are done directly on the UTF-8
+ * bytes, which for valid UTF-8 gives the same order as comparing code points.
+ *
+ * A view is only valid until the cursor that returned it is advanced; use
+ * toString() or copy() to keep a line.
+ */
+public class ByteCDXLine implements CDXFieldConstants {
+
+	public final static Charset UTF8 = Charset.forName("UTF-8");
+
+	public final static byte FIELD_SEPARATOR = ' ';
+
+	protected byte[] buffer;
+	protected int start;
+	protected int end;
+
+	// End offset of each field, computed on demand
+	protected int[] fieldEnds = new int[12];
+	protected int numFields = -1;
+
+	public ByteCDXLine()
+	{
+
+	}
+
+	public ByteCDXLine(byte[] line)
+	{
+		set(line, 0, line.length);
+	}
+
+	public ByteCDXLine(String line)
+	{
+		this(line.getBytes(UTF8));
+	}
+
+	/**
+	 * Point this view at the line in buffer[start, end), not including the newline
+	 */
+	public void set(byte[] buffer, int start, int end)
+	{
+		this.buffer = buffer;
+		this.start = start;
+		this.end = end;
+		this.numFields = -1;
+	}
+
+	public byte[] getBuffer()
+	{
+		return buffer;
+	}
+
+	public int getStart()
+	{
+		return start;
+	}
+
+	public int getEnd()
+	{
+		return end;
+	}
+
+	public int getLength()
+	{
+		return end - start;
+	}
+
+	protected void splitFields()
+	{
+		int count = 0;
+
+		for (int i = start; i < end; i++) {
+			if (buffer[i] == FIELD_SEPARATOR) {
+				addFieldEnd(count++, i);
+			}
+		}
+
+		addFieldEnd(count++, end);
+		numFields = count;
+	}
+
+	private void addFieldEnd(int index, int offset)
+	{
+		if (index >= fieldEnds.length) {
+			int[] newEnds = new int[fieldEnds.length * 2];
+			System.arraycopy(fieldEnds, 0, newEnds, 0, fieldEnds.length);
+			fieldEnds = newEnds;
+		}
+		fieldEnds[index] = offset;
+	}
+
+	public int getNumFields()
+	{
+		if (numFields < 0) {
+			splitFields();
+		}
+		return numFields;
+	}
+
+	public boolean isInRange(int index)
+	{
+		return ((index >= 0) && (index < getNumFields()));
+	}
+
+	/**
+	 * @return offset in the buffer of the start of the field
+	 */
+	public int getFieldStart(int index)
+	{
+		if (!isInRange(index)) {
+			throw new IndexOutOfBoundsException("Field " + index + " of " + getNumFields());
+		}
+		return (index == 0 ? start : fieldEnds[index - 1] + 1);
+	}
+
+	/**
+	 * @return offset in the buffer just past the end of the field
+	 */
+	public int getFieldEnd(int index)
+	{
+		if (!isInRange(index)) {
+			throw new IndexOutOfBoundsException("Field " + index + " of " + getNumFields());
+		}
+		return fieldEnds[index];
+	}
+
+	/**
+	 * Decode a single field, or return "-" if the line has no such field
+	 */
+	public String getField(int index)
+	{
+		if (!isInRange(index)) {
+			return FieldSplitLine.EMPTY_VALUE;
+		}
+		int fieldStart = getFieldStart(index);
+		return new String(buffer, fieldStart, fieldEnds[index] - fieldStart, UTF8);
+	}
+
+	public String getUrlKey()
+	{
+		return getField(0);
+	}
+
+	public String getTimestamp()
+	{
+		return getField(1);
+	}
+
+	/**
+	 * Offset just past the urlkey, the space and the first timestampLength
+	 * bytes of the timestamp, clamped to the end of the line. Two lines with
+	 * equal bytes up to this offset match for timestamp dedup purposes.
+	 */
+	public int getMatchKeyEnd(int timestampLength)
+	{
+		int keyEnd = (numFields >= 0 ? fieldEnds[0] : indexOf(FIELD_SEPARATOR, start));
+
+		if (keyEnd < 0 || keyEnd >= end) {
+			return end;
+		}
+
+		return (int)Math.min((long)keyEnd + 1 + timestampLength, end);
+	}
+
+	protected int indexOf(byte b, int from)
+	{
+		for (int i = from; i < end; i++) {
+			if (buffer[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Compare the whole line with key, as unsigned bytes
+	 */
+	public int compareTo(byte[] key)
+	{
+		return compare(buffer, start, end, key, 0, key.length);
+	}
+
+	public int compareTo(ByteCDXLine other)
+	{
+		return compare(buffer, start, end, other.buffer, other.start, other.end);
+	}
+
+	public boolean startsWith(byte[] prefix)
+	{
+		if (prefix.length > getLength()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer[start + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public static int compare(byte[] a, int aStart, int aEnd, byte[] b, int bStart, int bEnd)
+	{
+		int aLen = aEnd - aStart;
+		int bLen = bEnd - bStart;
+		int len = Math.min(aLen, bLen);
+
+		for (int i = 0; i < len; i++) {
+			int diff = (a[aStart + i] & 0xff) - (b[bStart + i] & 0xff);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+
+		return aLen - bLen;
+	}
+
+	/**
+	 * @return a view over a private copy of this line, which remains valid
+	 * after the cursor is advanced
+	 */
+	public ByteCDXLine copy()
+	{
+		byte[] bytes = new byte[getLength()];
+		System.arraycopy(buffer, start, bytes, 0, bytes.length);
+		return new ByteCDXLine(bytes);
+	}
+
+	public CDXLine toCDXLine(FieldSplitFormat names)
+	{
+		return new CDXLine(toString(), names);
+	}
+
+	@Override
+	public String toString()
+	{
+		return new String(buffer, start, getLength(), UTF8);
+	}
+}
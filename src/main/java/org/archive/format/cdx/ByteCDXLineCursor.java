@@ -0,0 +1,20 @@
+package org.archive.format.cdx;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Byte-oriented alternative to CloseableIterator&lt;String&gt; for reading
+ * CDX lines without decoding them.
+ *
+ * Implementations may return the same ByteCDXLine instance from every call,
+ * pointing into a shared buffer, so a returned line is only valid until the
+ * next call to next() or close().
+ */
+public interface ByteCDXLineCursor extends Closeable {
+
+	/**
+	 * @return the next line, or null when there are no more lines
+	 */
+	public ByteCDXLine next() throws IOException;
+}
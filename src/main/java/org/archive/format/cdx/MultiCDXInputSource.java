@@ -3,14 +3,28 @@ package org.archive.format.cdx;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import org.archive.format.gzip.zipnum.ZipNumIndex;
 import org.archive.format.gzip.zipnum.ZipNumParams;
 import org.archive.util.iterator.CloseableCompositeIterator;
 import org.archive.util.iterator.CloseableIterator;
-import org.archive.util.iterator.SortedCompositeIterator;
+import org.archive.util.iterator.LoserTreeCompositeIterator;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class MultiCDXInputSource implements CDXInputSource {
 
@@ -55,11 +69,26 @@ public class MultiCDXInputSource implements CDXInputSource {
 	
 	protected Comparator<String> comparator = defaultComparator;
 	protected Comparator<String> reverseComparator = defaultReverseComparator;	
+	
+	protected int parallelThreads = 0;
+	protected int parallelTimeoutMS = 0;
+	protected ExecutorService parallelExecutor = null;
+	// true if getParallelExecutor() created parallelExecutor, so close() shuts it down
+	protected boolean ownsParallelExecutor = false;
 		
 	
-	public CloseableIterator<String> getCDXIterator(String key, String prefix, boolean exact, ZipNumParams params) throws IOException {
+	public CloseableIterator<String> getCDXIterator(final String key, final String prefix, final boolean exact, final ZipNumParams params) throws IOException {
+		
+		if (getParallelExecutor() != null) {
+			return createParallelIterator(new SourceOpener() {
+				@Override
+				public CloseableIterator<String> open(CDXInputSource source) throws IOException {
+					return source.getCDXIterator(key, prefix, exact, params);
+				}
+			}, params);
+		}
 		
-		SortedCompositeIterator<String> scitr = new SortedCompositeIterator<String>(cdx.size(), params.isReverse() ? reverseComparator : comparator);
+		LoserTreeCompositeIterator<String> scitr = new LoserTreeCompositeIterator<String>(cdx.size(), params.isReverse() ? reverseComparator : comparator);
 		
 		CloseableIterator<String> iter = null;
 		
@@ -175,13 +204,22 @@ public class MultiCDXInputSource implements CDXInputSource {
 	}
 	
 	
-	public CloseableIterator<String> getCDXIterator(String key, String start, String end, ZipNumParams params) throws IOException {
+	public CloseableIterator<String> getCDXIterator(final String key, final String start, final String end, final ZipNumParams params) throws IOException {
 		
 		if (params.isSequential()) {
 			return this.createSeqIterator(key, start, end, params);
 		}
 		
-		SortedCompositeIterator<String> scitr = new SortedCompositeIterator<String>(cdx.size(), params.isReverse() ? reverseComparator : comparator);
+		if (getParallelExecutor() != null) {
+			return createParallelIterator(new SourceOpener() {
+				@Override
+				public CloseableIterator<String> open(CDXInputSource source) throws IOException {
+					return source.getCDXIterator(key, start, end, params);
+				}
+			}, params);
+		}
+		
+		LoserTreeCompositeIterator<String> scitr = new LoserTreeCompositeIterator<String>(cdx.size(), params.isReverse() ? reverseComparator : comparator);
 		
 		CloseableIterator<String> iter = null;
 		
@@ -197,6 +235,199 @@ public class MultiCDXInputSource implements CDXInputSource {
 		return scitr;
 	}
 
+	protected interface SourceOpener
+	{
+		public CloseableIterator<String> open(CDXInputSource source) throws IOException;
+	}
+	
+	/**
+	 * Opens a single source and reads its first line, so that the initial
+	 * binary search and block load happen on the executor
+	 */
+	protected static class OpenTask implements Callable<OpenTask>
+	{
+		final CDXInputSource source;
+		final SourceOpener opener;
+		
+		CloseableIterator<String> result;
+		boolean abandoned = false;
+		
+		OpenTask(CDXInputSource source, SourceOpener opener)
+		{
+			this.source = source;
+			this.opener = opener;
+		}
+
+		@Override
+		public OpenTask call() throws Exception {
+			CloseableIterator<String> iter = opener.open(source);
+			
+			try {
+				iter.hasNext();
+			} catch (RuntimeException re) {
+				iter.close();
+				throw re;
+			}
+			
+			synchronized (this) {
+				if (!abandoned) {
+					result = iter;
+					return this;
+				}
+			}
+			
+			iter.close();
+			return this;
+		}
+		
+		/**
+		 * @return the opened iterator, if not already taken
+		 */
+		synchronized CloseableIterator<String> take()
+		{
+			CloseableIterator<String> iter = result;
+			result = null;
+			return iter;
+		}
+		
+		/**
+		 * Mark as no longer needed
+		 * @return the opened iterator, if it was completed but not taken
+		 */
+		synchronized CloseableIterator<String> abandon()
+		{
+			abandoned = true;
+			return take();
+		}
+	}
+	
+	/**
+	 * Open all sources concurrently on the parallel executor, adding each to the
+	 * merge as soon as it is ready. Sources which fail, or are not ready within
+	 * parallelTimeoutMS of the start of the query, are skipped.
+	 */
+	protected CloseableIterator<String> createParallelIterator(SourceOpener opener, ZipNumParams params)
+	{
+		LoserTreeCompositeIterator<String> scitr = new LoserTreeCompositeIterator<String>(cdx.size(), params.isReverse() ? reverseComparator : comparator);
+		
+		CompletionService<OpenTask> completion = new ExecutorCompletionService<OpenTask>(getParallelExecutor());
+		
+		Map<Future<OpenTask>, OpenTask> pending = new HashMap<Future<OpenTask>, OpenTask>();
+		
+		for (CDXInputSource cdxReader : cdx) {
+			OpenTask task = new OpenTask(cdxReader, opener);
+			pending.put(completion.submit(task), task);
+		}
+		
+		long deadline = System.currentTimeMillis() + parallelTimeoutMS;
+		
+		try {
+			while (!pending.isEmpty()) {
+				long remaining = deadline - System.currentTimeMillis();
+				
+				Future<OpenTask> future = null;
+				
+				if (parallelTimeoutMS <= 0) {
+					future = completion.take();
+				} else if (remaining > 0) {
+					future = completion.poll(remaining, TimeUnit.MILLISECONDS);
+				}
+				
+				if (future == null) {
+					break;
+				}
+				
+				OpenTask task = pending.remove(future);
+				
+				try {
+					future.get();
+					CloseableIterator<String> iter = task.take();
+					
+					if (iter != null) {
+						scitr.addIterator(iter);
+					}
+				} catch (ExecutionException e) {
+					LOGGER.warning("Skipping failed source: " + e.getCause());
+				}
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		
+		for (Entry<Future<OpenTask>, OpenTask> entry : pending.entrySet()) {
+			LOGGER.warning("Skipping source, not ready after " + parallelTimeoutMS + "ms: " + entry.getValue().source);
+			
+			CloseableIterator<String> iter = entry.getValue().abandon();
+			
+			if (iter != null) {
+				try {
+					iter.close();
+				} catch (IOException e) {
+					LOGGER.warning(e.toString());
+				}
+			}
+			
+			entry.getKey().cancel(true);
+		}
+		
+		return scitr;
+	}
+	
+	protected synchronized ExecutorService getParallelExecutor()
+	{
+		if ((parallelExecutor == null) && (parallelThreads > 0)) {
+			ThreadFactory threadFactory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MultiCDXInit-%d").build();
+			parallelExecutor = Executors.newFixedThreadPool(parallelThreads, threadFactory);
+			ownsParallelExecutor = true;
+		}
+		
+		return parallelExecutor;
+	}
+	
+	/**
+	 * Shut down the executor opening sources concurrently, if this created
+	 * it. One set with {@link #setParallelExecutor(ExecutorService)} is left
+	 * to its owner. The sources are not closed.
+	 */
+	public synchronized void close()
+	{
+		if (ownsParallelExecutor) {
+			parallelExecutor.shutdownNow();
+			parallelExecutor = null;
+			ownsParallelExecutor = false;
+		}
+	}
+	
+	/**
+	 * @param parallelExecutor executor used to open sources concurrently, may be shared
+	 */
+	public synchronized void setParallelExecutor(ExecutorService parallelExecutor) {
+		close();
+		this.parallelExecutor = parallelExecutor;
+	}
+
+	public int getParallelThreads() {
+		return parallelThreads;
+	}
+
+	/**
+	 * @param parallelThreads if &gt; 0, open the sources concurrently using this many threads
+	 */
+	public void setParallelThreads(int parallelThreads) {
+		this.parallelThreads = parallelThreads;
+	}
+
+	public int getParallelTimeoutMS() {
+		return parallelTimeoutMS;
+	}
+
+	/**
+	 * @param parallelTimeoutMS when opening in parallel, skip sources not ready within this time, 0 to wait for all
+	 */
+	public void setParallelTimeoutMS(int parallelTimeoutMS) {
+		this.parallelTimeoutMS = parallelTimeoutMS;
+	}
+
 	@Override
     public long getTotalLines() {
 		long sum = 0;
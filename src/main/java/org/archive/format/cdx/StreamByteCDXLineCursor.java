@@ -0,0 +1,115 @@
+package org.archive.format.cdx;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * ByteCDXLineCursor splitting an InputStream, or an in-memory buffer, into
+ * lines. Lines are returned as views into a single internal buffer, which
+ * grows only when a line does not fit.
+ */
+public class StreamByteCDXLineCursor implements ByteCDXLineCursor {
+
+	public final static int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	protected InputStream in;
+
+	protected byte[] buffer;
+
+	// Start of the next line, end of the valid data, and where to resume
+	// looking for a newline
+	protected int pos;
+	protected int limit;
+	protected int scan;
+
+	protected boolean eof;
+
+	protected final ByteCDXLine line = new ByteCDXLine();
+
+	public StreamByteCDXLineCursor(InputStream in)
+	{
+		this(in, DEFAULT_BUFFER_SIZE);
+	}
+
+	public StreamByteCDXLineCursor(InputStream in, int bufferSize)
+	{
+		this.in = in;
+		this.buffer = new byte[Math.max(bufferSize, 1)];
+		this.pos = this.limit = this.scan = 0;
+		this.eof = false;
+	}
+
+	/**
+	 * Iterate over the lines in data[offset, offset + length) without copying
+	 */
+	public StreamByteCDXLineCursor(byte[] data, int offset, int length)
+	{
+		this.in = null;
+		this.buffer = data;
+		this.pos = this.scan = offset;
+		this.limit = offset + length;
+		this.eof = true;
+	}
+
+	public ByteCDXLine next() throws IOException
+	{
+		while (true) {
+			for (int i = scan; i < limit; i++) {
+				if (buffer[i] == '\n') {
+					int lineEnd = ((i > pos) && (buffer[i - 1] == '\r')) ? i - 1 : i;
+					line.set(buffer, pos, lineEnd);
+					pos = scan = i + 1;
+					return line;
+				}
+			}
+
+			scan = limit;
+
+			if (eof) {
+				if (pos < limit) {
+					line.set(buffer, pos, limit);
+					pos = scan = limit;
+					return line;
+				}
+				return null;
+			}
+
+			fill();
+		}
+	}
+
+	protected void fill() throws IOException
+	{
+		int remaining = limit - pos;
+
+		if (remaining == buffer.length) {
+			byte[] newBuffer = new byte[buffer.length * 2];
+			System.arraycopy(buffer, pos, newBuffer, 0, remaining);
+			buffer = newBuffer;
+		} else if (pos > 0) {
+			System.arraycopy(buffer, pos, buffer, 0, remaining);
+		}
+
+		pos = 0;
+		limit = remaining;
+		scan = remaining;
+
+		int read = in.read(buffer, limit, buffer.length - limit);
+
+		if (read < 0) {
+			eof = true;
+		} else {
+			limit += read;
+		}
+	}
+
+	public void close() throws IOException
+	{
+		if (in != null) {
+			in.close();
+			in = null;
+		}
+		eof = true;
+		pos = limit;
+	}
+}
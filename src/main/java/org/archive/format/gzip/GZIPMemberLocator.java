@@ -0,0 +1,238 @@
+package org.archive.format.gzip;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.logging.Logger;
+
+import org.archive.streamcontext.Stream;
+
+/**
+ * Finds the first gzip member starting at or after an arbitrary offset of a
+ * series of gzip members, such as a gzipped ARC or WARC file, so that a
+ * reader can start part way into the file.
+ *
+ * A candidate is any gzip magic (1f 8b 08) found by scanning forward. It is
+ * only taken as a member start if a full gzip header parses there, the
+ * whole member inflates with a good CRC and length, and the start of the
+ * inflated data looks like a record, so bytes which merely look like a gzip
+ * header inside compressed data, or a stored gzip payload, are passed over.
+ */
+public class GZIPMemberLocator implements GZIPConstants {
+
+	private static final Logger LOG =
+		Logger.getLogger(GZIPMemberLocator.class.getName());
+
+	private static final int BUF_SIZE = 64 * 1024;
+	private static final int HEAD_SIZE = 1024;
+
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+	/**
+	 * Checks the first bytes of an inflated member
+	 */
+	public interface RecordCheck {
+		/**
+		 * @return true if the len bytes of head could be the start of a record
+		 */
+		public boolean matches(byte[] head, int len);
+	}
+
+	/**
+	 * A WARC record starts with the WARC version line
+	 */
+	public static final RecordCheck WARC_CHECK = new RecordCheck() {
+		public boolean matches(byte[] head, int len) {
+			return startsWith(head, len, "WARC/");
+		}
+	};
+
+	/**
+	 * An ARC record starts with a space separated URL line, of at least 5
+	 * fields, ending with the record length
+	 */
+	public static final RecordCheck ARC_CHECK = new RecordCheck() {
+		public boolean matches(byte[] head, int len) {
+			int eol = 0;
+			while((eol < len) && (head[eol] != '\n')) {
+				eol++;
+			}
+			if(eol == len) {
+				return false;
+			}
+			String[] fields = new String(head, 0, eol, LATIN1).trim().split(" ");
+			if(fields.length < 5) {
+				return false;
+			}
+			String length = fields[fields.length - 1];
+			for(int i = 0; i < length.length(); i++) {
+				if(!Character.isDigit(length.charAt(i))) {
+					return false;
+				}
+			}
+			return length.length() > 0;
+		}
+	};
+
+	private RecordCheck check;
+
+	/**
+	 * @param check check of the inflated start of candidate members, or
+	 * null to accept any member which inflates
+	 */
+	public GZIPMemberLocator(RecordCheck check) {
+		this.check = check;
+	}
+
+	/**
+	 * @return the check for the records of a file named name, or null if
+	 * it is not an ARC, WARC or WAT file
+	 */
+	public static RecordCheck getRecordCheck(String name) {
+		if(name.endsWith(".warc.gz") || name.endsWith(".wat.gz")) {
+			return WARC_CHECK;
+		} else if(name.endsWith(".arc.gz")) {
+			return ARC_CHECK;
+		}
+		return null;
+	}
+
+	protected static boolean startsWith(byte[] head, int len, String prefix) {
+		if(len < prefix.length()) {
+			return false;
+		}
+		for(int i = 0; i < prefix.length(); i++) {
+			if(head[i] != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find the first member starting at or after from, and before limit.
+	 * The position of stream is left undefined.
+	 *
+	 * @return the offset of the member, or -1 if none starts before limit
+	 */
+	public long findMemberStart(Stream stream, long from, long limit) throws IOException {
+		byte[] buf = new byte[BUF_SIZE];
+		long base = from;
+		while(base < limit) {
+			stream.setOffset(base);
+			int n = readFully(stream, buf, 0, buf.length);
+			for(int i = 0; i + 2 < n; i++) {
+				if(base + i >= limit) {
+					return -1;
+				}
+				if(((buf[i] & 0xff) == GZIP_MAGIC_ONE) && ((buf[i+1] & 0xff) == GZIP_MAGIC_TWO)
+						&& (buf[i+2] == GZIP_COMPRESSION_METHOD_DEFLATE)) {
+					if(isMemberStart(stream, base + i)) {
+						return base + i;
+					}
+					LOG.info(String.format("False gzip member start at %d", base + i));
+				}
+			}
+			if(n < buf.length) {
+				// EOF
+				return -1;
+			}
+			// the last two bytes may start magic which continues in the next read
+			base += n - 2;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return true if a complete, valid gzip member, whose start passes the
+	 * RecordCheck, starts at offset
+	 */
+	public boolean isMemberStart(Stream stream, long offset) throws IOException {
+		stream.setOffset(offset);
+		ErrorNotingStream noting = new ErrorNotingStream(stream);
+		GZIPMemberSeries series =
+			GZIPMemberSeries.startAligned(noting, "locate", offset, true);
+		try {
+			GZIPSeriesMember member = series.getNextMember();
+			if((member == null) || (member.getRecordStartOffset() != offset)) {
+				return false;
+			}
+			if(check != null) {
+				byte[] head = new byte[HEAD_SIZE];
+				int len = readFully(member, head, 0, head.length);
+				if(!check.matches(head, len)) {
+					return false;
+				}
+			}
+			member.skipMember();
+			return member.gotEOR();
+		} catch(IOException e) {
+			if(noting.error != null) {
+				// a real read error, not bad gzip data
+				throw noting.error;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Stream which notes IOExceptions from the Stream it wraps, as the
+	 * strict GZIPMemberSeries reports gzip errors as IOExceptions too
+	 */
+	private static class ErrorNotingStream implements Stream {
+		Stream stream;
+		IOException error = null;
+
+		ErrorNotingStream(Stream stream) {
+			this.stream = stream;
+		}
+		public long getOffset() {
+			return stream.getOffset();
+		}
+		public long setOffset(long offset) throws IOException {
+			try {
+				return stream.setOffset(offset);
+			} catch(IOException e) {
+				error = e;
+				throw e;
+			}
+		}
+		public int read(byte[] bytes, int off, int len) throws IOException {
+			try {
+				return stream.read(bytes, off, len);
+			} catch(IOException e) {
+				error = e;
+				throw e;
+			}
+		}
+		public boolean atEof() {
+			return stream.atEof();
+		}
+		public void close() throws IOException {
+			stream.close();
+		}
+	}
+
+	private static int readFully(Stream stream, byte[] b, int off, int len) throws IOException {
+		int total = 0;
+		while(total < len) {
+			int amt = stream.read(b, off + total, len - total);
+			if(amt == -1) {
+				break;
+			}
+			total += amt;
+		}
+		return total;
+	}
+
+	private static int readFully(GZIPSeriesMember member, byte[] b, int off, int len) throws IOException {
+		int total = 0;
+		while(total < len) {
+			int amt = member.read(b, off + total, len - total);
+			if(amt == -1) {
+				break;
+			}
+			total += amt;
+		}
+		return total;
+	}
+}
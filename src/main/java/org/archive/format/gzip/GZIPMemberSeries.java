@@ -4,9 +4,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.Inflater;
 
 import org.archive.streamcontext.Stream;
+import org.archive.util.zip.InflaterBackend;
+import org.archive.util.zip.InflaterBackends;
 
 /**
  * Class which encapsulates all the logic in reading multiple gzip members from
@@ -84,6 +85,7 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 	private GZIPDecoder decoder = null;
 	private GZIPHeader header = null;
 	private static int BUF_SIZE = 4096;
+	private static int MAGIC_SIZE = 3;
 	private Stream stream = null;
 	private GZIPSeriesMember currentMember = null;
 	private long currentMemberStartOffset = 0;
@@ -93,6 +95,9 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 	private boolean gotIOError = false;
 	private byte buffer[] = null;
 	private byte singleByteRead[] = null;
+	private byte skipBuffer[] = null;
+	private InflaterBackend inflater = null;
+	private GZIPSeriesMetrics metrics = new GZIPSeriesMetrics();
 	private int bufferPos = 0;
 	private int bufferSize = 0;
 	private long offset = 0;
@@ -125,9 +130,55 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 		this.offset = offset;
 	}
 
+	/**
+	 * Create a series over bis, which the caller has positioned at the start
+	 * of a gzip member at offset, so it reads as one started at offset 0
+	 * would: in strict mode, anything but a member there is an error,
+	 * rather than being scanned past.
+	 */
+	public static GZIPMemberSeries startAligned(Stream bis, String context,
+			long offset, boolean strict) {
+		GZIPMemberSeries series =
+			new GZIPMemberSeries(bis, context, offset, strict);
+		series.state = strict ? STATE_ALIGNED : STATE_START;
+		return series;
+	}
+
 	public void close() throws IOException {
 		stream.close();
 		gotEOF = true;
+		releaseCurrentMember();
+		if(inflater != null) {
+			inflater.end();
+			inflater = null;
+		}
+	}
+
+	/**
+	 * @return the inflater for a new member, shared by all members of the
+	 * series, as creating one per member is costly
+	 */
+	InflaterBackend takeInflater() {
+		if(inflater == null) {
+			inflater = InflaterBackends.create();
+		} else {
+			inflater.reset();
+		}
+		return inflater;
+	}
+
+	private void releaseCurrentMember() {
+		if((currentMember != null) && currentMember.noteReleased()) {
+			metrics.noteMember(currentMember);
+		}
+	}
+
+	/**
+	 * @return the counters of this series, which count each member once
+	 * it is finished with
+	 */
+	public GZIPSeriesMetrics getMetrics() {
+		return metrics;
 	}
 
 	public boolean gotEOF()            { return gotEOF;        }
@@ -146,13 +197,16 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 	}
 
 	public void noteGZError() throws IOException {
-		LOG.info("noteGZError");
+		if(LOG.isLoggable(Level.FINE)) {
+			LOG.fine("noteGZError at " + currentMemberStartOffset + " in " + streamContext);
+		}
 		if(strict) {
 			gotIOError = true;
 			state = STATE_IOERROR;
 			throw new IOException("Internal GZIPFormatException " 
 					+ currentMemberStartOffset + " in " + streamContext );
 		}
+		metrics.noteRecovery();
 		state = STATE_SCANNING;
 		
 //		if(state == STATE_DEFLATING) {
@@ -171,21 +225,22 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 			throw new IOException("getNextMember() on IOException Stream at "
 					+ currentMemberStartOffset + " in " + streamContext);
 		}
-		LOG.info("getNextMember");
+		boolean trace = LOG.isLoggable(Level.FINE);
 
 		if(gotEOF) {
-			LOG.info("getNextMember-ATEOF");
+			releaseCurrentMember();
 			return null;
 		}
 		if(state == STATE_DEFLATING) {
-			LOG.info("getNextMember-without complete read - finishing current");
 			// currentMember better not be null...
 			try {
 				currentMember.skipMember();
-				LOG.info("Skipped unfinished member");
 			} catch(GZIPFormatException e) {
 				// TODO: log this... state should be STATE_UNALIGNED...
-				LOG.info("GZIPFormatException on skipMember()");
+				if(trace) {
+					LOG.fine("GZIPFormatException on skipMember() at "
+							+ currentMemberStartOffset + " in " + streamContext);
+				}
 				if(strict) {
 					throw new IOException("GZIPFormatException at " + offset 
 							+ " in " + streamContext);
@@ -203,19 +258,15 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 			bufferPos = 0;
 			stream.setOffset(currentMemberStartOffset + 3);
 		}
+		releaseCurrentMember();
 		currentMember = null;
 
 		while(currentMember == null) {
 			// scan ahead for another record start:
 			long amtSkipped = decoder.alignOnMagic3(this);
-			if(LOG.isLoggable(Level.INFO)) {
-
-				LOG.info("AlignedResult:" + amtSkipped);
-			}
 			if(amtSkipped < 0) {
 				gotEOF = true;
 				if(decoder.alignedAtEOF(amtSkipped)) {
-					LOG.info("CleanEOF");
 					// a clean EOF when expected:
 					return null;
 				} else {
@@ -225,38 +276,34 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 								+ streamContext + " offset: " 
 								+ currentMemberStartOffset);
 					}
-					if(LOG.isLoggable(Level.INFO)) {
-
-						LOG.info(String.format(
-							"Got EOF after %d bytes before finding magic in %s\n",
+					metrics.noteSkipped(amtSkipped * -1);
+					if(trace) {
+						LOG.fine(String.format(
+							"Got EOF after %d bytes before finding magic in %s",
 							amtSkipped * -1, streamContext));
 					}
 					return null;
 				}
 			}
 			if(amtSkipped > 0) {
-				if(strict) {
-					if(state == STATE_START) {
-						LOG.info(String.format(
-								"Strict mode Skipped %d bytes in (%s) before finding magic at offset(%d)\n",
-								amtSkipped, streamContext, offset-3));
-					} else {
-						throw new GZIPFormatException("Not aligned at gzip start: "
-								+ streamContext + " at offset " +
-								(offset-3));						
-					}
+				metrics.noteSkipped(amtSkipped);
+				if(strict && (state != STATE_START)) {
+					throw new GZIPFormatException("Not aligned at gzip start: "
+							+ streamContext + " at offset " +
+							(offset-3));						
 				}
-				if(LOG.isLoggable(Level.INFO)) {
-
-					LOG.info(String.format(
-						"Skipped %d bytes in (%s) before finding magic at offset(%d)\n",
+				if(trace) {
+					LOG.fine(String.format(
+						"Skipped %d bytes in (%s) before finding magic at offset(%d)",
 						amtSkipped, streamContext, offset-3));
 				}
 			}
 			try {
 				currentMemberStartOffset = offset - 3;
 				header = decoder.parseHeader(this, true);
-				LOG.info("Read next GZip header...");
+				if(trace) {
+					LOG.fine("Member at " + currentMemberStartOffset + " in " + streamContext);
+				}
 				currentMember = new GZIPSeriesMember(this,header);
 				state = STATE_DEFLATING;
 				
@@ -266,6 +313,7 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 					throw new IOException(e + " at " + offset + " in " 
 							+ streamContext);
 				}
+				metrics.noteRecovery();
 				offset = currentMemberStartOffset + 3;
 				stream.setOffset(currentMemberStartOffset + 3);
 				LOG.warning(String.format(
@@ -290,9 +338,6 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 
 	public int read(byte[] b, int off, int len) throws IOException {
 		int amtWritten = 0;
-		if(LOG.isLoggable(Level.INFO)) {
-			LOG.info("read("+len+" bytes) bufferSize("+bufferSize+")");
-		}
 		while(len > 0) {
 			if(bufferSize > 0) {
 				int amtToCopy = Math.min(len, bufferSize);
@@ -319,9 +364,6 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 	private boolean fillBuffer() throws IOException {
 		try {
 			int amtRead = stream.read(buffer,0,buffer.length);
-			if(LOG.isLoggable(Level.FINE)) {
-				LOG.fine("Underlying Stream read("+amtRead+") bytes");
-			}
 			if(amtRead == -1) {
 				gotEOF = true;
 				return false;
@@ -340,15 +382,87 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 		if((bytes > bufferPos) || (bytes < 0)) {
 			throw new IndexOutOfBoundsException();
 		}
-		if(LOG.isLoggable(Level.INFO)) {
-			LOG.info("Returned ("+bytes+")bytes");
-		}
 		bufferPos -= bytes;
 		bufferSize += bytes;
 		offset -= bytes;
 	}
 
-	public int fillInflater(Inflater inflater) throws IOException {
+	/**
+	 * Abandon the current member without inflating the rest of it, moving
+	 * to endOffset, where it is known to end from a record index or its SL
+	 * extra field. The current member returns EOF from then on.
+	 *
+	 * @param endOffset the offset just past the current member's footer
+	 * @return false, leaving the series as it was, if endOffset is not past
+	 * the current member's header, or is neither EOF nor a gzip magic
+	 */
+	public boolean skipCurrentMember(long endOffset) throws IOException {
+		if(state != STATE_DEFLATING) {
+			throw new IOException("skipCurrentMember while not deflating at "
+					+ currentMemberStartOffset + " in " + streamContext);
+		}
+		if(endOffset < currentMemberStartOffset + header.getLength()
+				+ GZIP_STATIC_FOOTER_SIZE) {
+			return false;
+		}
+		long bufferStart = offset - bufferPos;
+		if((endOffset >= bufferStart)
+				&& (endOffset + MAGIC_SIZE <= offset + bufferSize)) {
+			// still in the buffer:
+			int pos = (int) (endOffset - bufferStart);
+			if(!isMagic(buffer, pos)) {
+				return false;
+			}
+			bufferSize -= pos - bufferPos;
+			bufferPos = pos;
+		} else {
+			long streamOffset = stream.getOffset();
+			if(skipBuffer == null) {
+				skipBuffer = new byte[BUF_SIZE];
+			}
+			int amtRead = 0;
+			try {
+				stream.setOffset(endOffset);
+				while(amtRead < MAGIC_SIZE) {
+					int amt = stream.read(skipBuffer, amtRead,
+							skipBuffer.length - amtRead);
+					if(amt == -1) {
+						break;
+					}
+					amtRead += amt;
+				}
+				// nothing at all is a clean EOF, a few bytes are not
+				if((amtRead != 0)
+						&& ((amtRead < MAGIC_SIZE) || !isMagic(skipBuffer, 0))) {
+					stream.setOffset(streamOffset);
+					return false;
+				}
+			} catch(IOException e) {
+				gotIOError = true;
+				throw e;
+			}
+			byte tmp[] = buffer;
+			buffer = skipBuffer;
+			skipBuffer = tmp;
+			bufferPos = 0;
+			bufferSize = amtRead;
+		}
+		metrics.noteSkipped(endOffset
+				- (currentMemberStartOffset + currentMember.getCompressedBytesRead()));
+		offset = endOffset;
+		currentMember.noteSkipped();
+		state = STATE_ALIGNED;
+		return true;
+	}
+
+	private static boolean isMagic(byte b[], int pos) {
+		return (pos + MAGIC_SIZE <= b.length)
+			&& ((b[pos] & 0xff) == GZIP_MAGIC_ONE)
+			&& ((b[pos+1] & 0xff) == GZIP_MAGIC_TWO)
+			&& (b[pos+2] == GZIP_COMPRESSION_METHOD_DEFLATE);
+	}
+
+	public int fillInflater(InflaterBackend inflater) throws IOException {
 		// Makes sure we're expecting this call:
 		if(state != STATE_DEFLATING) {
 			throw new IOException("fillInflater called while not deflating!");
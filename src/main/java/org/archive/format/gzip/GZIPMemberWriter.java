@@ -1,5 +1,6 @@
 package org.archive.format.gzip;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -15,6 +16,7 @@ public class GZIPMemberWriter implements GZIPConstants {
 	private static final int MAX_RAM_BUFFER = 1024 * 1024;
 	private byte slRecordName[] = SL_RECORD;
 	public int maxBuffer = MAX_RAM_BUFFER;
+	private boolean writeSkipLength = false;
 	private CountingOutputStream out;
 	
 	public GZIPMemberWriter(OutputStream out) {
@@ -24,12 +26,22 @@ public class GZIPMemberWriter implements GZIPConstants {
 	public void write(InputStream is) throws IOException {
 		CRCInputStream crc = new CRCInputStream(is);
 		GZIPHeader gzHeader = new GZIPHeader();
-		// TODO: add fields...
-		gzHeader.writeBytes(out);
+		SkipLengthBuffer buffer = null;
+		OutputStream deflateTo = out;
+		if(writeSkipLength) {
+			buffer = new SkipLengthBuffer();
+			deflateTo = buffer;
+		} else {
+			// TODO: add fields...
+			gzHeader.writeBytes(out);
+		}
 		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
-		DeflaterOutputStream deflateOut = new DeflaterOutputStream(out,deflater);
+		DeflaterOutputStream deflateOut = new DeflaterOutputStream(deflateTo,deflater);
 		StreamCopy.copy(crc, deflateOut);
 		deflateOut.finish();
+		if(buffer != null) {
+			buffer.finish();
+		}
 		GZIPFooter gzFooter = new GZIPFooter(crc.getCRCValue(), crc.getByteCount());
 		gzFooter.writeBytes(out);
 		out.flush();
@@ -38,4 +50,60 @@ public class GZIPMemberWriter implements GZIPConstants {
 	public long getBytesWritten() {
 		return out.getCount();
 	}
+
+	public boolean isWriteSkipLength() {
+		return writeSkipLength;
+	}
+
+	/**
+	 * @param writeSkipLength if true, each member whose deflated data fits
+	 * in maxBuffer gets an SL extra field holding the length of the whole
+	 * member, header to footer, so readers can skip it without inflating
+	 */
+	public void setWriteSkipLength(boolean writeSkipLength) {
+		this.writeSkipLength = writeSkipLength;
+	}
+
+	/**
+	 * Holds deflated data until it is all there, then writes the header,
+	 * with SL, and the data. Data over maxBuffer goes out straight after a
+	 * header without SL.
+	 */
+	private class SkipLengthBuffer extends OutputStream {
+		private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if((buffer != null) && (buffer.size() + len > maxBuffer)) {
+				new GZIPHeader().writeBytes(out);
+				buffer.writeTo(out);
+				buffer = null;
+			}
+			if(buffer == null) {
+				out.write(b, off, len);
+			} else {
+				buffer.write(b, off, len);
+			}
+		}
+
+		public void finish() throws IOException {
+			if(buffer == null) {
+				return;
+			}
+			GZIPHeader gzHeader = new GZIPHeader();
+			gzHeader.addRecord(slRecordName, 0);
+			long memberLength = gzHeader.getLength() + buffer.size()
+				+ GZIP_STATIC_FOOTER_SIZE;
+			gzHeader = new GZIPHeader();
+			gzHeader.addRecord(slRecordName, memberLength);
+			gzHeader.writeBytes(out);
+			buffer.writeTo(out);
+			buffer = null;
+		}
+	}
 }
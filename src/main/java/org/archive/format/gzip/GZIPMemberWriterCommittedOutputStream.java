@@ -21,6 +21,7 @@ public class GZIPMemberWriterCommittedOutputStream extends CommitedOutputStream
 	public void commit() throws IOException {
                 ByteArrayOutputStream bos = (ByteArrayOutputStream) out;
 		gzW.write(new ByteArrayInputStream(bos.toByteArray()));
+		bos.reset();
 	}
 	public long getBytesWritten() {
 		return gzW.getBytesWritten();
@@ -5,7 +5,8 @@ import java.io.InputStream;
 import java.util.logging.Logger;
 import java.util.zip.CRC32;
 import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
+
+import org.archive.util.zip.InflaterBackend;
 
 
 public class GZIPSeriesMember extends InputStream implements GZIPConstants {
@@ -19,15 +20,20 @@ public class GZIPSeriesMember extends InputStream implements GZIPConstants {
 	private boolean gotIOError = false;
 	private boolean gotGZError = false;
 	private boolean gotEOR = false;
+	private boolean skippedRest = false;
 
-	private Inflater inflater = null;
+	private InflaterBackend inflater = null;
 	private CRC32 crc = null;
+	// set once the series has moved on, and may reuse the inflater:
+	private boolean released = false;
+	private long compressedBytesRead = 0;
+	private long uncompressedBytesRead = 0;
 
 	public GZIPSeriesMember(GZIPMemberSeries series, GZIPHeader header) {
 		this.series = series;
 		this.header = header;
 		this.footer = null;
-		this.inflater = new Inflater(true);
+		this.inflater = series.takeInflater();
 		this.crc = new CRC32();
 		gotIOError = false;
 		gotGZError = false;
@@ -42,11 +48,18 @@ public class GZIPSeriesMember extends InputStream implements GZIPConstants {
 	public boolean gotEOR()            { return gotEOR;       }
 	public boolean gotIOError()        { return gotIOError;   }
 	public boolean gotGZipError()      { return gotGZError;   }
+	public boolean wasSkipped()        { return skippedRest;  }
 
 	public long getUncompressedBytesRead() {
+		if(released) {
+			return uncompressedBytesRead;
+		}
 		return inflater.getBytesWritten();
 	}
 	public long getCompressedBytesRead() {
+		if(released) {
+			return compressedBytesRead;
+		}
 		long amtRead = header.getLength() + inflater.getBytesRead();
 		if(gotEOR) {
 			amtRead += GZIP_STATIC_FOOTER_SIZE;
@@ -58,6 +71,30 @@ public class GZIPSeriesMember extends InputStream implements GZIPConstants {
 		skip(Long.MAX_VALUE);
 	}
 
+	/**
+	 * Called by the series when it moves past the rest of this member
+	 * without inflating it.
+	 */
+	void noteSkipped() {
+		skippedRest = true;
+	}
+
+	/**
+	 * Called by the series when it moves to the next member, which reuses
+	 * the inflater.
+	 *
+	 * @return false if already released
+	 */
+	boolean noteReleased() {
+		if(released) {
+			return false;
+		}
+		compressedBytesRead = getCompressedBytesRead();
+		uncompressedBytesRead = getUncompressedBytesRead();
+		released = true;
+		return true;
+	}
+
 	/*
 	 * 
 	 *    ALL InputStream overrides below here:
@@ -74,7 +111,7 @@ public class GZIPSeriesMember extends InputStream implements GZIPConstants {
 			throw new GZIPFormatException("Repeated read() on " +
 					"GZIPFormatException");
 		}
-		if (gotEOR) {
+		if (gotEOR || skippedRest || released) {
 			return -1;
 		}
 
@@ -127,7 +164,7 @@ public class GZIPSeriesMember extends InputStream implements GZIPConstants {
 				series.noteEndOfRecord();
 				try {
 					GZIPFooter tmpFooter = new GZIPFooter(footerBuffer);
-					tmpFooter.verify(crc.getValue(), inflater.getTotalOut());
+					tmpFooter.verify(crc.getValue(), (int) inflater.getBytesWritten());
 					footer = tmpFooter;
 				} catch (GZIPFormatException e) {
 					gotGZError = true;
@@ -145,7 +182,7 @@ public class GZIPSeriesMember extends InputStream implements GZIPConstants {
 
 	@Override
 	public int available() throws IOException {
-		if(gotEOR) {
+		if(gotEOR || skippedRest || released) {
 			return 0;
 		}
 		return inflater.needsInput() ? 0 : 1;
@@ -0,0 +1,96 @@
+package org.archive.format.gzip;
+
+import org.archive.util.MetricsSink;
+
+/**
+ * Counters of a GZIPMemberSeries, kept instead of logging each member.
+ * Like the series, not thread safe. Totals over several series are kept by
+ * add()ing each to another instance.
+ */
+public class GZIPSeriesMetrics {
+	public static final String MEMBERS = "gzip-members";
+	public static final String COMPRESSED_BYTES = "gzip-compressed-bytes";
+	public static final String UNCOMPRESSED_BYTES = "gzip-uncompressed-bytes";
+	public static final String RECOVERIES = "gzip-recoveries";
+	public static final String SKIPPED_BYTES = "gzip-skipped-bytes";
+
+	private long members = 0;
+	private long compressedBytes = 0;
+	private long uncompressedBytes = 0;
+	private long recoveries = 0;
+	private long skippedBytes = 0;
+
+	void noteMember(GZIPSeriesMember member) {
+		members++;
+		compressedBytes += member.getCompressedBytesRead();
+		uncompressedBytes += member.getUncompressedBytesRead();
+	}
+
+	void noteRecovery() {
+		recoveries++;
+	}
+
+	void noteSkipped(long bytes) {
+		skippedBytes += bytes;
+	}
+
+	/**
+	 * @return the number of members finished with
+	 */
+	public long getMembers() {
+		return members;
+	}
+
+	/**
+	 * @return the compressed bytes of those members read, headers and
+	 * footers included
+	 */
+	public long getCompressedBytes() {
+		return compressedBytes;
+	}
+
+	/**
+	 * @return the bytes inflated from those members
+	 */
+	public long getUncompressedBytes() {
+		return uncompressedBytes;
+	}
+
+	/**
+	 * @return the number of gzip errors the series resynchronized after,
+	 * which happens in lax mode only
+	 */
+	public long getRecoveries() {
+		return recoveries;
+	}
+
+	/**
+	 * @return the bytes passed over without inflating: junk before members,
+	 * and the rest of members skipped by length
+	 */
+	public long getSkippedBytes() {
+		return skippedBytes;
+	}
+
+	public void add(GZIPSeriesMetrics other) {
+		members += other.members;
+		compressedBytes += other.compressedBytes;
+		uncompressedBytes += other.uncompressedBytes;
+		recoveries += other.recoveries;
+		skippedBytes += other.skippedBytes;
+	}
+
+	public void reportTo(MetricsSink sink) {
+		sink.add(MEMBERS, members);
+		sink.add(COMPRESSED_BYTES, compressedBytes);
+		sink.add(UNCOMPRESSED_BYTES, uncompressedBytes);
+		sink.add(RECOVERIES, recoveries);
+		sink.add(SKIPPED_BYTES, skippedBytes);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("members(%d) compressed(%d) uncompressed(%d) recoveries(%d) skipped(%d)",
+				members, compressedBytes, uncompressedBytes, recoveries, skippedBytes);
+	}
+}
@@ -0,0 +1,36 @@
+package org.archive.format.gzip.zipnum;
+
+/**
+ * Cache of decompressed zipnum blocks, keyed by the (location, offset, length)
+ * of the compressed range they were loaded from.
+ * 
+ * Implementations must be thread-safe, as a single cache is shared by all
+ * threads using a ZipNumBlockLoader.
+ */
+public interface BlockCache {
+	
+	/**
+	 * @return the decompressed block, or null if not cached
+	 */
+	public byte[] get(String location, long offset, int length);
+	
+	public void put(String location, long offset, int length, byte[] block);
+	
+	/**
+	 * Remove all blocks loaded from the given location
+	 */
+	public void invalidate(String location);
+	
+	public void invalidateAll();
+	
+	public long getHitCount();
+	
+	public long getMissCount();
+	
+	public long getEvictionCount();
+	
+	/**
+	 * @return total size of the cached blocks in bytes
+	 */
+	public long getSizeBytes();
+}
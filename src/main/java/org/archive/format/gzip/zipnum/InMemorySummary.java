@@ -0,0 +1,503 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.binsearch.SeekableLineReaderFactory;
+import org.archive.util.binsearch.SortedTextFile;
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * A ZipNum summary file loaded into a compact in-memory structure.
+ *
+ * Keys are front-coded in buckets of BUCKET_SIZE lines and packed into a single
+ * byte array, while the part, offset, length and line number fields are kept in
+ * parallel primitive arrays. A lookup binary searches the bucket heads and then
+ * scans one bucket, comparing UTF-8 bytes directly, so no lines are read or
+ * parsed and no Strings are created until summary lines are actually iterated.
+ *
+ * Only the key lookups (getRecordIterator(), getRange()) are served from memory,
+ * everything else (paging, splits) still goes through the SeekableLineReader.
+ *
+ * On reloadFactory() the summary is re-read and the new copy swapped in as a whole,
+ * iterators that are already open keep using the copy they started with.
+ */
+public class InMemorySummary extends SortedTextFile {
+
+	private final static Logger LOGGER = Logger.getLogger(InMemorySummary.class.getName());
+
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	final static int BUCKET_SIZE = 16;
+
+	final static int MAX_KEY_BYTES = Integer.MAX_VALUE - 8;
+
+	protected volatile Data data;
+
+	public InMemorySummary(SeekableLineReaderFactory factory) throws IOException
+	{
+		super(factory);
+		this.data = load();
+	}
+
+	protected static class Data
+	{
+		// front-coded keys: vint shared prefix, vint suffix length, suffix bytes
+		byte[] keys;
+		int[] bucketStarts;
+		int maxKeyLength;
+
+		String[] partIds;
+		int[] parts;
+		long[] offsets;
+		int[] lengths;
+		// -1 if the summary has no line number field
+		int[] lineNums;
+
+		int numLines;
+
+		/**
+		 * @return index of the first line with a key &gt;= key, or numLines if none
+		 */
+		int lowerBound(byte[] key)
+		{
+			if (numLines == 0) {
+				return 0;
+			}
+
+			// Find last bucket whose first key is &lt; key
+			int lo = 0;
+			int hi = bucketStarts.length - 1;
+			int bucket = -1;
+
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				int pos = bucketStarts[mid];
+
+				// First entry of a bucket is never prefix coded
+				pos = skipVInt(keys, pos);
+				int len = readVInt(keys, pos);
+				pos = skipVInt(keys, pos);
+
+				if (compare(keys, pos, len, key, 0, key.length) < 0) {
+					bucket = mid;
+					lo = mid + 1;
+				} else {
+					hi = mid - 1;
+				}
+			}
+
+			if (bucket < 0) {
+				return 0;
+			}
+
+			Cursor cursor = new Cursor(this, bucket * BUCKET_SIZE);
+			int end = Math.min(numLines, (bucket + 1) * BUCKET_SIZE);
+
+			while (cursor.index < end) {
+				cursor.advance();
+
+				if (compare(cursor.key, 0, cursor.keyLength, key, 0, key.length) >= 0) {
+					return cursor.index - 1;
+				}
+			}
+
+			return end;
+		}
+
+		long getMemoryUsage()
+		{
+			return keys.length + (bucketStarts.length * 4L) + (numLines * 20L);
+		}
+	}
+
+	/**
+	 * Sequential decoder over the front-coded keys, starting at a given line
+	 */
+	protected static class Cursor
+	{
+		final Data data;
+		final byte[] key;
+		int keyLength = 0;
+		// index of the next line to be decoded
+		int index;
+		int pos;
+
+		Cursor(Data data, int startIndex)
+		{
+			this.data = data;
+			this.key = new byte[data.maxKeyLength];
+
+			int bucket = startIndex / BUCKET_SIZE;
+			this.index = bucket * BUCKET_SIZE;
+
+			if (bucket < data.bucketStarts.length) {
+				this.pos = data.bucketStarts[bucket];
+			}
+
+			while (index < startIndex) {
+				advance();
+			}
+		}
+
+		void advance()
+		{
+			byte[] keys = data.keys;
+
+			int shared = readVInt(keys, pos);
+			pos = skipVInt(keys, pos);
+			int suffix = readVInt(keys, pos);
+			pos = skipVInt(keys, pos);
+
+			System.arraycopy(keys, pos, key, shared, suffix);
+			pos += suffix;
+			keyLength = shared + suffix;
+			index++;
+		}
+
+		String currentLine()
+		{
+			int i = index - 1;
+
+			StringBuilder sb = new StringBuilder(keyLength + 40);
+			sb.append(new String(key, 0, keyLength, UTF8));
+			sb.append('\t');
+			sb.append(data.partIds[data.parts[i]]);
+			sb.append('\t');
+			sb.append(data.offsets[i]);
+			sb.append('\t');
+			sb.append(data.lengths[i]);
+
+			if (data.lineNums[i] >= 0) {
+				sb.append('\t');
+				sb.append(data.lineNums[i]);
+			}
+
+			return sb.toString();
+		}
+	}
+
+	protected static class Builder
+	{
+		byte[] keys = new byte[64 * 1024];
+		int keysLength = 0;
+
+		int[] bucketStarts = new int[1024];
+		int maxKeyLength = 0;
+
+		Map<String, Integer> partMap = new HashMap<String, Integer>();
+		List<String> partIds = new ArrayList<String>();
+
+		int[] parts = new int[1024];
+		long[] offsets = new long[1024];
+		int[] lengths = new int[1024];
+		int[] lineNums = new int[1024];
+
+		int numLines = 0;
+
+		byte[] prevKey = new byte[0];
+
+		void add(String line) throws IOException
+		{
+			int keyEnd = line.indexOf('\t');
+			int partEnd = (keyEnd < 0 ? -1 : line.indexOf('\t', keyEnd + 1));
+			int offsetEnd = (partEnd < 0 ? -1 : line.indexOf('\t', partEnd + 1));
+
+			if (offsetEnd < 0) {
+				throw new IOException("Bad summary line(" + line + ")");
+			}
+
+			int lengthEnd = line.indexOf('\t', offsetEnd + 1);
+
+			if ((lengthEnd >= 0) && (line.indexOf('\t', lengthEnd + 1) >= 0)) {
+				throw new IOException("Unsupported summary line, too many fields(" + line + ")");
+			}
+
+			ensureCapacity(numLines + 1);
+
+			try {
+				offsets[numLines] = Long.parseLong(line.substring(partEnd + 1, offsetEnd));
+
+				if (lengthEnd < 0) {
+					lengths[numLines] = Integer.parseInt(line.substring(offsetEnd + 1));
+					lineNums[numLines] = -1;
+				} else {
+					lengths[numLines] = Integer.parseInt(line.substring(offsetEnd + 1, lengthEnd));
+					lineNums[numLines] = Integer.parseInt(line.substring(lengthEnd + 1));
+				}
+			} catch (NumberFormatException n) {
+				throw new IOException("Bad summary line(" + line + ")");
+			}
+
+			String partId = line.substring(keyEnd + 1, partEnd);
+			Integer part = partMap.get(partId);
+
+			if (part == null) {
+				part = partIds.size();
+				partIds.add(partId);
+				partMap.put(partId, part);
+			}
+
+			parts[numLines] = part;
+
+			addKey(line.substring(0, keyEnd).getBytes(UTF8), line);
+
+			numLines++;
+		}
+
+		void addKey(byte[] key, String line) throws IOException
+		{
+			int shared = 0;
+
+			if ((numLines % BUCKET_SIZE) == 0) {
+				int bucket = numLines / BUCKET_SIZE;
+
+				if (bucket >= bucketStarts.length) {
+					bucketStarts = Arrays.copyOf(bucketStarts, bucketStarts.length * 2);
+				}
+
+				bucketStarts[bucket] = keysLength;
+			} else {
+				int max = Math.min(prevKey.length, key.length);
+
+				while ((shared < max) && (prevKey[shared] == key[shared])) {
+					shared++;
+				}
+			}
+
+			if ((numLines > 0) && (compare(prevKey, 0, prevKey.length, key, 0, key.length) > 0)) {
+				throw new IOException("Summary not sorted at line(" + line + ")");
+			}
+
+			ensureKeyCapacity(10 + key.length - shared);
+
+			keysLength = writeVInt(keys, keysLength, shared);
+			keysLength = writeVInt(keys, keysLength, key.length - shared);
+			System.arraycopy(key, shared, keys, keysLength, key.length - shared);
+			keysLength += (key.length - shared);
+
+			maxKeyLength = Math.max(maxKeyLength, key.length);
+			prevKey = key;
+		}
+
+		void ensureCapacity(int size)
+		{
+			if (size <= offsets.length) {
+				return;
+			}
+
+			int newSize = offsets.length * 2;
+			parts = Arrays.copyOf(parts, newSize);
+			offsets = Arrays.copyOf(offsets, newSize);
+			lengths = Arrays.copyOf(lengths, newSize);
+			lineNums = Arrays.copyOf(lineNums, newSize);
+		}
+
+		void ensureKeyCapacity(int extra) throws IOException
+		{
+			long needed = (long)keysLength + extra;
+
+			if (needed > MAX_KEY_BYTES) {
+				throw new IOException("Summary keys too large for in-memory summary");
+			}
+
+			if (needed <= keys.length) {
+				return;
+			}
+
+			long newSize = Math.max(needed, Math.min((long)keys.length * 2, MAX_KEY_BYTES));
+			keys = Arrays.copyOf(keys, (int)newSize);
+		}
+
+		Data build()
+		{
+			Data data = new Data();
+			data.keys = Arrays.copyOf(keys, keysLength);
+			data.bucketStarts = Arrays.copyOf(bucketStarts, (numLines + BUCKET_SIZE - 1) / BUCKET_SIZE);
+			data.maxKeyLength = maxKeyLength;
+			data.partIds = partIds.toArray(new String[partIds.size()]);
+			data.parts = Arrays.copyOf(parts, numLines);
+			data.offsets = Arrays.copyOf(offsets, numLines);
+			data.lengths = Arrays.copyOf(lengths, numLines);
+			data.lineNums = Arrays.copyOf(lineNums, numLines);
+			data.numLines = numLines;
+			return data;
+		}
+	}
+
+	protected class LineIterator extends AbstractPeekableIterator<String>
+	{
+		protected Cursor cursor;
+
+		protected LineIterator(Data data, int startIndex)
+		{
+			this.cursor = new Cursor(data, startIndex);
+		}
+
+		@Override
+		public String getNextInner() {
+			if (cursor.index >= cursor.data.numLines) {
+				return null;
+			}
+
+			cursor.advance();
+			return cursor.currentLine();
+		}
+
+		@Override
+		public void close() throws IOException {
+
+		}
+	}
+
+	protected Data load() throws IOException
+	{
+		Builder builder = new Builder();
+		SeekableLineReader slr = null;
+
+		long start = System.currentTimeMillis();
+
+		try {
+			slr = factory.get();
+			slr.seek(0);
+
+			String line = null;
+
+			while ((line = slr.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				builder.add(line);
+			}
+		} finally {
+			if (slr != null) {
+				slr.close();
+			}
+		}
+
+		Data newData = builder.build();
+
+		LOGGER.info("Loaded " + newData.numLines + " summary lines (~" + newData.getMemoryUsage() + " bytes) in " +
+				(System.currentTimeMillis() - start) + "ms");
+
+		return newData;
+	}
+
+	@Override
+	public void reloadFactory()
+	{
+		super.reloadFactory();
+
+		try {
+			this.data = load();
+		} catch (IOException e) {
+			LOGGER.warning("Keeping previous summary, reload failed: " + e.toString());
+		}
+	}
+
+	@Override
+	public CloseableIterator<String> getRecordIterator(String prefix, boolean lessThan) throws IOException
+	{
+		Data curr = data;
+		int index = curr.lowerBound(prefix.getBytes(UTF8));
+
+		if (lessThan && (index > 0)) {
+			index--;
+		}
+
+		return new LineIterator(curr, index);
+	}
+
+	@Override
+	public String[] getRange(String start, String end) throws IOException
+	{
+		Data curr = data;
+
+		if (curr.numLines == 0) {
+			return new String[]{null, null};
+		}
+
+		int startIndex = (start.isEmpty() ? 0 : lineIndexLT(curr, start));
+		int endIndex = (end.isEmpty() ? (curr.numLines - 1) : lineIndexLT(curr, end));
+
+		return new String[]{getLine(curr, startIndex), getLine(curr, endIndex)};
+	}
+
+	protected int lineIndexLT(Data curr, String key)
+	{
+		int index = curr.lowerBound(key.getBytes(UTF8));
+		return (index > 0 ? index - 1 : index);
+	}
+
+	protected String getLine(Data curr, int index)
+	{
+		Cursor cursor = new Cursor(curr, index);
+		cursor.advance();
+		return cursor.currentLine();
+	}
+
+	public int getNumLines()
+	{
+		return data.numLines;
+	}
+
+	public long getMemoryUsage()
+	{
+		return data.getMemoryUsage();
+	}
+
+	static int compare(byte[] a, int aStart, int aLen, byte[] b, int bStart, int bLen)
+	{
+		int len = Math.min(aLen, bLen);
+
+		for (int i = 0; i < len; i++) {
+			int diff = (a[aStart + i] & 0xff) - (b[bStart + i] & 0xff);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+
+		return aLen - bLen;
+	}
+
+	static int writeVInt(byte[] buff, int pos, int value)
+	{
+		while ((value & ~0x7f) != 0) {
+			buff[pos++] = (byte)((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		buff[pos++] = (byte)value;
+		return pos;
+	}
+
+	static int readVInt(byte[] buff, int pos)
+	{
+		int value = 0;
+		int shift = 0;
+		byte b;
+
+		do {
+			b = buff[pos++];
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		return value;
+	}
+
+	static int skipVInt(byte[] buff, int pos)
+	{
+		while ((buff[pos++] & 0x80) != 0) {
+
+		}
+		return pos;
+	}
+}
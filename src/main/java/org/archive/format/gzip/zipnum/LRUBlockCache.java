@@ -0,0 +1,134 @@
+package org.archive.format.gzip.zipnum;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * Default BlockCache: a least-recently-used cache bounded by the total size
+ * of the decompressed blocks, rather than by number of entries
+ */
+public class LRUBlockCache implements BlockCache {
+	
+	// Rough per-entry cost of the key and map entry
+	final static int ENTRY_OVERHEAD = 128;
+	
+	protected static class BlockKey
+	{
+		final String location;
+		final long offset;
+		final int length;
+		
+		BlockKey(String location, long offset, int length)
+		{
+			this.location = location;
+			this.offset = offset;
+			this.length = length;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return (location.hashCode() * 31 + (int)(offset ^ (offset >>> 32))) * 31 + length;
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof BlockKey)) {
+				return false;
+			}
+			
+			BlockKey other = (BlockKey)obj;
+			return (offset == other.offset) && (length == other.length) && location.equals(other.location);
+		}
+	}
+	
+	protected final Cache<BlockKey, byte[]> cache;
+	protected final long maxBytes;
+	protected final AtomicLong sizeBytes = new AtomicLong();
+	
+	public LRUBlockCache(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+		
+		this.cache = CacheBuilder.newBuilder()
+				.maximumWeight(maxBytes)
+				.weigher(new Weigher<BlockKey, byte[]>() {
+					@Override
+					public int weigh(BlockKey key, byte[] block) {
+						return weight(key, block);
+					}
+				})
+				.removalListener(new RemovalListener<BlockKey, byte[]>() {
+					@Override
+					public void onRemoval(RemovalNotification<BlockKey, byte[]> notification) {
+						sizeBytes.addAndGet(-weight(notification.getKey(), notification.getValue()));
+					}
+				})
+				.recordStats()
+				.build();
+	}
+	
+	protected static int weight(BlockKey key, byte[] block)
+	{
+		return ENTRY_OVERHEAD + (key.location.length() * 2) + block.length;
+	}
+	
+	@Override
+	public byte[] get(String location, long offset, int length) {
+		return cache.getIfPresent(new BlockKey(location, offset, length));
+	}
+
+	@Override
+	public void put(String location, long offset, int length, byte[] block) {
+		BlockKey key = new BlockKey(location, offset, length);
+		sizeBytes.addAndGet(weight(key, block));
+		cache.put(key, block);
+	}
+
+	@Override
+	public void invalidate(String location) {
+		Iterator<BlockKey> keys = cache.asMap().keySet().iterator();
+		
+		while (keys.hasNext()) {
+			if (keys.next().location.equals(location)) {
+				keys.remove();
+			}
+		}
+	}
+
+	@Override
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	@Override
+	public long getHitCount() {
+		return cache.stats().hitCount();
+	}
+
+	@Override
+	public long getMissCount() {
+		return cache.stats().missCount();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return cache.stats().evictionCount();
+	}
+
+	@Override
+	public long getSizeBytes() {
+		return sizeBytes.get();
+	}
+	
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+}
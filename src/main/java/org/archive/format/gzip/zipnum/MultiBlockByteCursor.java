@@ -0,0 +1,103 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import org.archive.format.cdx.ByteCDXLine;
+import org.archive.format.cdx.ByteCDXLineCursor;
+import org.archive.format.cdx.StreamByteCDXLineCursor;
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.binsearch.impl.ByteArraySeekableLineReader;
+
+/**
+ * Byte-level version of MultiBlockIterator: returns the lines of each block
+ * as ByteCDXLine views over the decompressed data. Blocks served from the
+ * block cache are read in place, without copying.
+ */
+public class MultiBlockByteCursor implements ByteCDXLineCursor {
+	private static final Logger LOGGER = Logger.getLogger(
+			MultiBlockByteCursor.class.getName());
+
+	protected SummaryBlockIterator blockItr;
+	protected boolean required;
+
+	protected SeekableLineReader currReader = null;
+	protected StreamByteCDXLineCursor currCursor = null;
+
+	public MultiBlockByteCursor(SummaryBlockIterator blockItr, boolean required)
+	{
+		this.blockItr = blockItr;
+		this.required = required;
+	}
+
+	public ByteCDXLine next() throws IOException
+	{
+		while (true) {
+			if (currCursor == null) {
+				if (blockItr == null) {
+					return null;
+				}
+
+				currReader = blockItr.nextBlockReader();
+
+				if (currReader == null) {
+					return null;
+				}
+
+				currCursor = openCursor(currReader);
+			}
+
+			try {
+				ByteCDXLine line = currCursor.next();
+
+				if (line != null) {
+					return line;
+				}
+			} catch (IOException io) {
+				if (required) {
+					throw io;
+				}
+				LOGGER.warning(io.toString());
+			}
+
+			closeCurrent();
+		}
+	}
+
+	protected StreamByteCDXLineCursor openCursor(SeekableLineReader reader)
+	{
+		if (reader instanceof ByteArraySeekableLineReader) {
+			byte[] data = ((ByteArraySeekableLineReader)reader).getData();
+			return new StreamByteCDXLineCursor(data, 0, data.length);
+		}
+
+		return new StreamByteCDXLineCursor(reader.getInputStream());
+	}
+
+	protected void closeCurrent()
+	{
+		try {
+			if (currCursor != null) {
+				currCursor.close();
+			}
+			if (currReader != null) {
+				currReader.close();
+			}
+		} catch (IOException exc) {
+			LOGGER.warning(exc.toString());
+		}
+
+		currCursor = null;
+		currReader = null;
+	}
+
+	public void close() throws IOException
+	{
+		closeCurrent();
+
+		if (blockItr != null) {
+			blockItr.close();
+			blockItr = null;
+		}
+	}
+}
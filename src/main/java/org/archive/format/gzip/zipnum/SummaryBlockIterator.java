@@ -1,14 +1,30 @@
 package org.archive.format.gzip.zipnum;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.archive.util.binsearch.SeekableLineReader;
 import org.archive.util.binsearch.SeekableLineReaderIterator;
+import org.archive.util.binsearch.impl.ByteArraySeekableLineReader;
 import org.archive.util.io.RuntimeIOException;
 import org.archive.util.iterator.AbstractPeekableIterator;
 import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.iterator.CloseableIteratorWrapper;
+import org.archive.util.zip.GZIPMembersInputStream;
+
+import com.google.common.io.ByteStreams;
 
 public class SummaryBlockIterator extends AbstractPeekableIterator<CloseableIterator<String>>
 {
@@ -29,7 +45,17 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<CloseableIter
 	
 	protected int totalBlocks = 0;
 	
+	// Blocks already planned into the range currently being coalesced
+	protected int plannedBlocks = 0;
+	
+	protected BlockRange lookahead = null;
+	
+	final static int COALESCED_READER_BUFFER_SIZE = 16 * 1024;
+	
 	protected final ZipNumParams params;	
+	
+	// Ranges being loaded in the background, in order
+	protected LinkedList<Future<CloseableIterator<String>>> pending = new LinkedList<Future<CloseableIterator<String>>>();
 
 	public SummaryBlockIterator(CloseableIterator<String> summaryIterator, ZipNumIndex zipnumIndex, ZipNumParams params)
 	{
@@ -45,8 +71,286 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<CloseableIter
 		}
 	}
 	
+	/**
+	 * A range of blocks in a single part, to be loaded with one request.
+	 * Normally the blocks are continuous, but a coalesced range may contain
+	 * gaps, in which case only the segments are decompressed.
+	 */
+	protected static class BlockRange
+	{
+		final String partId;
+		final long startOffset;
+		final int totalLength;
+		final int numBlocks;
+		
+		// Non-null only for coalesced ranges
+		final long[] segmentOffsets;
+		final int[] segmentLengths;
+		
+		BlockRange(String partId, long startOffset, int totalLength, int numBlocks)
+		{
+			this(partId, startOffset, totalLength, numBlocks, null, null);
+		}
+		
+		BlockRange(String partId, long startOffset, int totalLength, int numBlocks, long[] segmentOffsets, int[] segmentLengths)
+		{
+			this.partId = partId;
+			this.startOffset = startOffset;
+			this.totalLength = totalLength;
+			this.numBlocks = numBlocks;
+			this.segmentOffsets = segmentOffsets;
+			this.segmentLengths = segmentLengths;
+		}
+		
+		long getEndOffset()
+		{
+			return startOffset + totalLength;
+		}
+		
+		boolean canCoalesce(BlockRange next, int maxGap, int maxBytes)
+		{
+			if (!partId.equals(next.partId)) {
+				return false;
+			}
+			
+			long gap = next.startOffset - getEndOffset();
+			
+			if ((gap < 0) || (gap > maxGap)) {
+				return false;
+			}
+			
+			return (next.getEndOffset() - startOffset) <= maxBytes;
+		}
+		
+		BlockRange coalesce(BlockRange next)
+		{
+			int numSegments = (segmentOffsets != null ? segmentOffsets.length : 1);
+			
+			long[] offsets = new long[numSegments + 1];
+			int[] lengths = new int[numSegments + 1];
+			
+			if (segmentOffsets != null) {
+				System.arraycopy(segmentOffsets, 0, offsets, 0, numSegments);
+				System.arraycopy(segmentLengths, 0, lengths, 0, numSegments);
+			} else {
+				offsets[0] = startOffset;
+				lengths[0] = totalLength;
+			}
+			
+			offsets[numSegments] = next.startOffset;
+			lengths[numSegments] = next.totalLength;
+			
+			int newLength = (int)(next.getEndOffset() - startOffset);
+			
+			return new BlockRange(partId, startOffset, newLength, numBlocks + next.numBlocks, offsets, lengths);
+		}
+	}
+	
+	protected class BlockLoadTask implements Callable<CloseableIterator<String>>
+	{
+		final BlockRange range;
+		
+		BlockLoadTask(BlockRange range)
+		{
+			this.range = range;
+		}
+
+		@Override
+		public CloseableIterator<String> call() throws Exception {
+			SeekableLineReader reader = loadReader(range);
+			
+			ArrayList<String> lines = new ArrayList<String>();
+			
+			if (reader != null) {
+				try {
+					String line = null;
+					
+					while (!Thread.currentThread().isInterrupted() && ((line = reader.readLine()) != null)) {
+						lines.add(line);
+					}
+				} catch (IOException io) {
+					if (zipnumIndex.isRequired()) {
+						throw new RuntimeIOException(io.toString());
+					}
+				} finally {
+					reader.close();
+				}
+			}
+			
+			List<String> result = lines;
+			
+			// Same as the LineBufferingIterator used when not prefetching
+			if (params.isReverse()) {
+				Collections.reverse(lines);
+				
+				int maxLines = zipnumIndex.getCdxLinesPerBlock();
+				
+				if (lines.size() > maxLines) {
+					result = lines.subList(0, maxLines);
+				}
+			}
+			
+			return new CloseableIteratorWrapper<String>(result.iterator());
+		}
+	}
+	
 	@Override
 	public CloseableIterator<String> getNextInner() {
+		
+		if (isPrefetching()) {
+			return getNextPrefetched();
+		}
+		
+		BlockRange range = nextRange();
+		
+		if (range == null) {
+			return null;
+		}
+		
+		SeekableLineReader currReader = loadReader(range);
+		
+		if (currReader != null) {
+			totalBlocks += range.numBlocks;
+		}	
+		
+		CloseableIterator<String> slrIter = new SeekableLineReaderIterator(currReader, zipnumIndex.isRequired());
+		
+		if (params.isReverse()) {
+			slrIter = new LineBufferingIterator(slrIter, zipnumIndex.getCdxLinesPerBlock(), true);
+		}
+		
+		return slrIter;
+	}
+	
+	/**
+	 * Load the next range and return its reader, without wrapping it in a
+	 * line iterator, or null when there are no more ranges.
+	 * Used by the byte-level MultiBlockByteCursor, so prefetching and reverse
+	 * order are not applied.
+	 */
+	public SeekableLineReader nextBlockReader()
+	{
+		while (true) {
+			BlockRange range = nextRange();
+			
+			if (range == null) {
+				return null;
+			}
+			
+			SeekableLineReader currReader = loadReader(range);
+			
+			if (currReader != null) {
+				totalBlocks += range.numBlocks;
+				return currReader;
+			}
+		}
+	}
+	
+	protected boolean isPrefetching()
+	{
+		return (params.getPrefetchBlocks() > 0) && (zipnumIndex.getPrefetchExecutor() != null);
+	}
+	
+	/**
+	 * Keep prefetchBlocks ranges loading in the background, besides the one
+	 * returned, and return the fully loaded ranges in order.
+	 * Blocks are counted towards maxBlocks when they are scheduled.
+	 */
+	protected CloseableIterator<String> getNextPrefetched()
+	{
+		ExecutorService executor = zipnumIndex.getPrefetchExecutor();
+		
+		// one more than prefetchBlocks, for the one about to be returned
+		while (pending.size() <= params.getPrefetchBlocks()) {
+			BlockRange range = nextRange();
+			
+			if (range == null) {
+				break;
+			}
+			
+			totalBlocks += range.numBlocks;
+			pending.addLast(executor.submit(new BlockLoadTask(range)));
+		}
+		
+		Future<CloseableIterator<String>> next = pending.pollFirst();
+		
+		if (next == null) {
+			return null;
+		}
+		
+		try {
+			return next.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeIOException(e.toString());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw new RuntimeIOException(e.getCause().toString());
+		}
+	}
+	
+	/**
+	 * @return the next range to load, merging ranges of the same part that are
+	 * at most coalesceMaxGap bytes apart if coalescing is enabled. Not in
+	 * reverse, where each loaded range is cut to its last cdxLinesPerBlock
+	 * lines, so a merged range would lose lines.
+	 */
+	protected BlockRange nextRange() {
+		
+		BlockRange range = lookahead;
+		lookahead = null;
+		
+		if (range == null) {
+			range = nextAggregateRange();
+		}
+		
+		if ((range == null) || (params.getCoalesceMaxGap() < 0) || isCachingBlocks() || params.isReverse()) {
+			return range;
+		}
+		
+		try {
+			while (true) {
+				plannedBlocks = range.numBlocks;
+				
+				BlockRange next = nextAggregateRange();
+				
+				if (next == null) {
+					break;
+				}
+				
+				if (!range.canCoalesce(next, params.getCoalesceMaxGap(), params.getCoalesceMaxBytes())) {
+					lookahead = next;
+					break;
+				}
+				
+				range = range.coalesce(next);
+			}
+		} finally {
+			plannedBlocks = 0;
+		}
+		
+		if ((range.segmentOffsets != null) && LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.fine("Coalesced " + range.segmentOffsets.length + " ranges - " + range.startOffset + ":" + range.totalLength + " from " + range.partId);
+		}
+		
+		return range;
+	}
+	
+	/**
+	 * Coalesced ranges are loaded raw, bypassing the BlockCache, so ranges
+	 * are not coalesced when one is configured: cached blocks need no request
+	 */
+	protected boolean isCachingBlocks()
+	{
+		ZipNumBlockLoader loader = zipnumIndex.getBlockLoader();
+		return (loader != null) && (loader.getBlockCache() != null);
+	}
+	
+	protected BlockRange nextAggregateRange() {
+		
+		int blocksSoFar = totalBlocks + plannedBlocks;
 					
 		if (isFirst) {
 			if (summaryIterator.hasNext()) {
@@ -59,7 +363,7 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<CloseableIter
 			return null;
 		}
 		
-		if ((params.getMaxBlocks() > 0) && (totalBlocks >= params.getMaxBlocks())) {
+		if ((params.getMaxBlocks() > 0) && (blocksSoFar >= params.getMaxBlocks())) {
 			return null;
 		}
 			
@@ -107,33 +411,79 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<CloseableIter
 			numBlocks++;
 			
 		} while (((maxAggregateBlocks <= 0) || (numBlocks < maxAggregateBlocks)) && 
-				  ((params.getMaxBlocks() <= 0) || (totalBlocks + numBlocks) < params.getMaxBlocks()) 
+				  ((params.getMaxBlocks() <= 0) || (blocksSoFar + numBlocks) < params.getMaxBlocks()) 
 				  && currLine.isContinuous(nextLine));
 		
 		if (LOGGER.isLoggable(Level.FINE)) {
 			LOGGER.fine("Loading " + numBlocks + " blocks - " + startOffset + ":" + totalLength + " from " + currPartId);
 		}
 		
+		return new BlockRange(currPartId, startOffset, totalLength, numBlocks);
+	}
+	
+	protected SeekableLineReader loadReader(BlockRange range)
+	{
 		//currReader = initReader(currPartId);
 		//currReader = zipnumIndex.createReader(currPartId);
 		//currReader.seekWithMaxRead(startOffset, true, totalLength);
-		SeekableLineReader currReader = zipnumIndex.doBlockLoad(currPartId, startOffset, totalLength);
+		if (range.segmentOffsets != null) {
+			return loadCoalescedReader(range);
+		}
+		
+		SeekableLineReader currReader = zipnumIndex.doBlockLoad(range.partId, range.startOffset, range.totalLength);
 		
 		if ((currReader == null) && zipnumIndex.isRequired()) {
-			throw new RuntimeIOException("Failed to load shards for: " + currPartId);
+			throw new RuntimeIOException("Failed to load shards for: " + range.partId);
 		}
 		
-		if (currReader != null) {
-			totalBlocks += numBlocks;
-		}	
-		
-		CloseableIterator<String> slrIter = new SeekableLineReaderIterator(currReader, zipnumIndex.isRequired());
+		return currReader;
+	}
+	
+	/**
+	 * Load a coalesced range with a single request, and then
+	 * decompress only the requested segments of it
+	 */
+	protected SeekableLineReader loadCoalescedReader(BlockRange range)
+	{
+		SeekableLineReader rawReader = zipnumIndex.doBlockLoad(range.partId, range.startOffset, range.totalLength, false);
 		
-		if (params.isReverse()) {
-			slrIter = new LineBufferingIterator(slrIter, zipnumIndex.getCdxLinesPerBlock(), true);
+		if (rawReader == null) {
+			if (zipnumIndex.isRequired()) {
+				throw new RuntimeIOException("Failed to load shards for: " + range.partId);
+			}
+			return null;
 		}
 		
-		return slrIter;
+		try {
+			byte[] compressed = ByteStreams.toByteArray(rawReader.getInputStream());
+			ByteArrayOutputStream decompressed = new ByteArrayOutputStream(compressed.length * 4);
+			
+			for (int i = 0; i < range.segmentOffsets.length; i++) {
+				int start = (int)(range.segmentOffsets[i] - range.startOffset);
+				InputStream segment = new ByteArrayInputStream(compressed, start, range.segmentLengths[i]);
+				ByteStreams.copy(new GZIPMembersInputStream(segment), decompressed);
+			}
+			
+			byte[] lines = decompressed.toByteArray();
+			return new ByteArraySeekableLineReader(lines, Math.max(1, Math.min(lines.length, COALESCED_READER_BUFFER_SIZE)));
+			
+		} catch (IOException io) {
+			String msg = io.toString() + " -- coalesced " + range.startOffset + ":" + range.totalLength + " from " + range.partId;
+			
+			if (zipnumIndex.isRequired()) {
+				throw new RuntimeIOException(msg);
+			}
+			
+			LOGGER.warning(msg);
+			return null;
+			
+		} finally {
+			try {
+				rawReader.close();
+			} catch (IOException e) {
+				LOGGER.warning(e.toString());
+			}
+		}
 	}
 		
 //	protected SeekableLineReader initReader(String partId) throws IOException
@@ -181,6 +531,11 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<CloseableIter
 	@Override
 	public void close() throws IOException
 	{
+		for (Future<CloseableIterator<String>> future : pending) {
+			future.cancel(true);
+		}
+		pending.clear();
+		
 		if (summaryIterator != null) {
 			summaryIterator.close();
 			summaryIterator = null;
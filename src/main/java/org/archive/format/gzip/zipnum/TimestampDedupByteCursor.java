@@ -0,0 +1,105 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+
+import org.archive.format.cdx.ByteCDXLine;
+import org.archive.format.cdx.ByteCDXLineCursor;
+
+/**
+ * Byte-level version of TimestampDedupIterator: of each run of lines with
+ * the same urlkey and first timestampDedupLength digits of the timestamp,
+ * only the last is returned. Keys are compared in place, so no Strings are
+ * created; the lines kept between calls are copied into two reusable buffers.
+ */
+public class TimestampDedupByteCursor implements ByteCDXLineCursor {
+
+	protected ByteCDXLineCursor inner;
+
+	protected int timestampDedupLength = 0;
+
+	protected boolean isFirst = true;
+
+	// The line to return next, and the first line of the following run
+	protected LineBuffer curr = new LineBuffer();
+	protected LineBuffer pending = new LineBuffer();
+
+	protected static class LineBuffer
+	{
+		byte[] bytes = new byte[256];
+		ByteCDXLine line = new ByteCDXLine();
+		boolean valid = false;
+
+		void copyFrom(ByteCDXLine source)
+		{
+			int length = source.getLength();
+
+			if (length > bytes.length) {
+				bytes = new byte[Math.max(length, bytes.length * 2)];
+			}
+
+			System.arraycopy(source.getBuffer(), source.getStart(), bytes, 0, length);
+			line.set(bytes, 0, length);
+			valid = true;
+		}
+	}
+
+	public TimestampDedupByteCursor(ByteCDXLineCursor inner, int timestampDedupLength)
+	{
+		this.inner = inner;
+		this.timestampDedupLength = timestampDedupLength;
+	}
+
+	protected boolean isSame(ByteCDXLine a, ByteCDXLine b)
+	{
+		int aEnd = a.getMatchKeyEnd(timestampDedupLength);
+		int bEnd = b.getMatchKeyEnd(timestampDedupLength);
+
+		return ByteCDXLine.compare(a.getBuffer(), a.getStart(), aEnd, b.getBuffer(), b.getStart(), bEnd) == 0;
+	}
+
+	public ByteCDXLine next() throws IOException
+	{
+		if (timestampDedupLength <= 0) {
+			return inner.next();
+		}
+
+		if (isFirst) {
+			ByteCDXLine first = inner.next();
+			if (first != null) {
+				pending.copyFrom(first);
+			}
+			isFirst = false;
+		}
+
+		if (!pending.valid) {
+			return null;
+		}
+
+		// Swap so that the start of the run becomes the current line
+		LineBuffer tmp = curr;
+		curr = pending;
+		pending = tmp;
+		pending.valid = false;
+
+		ByteCDXLine nextLine = null;
+
+		while ((nextLine = inner.next()) != null) {
+			if (isSame(curr.line, nextLine)) {
+				curr.copyFrom(nextLine);
+			} else {
+				pending.copyFrom(nextLine);
+				break;
+			}
+		}
+
+		return curr.line;
+	}
+
+	public void close() throws IOException
+	{
+		if (inner != null) {
+			inner.close();
+			inner = null;
+		}
+	}
+}
@@ -12,11 +12,14 @@ import org.archive.util.GeneralURIStreamFactory;
 import org.archive.util.HMACSigner;
 import org.archive.util.binsearch.SeekableLineReader;
 import org.archive.util.binsearch.SeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.ByteArraySeekableLineReader;
 import org.archive.util.binsearch.impl.HTTPSeekableLineReader;
 import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory;
 import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory.HttpLibs;
 import org.archive.util.io.RuntimeIOException;
 
+import com.google.common.io.ByteStreams;
+
 public class ZipNumBlockLoader {
 		
 	private final static Logger LOGGER = Logger.getLogger(ZipNumBlockLoader.class.getName());
@@ -46,6 +49,11 @@ public class ZipNumBlockLoader {
 	protected int numRetries = -1;
 	
 	protected boolean staleChecking = false;
+	
+	final static int CACHED_READER_BUFFER_SIZE = 16 * 1024;
+	
+	// Optional cache of decompressed blocks, may be shared between loaders
+	protected BlockCache blockCache = null;
 
 	
 	public ZipNumBlockLoader()
@@ -148,10 +156,29 @@ public class ZipNumBlockLoader {
 	{
 		SeekableLineReader currReader = null;
 		
+		BlockCache cache = (decompress ? blockCache : null);
+		
+		if (cache != null) {
+			byte[] block = cache.get(location, startOffset, totalLength);
+			
+			if (block != null) {
+				return createCachedBlockReader(block);
+			}
+		}
+		
 		try {
 			currReader = createBlockReader(location);
 			
 	        currReader.seekWithMaxRead(startOffset, decompress, totalLength);
+	        
+	        if (cache != null) {
+	        	byte[] block = ByteStreams.toByteArray(currReader.getInputStream());
+	        	currReader.close();
+	        	currReader = null;
+	        	
+	        	cache.put(location, startOffset, totalLength, block);
+	        	return createCachedBlockReader(block);
+	        }
 		
 		} catch (IOException io) {
 			Level level = (isRequired ? Level.SEVERE : Level.WARNING);
@@ -189,8 +216,27 @@ public class ZipNumBlockLoader {
 		return currReader;
 	}
 	
+	protected SeekableLineReader createCachedBlockReader(byte[] block)
+	{
+		return new ByteArraySeekableLineReader(block, Math.max(1, Math.min(block.length, CACHED_READER_BUFFER_SIZE)));
+	}
+	
+	/**
+	 * Drop all cached blocks, as parts may have been rewritten in place
+	 */
+	public void invalidateBlockCache()
+	{
+		if (blockCache != null) {
+			blockCache.invalidateAll();
+		}
+	}
+	
 	public void closeFileFactory(String filename) throws IOException
 	{
+		if (blockCache != null) {
+			blockCache.invalidate(filename);
+		}
+		
 		if (fileFactoryMap == null) {
 			return;
 		}
@@ -307,6 +353,21 @@ public class ZipNumBlockLoader {
 		this.cookie = cookie;
 	}
 
+	public BlockCache getBlockCache() {
+		return blockCache;
+	}
+
+	public void setBlockCache(BlockCache blockCache) {
+		this.blockCache = blockCache;
+	}
+	
+	/**
+	 * Convenience for configuring a {@link LRUBlockCache} of the given size, 0 to disable
+	 */
+	public void setBlockCacheMaxBytes(long maxBytes) {
+		this.blockCache = (maxBytes > 0 ? new LRUBlockCache(maxBytes) : null);
+	}
+
 	public HMACSigner getSigner() {
 		return signer;
 	}
@@ -76,6 +76,7 @@ public class ZipNumCluster extends ZipNumIndex {
 						
 						if (summary != null) {
 							summary.reloadFactory();
+							blockLoader.invalidateBlockCache();
 						}
 					}
 					
@@ -250,6 +251,10 @@ public class ZipNumCluster extends ZipNumIndex {
 			locCacheMap.clear();
 		}
 		
+		// Parts rebuilt in place keep their locations, so closing the moved
+		// ones is not enough
+		blockLoader.invalidateBlockCache();
+		
 		closeExistingFiles(filesToClose);
 		
 		lastModTime = newModTime;
@@ -530,7 +535,7 @@ public class ZipNumCluster extends ZipNumIndex {
 	}
 		
 	@Override
-	SeekableLineReader doBlockLoad(String partId, long startOffset, int totalLength) {
+	SeekableLineReader doBlockLoad(String partId, long startOffset, int totalLength, boolean decompress) {
 		
 		SeekableLineReader reader = null;
 		
@@ -543,11 +548,11 @@ public class ZipNumCluster extends ZipNumIndex {
 		
 		// Attempt cached load for http
 		if (cacheRemoteLoc && (locCacheMap != null) && (locations.length > 0) && GeneralURIStreamFactory.isHttp(locations[0])) {
-			reader = loadCachedBalancedReader(partId, locations, startOffset, totalLength);
+			reader = loadCachedBalancedReader(partId, locations, startOffset, totalLength, decompress);
 		} else {
 		// Standard block load path
 			for (String location : locations) {
-				reader = blockLoader.attemptLoadBlock(location, startOffset, totalLength, true, isRequired());
+				reader = blockLoader.attemptLoadBlock(location, startOffset, totalLength, decompress, isRequired());
 				if (reader != null) {
 					return reader;
 				}
@@ -579,6 +584,11 @@ public class ZipNumCluster extends ZipNumIndex {
 	}
 	
 	SeekableLineReader loadCachedBalancedReader(String partId, String[] locations, long offset, int length)
+	{
+		return loadCachedBalancedReader(partId, locations, offset, length, true);
+	}
+	
+	SeekableLineReader loadCachedBalancedReader(String partId, String[] locations, long offset, int length, boolean decompress)
 	{
 		SeekableLineReader reader = null;
 		
@@ -587,7 +597,7 @@ public class ZipNumCluster extends ZipNumIndex {
 		if (cachedUrl != null) {
 			long start = System.currentTimeMillis();
 			
-			reader = blockLoader.attemptLoadBlock(cachedUrl, offset, length, true, false);
+			reader = blockLoader.attemptLoadBlock(cachedUrl, offset, length, decompress, false);
 		
 			long duration = System.currentTimeMillis() - start;
 			
@@ -624,12 +634,17 @@ public class ZipNumCluster extends ZipNumIndex {
 			
 			boolean required = (isRequired() && (i == lastIndex));
 			
-			reader = blockLoader.attemptLoadBlock(locations[index], offset, length, true, required);
+			reader = blockLoader.attemptLoadBlock(locations[index], offset, length, decompress, required);
 			
 			long duration = System.currentTimeMillis() - start;
 			
 			if (reader != null) {
-				String connectedUrl = ((HTTPSeekableLineReader)reader).getConnectedUrl();
+				String connectedUrl = locations[index];
+				
+				// Blocks served from the BlockCache are not http readers
+				if (reader instanceof HTTPSeekableLineReader) {
+					connectedUrl = ((HTTPSeekableLineReader)reader).getConnectedUrl();
+				}
 				
 				if ((duration < locCacheMaxDuration) && (connectedUrl != null)) {
 					locCachePut(partId, connectedUrl);
@@ -0,0 +1,413 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.archive.format.gzip.GZIPMemberWriter;
+import org.archive.util.iterator.AbstractPeekableIterator;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Builds a zipnum cluster from sorted CDX lines, compressing blocks on a
+ * pool of worker threads while writing them out in the original order.
+ *
+ * Files written to the output directory, for a cluster named ALL:
+ *   - part-NNNNN.gz - the parts, one gzip member per cdxLinesPerBlock lines
+ *   - part-NNNNN.idx - the summary of each part
+ *   - ALL.summary - all part summaries, merged, as read by ZipNumIndex:
+ *     &lt;urlkey timestamp&gt;\t&lt;part&gt;\t&lt;offset&gt;\t&lt;length&gt;\t&lt;block number&gt;
+ *   - ALL.loc - &lt;part&gt;\t&lt;location&gt; for each part, as read by ZipNumCluster
+ *   - ALL.lastblocks - &lt;part&gt;\t&lt;lines in last block&gt;\t&lt;last block key&gt;
+ *     for each part, as read by ZipNumCluster.loadLastBlockSizes()
+ */
+public class ZipNumClusterBuilder {
+
+	final static Logger LOGGER = Logger.getLogger(ZipNumClusterBuilder.class.getName());
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	protected File outputDir;
+	protected String clusterName = "ALL";
+	protected String partPrefix = "part-";
+	protected String locRoot = null;
+
+	protected int cdxLinesPerBlock = 3000;
+	protected int blocksPerPart = 10000;
+
+	protected int numThreads = Runtime.getRuntime().availableProcessors();
+
+	// Max blocks compressed or waiting to be written, per thread
+	protected int maxPendingPerThread = 4;
+
+	public ZipNumClusterBuilder(File outputDir)
+	{
+		this.outputDir = outputDir;
+	}
+
+	/**
+	 * A block compressed into a single gzip member
+	 */
+	protected static class Block
+	{
+		final String key;
+		final int numLines;
+		final byte[] data;
+
+		Block(String key, int numLines, byte[] data)
+		{
+			this.key = key;
+			this.numLines = numLines;
+			this.data = data;
+		}
+	}
+
+	protected static class CompressTask implements Callable<Block>
+	{
+		final String key;
+		final int numLines;
+		final byte[] lines;
+
+		CompressTask(String key, int numLines, byte[] lines)
+		{
+			this.key = key;
+			this.numLines = numLines;
+			this.lines = lines;
+		}
+
+		@Override
+		public Block call() throws IOException
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream(lines.length / 4 + 64);
+			new GZIPMemberWriter(out).write(new ByteArrayInputStream(lines));
+			return new Block(key, numLines, out.toByteArray());
+		}
+	}
+
+	/**
+	 * Writes the parts, and all the metadata, in block order
+	 */
+	protected class ClusterOutput
+	{
+		Writer summary, loc, lastBlocks;
+		Writer partSummary = null;
+		OutputStream partOut = null;
+
+		String partId = null;
+		int partNum = -1;
+		int blocksInPart = 0;
+		long partOffset = 0;
+		Block lastBlock = null;
+
+		long totalBlocks = 0;
+		long totalLines = 0;
+
+		ClusterOutput() throws IOException
+		{
+			summary = createWriter(clusterName + ".summary");
+			loc = createWriter(clusterName + ".loc");
+			lastBlocks = createWriter(clusterName + ".lastblocks");
+		}
+
+		void write(Block block) throws IOException
+		{
+			if ((partOut == null) || (blocksInPart >= blocksPerPart)) {
+				nextPart();
+			}
+
+			partOut.write(block.data);
+
+			String line = block.key + "\t" + partId + "\t" + partOffset + "\t" + block.data.length + "\t" + totalBlocks + "\n";
+			summary.write(line);
+			partSummary.write(line);
+
+			partOffset += block.data.length;
+			blocksInPart++;
+			totalBlocks++;
+			totalLines += block.numLines;
+			lastBlock = block;
+		}
+
+		void nextPart() throws IOException
+		{
+			finishPart();
+
+			partNum++;
+			partId = partPrefix + String.format("%05d", partNum);
+
+			partOut = new FileOutputStream(new File(outputDir, partId + ".gz"));
+			partSummary = createWriter(partId + ".idx");
+			partOffset = 0;
+			blocksInPart = 0;
+
+			loc.write(partId + "\t" + getLocRoot() + partId + ".gz\n");
+		}
+
+		void finishPart() throws IOException
+		{
+			if (partOut == null) {
+				return;
+			}
+
+			partOut.close();
+			partSummary.close();
+			partOut = null;
+			partSummary = null;
+
+			lastBlocks.write(partId + "\t" + lastBlock.numLines + "\t" + lastBlock.key + "\n");
+		}
+
+		void close() throws IOException
+		{
+			try {
+				finishPart();
+			} finally {
+				summary.close();
+				loc.close();
+				lastBlocks.close();
+			}
+		}
+	}
+
+	protected Writer createWriter(String name) throws IOException
+	{
+		return new OutputStreamWriter(new FileOutputStream(new File(outputDir, name)), UTF8);
+	}
+
+	/**
+	 * The summary key of a block: the urlkey and timestamp of its first line
+	 */
+	protected static String extractKey(String line)
+	{
+		int space = line.indexOf(' ');
+
+		if (space >= 0) {
+			space = line.indexOf(' ', space + 1);
+		}
+
+		return (space >= 0 ? line.substring(0, space) : line);
+	}
+
+	/**
+	 * Build the cluster from lines, which must already be sorted
+	 * @return the number of blocks written
+	 */
+	public long build(Iterator<String> lines) throws IOException
+	{
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new IOException("Unable to create " + outputDir);
+		}
+
+		int threads = Math.max(1, numThreads);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("zipnum-builder-%d").build());
+
+		LinkedList<Future<Block>> pending = new LinkedList<Future<Block>>();
+		int maxPending = threads * Math.max(1, maxPendingPerThread);
+
+		ClusterOutput output = new ClusterOutput();
+
+		ByteArrayOutputStream blockBuffer = new ByteArrayOutputStream();
+		String blockKey = null;
+		int blockLines = 0;
+
+		try {
+			while (lines.hasNext()) {
+				String line = lines.next();
+
+				if (line.isEmpty()) {
+					continue;
+				}
+
+				if (blockLines == 0) {
+					blockKey = extractKey(line);
+				}
+
+				blockBuffer.write(line.getBytes(UTF8));
+				blockBuffer.write('\n');
+				blockLines++;
+
+				if (blockLines >= cdxLinesPerBlock) {
+					pending.addLast(executor.submit(new CompressTask(blockKey, blockLines, blockBuffer.toByteArray())));
+					blockBuffer.reset();
+					blockLines = 0;
+
+					while (pending.size() >= maxPending) {
+						output.write(getBlock(pending.removeFirst()));
+					}
+				}
+			}
+
+			if (blockLines > 0) {
+				pending.addLast(executor.submit(new CompressTask(blockKey, blockLines, blockBuffer.toByteArray())));
+			}
+
+			while (!pending.isEmpty()) {
+				output.write(getBlock(pending.removeFirst()));
+			}
+
+		} finally {
+			for (Future<Block> future : pending) {
+				future.cancel(true);
+			}
+			executor.shutdownNow();
+			output.close();
+		}
+
+		LOGGER.info("Wrote " + output.totalLines + " lines in " + output.totalBlocks + " blocks and " + (output.partNum + 1) + " parts to " + outputDir);
+
+		return output.totalBlocks;
+	}
+
+	public long build(InputStream sortedCdx) throws IOException
+	{
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(sortedCdx, UTF8), 1024 * 1024);
+
+		return build(new AbstractPeekableIterator<String>() {
+			@Override
+			public String getNextInner() {
+				try {
+					return reader.readLine();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				reader.close();
+			}
+		});
+	}
+
+	protected Block getBlock(Future<Block> future) throws IOException
+	{
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e.toString());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new IOException(e.getCause().toString());
+		}
+	}
+
+	public String getLocRoot() {
+		if (locRoot == null) {
+			return outputDir.getAbsolutePath() + "/";
+		}
+		return locRoot;
+	}
+
+	/**
+	 * Prefix of the part locations written to the loc file, such as an http
+	 * url the cluster will be served from. Defaults to the output directory.
+	 */
+	public void setLocRoot(String locRoot) {
+		this.locRoot = locRoot;
+	}
+
+	public File getOutputDir() {
+		return outputDir;
+	}
+
+	public String getClusterName() {
+		return clusterName;
+	}
+
+	public void setClusterName(String clusterName) {
+		this.clusterName = clusterName;
+	}
+
+	public String getPartPrefix() {
+		return partPrefix;
+	}
+
+	public void setPartPrefix(String partPrefix) {
+		this.partPrefix = partPrefix;
+	}
+
+	public int getCdxLinesPerBlock() {
+		return cdxLinesPerBlock;
+	}
+
+	public void setCdxLinesPerBlock(int cdxLinesPerBlock) {
+		this.cdxLinesPerBlock = cdxLinesPerBlock;
+	}
+
+	public int getBlocksPerPart() {
+		return blocksPerPart;
+	}
+
+	public void setBlocksPerPart(int blocksPerPart) {
+		this.blocksPerPart = blocksPerPart;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	public int getMaxPendingPerThread() {
+		return maxPendingPerThread;
+	}
+
+	public void setMaxPendingPerThread(int maxPendingPerThread) {
+		this.maxPendingPerThread = maxPendingPerThread;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: ZipNumClusterBuilder <sorted cdx file, or - for stdin> <output dir> [lines per block] [blocks per part] [threads]");
+			System.exit(1);
+		}
+
+		ZipNumClusterBuilder builder = new ZipNumClusterBuilder(new File(args[1]));
+
+		if (args.length > 2) {
+			builder.setCdxLinesPerBlock(Integer.parseInt(args[2]));
+		}
+
+		if (args.length > 3) {
+			builder.setBlocksPerPart(Integer.parseInt(args[3]));
+		}
+
+		if (args.length > 4) {
+			builder.setNumThreads(Integer.parseInt(args[4]));
+		}
+
+		InputStream in = (args[0].equals("-") ? System.in : new FileInputStream(args[0]));
+
+		try {
+			builder.build(in);
+		} finally {
+			in.close();
+		}
+	}
+}
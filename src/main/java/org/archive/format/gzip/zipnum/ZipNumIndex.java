@@ -1,17 +1,25 @@
 package org.archive.format.gzip.zipnum;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
+import org.archive.format.cdx.BoundedByteCDXLineCursor;
+import org.archive.format.cdx.ByteCDXLineCursor;
 import org.archive.format.cdx.CDXInputSource;
 import org.archive.util.GeneralURIStreamFactory;
 import org.archive.util.binsearch.FieldExtractingSLR;
 import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.binsearch.SeekableLineReaderFactory;
 import org.archive.util.binsearch.SortedTextFile;
 import org.archive.util.iterator.BoundedStringIterator;
 import org.archive.util.iterator.CloseableIterator;
 import org.archive.util.iterator.StartBoundedStringIterator;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 public class ZipNumIndex implements CDXInputSource {
 	final static Logger LOGGER = Logger.getLogger(ZipNumIndex.class.getName());
 
@@ -20,6 +28,13 @@ public class ZipNumIndex implements CDXInputSource {
 	protected String summaryFile;
 	protected int binsearchBlockSize = 8192;
 	protected int readaheadSize = 512;
+	protected long midpointCacheMaxBytes = 0;
+	protected boolean loadSummaryInMemory = false;
+	
+	protected int prefetchThreads = 0;
+	protected ExecutorService prefetchExecutor = null;
+	// true if init() created prefetchExecutor, so close() shuts it down
+	protected boolean ownsPrefetchExecutor = false;
 	protected SortedTextFile summary;
 	
 	protected boolean required = true;
@@ -48,13 +63,52 @@ public class ZipNumIndex implements CDXInputSource {
 	public void init() throws IOException {
 		
 		if (summaryFile != null) {
-			this.summary = new SortedTextFile(GeneralURIStreamFactory.createSeekableStreamFactory(summaryFile, readaheadSize, useNio));
+			SeekableLineReaderFactory factory = GeneralURIStreamFactory.createSeekableStreamFactory(summaryFile, readaheadSize, useNio);
+			
+			if (loadSummaryInMemory) {
+				this.summary = loadInMemorySummary(factory);
+			}
+			
+			if (this.summary == null) {
+				this.summary = new SortedTextFile(factory);
+			}
+			
 			this.summary.setBinsearchBlockSize(binsearchBlockSize);
+			this.summary.setMidpointCacheMaxBytes(midpointCacheMaxBytes);
 		}
 						
 		if (blockLoader == null) {
 			this.blockLoader = new ZipNumBlockLoader();
 		}
+		
+		if ((prefetchThreads > 0) && (prefetchExecutor == null)) {
+			ThreadFactory threadFactory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ZipNumPrefetch-%d").build();
+			this.prefetchExecutor = Executors.newFixedThreadPool(prefetchThreads, threadFactory);
+			this.ownsPrefetchExecutor = true;
+		}
+	}
+	
+	/**
+	 * Shut down the prefetch executor, if init() created it. One set with
+	 * {@link #setPrefetchExecutor(ExecutorService)} is left to its owner.
+	 */
+	public void close()
+	{
+		if (ownsPrefetchExecutor) {
+			prefetchExecutor.shutdownNow();
+			prefetchExecutor = null;
+			ownsPrefetchExecutor = false;
+		}
+	}
+	
+	protected SortedTextFile loadInMemorySummary(SeekableLineReaderFactory factory)
+	{
+		try {
+			return new InMemorySummary(factory);
+		} catch (IOException io) {
+			LOGGER.warning("Unable to load summary in memory, using file: " + summaryFile + " " + io.toString());
+			return null;
+		}
 	}
 	
 	public static ZipNumIndex createIndexWithSummaryPath(String summaryFile) throws IOException
@@ -444,6 +498,34 @@ public class ZipNumIndex implements CDXInputSource {
 		return getCDXIterator(summaryIterator, null);
 	}
 	
+	/**
+	 * Byte-level version of getCDXIterator(key, start, end, params), returning
+	 * reusable line views instead of Strings. Forward order only.
+	 */
+	public ByteCDXLineCursor getByteCDXCursor(String key, String start, String end, ZipNumParams params) throws IOException {
+		if (params.isReverse()) {
+			throw new IllegalArgumentException("Byte cursors do not support reverse order");
+		}
+		
+		CloseableIterator<String> summaryIter = summary.getRecordIteratorLT(key);
+		
+		if (params.getTimestampDedupLength() > 0) {
+			summaryIter = new TimestampDedupIterator(summaryIter, params.getTimestampDedupLength());
+		}
+		
+		if (end != null && !end.isEmpty()) {
+			summaryIter = wrapEndIterator(summaryIter, end, false);
+		}
+		
+		return new BoundedByteCDXLineCursor(getByteCDXCursor(summaryIter, params), start, end, false);
+	}
+	
+	public ByteCDXLineCursor getByteCDXCursor(CloseableIterator<String> summaryIterator, ZipNumParams params)
+	{
+		SummaryBlockIterator blockIter = new SummaryBlockIterator(summaryIterator, this, params);
+		return new MultiBlockByteCursor(blockIter, required);
+	}
+	
 	public void setSummaryFile(String summaryFile) {
 		this.summaryFile = summaryFile;
 	}
@@ -477,6 +559,51 @@ public class ZipNumIndex implements CDXInputSource {
 		this.readaheadSize = readaheadSize;
 	}
 
+	public long getMidpointCacheMaxBytes() {
+		return midpointCacheMaxBytes;
+	}
+
+	/**
+	 * @param midpointCacheMaxBytes memory budget for caching summary binary search probes, 0 to disable
+	 */
+	public void setMidpointCacheMaxBytes(long midpointCacheMaxBytes) {
+		this.midpointCacheMaxBytes = midpointCacheMaxBytes;
+	}
+
+	public boolean isLoadSummaryInMemory() {
+		return loadSummaryInMemory;
+	}
+
+	/**
+	 * @param loadSummaryInMemory if true, summary lookups are served from an {@link InMemorySummary}
+	 */
+	public void setLoadSummaryInMemory(boolean loadSummaryInMemory) {
+		this.loadSummaryInMemory = loadSummaryInMemory;
+	}
+
+	public int getPrefetchThreads() {
+		return prefetchThreads;
+	}
+
+	/**
+	 * @param prefetchThreads size of the pool used to load blocks ahead, see {@link ZipNumParams#setPrefetchBlocks(int)}
+	 */
+	public void setPrefetchThreads(int prefetchThreads) {
+		this.prefetchThreads = prefetchThreads;
+	}
+
+	public ExecutorService getPrefetchExecutor() {
+		return prefetchExecutor;
+	}
+
+	/**
+	 * @param prefetchExecutor executor used to load blocks ahead, may be shared between indexes
+	 */
+	public void setPrefetchExecutor(ExecutorService prefetchExecutor) {
+		close();
+		this.prefetchExecutor = prefetchExecutor;
+	}
+
 	public void setBlockLoader(ZipNumBlockLoader blockLoader) {
 		this.blockLoader = blockLoader;
 	}
@@ -512,8 +639,12 @@ public class ZipNumIndex implements CDXInputSource {
 	}
 	
 	SeekableLineReader doBlockLoad(String partId, long startOffset, int totalLength) {
+		return doBlockLoad(partId, startOffset, totalLength, true);
+	}
+	
+	SeekableLineReader doBlockLoad(String partId, long startOffset, int totalLength, boolean decompress) {
 		String path = getReaderPath(partId);
-		return blockLoader.attemptLoadBlock(path, startOffset, totalLength, true, this.isRequired());
+		return blockLoader.attemptLoadBlock(path, startOffset, totalLength, decompress, this.isRequired());
 	}
 
 	public String getPathRoot() {
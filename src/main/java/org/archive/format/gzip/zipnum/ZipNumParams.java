@@ -7,6 +7,11 @@ public class ZipNumParams
 	protected int maxBlocks = 0;
 	private boolean reverse = false;
 	private boolean sequential = false;
+	protected int prefetchBlocks = 0;
+	protected int coalesceMaxGap = -1;
+	protected int coalesceMaxBytes = DEFAULT_COALESCE_MAX_BYTES;
+	
+	public final static int DEFAULT_COALESCE_MAX_BYTES = 4 * 1024 * 1024;
 	
 	public ZipNumParams()
 	{
@@ -16,6 +21,9 @@ public class ZipNumParams
 	public ZipNumParams(ZipNumParams defaults)
 	{
 		this(defaults.maxAggregateBlocks, defaults.maxBlocks, defaults.timestampDedupLength, defaults.reverse);
+		this.prefetchBlocks = defaults.prefetchBlocks;
+		this.coalesceMaxGap = defaults.coalesceMaxGap;
+		this.coalesceMaxBytes = defaults.coalesceMaxBytes;
 	}
 	
 	public ZipNumParams(int maxAggregateBlocks, int maxBlocks, int timestampDedupLength, boolean reverse)
@@ -65,4 +73,42 @@ public class ZipNumParams
 	public void setSequential(boolean sequential) {
 		this.sequential = sequential;
 	}
-}
\ No newline at end of file
+
+	public int getPrefetchBlocks() {
+		return prefetchBlocks;
+	}
+
+	/**
+	 * @param prefetchBlocks number of loads to keep in flight ahead of the one being read,
+	 * 0 to load one at a time. Each load is a range of up to maxAggregateBlocks
+	 * consecutive blocks, or a coalesced range, not a single block.
+	 * Requires a prefetch executor on the ZipNumIndex
+	 */
+	public void setPrefetchBlocks(int prefetchBlocks) {
+		this.prefetchBlocks = prefetchBlocks;
+	}
+
+	public int getCoalesceMaxGap() {
+		return coalesceMaxGap;
+	}
+
+	/**
+	 * @param coalesceMaxGap max number of unused bytes between two block ranges of the same part
+	 * for them to be loaded with a single request. -1 (the default) disables coalescing.
+	 * Ignored when the block loader has a BlockCache
+	 */
+	public void setCoalesceMaxGap(int coalesceMaxGap) {
+		this.coalesceMaxGap = coalesceMaxGap;
+	}
+
+	public int getCoalesceMaxBytes() {
+		return coalesceMaxBytes;
+	}
+
+	/**
+	 * @param coalesceMaxBytes max total size, including gaps, of a coalesced request
+	 */
+	public void setCoalesceMaxBytes(int coalesceMaxBytes) {
+		this.coalesceMaxBytes = coalesceMaxBytes;
+	}
+}
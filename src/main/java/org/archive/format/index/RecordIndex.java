@@ -0,0 +1,179 @@
+package org.archive.format.index;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Index of the records of an ARC or WARC file, from a sidecar file next to
+ * it, named after it with SUFFIX added.
+ *
+ * Each record's offset and compressed length give its gzip member
+ * boundaries, so readers can seek straight to a record, split the file on
+ * record boundaries, or skip records by type, without inflating anything.
+ *
+ * Sidecars are written by WARCWriter and ARCWriter, if asked to, and by a
+ * pass over an existing file with RecordIndexer. Lines starting with a space
+ * are headers; the rest are {@link RecordIndexEntry}s, in file order.
+ */
+public class RecordIndex {
+
+	private static final Logger LOG = Logger.getLogger(RecordIndex.class.getName());
+
+	public static final String SUFFIX = ".recidx";
+	public static final String HEADER = " RECIDX o c u t h";
+
+	private List<RecordIndexEntry> entries;
+	private long[] offsets;
+
+	public RecordIndex(List<RecordIndexEntry> entries) {
+		this.entries = entries;
+		offsets = new long[entries.size()];
+		for(int i = 0; i < offsets.length; i++) {
+			offsets[i] = entries.get(i).getOffset();
+			if((i > 0) && (offsets[i] <= offsets[i-1])) {
+				throw new IllegalArgumentException("Record index entries out of order at "
+						+ offsets[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return the sidecar file for archive, which may not exist
+	 */
+	public static File getSidecar(File archive) {
+		return new File(getSidecarPath(archive.getPath()));
+	}
+
+	public static String getSidecarPath(String archivePath) {
+		return archivePath + SUFFIX;
+	}
+
+	public static RecordIndex read(File file) throws IOException {
+		return read(new FileInputStream(file));
+	}
+
+	/**
+	 * Read a sidecar, closing is
+	 * @throws IOException on a bad line
+	 */
+	public static RecordIndex read(InputStream is) throws IOException {
+		BufferedReader br = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
+		List<RecordIndexEntry> entries = new ArrayList<RecordIndexEntry>();
+		try {
+			String line;
+			while((line = br.readLine()) != null) {
+				if(line.startsWith(" ") || (line.length() == 0)) {
+					continue;
+				}
+				try {
+					entries.add(RecordIndexEntry.parse(line));
+				} catch(IllegalArgumentException e) {
+					throw new IOException(e.getMessage());
+				}
+			}
+			return new RecordIndex(entries);
+		} catch(IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		} finally {
+			br.close();
+		}
+	}
+
+	/**
+	 * @return the index from the sidecar of archive, or null if there is
+	 * none, it is unreadable, or it does not end where archive does
+	 */
+	public static RecordIndex forArchive(File archive) {
+		File sidecar = getSidecar(archive);
+		if(!sidecar.isFile()) {
+			return null;
+		}
+		try {
+			RecordIndex index = read(sidecar);
+			if(!index.endsAt(archive.length())) {
+				LOG.warning("Ignoring stale record index " + sidecar);
+				return null;
+			}
+			return index;
+		} catch(IOException e) {
+			LOG.warning("Ignoring record index " + sidecar + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public RecordIndexEntry get(int i) {
+		return entries.get(i);
+	}
+
+	public List<RecordIndexEntry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * @return the position of the first entry starting at or after offset,
+	 * or size() if there is none
+	 */
+	public int findAtOrAfter(long offset) {
+		int lo = 0;
+		int hi = offsets.length;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(offsets[mid] < offset) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return the entry starting at offset, or null if no record does
+	 */
+	public RecordIndexEntry getEntry(long offset) {
+		int i = findAtOrAfter(offset);
+		if((i < offsets.length) && (offsets[i] == offset)) {
+			return entries.get(i);
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if the last record ends at length, the length of the
+	 * archive file
+	 */
+	public boolean endsAt(long length) {
+		if(entries.isEmpty()) {
+			return length == 0;
+		}
+		return entries.get(entries.size() - 1).getEndOffset() == length;
+	}
+
+	/**
+	 * @return true if the records start at 0, and each starts where the
+	 * previous one ends, so no bytes of the archive are unaccounted for
+	 */
+	public boolean isContiguous() {
+		long end = 0;
+		for(RecordIndexEntry entry : entries) {
+			if(entry.getOffset() != end) {
+				return false;
+			}
+			end = entry.getEndOffset();
+		}
+		return true;
+	}
+}
@@ -0,0 +1,129 @@
+package org.archive.format.index;
+
+import java.nio.charset.Charset;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * One record of a {@link RecordIndex}: where the record starts in the archive
+ * file, its length on disk and uncompressed, its type, and a hash of its
+ * target URI.
+ *
+ * As a line of a sidecar file:
+ *   &lt;offset&gt; &lt;compressed length&gt; &lt;uncompressed length&gt; &lt;type&gt; &lt;URI hash&gt;
+ *
+ * The type is the WARC-Type, or filedesc or response for ARC records, or -
+ * for none, or one that is empty or contains whitespace, which could not be
+ * parsed back. The URI hash is the hex 64 bit murmur3 hash of the target
+ * URI, or - for none.
+ */
+public class RecordIndexEntry {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	public static final String NO_URI = "-";
+	public static final String NO_TYPE = "-";
+
+	private long offset;
+	private long compressedLength;
+	private long uncompressedLength;
+	private String type;
+	private String uriHash;
+
+	public RecordIndexEntry(long offset, long compressedLength,
+			long uncompressedLength, String type, String uriHash) {
+		this.offset = offset;
+		this.compressedLength = compressedLength;
+		this.uncompressedLength = uncompressedLength;
+		this.type = isStorableType(type) ? type : NO_TYPE;
+		this.uriHash = uriHash == null ? NO_URI : uriHash;
+	}
+
+	private static boolean isStorableType(String type) {
+		if((type == null) || (type.length() == 0)) {
+			return false;
+		}
+		for(int i = 0; i < type.length(); i++) {
+			if(Character.isWhitespace(type.charAt(i))
+					|| Character.isISOControl(type.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the hash of uri as stored in the index, or - if uri is null
+	 * or empty
+	 */
+	public static String hashURI(String uri) {
+		if((uri == null) || (uri.length() == 0)) {
+			return NO_URI;
+		}
+		long hash = Hashing.murmur3_128().hashString(uri, UTF8).asLong();
+		return String.format("%016x", hash);
+	}
+
+	/**
+	 * @return the entry for a line of a sidecar file
+	 * @throws IllegalArgumentException if line is not an entry
+	 */
+	public static RecordIndexEntry parse(String line) {
+		String[] parts = line.split(" ");
+		if(parts.length != 5) {
+			throw new IllegalArgumentException("Bad record index line: " + line);
+		}
+		try {
+			return new RecordIndexEntry(Long.parseLong(parts[0]),
+					Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+					parts[3], parts[4]);
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Bad record index line: " + line);
+		}
+	}
+
+	public String toString() {
+		return offset + " " + compressedLength + " " + uncompressedLength
+				+ " " + type + " " + uriHash;
+	}
+
+	public boolean equals(Object o) {
+		if(!(o instanceof RecordIndexEntry)) {
+			return false;
+		}
+		return toString().equals(o.toString());
+	}
+
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+	/**
+	 * @return true if this entry's URI hash is that of uri
+	 */
+	public boolean matchesURI(String uri) {
+		return uriHash.equals(hashURI(uri));
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+	public long getCompressedLength() {
+		return compressedLength;
+	}
+	/**
+	 * @return the offset just past the end of this record
+	 */
+	public long getEndOffset() {
+		return offset + compressedLength;
+	}
+	public long getUncompressedLength() {
+		return uncompressedLength;
+	}
+	public String getType() {
+		return type;
+	}
+	public String getURIHash() {
+		return uriHash;
+	}
+}
@@ -0,0 +1,52 @@
+package org.archive.format.index;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Writes the entries of a {@link RecordIndex} sidecar file, in the order the
+ * records were written to, or read from, the archive file.
+ */
+public class RecordIndexWriter implements Closeable {
+
+	private Writer out;
+	private long numEntries = 0;
+
+	public RecordIndexWriter(OutputStream os) throws IOException {
+		out = new BufferedWriter(new OutputStreamWriter(os, Charset.forName("UTF-8")));
+		out.write(RecordIndex.HEADER);
+		out.write('\n');
+	}
+
+	public void add(RecordIndexEntry entry) throws IOException {
+		out.write(entry.toString());
+		out.write('\n');
+		numEntries++;
+	}
+
+	/**
+	 * Add the entry for a record, hashing its target uri
+	 */
+	public void add(long offset, long compressedLength, long uncompressedLength,
+			String type, String uri) throws IOException {
+		add(new RecordIndexEntry(offset, compressedLength, uncompressedLength,
+				type, RecordIndexEntry.hashURI(uri)));
+	}
+
+	public long getNumEntries() {
+		return numEntries;
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+}
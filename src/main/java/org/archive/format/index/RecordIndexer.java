@@ -0,0 +1,187 @@
+package org.archive.format.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Logger;
+
+import org.archive.format.gzip.GZIPFormatException;
+import org.archive.format.gzip.GZIPMemberSeries;
+import org.archive.format.gzip.GZIPSeriesMember;
+import org.archive.streamcontext.RandomAccessFileStream;
+
+/**
+ * Writes the {@link RecordIndex} of an existing gzipped ARC, WARC or WAT
+ * file, in one pass over its gzip members.
+ *
+ * Only the record header of each member is parsed, the rest is inflated
+ * just to find where the member ends.
+ */
+public class RecordIndexer {
+
+	private static final Logger LOG = Logger.getLogger(RecordIndexer.class.getName());
+
+	private static final int MAX_HEADER_LINE = 64 * 1024;
+
+	private static final String WARC_MAGIC = "WARC/";
+	private static final String WARC_TYPE = "warc-type:";
+	private static final String WARC_TARGET_URI = "warc-target-uri:";
+
+	private boolean strict = false;
+
+	public RecordIndexer() {
+	}
+
+	/**
+	 * @param strict if true, a gzip error ends indexing with an exception,
+	 * otherwise the bad member is left out of the index
+	 */
+	public RecordIndexer(boolean strict) {
+		this.strict = strict;
+	}
+
+	/**
+	 * Write the sidecar of archive
+	 *
+	 * @return the number of records indexed
+	 */
+	public long index(File archive) throws IOException {
+		File sidecar = RecordIndex.getSidecar(archive);
+		File tmp = new File(sidecar.getPath() + ".tmp");
+		RecordIndexWriter out = new RecordIndexWriter(new FileOutputStream(tmp));
+		long count;
+		try {
+			count = index(archive, out);
+		} catch(IOException e) {
+			out.close();
+			tmp.delete();
+			throw e;
+		}
+		out.close();
+		if(sidecar.exists() && !sidecar.delete()) {
+			throw new IOException("Unable to replace " + sidecar);
+		}
+		if(!tmp.renameTo(sidecar)) {
+			throw new IOException("Unable to rename " + tmp + " to " + sidecar);
+		}
+		return count;
+	}
+
+	/**
+	 * Index the records of archive to out
+	 *
+	 * @return the number of records indexed
+	 */
+	public long index(File archive, RecordIndexWriter out) throws IOException {
+		GZIPMemberSeries series = new GZIPMemberSeries(new RandomAccessFileStream(archive),
+				archive.getName(), 0, strict);
+		long count = 0;
+		try {
+			while(true) {
+				GZIPSeriesMember member = series.getNextMember();
+				if(member == null) {
+					break;
+				}
+				long start = member.getRecordStartOffset();
+				String[] typeAndURI;
+				try {
+					typeAndURI = readTypeAndURI(member);
+					member.skipMember();
+				} catch(GZIPFormatException e) {
+					if(strict) {
+						throw e;
+					}
+					LOG.warning(String.format("Not indexing bad member at %d of %s: %s",
+							start, archive.getName(), e.getMessage()));
+					continue;
+				}
+				out.add(start, series.getOffset() - start, member.getUncompressedBytesRead(),
+						typeAndURI[0], typeAndURI[1]);
+				count++;
+			}
+		} finally {
+			series.close();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the type and target URI of the record read from is, from its
+	 * WARC header or ARC URL line. An ARC record's type is filedesc or
+	 * response.
+	 */
+	protected static String[] readTypeAndURI(InputStream is) throws IOException {
+		String[] typeAndURI = new String[2];
+		String line = readLine(is);
+		if(line == null) {
+			return typeAndURI;
+		}
+		if(line.startsWith(WARC_MAGIC)) {
+			while(((line = readLine(is)) != null) && (line.length() > 0)) {
+				String lower = line.toLowerCase();
+				if(lower.startsWith(WARC_TYPE)) {
+					typeAndURI[0] = line.substring(WARC_TYPE.length()).trim();
+				} else if(lower.startsWith(WARC_TARGET_URI)) {
+					typeAndURI[1] = line.substring(WARC_TARGET_URI.length()).trim();
+				}
+			}
+		} else {
+			int space = line.indexOf(' ');
+			String uri = space == -1 ? line : line.substring(0, space);
+			typeAndURI[0] = uri.startsWith("filedesc:") ? "filedesc" : "response";
+			typeAndURI[1] = uri;
+		}
+		return typeAndURI;
+	}
+
+	/**
+	 * @return the next line of is, without its CRLF or LF, null at EOF
+	 */
+	protected static String readLine(InputStream is) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while((b = is.read()) != -1) {
+			if(b == '\n') {
+				break;
+			}
+			if(line.size() < MAX_HEADER_LINE) {
+				line.write(b);
+			}
+		}
+		if((b == -1) && (line.size() == 0)) {
+			return null;
+		}
+		String s = line.toString("UTF-8");
+		if(s.endsWith("\r")) {
+			s = s.substring(0, s.length() - 1);
+		}
+		return s;
+	}
+
+	public boolean isStrict() {
+		return strict;
+	}
+
+	public void setStrict(boolean strict) {
+		this.strict = strict;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int arg = 0;
+		RecordIndexer indexer = new RecordIndexer();
+		if((args.length > 0) && args[0].equals("-strict")) {
+			indexer.setStrict(true);
+			arg++;
+		}
+		if(arg >= args.length) {
+			System.err.println("Usage: RecordIndexer [-strict] <arc.gz, warc.gz or wat.gz file> ...");
+			System.exit(1);
+		}
+		for(; arg < args.length; arg++) {
+			long count = indexer.index(new File(args[arg]));
+			System.err.println(args[arg] + ": " + count + " records");
+		}
+	}
+}
@@ -19,12 +19,12 @@ public class ResourceInputFormat extends FileInputFormat<ResourceContext, MetaDa
 		return new ResourceRecordReader();
 	}
 
-	/* (non-Javadoc)
-	 * @see org.apache.hadoop.mapreduce.lib.input.FileInputFormat#isSplitable(org.apache.hadoop.mapreduce.JobContext, org.apache.hadoop.fs.Path)
+	/**
+	 * gzipped ARC and WARC files are split anywhere: each ResourceRecordReader
+	 * reads the records whose gzip members start within its split
 	 */
 	@Override
 	protected boolean isSplitable(JobContext context, Path filename) {
-		// TODO: ensure this works... it should be may be losing records between..
-		return false;
+		return filename.getName().endsWith(".gz");
 	}
 }
@@ -1,21 +1,33 @@
 package org.archive.hadoop;
 
 import java.io.IOException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.archive.extract.ExtractingResourceFactoryMapper;
 import org.archive.extract.ExtractingResourceProducer;
 import org.archive.extract.ResourceFactoryMapper;
+import org.archive.format.gzip.GZIPMemberLocator;
 import org.archive.format.gzip.GZIPMemberSeries;
+import org.archive.format.gzip.GZIPSeriesMetrics;
+import org.archive.format.index.RecordIndex;
+import org.archive.resource.FilteringResourceProducer;
+import org.archive.resource.HeaderRecordFilter;
 import org.archive.resource.MetaData;
+import org.archive.resource.RecordFilter;
 import org.archive.resource.Resource;
+import org.archive.resource.ResourceFactory;
 import org.archive.resource.ResourceParseException;
 import org.archive.resource.ResourceProducer;
 import org.archive.resource.TransformingResourceProducer;
@@ -24,17 +36,41 @@ import org.archive.resource.gzip.GZIPResourceContainer;
 import org.archive.resource.warc.WARCResourceFactory;
 import org.archive.streamcontext.HDFSStream;
 import org.archive.streamcontext.Stream;
+import org.archive.util.MetricsSink;
 import org.archive.util.StreamCopy;
 
 public class ResourceRecordReader extends RecordReader<ResourceContext, MetaData>{
 	private final static Logger LOG =
 		Logger.getLogger(ResourceRecordReader.class.getName());
 
+	/** RecordFilter class, with a no-argument constructor */
+	public final static String RECORD_FILTER_CLASS = "org.archive.hadoop.recordfilter.class";
+	/** comma separated record types to extract, others are skipped */
+	public final static String RECORD_FILTER_TYPES = "org.archive.hadoop.recordfilter.types";
+	/** comma separated Content-Type prefixes of the records to extract */
+	public final static String RECORD_FILTER_CONTENT_TYPES = "org.archive.hadoop.recordfilter.contenttypes";
+	/** the longest Content-Length of the records to extract */
+	public final static String RECORD_FILTER_MAX_LENGTH = "org.archive.hadoop.recordfilter.maxlength";
+
+	/** number of buffers to read ahead of the record parsing, 0 for none */
+	public final static String READ_AHEAD_BUFFERS = "org.archive.hadoop.readahead.buffers";
+	/** size of each read-ahead buffer */
+	public final static String READ_AHEAD_SIZE = "org.archive.hadoop.readahead.size";
+	public final static int DEFAULT_READ_AHEAD_SIZE = 256 * 1024;
+
+	/** group of the Hadoop counters of records, and GZIPSeriesMetrics */
+	public final static String COUNTER_GROUP = "org.archive.hadoop.ResourceRecordReader";
+	public final static String RECORDS_COUNTER = "records";
+	public final static String REJECTED_COUNTER = "records-rejected";
+
 	WARCResourceFactory wf = new WARCResourceFactory();
 	ARCResourceFactory af = new ARCResourceFactory();
 	Stream stream;
 	GZIPMemberSeries series;
 	private ResourceProducer producer;
+	private FilteringResourceProducer filtering = null;
+	private TaskInputOutputContext<?,?,?,?> counters = null;
+	private Counter recordsCounter = null;
 //	private ResourceExtractor extractor;
 	private String name;
 	private long startOffset;
@@ -46,6 +82,24 @@ public class ResourceRecordReader extends RecordReader<ResourceContext, MetaData
 	@Override
 	public void close() throws IOException {
 		producer.close();
+		if(counters != null) {
+			MetricsSink sink = new MetricsSink() {
+				public void add(String name, long value) {
+					counters.getCounter(COUNTER_GROUP, name).increment(value);
+				}
+			};
+			series.getMetrics().reportTo(sink);
+			if(filtering != null) {
+				sink.add(REJECTED_COUNTER, filtering.getNumRejected());
+			}
+		}
+	}
+
+	/**
+	 * @return the counters of the gzip members read so far
+	 */
+	public GZIPSeriesMetrics getMetrics() {
+		return series.getMetrics();
 	}
 
 	@Override
@@ -79,22 +133,55 @@ public class ResourceRecordReader extends RecordReader<ResourceContext, MetaData
 	    	FSDataInputStream fsdis = fSys.open(fsPath);
 	    	String path = fsPath.getName();
 	    	name = fsPath.getName();
-	    	stream = new HDFSStream(fsdis);
+	    	Configuration conf = context.getConfiguration();
+	    	int readAhead = conf.getInt(READ_AHEAD_BUFFERS, 0);
+	    	HDFSStream hdfsStream;
+	    	if(readAhead > 0) {
+	    		hdfsStream = new HDFSStream(fsdis, 0,
+	    				conf.getInt(READ_AHEAD_SIZE, DEFAULT_READ_AHEAD_SIZE));
+	    	} else {
+	    		hdfsStream = new HDFSStream(fsdis);
+	    	}
+	    	stream = hdfsStream;
 	    	startOffset = fs.getStart();
 			length = fs.getLength();
 			long endOffset = startOffset + length;
-			stream.setOffset(startOffset);	    	
-	    	series = new GZIPMemberSeries(stream, name, startOffset);
-			GZIPResourceContainer prod = 
-				new GZIPResourceContainer(series,endOffset);
-			ResourceProducer envelope;
+			ResourceFactory factory;
 	    	if(path.endsWith(".warc.gz") || path.endsWith(".wat.gz")) {
-	    		envelope = new TransformingResourceProducer(prod,wf);
+	    		factory = wf;
 			} else if(path.endsWith(".arc.gz")) {
-				envelope = new TransformingResourceProducer(prod,af);
+				factory = af;
 			} else {
 				throw new IOException("arguments must be arc.gz or warc.gz");
 			}
+
+			// this split holds the members starting in [startOffset,endOffset)
+			long memberOffset = startOffset;
+			if(startOffset > 0) {
+				memberOffset = findMemberStart(fSys, fsPath, startOffset, endOffset);
+				if(memberOffset == -1) {
+					LOG.info(String.format("No record starts in %s [%d,%d)",
+							name, startOffset, endOffset));
+					memberOffset = endOffset;
+				}
+			}
+			stream.setOffset(memberOffset);
+			// only once locating the first member has finished seeking about
+			hdfsStream.setReadAhead(readAhead);
+	    	series = GZIPMemberSeries.startAligned(stream, name, memberOffset, true);
+			GZIPResourceContainer prod = 
+				new GZIPResourceContainer(series,endOffset);
+			ResourceProducer envelope = new TransformingResourceProducer(prod,factory);
+			RecordFilter filter = getRecordFilter(conf);
+			if(filter != null) {
+				filtering = new FilteringResourceProducer(envelope, filter,
+						readRecordIndex(fSys, fsPath));
+				envelope = filtering;
+			}
+			if(context instanceof TaskInputOutputContext) {
+				counters = (TaskInputOutputContext<?,?,?,?>) context;
+				recordsCounter = counters.getCounter(COUNTER_GROUP, RECORDS_COUNTER);
+			}
 	    	ResourceFactoryMapper mapper = new ExtractingResourceFactoryMapper();
 	    	producer = new ExtractingResourceProducer(envelope, mapper);
 
@@ -103,6 +190,76 @@ public class ResourceRecordReader extends RecordReader<ResourceContext, MetaData
 		}
 	}
 
+	/**
+	 * @return the RecordFilter configured by RECORD_FILTER_CLASS, or by
+	 * the RECORD_FILTER_TYPES, RECORD_FILTER_CONTENT_TYPES and
+	 * RECORD_FILTER_MAX_LENGTH properties, or null if none are set
+	 */
+	public static RecordFilter getRecordFilter(Configuration conf) {
+		Class<? extends RecordFilter> filterClass =
+			conf.getClass(RECORD_FILTER_CLASS, null, RecordFilter.class);
+		if(filterClass != null) {
+			return ReflectionUtils.newInstance(filterClass, conf);
+		}
+		String types = conf.get(RECORD_FILTER_TYPES);
+		String contentTypes = conf.get(RECORD_FILTER_CONTENT_TYPES);
+		long maxLength = conf.getLong(RECORD_FILTER_MAX_LENGTH, -1);
+		if((types == null) && (contentTypes == null) && (maxLength < 0)) {
+			return null;
+		}
+		HeaderRecordFilter filter = new HeaderRecordFilter();
+		if(types != null) {
+			filter.setTypes(HeaderRecordFilter.split(types));
+		}
+		if(contentTypes != null) {
+			filter.setContentTypes(HeaderRecordFilter.split(contentTypes));
+		}
+		filter.setMaxLength(maxLength);
+		return filter;
+	}
+
+	/**
+	 * @return the file's RecordIndex, from its sidecar, or null if it has
+	 * no current one
+	 */
+	protected RecordIndex readRecordIndex(FileSystem fSys, Path fsPath) {
+		Path sidecar = new Path(RecordIndex.getSidecarPath(fsPath.toString()));
+		try {
+			if(!fSys.exists(sidecar)) {
+				return null;
+			}
+			RecordIndex index = RecordIndex.read(fSys.open(sidecar));
+			if(index.endsAt(fSys.getFileStatus(fsPath).getLen())) {
+				return index;
+			}
+			LOG.warning("Ignoring stale record index " + sidecar);
+		} catch(IOException e) {
+			LOG.warning("Ignoring record index " + sidecar + ": " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * @return the offset of the first gzip member starting at or after
+	 * startOffset and before endOffset, or -1 if there is none. From the
+	 * file's RecordIndex sidecar if it has a current one, otherwise by
+	 * scanning.
+	 */
+	protected long findMemberStart(FileSystem fSys, Path fsPath,
+			long startOffset, long endOffset) throws IOException {
+		RecordIndex index = readRecordIndex(fSys, fsPath);
+		if(index != null) {
+			int i = index.findAtOrAfter(startOffset);
+			if((i < index.size()) && (index.get(i).getOffset() < endOffset)) {
+				return index.get(i).getOffset();
+			}
+			return -1;
+		}
+		GZIPMemberLocator locator =
+			new GZIPMemberLocator(GZIPMemberLocator.getRecordCheck(name));
+		return locator.findMemberStart(stream, startOffset, endOffset);
+	}
+
 	@Override
 	public boolean nextKeyValue() throws IOException, InterruptedException {
 		// TODO: loop while getting resourceparseexceptions:
@@ -111,8 +268,13 @@ public class ResourceRecordReader extends RecordReader<ResourceContext, MetaData
 			if(r != null) {
 
 				StreamCopy.readToEOF(r.getInputStream());
-				LOG.info(String.format("Extracted offset %d\n", 
-						series.getCurrentMemberStartOffset()));
+				if(LOG.isLoggable(Level.FINE)) {
+					LOG.fine("Extracted offset " + series.getCurrentMemberStartOffset()
+							+ " of " + name);
+				}
+				if(recordsCounter != null) {
+					recordsCounter.increment(1);
+				}
 				cachedK = new ResourceContext(name, 
 						series.getCurrentMemberStartOffset());
 				cachedV = r.getMetaData().getTopMetaData();
@@ -27,13 +27,19 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.text.NumberFormat;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,6 +54,19 @@ import com.google.common.primitives.Ints;
  *
  * For small streams, use {@link InMemoryReplayCharSequence}.
  *
+ * <p>Content beyond the prefix buffer is decoded on demand, a window at a
+ * time, from the recorded bytes, and the last few windows are kept.
+ * Where each window starts, in bytes and in chars, is noted as it is
+ * first decoded, so a later window can be decoded without going through
+ * those before it. Only charsets whose decoding can start again at
+ * such a point are done this way; for the rest, such as those with byte
+ * order marks or shift sequences, the whole content is decoded up front
+ * to a {@link #WRITE_ENCODING} file, which is then memory mapped.
+ *
+ * <p>The bytes after the prefix buffer are copied as they are, once, to a
+ * file of this sequence's own, so it stays valid once the recording it was
+ * made from is closed, or its recorder reused.
+ *
  * <p>Call {@link close()} on this class when done to clean up resources.
  *
  * @contributor stack
@@ -83,6 +102,21 @@ public class GenericReplayCharSequence implements ReplayCharSequence {
      */
     private static final long MAP_TARGET_LEFT_PADDING_BYTES = (long) (MAP_MAX_BYTES * 0.01);
 
+    /**
+     * Chars in each window decoded on demand.
+     */
+    private static final int WINDOW_CHARS = 16 * 1024;
+
+    /**
+     * Number of decoded windows kept.
+     */
+    private static final int CACHED_WINDOWS = 8;
+
+    /**
+     * Bytes read at a time, decoding.
+     */
+    private static final int READ_BYTES = 8 * 1024;
+
     /**
      * Total length of character stream to replay minus the HTTP headers
      * if present. 
@@ -130,6 +164,51 @@ public class GenericReplayCharSequence implements ReplayCharSequence {
     private boolean isOpen = true;
 
     protected Charset charset = null; 
+
+    /**
+     * Bytes of the content after the prefix buffer, decoded on demand,
+     * when not decoded to decodedFile.
+     */
+    private SeekInputStream tailSource = null;
+
+    /**
+     * Private copy of the bytes after the prefix buffer, read through
+     * tailSource. Kept so we can remove on close.
+     */
+    private File tailFile = null;
+
+    /**
+     * Chars after the prefix buffer, or -1 until every window is indexed.
+     */
+    private long tailLength = -1;
+
+    /**
+     * True if every byte decodes to one char, so windows need no index.
+     */
+    private boolean singleByte;
+
+    /**
+     * True if the charset is UTF-8, so windows can be indexed by counting
+     * chars rather than decoding them.
+     */
+    private boolean utf8;
+
+    /**
+     * Byte and char offsets, after the prefix buffer, at which each
+     * window found so far starts.
+     */
+    private long[] windowBytes;
+    private long[] windowChars;
+    private int windowCount;
+
+    private CharsetDecoder decoder;
+    private ByteBuffer readBuffer;
+    /** whether the last decode() reached the end of its input */
+    private boolean decodedToEnd;
+
+    private Window[] windows;
+    private Window currentWindow;
+    private long windowUses;
     
     /**
      * Constructor.
@@ -153,6 +232,11 @@ public class GenericReplayCharSequence implements ReplayCharSequence {
         if(charset==null) {
             charset = ReplayCharSequence.FALLBACK_CHARSET;
         }
+        if (canDecodeOnDemand(charset)) {
+            decodeOnDemand(contentReplayInputStream, prefixMax,
+                    backingFilename, charset);
+            return;
+        }
         // decodes only up to Integer.MAX_VALUE characters
         decode(contentReplayInputStream, prefixMax, backingFilename, charset);
 
@@ -192,6 +276,352 @@ public class GenericReplayCharSequence implements ReplayCharSequence {
         }
     }
 
+    /**
+     * @return True if decoding charset can start again, with a fresh
+     * decoder, anywhere a previous decoding stopped between chars: true of
+     * single byte charsets and of the common multibyte ones, which keep
+     * no state but a partial char.
+     */
+    protected static boolean canDecodeOnDemand(Charset charset) {
+        if (isSingleByte(charset)) {
+            return true;
+        }
+        String name = charset.name();
+        return name.equals("UTF-8") || name.equals("UTF-16BE")
+            || name.equals("UTF-16LE") || name.equals("UTF-32BE")
+            || name.equals("UTF-32LE") || name.equals("Shift_JIS")
+            || name.equals("windows-31j") || name.equals("EUC-JP")
+            || name.equals("EUC-KR") || name.equals("GBK")
+            || name.equals("GB2312") || name.equals("GB18030")
+            || name.equals("Big5") || name.equals("Big5-HKSCS");
+    }
+
+    private static boolean isSingleByte(Charset charset) {
+        return charset.canEncode()
+            && charset.newEncoder().maxBytesPerChar() == 1.0f
+            && charset.newDecoder().maxCharsPerByte() == 1.0f;
+    }
+
+    /**
+     * Decodes the first <code>prefixMax</code> characters to the prefix
+     * buffer. If there are more, copies their bytes to a new file next to
+     * <code>backingFilename</code>, ending ".content", to decode them on
+     * demand. The copy, rather than the recording, is read from then on,
+     * as the recording may be overwritten while this is still in use.
+     *
+     * @throws IOException
+     */
+    protected void decodeOnDemand(InputStream inStream, int prefixMax,
+            String backingFilename, Charset charset) throws IOException {
+        this.charset = charset;
+        this.decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.readBuffer = ByteBuffer.allocate(READ_BYTES);
+        this.prefixBuffer = CharBuffer.allocate(prefixMax);
+
+        decode(inStream, readBuffer, prefixBuffer);
+        // may stop short of prefixMax, rather than split a surrogate pair
+        prefixBuffer.limit(prefixBuffer.position());
+        if (decodedToEnd) {
+            this.tailLength = 0;
+            setLength();
+            return;
+        }
+
+        File backingFile = new File(backingFilename);
+        this.tailFile = File.createTempFile(backingFile.getName() + ".",
+                ".content", backingFile.getAbsoluteFile().getParentFile());
+        OutputStream out = new FileOutputStream(tailFile);
+        try {
+            readBuffer.flip();
+            out.write(readBuffer.array(), readBuffer.position(),
+                    readBuffer.remaining());
+            IOUtils.copyLarge(inStream, out);
+        } finally {
+            out.close();
+        }
+        inStream.close();
+        this.tailSource = new RandomAccessInputStream(tailFile);
+        long tailBytes = tailFile.length();
+
+        this.windows = new Window[CACHED_WINDOWS];
+        this.singleByte = isSingleByte(charset);
+        this.utf8 = charset.name().equals("UTF-8");
+        if (singleByte) {
+            this.tailLength = tailBytes;
+            setLength();
+        } else {
+            this.windowBytes = new long[16];
+            this.windowChars = new long[16];
+            this.windowCount = 1;
+            this.length = -1;
+        }
+        logger.fine("decodeOnDemand: decoded " + prefixBuffer.position()
+                + " characters, " + tailBytes + " bytes more on demand");
+    }
+
+    private void setLength() {
+        long count = prefixBuffer.position() + tailLength;
+        this.length = Ints.saturatedCast(count);
+        if(count>Integer.MAX_VALUE) {
+            logger.warning("input stream is longer than Integer.MAX_VALUE="
+                    + NumberFormat.getInstance().format(Integer.MAX_VALUE)
+                    + " characters -- only first "
+                    + NumberFormat.getInstance().format(Integer.MAX_VALUE)
+                    + " are accessible through this GenericReplayCharSequence");
+        }
+    }
+
+    /**
+     * Decode bytes, those left in <code>bytes</code> and then those read
+     * from <code>source</code>, until <code>chars</code> is full or the
+     * source ends, which sets decodedToEnd. Bytes read but not decoded are
+     * left in <code>bytes</code>.
+     *
+     * @return Number of bytes decoded.
+     */
+    private long decode(InputStream source, ByteBuffer bytes, CharBuffer chars)
+    throws IOException {
+        decoder.reset();
+        decodedToEnd = false;
+        long decoded = 0;
+        boolean eof = false;
+        while (true) {
+            if (!eof && bytes.hasRemaining()) {
+                int read = source.read(bytes.array(), bytes.position(),
+                        bytes.remaining());
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    bytes.position(bytes.position() + read);
+                }
+            }
+            bytes.flip();
+            int before = bytes.position();
+            CoderResult result = decoder.decode(bytes, chars, eof);
+            decoded += bytes.position() - before;
+            bytes.compact();
+            if (result.isOverflow()) {
+                return decoded;
+            }
+            if (eof) {
+                decoder.flush(chars);
+                decodedToEnd = true;
+                return decoded;
+            }
+        }
+    }
+
+    /**
+     * Window of chars decoded on demand
+     */
+    private static class Window {
+        int number = -1;
+        long start;
+        char[] chars = new char[WINDOW_CHARS];
+        int length;
+        long lastUse;
+    }
+
+    /**
+     * @return The window holding the char at <code>tailIndex</code>, after
+     * the prefix buffer, or null if there is none.
+     */
+    private Window window(long tailIndex) throws IOException {
+        Window w = currentWindow;
+        if (w != null && tailIndex >= w.start && tailIndex < w.start + w.length) {
+            return w;
+        }
+        if (tailLength >= 0 && tailIndex >= tailLength) {
+            return null;
+        }
+        int number;
+        if (singleByte) {
+            number = Ints.checkedCast(tailIndex / WINDOW_CHARS);
+        } else {
+            // index windows forward until reaching this one
+            while (tailLength < 0 && tailIndex >= windowChars[windowCount - 1]) {
+                w = cachedWindow(windowCount - 1);
+                if (tailIndex < w.start + w.length) {
+                    return currentWindow = w;
+                }
+                if (tailLength >= 0 && tailIndex >= tailLength) {
+                    return null;
+                }
+            }
+            number = Arrays.binarySearch(windowChars, 0, windowCount, tailIndex);
+            if (number < 0) {
+                number = -number - 2;
+            }
+        }
+        return currentWindow = cachedWindow(number);
+    }
+
+    private Window cachedWindow(int number) throws IOException {
+        Window lru = null;
+        for (int i = 0; i < windows.length; i++) {
+            Window w = windows[i];
+            if (w == null) {
+                w = windows[i] = new Window();
+            }
+            if (w.number == number) {
+                w.lastUse = ++windowUses;
+                return w;
+            }
+            if (lru == null || w.lastUse < lru.lastUse) {
+                lru = w;
+            }
+        }
+        decodeWindow(number, lru);
+        lru.lastUse = ++windowUses;
+        return lru;
+    }
+
+    private void decodeWindow(int number, Window w) throws IOException {
+        long byteStart;
+        if (singleByte) {
+            byteStart = (long) number * WINDOW_CHARS;
+            w.start = byteStart;
+        } else {
+            byteStart = windowBytes[number];
+            w.start = windowChars[number];
+        }
+        w.number = number;
+        tailSource.position(byteStart);
+        readBuffer.clear();
+        CharBuffer chars = CharBuffer.wrap(w.chars);
+        long decoded = decode(tailSource, readBuffer, chars);
+        w.length = chars.position();
+
+        if (!singleByte && number == windowCount - 1 && tailLength < 0) {
+            if (decodedToEnd) {
+                tailLength = w.start + w.length;
+                setLength();
+            } else {
+                addWindow(byteStart + decoded, w.start + w.length);
+            }
+        }
+    }
+
+    /**
+     * Index the window after those indexed so far. Well formed UTF-8 is
+     * only counted, stopping where the decoder would; otherwise the window
+     * is decoded.
+     */
+    private void indexWindow() throws IOException {
+        int number = windowCount - 1;
+        if (!utf8) {
+            cachedWindow(number);
+            return;
+        }
+        long byteStart = windowBytes[number];
+        long charStart = windowChars[number];
+        tailSource.position(byteStart);
+        readBuffer.clear();
+        long bytes = 0;
+        int chars = 0;
+        boolean eof = false;
+        while (true) {
+            if (!eof && readBuffer.hasRemaining()) {
+                int read = tailSource.read(readBuffer.array(),
+                        readBuffer.position(), readBuffer.remaining());
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    readBuffer.position(readBuffer.position() + read);
+                }
+            }
+            byte[] b = readBuffer.array();
+            int end = readBuffer.position();
+            int i = 0;
+            while (i < end) {
+                int n = utf8Length(b, i, end);
+                if (n == 0) {
+                    // split by the end of what has been read
+                    break;
+                }
+                if (n < 0) {
+                    cachedWindow(number);
+                    return;
+                }
+                int units = n == 4 ? 2 : 1;
+                if (chars + units > WINDOW_CHARS) {
+                    addWindow(byteStart + bytes, charStart + chars);
+                    return;
+                }
+                i += n;
+                bytes += n;
+                chars += units;
+            }
+            readBuffer.limit(end);
+            readBuffer.position(i);
+            readBuffer.compact();
+            if (eof) {
+                if (readBuffer.position() > 0) {
+                    // ends part way through a char
+                    cachedWindow(number);
+                    return;
+                }
+                tailLength = charStart + chars;
+                setLength();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Length of the well formed UTF-8 sequence at <code>b[i]</code>,
+     * 0 if it runs past <code>end</code>, or -1 if it is malformed
+     */
+    private static int utf8Length(byte[] b, int i, int end) {
+        int c = b[i] & 0xff;
+        int n;
+        int min2 = 0x80;
+        int max2 = 0xbf;
+        if (c < 0x80) {
+            return 1;
+        } else if (c >= 0xc2 && c <= 0xdf) {
+            n = 2;
+        } else if (c >= 0xe0 && c <= 0xef) {
+            n = 3;
+            if (c == 0xe0) {
+                min2 = 0xa0;
+            } else if (c == 0xed) {
+                max2 = 0x9f;
+            }
+        } else if (c >= 0xf0 && c <= 0xf4) {
+            n = 4;
+            if (c == 0xf0) {
+                min2 = 0x90;
+            } else if (c == 0xf4) {
+                max2 = 0x8f;
+            }
+        } else {
+            return -1;
+        }
+        for (int j = 1; j < n; j++) {
+            if (i + j >= end) {
+                return 0;
+            }
+            int cc = b[i + j] & 0xff;
+            if (j == 1 ? (cc < min2 || cc > max2) : (cc < 0x80 || cc > 0xbf)) {
+                return -1;
+            }
+        }
+        return n;
+    }
+
+    private void addWindow(long byteStart, long charStart) {
+        if (windowCount == windowBytes.length) {
+            windowBytes = Arrays.copyOf(windowBytes, windowCount * 2);
+            windowChars = Arrays.copyOf(windowChars, windowCount * 2);
+        }
+        windowBytes[windowCount] = byteStart;
+        windowChars[windowCount] = charStart;
+        windowCount++;
+    }
+
     /**
      * Converts the first <code>Integer.MAX_VALUE</code> characters from the
      * file <code>backingFilename</code> from encoding <code>encoding</code> to
@@ -274,7 +704,7 @@ public class GenericReplayCharSequence implements ReplayCharSequence {
      * @return Character at offset <code>index</code>.
      */
     public char charAt(int index) {
-        if (index < 0 || index >= this.length()) {
+        if (index < 0 || (length >= 0 && index >= length)) {
             throw new IndexOutOfBoundsException("index=" + index
                     + " - should be between 0 and length()=" + this.length());
         }
@@ -284,6 +714,22 @@ public class GenericReplayCharSequence implements ReplayCharSequence {
             return prefixBuffer.get(index);
         }
 
+        if (tailSource != null) {
+            // decode its window if need be
+            long tailIndex = (long) index - (long) prefixBuffer.limit();
+            Window w;
+            try {
+                w = window(tailIndex);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            if (w == null) {
+                throw new IndexOutOfBoundsException("index=" + index
+                        + " - should be between 0 and length()=" + this.length());
+            }
+            return w.chars[(int) (tailIndex - w.start)];
+        }
+
         // otherwise we gotta get it from disk via memory map
         long charFileIndex = (long) index - (long) prefixBuffer.limit();
         long charFileLength = (long) this.length() - (long) prefixBuffer.limit(); // in characters
@@ -347,8 +793,16 @@ public class GenericReplayCharSequence implements ReplayCharSequence {
         if (backingFileIn != null) {
             backingFileIn.close();
         }
+        if (tailSource != null) {
+            tailSource.close();
+            tailSource = null;
+        }
+        windows = null;
+        currentWindow = null;
 
         deleteFile(this.decodedFile);
+        deleteFile(this.tailFile);
+        this.tailFile = null;
 
         // clear decodedFile -- so that double-close (as in finalize()) won't
         // delete a later instance with same name see bug [ 1218961 ]
@@ -383,6 +837,16 @@ public class GenericReplayCharSequence implements ReplayCharSequence {
     }
 
     public int length() {
+        if (length < 0) {
+            // count the chars, indexing the windows
+            try {
+                while (tailLength < 0) {
+                    indexWindow();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
         return length;
     }
 
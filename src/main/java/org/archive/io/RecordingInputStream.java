@@ -304,6 +304,65 @@ public class RecordingInputStream
         return this.recordingOutputStream.getResponseContentLength();
     }
 
+    /**
+     * Sets a digest algorithm applied to everything read, from the start.
+     * Set before reading.
+     *
+     * @param algorithm Message digest algorithm to use, or null for none.
+     */
+    public void setBlockDigest(String algorithm) {
+        this.recordingOutputStream.setBlockDigest(algorithm);
+    }
+
+    /**
+     * Return the digest of everything read, if a block digest was set.
+     * Call only after all data has been recorded.
+     *
+     * @return the block digest final value
+     */
+    public byte[] getBlockDigestValue() {
+        return this.recordingOutputStream.getBlockDigestValue();
+    }
+
+    /**
+     * Sets a digest algorithm applied to the content less any chunked
+     * transfer-coding. Set before reading.
+     *
+     * @param algorithm Message digest algorithm to use, or null for none.
+     */
+    public void setPayloadDigest(String algorithm) {
+        this.recordingOutputStream.setPayloadDigest(algorithm);
+    }
+
+    /**
+     * Return the digest of the content less any chunked transfer-coding,
+     * if a payload digest was set. Call only after all data has been
+     * recorded.
+     *
+     * @return the payload digest final value
+     */
+    public byte[] getPayloadDigestValue() {
+        return this.recordingOutputStream.getPayloadDigestValue();
+    }
+
+    /**
+     * Declare whether the content has chunked transfer-coding, so the
+     * payload digest and entity length cover only the chunk data. The
+     * digest set by {@link #setDigest(String)} is not affected.
+     *
+     * @param chunked True if the content is chunked.
+     */
+    public void setContentChunked(boolean chunked) {
+        this.recordingOutputStream.setMessageBodyChunked(chunked);
+    }
+
+    /**
+     * @return Length of the content less any chunked transfer-coding.
+     */
+    public long getEntityLength() {
+        return this.recordingOutputStream.getEntityLength();
+    }
+
     public void closeRecorder() throws IOException {
         this.recordingOutputStream.closeRecorder();
     }
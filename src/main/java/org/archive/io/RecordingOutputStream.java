@@ -105,6 +105,40 @@ public class RecordingOutputStream extends OutputStream {
      */
     private MessageDigest digest = null;
 
+    /**
+     * Digest of everything recorded, from the start, if set.
+     */
+    private MessageDigest blockDigest = null;
+
+    /**
+     * Digest of the entity, the message body less any chunked
+     * transfer-coding, if set. Separate from digest, which always covers
+     * the raw bytes from startDigest().
+     */
+    private MessageDigest payloadDigest = null;
+
+    /**
+     * True if the message body has chunked transfer-coding, so only the
+     * chunk data, the entity, is payload digested.
+     */
+    private boolean messageBodyChunked = false;
+
+    /**
+     * Decodes the chunked message body as it is recorded.
+     */
+    private ChunkDecoder chunkDecoder = new ChunkDecoder();
+
+    /**
+     * True if the running payload digest missed, or could not decode, some
+     * of the message body, and has to be redone from the recording.
+     */
+    private boolean payloadStale = false;
+
+    /**
+     * Reusable buffer for recording single bytes through the chunk decoder.
+     */
+    private byte[] oneByte = new byte[1];
+
     /**
      * Define for SHA1 algarithm.
      */
@@ -273,6 +307,13 @@ public class RecordingOutputStream extends OutputStream {
         if (this.shouldDigest) {
             this.digest.update((byte)b);
         }
+        if (this.blockDigest != null) {
+            this.blockDigest.update((byte)b);
+        }
+        if (this.payloadDigest != null) {
+            this.oneByte[0] = (byte)b;
+            updatePayload(this.oneByte, 0, 1);
+        }
         if (this.position >= this.buffer.length) {
             // TODO: Its possible to call write w/o having first opened a
             // stream.  Protect ourselves against this.
@@ -298,9 +339,38 @@ public class RecordingOutputStream extends OutputStream {
             assert this.digest != null: "Digest is null.";
             this.digest.update(b, off, len);
         }
+        if (this.blockDigest != null) {
+            this.blockDigest.update(b, off, len);
+        }
+        if (this.payloadDigest != null) {
+            updatePayload(b, off, len);
+        }
         tailRecord(b, off, len);
     }
 
+    /**
+     * Payload digest the part of the given range in the message body,
+     * through the chunk decoder if it is chunked.
+     */
+    private void updatePayload(byte[] b, int off, int len) {
+        if (this.messageBodyBeginMark < 0 || this.payloadStale) {
+            return;
+        }
+        if (this.position < this.messageBodyBeginMark) {
+            int skip = (int)Math.min(this.messageBodyBeginMark - this.position, len);
+            off += skip;
+            len -= skip;
+        }
+        if (len <= 0) {
+            return;
+        }
+        if (!this.messageBodyChunked) {
+            this.payloadDigest.update(b, off, len);
+        } else if (!this.chunkDecoder.update(b, off, len, this.payloadDigest)) {
+            this.payloadStale = true;
+        }
+    }
+
     /**
      * Record without digesting.
      * 
@@ -411,6 +481,11 @@ public class RecordingOutputStream extends OutputStream {
      */
     public void markMessageBodyBegin() {
         this.messageBodyBeginMark = this.position;
+        this.chunkDecoder.reset();
+        if (this.payloadDigest != null) {
+            this.payloadDigest.reset();
+        }
+        this.payloadStale = false;
         startDigest();
     }
 
@@ -432,6 +507,34 @@ public class RecordingOutputStream extends OutputStream {
         }
     }
 
+    /**
+     * Declare whether the message body has chunked transfer-coding. If
+     * so, the payload digest and {@link #getEntityLength()} cover only the
+     * chunk data, decoded as it is recorded. If this is only learned once
+     * some of the message body has been recorded, they are worked out from
+     * the recording when asked for. The digest set by
+     * {@link #setDigest(String)} is not affected.
+     *
+     * @param chunked True if the message body is chunked.
+     */
+    public void setMessageBodyChunked(boolean chunked) {
+        if (chunked == this.messageBodyChunked) {
+            return;
+        }
+        this.messageBodyChunked = chunked;
+        if (this.messageBodyBeginMark >= 0
+                && this.position > this.messageBodyBeginMark) {
+            this.payloadStale = true;
+        }
+    }
+
+    /**
+     * @return True if the message body is chunked.
+     */
+    public boolean isMessageBodyChunked() {
+        return this.messageBodyChunked;
+    }
+
     /**
      * Convenience method for setting SHA1 digest.
      * @see #setDigest(String)
@@ -488,6 +591,153 @@ public class RecordingOutputStream extends OutputStream {
         return this.digest.digest();
     }
 
+    /**
+     * Sets a digest function applied to the entity: the message body, from
+     * {@link #markMessageBodyBegin()}, less any chunked transfer-coding.
+     * Unlike {@link #setDigest(String)}, it need not be started.
+     *
+     * @param algorithm Message digest algorithm to use, or null for none.
+     */
+    public void setPayloadDigest(String algorithm) {
+        try {
+            if (algorithm == null) {
+                this.payloadDigest = null;
+            } else if (this.payloadDigest == null ||
+                    !this.payloadDigest.getAlgorithm().equals(algorithm)) {
+                this.payloadDigest = MessageDigest.getInstance(algorithm);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Return the digest of the entity, if a payload digest was set before
+     * recording began. Call only after all data has been recorded. If the
+     * chunked message body is malformed, this is the digest of the raw
+     * message body.
+     *
+     * @return the payload digest final value
+     */
+    public byte[] getPayloadDigestValue() {
+        if (this.payloadDigest == null) {
+            return null;
+        }
+        if (this.payloadStale || this.chunkDecoder.failed()) {
+            try {
+                redigestPayload();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "unable to digest recording", e);
+            }
+        }
+        return this.payloadDigest.digest();
+    }
+
+    /**
+     * Payload digest again, from the recording: the chunk data if the
+     * message body is chunked and decodes, otherwise all of it.
+     */
+    private void redigestPayload() throws IOException {
+        this.payloadDigest.reset();
+        this.chunkDecoder.reset();
+        if (this.messageBodyBeginMark >= 0) {
+            boolean decoded = this.messageBodyChunked
+                && replayBody(this.payloadDigest, true);
+            if (!decoded) {
+                this.payloadDigest.reset();
+                replayBody(this.payloadDigest, false);
+            }
+        }
+        this.payloadStale = false;
+    }
+
+    /**
+     * Pass the recorded message body to md, through the chunk decoder if
+     * chunked.
+     *
+     * @return false if the chunking is malformed
+     */
+    private boolean replayBody(MessageDigest md, boolean chunked)
+    throws IOException {
+        flush();
+        long recorded = Math.max(this.position, this.maxPosition);
+        ReplayInputStream replay = new ReplayInputStream(this.buffer,
+            recorded, this.backingFilename);
+        try {
+            replay.position(this.messageBodyBeginMark);
+            byte[] buf = new byte[16 * 1024];
+            int count;
+            while ((count = replay.read(buf, 0, buf.length)) != -1) {
+                if (!chunked) {
+                    md.update(buf, 0, count);
+                } else if (!this.chunkDecoder.update(buf, 0, count, md)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            replay.close();
+        }
+    }
+
+    /**
+     * Sets a digest function applied to everything recorded from the
+     * start, such as the block digest of a WARC record, so it need not
+     * be worked out by replaying the recording.
+     *
+     * @param algorithm Message digest algorithm to use, or null for none.
+     */
+    public void setBlockDigest(String algorithm) {
+        try {
+            if (algorithm == null) {
+                this.blockDigest = null;
+            } else if (this.blockDigest == null ||
+                    !this.blockDigest.getAlgorithm().equals(algorithm)) {
+                this.blockDigest = MessageDigest.getInstance(algorithm);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Return the digest of everything recorded, if a block digest was set
+     * before recording began. Call only after all data has been recorded.
+     *
+     * @return the block digest final value
+     */
+    public byte[] getBlockDigestValue() {
+        if (this.blockDigest == null) {
+            return null;
+        }
+        return this.blockDigest.digest();
+    }
+
+    /**
+     * @return Length of the entity: the message body, less any chunked
+     * transfer-coding.
+     */
+    public long getEntityLength() {
+        if (!this.messageBodyChunked || this.messageBodyBeginMark < 0) {
+            return getResponseContentLength();
+        }
+        if (this.payloadDigest == null || this.payloadStale) {
+            // not decoded as recorded
+            this.chunkDecoder.reset();
+            try {
+                if (!replayBody(null, true)) {
+                    return getResponseContentLength();
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "unable to decode recording", e);
+                return getResponseContentLength();
+            }
+        } else if (this.chunkDecoder.failed()) {
+            return getResponseContentLength();
+        }
+        return this.chunkDecoder.getEntityLength();
+    }
+
     public long getResponseContentLength() {
         return this.size - this.messageBodyBeginMark;
     }
@@ -568,9 +818,126 @@ public class RecordingOutputStream extends OutputStream {
         this.recording = true;
         // Always begins false; must use startDigest() to begin
         this.shouldDigest = false;
+        this.payloadStale = false;
+        this.messageBodyChunked = false;
+        this.chunkDecoder.reset();
+        if (this.blockDigest != null) {
+            this.blockDigest.reset();
+        }
+        if (this.payloadDigest != null) {
+            this.payloadDigest.reset();
+        }
         if (this.diskStream != null) {
             closeDiskStream();
         }
     }
-}
 
+    /**
+     * Decodes chunked transfer-coding a piece at a time, as recorded,
+     * passing the chunk data to a digest and counting it. Stops at the
+     * end of the trailer; fails, and stays failed, on a malformed chunk.
+     */
+    private static class ChunkDecoder {
+        private static final int SIZE = 0;
+        private static final int DATA = 1;
+        private static final int DATA_CR = 2;
+        private static final int DATA_LF = 3;
+        private static final int TRAILER = 4;
+        private static final int DONE = 5;
+        private static final int FAILED = 6;
+
+        /** Longest chunk size or trailer line to accept */
+        private static final int MAX_LINE = 8 * 1024;
+
+        private int state;
+        private StringBuilder line = new StringBuilder();
+        private long remaining;
+        private long entityLength;
+
+        void reset() {
+            state = SIZE;
+            line.setLength(0);
+            remaining = 0;
+            entityLength = 0;
+        }
+
+        boolean failed() {
+            return state == FAILED;
+        }
+
+        long getEntityLength() {
+            return entityLength;
+        }
+
+        /**
+         * @return false if the chunking is malformed
+         */
+        boolean update(byte[] b, int off, int len, MessageDigest digest) {
+            int end = off + len;
+            while (off < end) {
+                switch (state) {
+                case DATA:
+                    int n = (int)Math.min(remaining, end - off);
+                    if (digest != null) {
+                        digest.update(b, off, n);
+                    }
+                    entityLength += n;
+                    remaining -= n;
+                    off += n;
+                    if (remaining == 0) {
+                        state = DATA_CR;
+                    }
+                    break;
+                case DATA_CR:
+                    state = b[off++] == '\r' ? DATA_LF : FAILED;
+                    break;
+                case DATA_LF:
+                    state = b[off++] == '\n' ? SIZE : FAILED;
+                    break;
+                case SIZE:
+                case TRAILER:
+                    byte c = b[off++];
+                    if (c != '\n') {
+                        if (c != '\r') {
+                            line.append((char)(c & 0xff));
+                        }
+                        if (line.length() > MAX_LINE) {
+                            state = FAILED;
+                        }
+                        break;
+                    }
+                    if (state == TRAILER) {
+                        if (line.length() == 0) {
+                            state = DONE;
+                        }
+                    } else {
+                        endSizeLine();
+                    }
+                    line.setLength(0);
+                    break;
+                case DONE:
+                    return true;
+                default:
+                    return false;
+                }
+            }
+            return state != FAILED;
+        }
+
+        private void endSizeLine() {
+            int ext = line.indexOf(";");
+            String hex = (ext < 0 ? line.toString() : line.substring(0, ext)).trim();
+            try {
+                remaining = Long.parseLong(hex, 16);
+            } catch (NumberFormatException e) {
+                state = FAILED;
+                return;
+            }
+            if (remaining < 0) {
+                state = FAILED;
+            } else {
+                state = remaining == 0 ? TRAILER : DATA;
+            }
+        }
+    }
+}
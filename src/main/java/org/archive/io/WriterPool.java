@@ -25,8 +25,11 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,6 +43,16 @@ import org.json.JSONObject;
  * Abstract. Override and pass in the Constructor a factory that creates
  * {@link WriterPoolMember} implementations.
  * 
+ * <p>By default idle writers wait in a fair queue, so each borrow gets the
+ * writer idle longest. With {@link #setThreadAffinity(boolean)}, idle
+ * writers instead sit in slots claimed by compare-and-set, and a borrower
+ * gets back the writer it last had if that is idle, keeping each writer's
+ * buffers with one thread. With {@link #setMaxActiveCeiling(int)},
+ * maxActive grows while borrowers are waiting, up to the ceiling.
+ * 
+ * <p>Borrow waits and writer occupancy are reported by
+ * {@link #jsonMetrics()} and {@link #jsonStatus()}.
+ * 
  * @author stack
  */
 public abstract class WriterPool {
@@ -84,6 +97,47 @@ public abstract class WriterPool {
     protected long lastWriterNeededTime;
     /** system time when writer was last 'rolled over' (imminent creation of new file) */ 
     protected long lastWriterRolloverTime; 
+
+    /**
+     * Writer demand and rollover events, numbered in the order they
+     * happen, which decide whether to retire an oversize writer; unlike
+     * the times above, two events in the same millisecond still have an
+     * order. Only read/mutated in synchronized blocks.
+     */
+    private long poolEvents = 0;
+    private long lastWriterNeededEvent = 0;
+    private long lastWriterRolloverEvent = 0;
+
+    /** whether a borrower gets back the writer it last had, if idle */
+    private volatile boolean threadAffinity = false;
+    /** idle writers, when threadAffinity is on */
+    private AtomicReferenceArray<WriterPoolMember> idleSlots = null;
+    /** number of writers in idleSlots */
+    private Semaphore idleCount = null;
+    /** slot of the writer each thread last borrowed or returned */
+    private final ThreadLocal<int[]> lastSlot = new ThreadLocal<int[]>() {
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    /** maxActive as configured */
+    protected final int initialMaxActive;
+    /** maxActive may grow up to this, if above it, while borrowers wait */
+    protected int maxActiveCeiling = 0;
+
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong borrowWaitNanos = new AtomicLong();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+    /**
+     * moving average of borrow waits, each weighing 1/8, including the
+     * waits so far of borrowers not yet given a writer
+     */
+    private final AtomicLong recentBorrowWaitNanos = new AtomicLong();
+    /** borrows which waited maxWait for an idle writer */
+    private final AtomicLong writersNeeded = new AtomicLong();
+    private final AtomicLong writersCreated = new AtomicLong();
+    private final AtomicLong writersClosed = new AtomicLong();
     
     /**
      * Constructor
@@ -105,6 +159,7 @@ public abstract class WriterPool {
                 ", maxWait=" + poolMaximumWait);
         this.settings = settings;
         this.maxActive = poolMaximumActive;
+        this.initialMaxActive = poolMaximumActive;
         this.maxWait = poolMaximumWait;
         availableWriters = new ArrayBlockingQueue<WriterPoolMember>(LARGEST_MAX_ACTIVE, true);
         this.serialNo = serial;
@@ -124,20 +179,107 @@ public abstract class WriterPool {
 	 */
     public WriterPoolMember borrowFile()
     throws IOException {
+        long start = System.nanoTime();
         WriterPoolMember writer = null;
         while(writer == null) {
             try {
-                writer = availableWriters.poll(maxWait,TimeUnit.MILLISECONDS);
+                writer = takeIdleWriter(maxWait,TimeUnit.MILLISECONDS);
             } catch (InterruptedException e) {
                 // nothing to do but proceed
             }
             if(writer==null) {
+                // a borrower still waiting counts toward recent waits too
+                noteWait(System.nanoTime() - start);
                 writer = makeNewWriterIfAppropriate(); 
             }
         }
+        noteBorrowed(writer, System.nanoTime() - start);
         return writer;
     }
 
+    private void noteWait(long waitNanos) {
+        long recent;
+        do {
+            recent = recentBorrowWaitNanos.get();
+        } while(!recentBorrowWaitNanos.compareAndSet(recent,
+                recent + (waitNanos - recent) / 8));
+    }
+
+    private void noteBorrowed(WriterPoolMember writer, long waitNanos) {
+        borrows.incrementAndGet();
+        borrowWaitNanos.addAndGet(waitNanos);
+        long max;
+        while(waitNanos > (max = maxBorrowWaitNanos.get())
+                && !maxBorrowWaitNanos.compareAndSet(max, waitNanos)) {
+        }
+        noteWait(waitNanos);
+        writer.poolBorrows++;
+        writer.poolBorrowedAt = System.nanoTime();
+    }
+
+    private void noteReturned(WriterPoolMember writer) {
+        writer.poolBusyNanos += System.nanoTime() - writer.poolBorrowedAt;
+    }
+
+    /**
+     * Take an idle writer, waiting up to timeout for one
+     * @return the writer, or null if none became idle in time
+     */
+    protected WriterPoolMember takeIdleWriter(long timeout, TimeUnit unit)
+    throws InterruptedException {
+        if(!threadAffinity) {
+            return availableWriters.poll(timeout, unit);
+        }
+        if(!idleCount.tryAcquire(timeout, unit)) {
+            return null;
+        }
+        // holding a permit, there is a writer for us in some slot: look
+        // first where this thread's last writer was returned
+        int[] last = lastSlot.get();
+        int n = idleSlots.length();
+        for(int slot = last[0]; ; slot = (slot + 1) % n) {
+            WriterPoolMember writer = idleSlots.get(slot);
+            if(writer != null && idleSlots.compareAndSet(slot, writer, null)) {
+                last[0] = slot;
+                return writer;
+            }
+        }
+    }
+
+    /**
+     * Make a writer available to borrowers
+     * @return false if the pool is full
+     */
+    protected boolean offerIdleWriter(WriterPoolMember writer) {
+        if(!threadAffinity) {
+            return availableWriters.offer(writer);
+        }
+        // the returning thread's slot is usually the one it emptied;
+        // wherever the writer goes, the thread looks there first next time
+        int[] last = lastSlot.get();
+        int n = idleSlots.length();
+        for(int i = 0; i < n; i++) {
+            int slot = (last[0] + i) % n;
+            if(idleSlots.compareAndSet(slot, null, writer)) {
+                last[0] = slot;
+                idleCount.release();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Make writers taken by {@link #drainAllWriters()} available again
+     */
+    protected void restoreWriters(Collection<WriterPoolMember> writers) {
+        for (WriterPoolMember writer: writers) {
+            if(!offerIdleWriter(writer)) {
+                logger.log(Level.WARNING, "writer unreturnable to available pool");
+            }
+        }
+    }
+
 	/**
 	 * Create a new writer instance, if still below maxActive count. 
 	 * Remember times to help make later decision when writer should 
@@ -148,14 +290,33 @@ public abstract class WriterPool {
 	protected synchronized WriterPoolMember makeNewWriterIfAppropriate() {
 	    long now = System.currentTimeMillis();
 	    lastWriterNeededTime = now; 
+	    lastWriterNeededEvent = ++poolEvents;
+	    writersNeeded.incrementAndGet();
+	    if(currentActive >= maxActive && maxActive < maxActiveCeiling
+	            && recentBorrowWaitNanos.get() >= getBorrowWaitTarget()) {
+	        maxActive++;
+	        logger.info("Raised maxActive to " + maxActive + ", recent borrow wait "
+	                + TimeUnit.NANOSECONDS.toMillis(recentBorrowWaitNanos.get()) + "ms");
+	    }
         if(currentActive < maxActive) {
             currentActive++;
             lastWriterRolloverTime = now; 
+            lastWriterRolloverEvent = ++poolEvents;
+            writersCreated.incrementAndGet();
             return makeWriter(); 
         }
         return null; 
     }
 
+    /**
+     * @return recent average borrow wait, in nanoseconds, above which
+     * maxActive grows toward maxActiveCeiling: half of maxWait, so about
+     * half of borrows are waiting the whole maxWait for an idle writer
+     */
+    protected long getBorrowWaitTarget() {
+        return TimeUnit.MILLISECONDS.toNanos(maxWait) / 2;
+    }
+
     /**
      * @return new WriterPoolMember of appropriate type
      */
@@ -169,6 +330,7 @@ public abstract class WriterPool {
      */
     public synchronized void destroyWriter(WriterPoolMember writer) throws IOException {
         currentActive--; 
+        writersClosed.incrementAndGet();
         writer.close();
     }
     /**
@@ -181,20 +343,28 @@ public abstract class WriterPool {
 	 */
     public void returnFile(WriterPoolMember writer)
     throws IOException {
-        synchronized(this) {
-            if(writer.isOversize()) {
+        noteReturned(writer);
+        // only the returning thread uses writer, so no need to lock the
+        // pool unless it is oversize
+        if(writer.isOversize()) {
+            synchronized(this) {
             // maybe retire writer rather than recycle
-                if(lastWriterNeededTime<=lastWriterRolloverTime) {
+                if(lastWriterNeededEvent<lastWriterRolloverEvent) {
                     // no timeouts waiting for recycled writer since last writer rollover
+                    if(maxActive > initialMaxActive) {
+                        // no longer in demand
+                        maxActive--;
+                    }
                     destroyWriter(writer);
                     return;
                 } else {
                     // reuse writer instance, causing new file to be created
                     lastWriterRolloverTime = System.currentTimeMillis();
+                    lastWriterRolloverEvent = ++poolEvents;
                 }
             }
         }
-        if(!availableWriters.offer(writer)) {
+        if(!offerIdleWriter(writer)) {
             logger.log(Level.WARNING, "writer unreturnable to available pool; closing early");
             destroyWriter(writer); 
         }
@@ -208,6 +378,7 @@ public abstract class WriterPool {
      */
     public synchronized void invalidateFile(WriterPoolMember f)
     throws IOException {
+        noteReturned(f);
         try {
             destroyWriter(f);
         } catch (Exception e) {
@@ -236,7 +407,45 @@ public abstract class WriterPool {
 	 */
     public int getNumIdle()
     throws UnsupportedOperationException {
-        return availableWriters.size();
+        return threadAffinity ? idleCount.availablePermits() : availableWriters.size();
+    }
+
+    public boolean isThreadAffinity() {
+        return threadAffinity;
+    }
+
+    /**
+     * @param threadAffinity if true, a borrower gets back the writer it
+     * last had, if idle, rather than the one idle longest. Only settable
+     * before any writer is made.
+     */
+    public synchronized void setThreadAffinity(boolean threadAffinity) {
+        if(currentActive > 0) {
+            throw new IllegalStateException("Writers already made");
+        }
+        if(threadAffinity && idleSlots == null) {
+            idleSlots = new AtomicReferenceArray<WriterPoolMember>(LARGEST_MAX_ACTIVE);
+            idleCount = new Semaphore(0);
+        }
+        this.threadAffinity = threadAffinity;
+    }
+
+    public synchronized int getMaxActiveCeiling() {
+        return maxActiveCeiling;
+    }
+
+    /**
+     * @param maxActiveCeiling if above maxActive, maxActive grows up to it
+     * while recent borrows wait on average more than
+     * {@link #getBorrowWaitTarget()}, and shrinks back as writers retire
+     * with no demand for them
+     */
+    public synchronized void setMaxActiveCeiling(int maxActiveCeiling) {
+        this.maxActiveCeiling = Math.min(maxActiveCeiling, LARGEST_MAX_ACTIVE);
+    }
+
+    public synchronized int getMaxActive() {
+        return maxActive;
     }
     
 	/**
@@ -288,18 +497,20 @@ public abstract class WriterPool {
      * wait for any writers currently in use to become available.
      * 
      * <p>
-     * When finished with writers, call availableWriters.addAll(...) to put them
-     * back into the rotation.
+     * When finished with writers, call {@link #restoreWriters(Collection)} to
+     * put them back into the rotation.
      * 
      * @return all the active writers
      */
     protected synchronized Collection<WriterPoolMember> drainAllWriters() {
         LinkedList<WriterPoolMember> writers = new LinkedList<WriterPoolMember>();
-        availableWriters.drainTo(writers);
+        if (!threadAffinity) {
+            availableWriters.drainTo(writers);
+        }
 
         while (writers.size() < currentActive) {
             try {
-                WriterPoolMember w = availableWriters.take();
+                WriterPoolMember w = takeIdleWriter(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
                 writers.add(w);
             } catch (InterruptedException e) {
                 logger.severe("caught " + e + " while waiting for writers to free up; returning only "
@@ -322,22 +533,48 @@ public abstract class WriterPool {
             }
         }
 
-        availableWriters.addAll(writers);
+        restoreWriters(writers);
     }
     
     public JSONArray jsonStatus() throws JSONException {
         Collection<WriterPoolMember> writers = drainAllWriters();
         
         JSONArray ja = new JSONArray();
+        long now = System.nanoTime();
         for (WriterPoolMember w: writers) {
             JSONObject jo = new JSONObject();
             jo.put("file", w.getFile());
             jo.put("position", w.getPosition());
+            jo.put("borrows", w.poolBorrows);
+            // fraction of its life the writer has spent borrowed
+            jo.put("occupancy", (double) w.poolBusyNanos / Math.max(1, now - w.poolCreatedAt));
             ja.put(jo);
         }
         
-        availableWriters.addAll(writers);
+        restoreWriters(writers);
         
         return ja;
     }
+
+    /**
+     * @return borrow wait times, in ms, and counts of borrows and writers
+     */
+    public JSONObject jsonMetrics() throws JSONException {
+        JSONObject jo = new JSONObject();
+        long n = borrows.get();
+        jo.put("borrows", n);
+        jo.put("meanBorrowWaitMs", n == 0 ? 0.0 : borrowWaitNanos.get() / 1e6 / n);
+        jo.put("recentBorrowWaitMs", recentBorrowWaitNanos.get() / 1e6);
+        jo.put("maxBorrowWaitMs", maxBorrowWaitNanos.get() / 1e6);
+        jo.put("writersNeeded", writersNeeded.get());
+        jo.put("writersCreated", writersCreated.get());
+        jo.put("writersClosed", writersClosed.get());
+        synchronized (this) {
+            jo.put("active", currentActive);
+            jo.put("maxActive", maxActive);
+        }
+        jo.put("idle", getNumIdle());
+        jo.put("threadAffinity", threadAffinity);
+        return jo;
+    }
 }
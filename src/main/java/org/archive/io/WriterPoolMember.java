@@ -33,6 +33,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.zip.GZIPOutputStream;
 
+import org.archive.format.index.RecordIndex;
+import org.archive.format.index.RecordIndexWriter;
 import org.archive.util.ArchiveUtils;
 import org.archive.util.FileUtils;
 import org.archive.util.PropertyUtils;
@@ -116,6 +118,26 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
      * Buffer to reuse writing streams.
      */
     protected final byte [] scratchbuffer = new byte[4 * 1024];
+
+    /**
+     * Whether to write a record index sidecar for each file created.
+     */
+    private boolean writeRecordIndex = false;
+
+    /**
+     * Record index sidecar of the current file, if being written.
+     */
+    protected RecordIndexWriter recordIndex = null;
+    private File recordIndexFile = null;
+
+    /**
+     * {@link WriterPool} bookkeeping: times borrowed, time spent borrowed,
+     * and when last borrowed and created, from System.nanoTime()
+     */
+    long poolBorrows = 0;
+    long poolBusyNanos = 0;
+    long poolBorrowedAt = 0;
+    final long poolCreatedAt = System.nanoTime();
  
     
     /**
@@ -214,6 +236,19 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
         }
         this.countOut = new MiserOutputStream(new RecyclingFastBufferedOutputStream(fos,rebuf),settings.getFrequentFlushes());
         this.out = this.countOut; 
+        if (this.writeRecordIndex) {
+            // Named after the archive file, with its OCCUPIED_SUFFIX, if
+            // any, last so close() can remove it from both
+            String path = this.f.getPath();
+            String suffix = "";
+            if (path.endsWith(OCCUPIED_SUFFIX)) {
+                path = path.substring(0, path.length() - OCCUPIED_SUFFIX.length());
+                suffix = OCCUPIED_SUFFIX;
+            }
+            this.recordIndexFile = new File(RecordIndex.getSidecarPath(path) + suffix);
+            this.recordIndex = new RecordIndexWriter(
+                    new FileOutputStream(this.recordIndexFile));
+        }
         logger.fine("Opened " + this.f.getAbsolutePath());
         return this.f.getName();
     }
@@ -409,6 +444,7 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
             boolean enforceLength) throws IOException {
         int read = scratchbuffer.length;
         long tot = 0;
+        long written = 0;
         while ((tot < recordLength)
                 && (read = is.read(scratchbuffer)) != -1) {
             int write = read; 
@@ -416,6 +452,7 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
             write = (int) Math.min(write, recordLength - tot);
             tot += read;
             write(scratchbuffer, 0, write);
+            written += write;
         }
         if (enforceLength && tot != recordLength) {
             // throw exception if desired for read vs. declared mismatches
@@ -423,7 +460,7 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
                     + recordLength);
         }
         
-        return tot;
+        return written;
     }
 
     public void close() throws IOException {
@@ -432,24 +469,71 @@ public abstract class WriterPoolMember implements ArchiveFileConstants {
         }
         this.out.close();
         this.out = null;
+        if (this.recordIndex != null) {
+            this.recordIndex.close();
+            this.recordIndex = null;
+            removeOccupiedSuffix(this.recordIndexFile);
+            this.recordIndexFile = null;
+        }
         if (this.f != null && this.f.exists()) {
-            String path = this.f.getAbsolutePath();
-            if (path.endsWith(OCCUPIED_SUFFIX)) {
-                File f = new File(path.substring(0,
-                        path.length() - OCCUPIED_SUFFIX.length()));
-                if (f.exists() & !f.delete()) {
-                    logger.warning("Failed delete of " + f);
-                }
-                if (!this.f.renameTo(f)) {
-                    logger.warning("Failed rename of " + path);
-                }
-                this.f = f;
-            }
+            this.f = removeOccupiedSuffix(this.f);
             
             logger.fine("Closed " + this.f.getAbsolutePath() +
                     ", size " + this.f.length());
         }
     }
+
+    /**
+     * Rename file without its OCCUPIED_SUFFIX, if it has one.
+     * @return the file renamed to
+     */
+    private File removeOccupiedSuffix(File file) {
+        String path = file.getAbsolutePath();
+        if (!path.endsWith(OCCUPIED_SUFFIX)) {
+            return file;
+        }
+        File f = new File(path.substring(0,
+                path.length() - OCCUPIED_SUFFIX.length()));
+        if (f.exists() & !f.delete()) {
+            logger.warning("Failed delete of " + f);
+        }
+        if (!file.renameTo(f)) {
+            logger.warning("Failed rename of " + path);
+        }
+        return f;
+    }
+
+    /**
+     * Add the record just written, starting at offset, to the record index
+     * sidecar, if one is being written.
+     *
+     * @param offset position of the record, from {@link #getPosition()}
+     * before it was written
+     * @param uncompressedLength length of the record before compression
+     * @param type WARC-Type, or filedesc or response for ARC records
+     * @param uri target URI of the record, or null
+     * @throws IOException
+     */
+    protected void indexRecord(long offset, long uncompressedLength,
+            String type, String uri) throws IOException {
+        if (this.recordIndex == null) {
+            return;
+        }
+        this.recordIndex.add(offset, getPosition() - offset,
+                uncompressedLength, type, uri);
+    }
+
+    public boolean isWriteRecordIndex() {
+        return writeRecordIndex;
+    }
+
+    /**
+     * @param writeRecordIndex if true, a {@link RecordIndex} sidecar is
+     * written next to each file created from now on
+     */
+    public void setWriteRecordIndex(boolean writeRecordIndex) {
+        this.writeRecordIndex = writeRecordIndex;
+    }
     
     protected OutputStream getOutputStream() {
     	return this.out;
@@ -34,6 +34,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 import org.archive.io.ReplayInputStream;
 import org.archive.io.WriterPoolMember;
@@ -41,6 +42,7 @@ import org.archive.io.WriterPoolSettings;
 import org.archive.util.ArchiveUtils;
 import org.archive.util.DevUtils;
 import org.archive.util.MimetypeUtils;
+import org.archive.util.StreamCopy;
 
 
 /**
@@ -162,7 +164,16 @@ public class ARCWriter extends WriterPoolMember implements ARCConstants, Closeab
     
     private void writeFirstRecord(final String ts)
     throws IOException {
-        write(generateARCFileMetaData(ts));
+        long startPosition = getPosition();
+        byte [] bytes = generateARCFileMetaData(ts);
+        write(bytes);
+        if (this.recordIndex != null) {
+            long length = isCompressed()
+                ? StreamCopy.readToEOF(new GZIPInputStream(new ByteArrayInputStream(bytes)))
+                : bytes.length;
+            indexRecord(startPosition, length, "filedesc",
+                ARC_MAGIC_NUMBER + getBaseFilename());
+        }
     }
         
 	/**
@@ -380,11 +391,20 @@ public class ARCWriter extends WriterPoolMember implements ARCConstants, Closeab
     public void write(String uri, String contentType, String hostIP,
             long fetchBeginTimeStamp, long recordLength, InputStream in,
             boolean enforceLength) throws IOException {
+        if (this.out == null) {
+            // Open the file, and write its first record, before noting
+            // where this record starts
+            createFile();
+        }
+        long startPosition = getPosition();
+        long totalBytes = 0;
         preWriteRecordTasks();
         try {
-            write(getMetaLine(uri, contentType, hostIP, fetchBeginTimeStamp,
-                    recordLength).getBytes(UTF8));
-            copyFrom(in, recordLength, enforceLength);
+            byte [] metaLine = getMetaLine(uri, contentType, hostIP,
+                    fetchBeginTimeStamp, recordLength).getBytes(UTF8);
+            write(metaLine);
+            totalBytes += metaLine.length;
+            totalBytes += copyFrom(in, recordLength, enforceLength);
             if (in instanceof ReplayInputStream) {
                 // check for consumption of entire recorded material
                 long remaining = ((ReplayInputStream) in).remaining();
@@ -400,9 +420,11 @@ public class ARCWriter extends WriterPoolMember implements ARCConstants, Closeab
                 }
             }
             write(LINE_SEPARATOR);
+            totalBytes += 1;
         } finally {
             postWriteRecordTasks();
         }
+        indexRecord(startPosition, totalBytes, "response", uri);
     }
     
     /**
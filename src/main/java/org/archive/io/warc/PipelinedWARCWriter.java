@@ -0,0 +1,442 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.io.warc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes WARC records to a {@link WARCWriter} in three stages, so that
+ * many threads can share a few WARC files without queueing behind each
+ * other's compression:
+ *
+ * <ol>
+ * <li>{@link #submit} formats the record's header and buffers its
+ * content, on the calling thread.</li>
+ * <li>A pool of compression threads gzips each record into a member of
+ * its own, several records at a time.</li>
+ * <li>A single sequencer thread appends the members to the WARCWriter in
+ * the order they were submitted. It flushes once for each batch of
+ * members ready together (group commit) rather than once per record.</li>
+ * </ol>
+ *
+ * <p>The files written are the same as from calling
+ * {@link WARCWriter#writeRecord} with each record in turn. The record's
+ * WARC filename and offset are set once it has been appended, when the
+ * Future returned by submit() completes.
+ *
+ * <p>The WARCWriter belongs to this PipelinedWARCWriter until close():
+ * nothing else may use it, and its tmpStats and tmpRecordLog are only
+ * consistent after {@link #flush()}. The number of records submitted but
+ * not yet appended is bounded, so a slow disk blocks submit() rather than
+ * filling memory with buffered records.
+ */
+public class PipelinedWARCWriter implements Closeable {
+    private static final Logger logger =
+        Logger.getLogger(PipelinedWARCWriter.class.getName());
+
+    /**
+     * Default number of records pending for each compression thread.
+     */
+    public static final int DEFAULT_PENDING_PER_THREAD = 4;
+
+    private static final int MAX_INITIAL_BUFFER = 1024 * 1024;
+
+    private final WARCWriter writer;
+    private final ExecutorService compressors;
+    private final Semaphore pending;
+    private final LinkedBlockingQueue<PendingRecord> queue =
+        new LinkedBlockingQueue<PendingRecord>();
+    private final Thread sequencer;
+    private boolean closed = false;
+
+    /**
+     * Error which left the current file in an unknown state, failing all
+     * later records
+     */
+    private IOException failure = null;
+
+    /**
+     * Marks the end of the queue for the sequencer
+     */
+    private final PendingRecord END = new PendingRecord(null, null);
+
+    public PipelinedWARCWriter(WARCWriter writer, int compressionThreads) {
+        this(writer, compressionThreads,
+                compressionThreads * DEFAULT_PENDING_PER_THREAD);
+    }
+
+    /**
+     * @param writer writer to append the records to
+     * @param compressionThreads number of threads gzipping records
+     * @param maxPending number of records submitted but not yet appended
+     * after which submit() blocks
+     */
+    public PipelinedWARCWriter(WARCWriter writer, int compressionThreads,
+            int maxPending) {
+        if (compressionThreads < 1 || maxPending < 1) {
+            throw new IllegalArgumentException("Need at least one thread and pending record");
+        }
+        this.writer = writer;
+        this.pending = new Semaphore(maxPending);
+        final AtomicInteger threadNum = new AtomicInteger();
+        this.compressors = Executors.newFixedThreadPool(compressionThreads,
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "WARC compressor " +
+                                threadNum.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        this.sequencer = new Thread("WARC sequencer") {
+            public void run() {
+                sequence();
+            }
+        };
+        this.sequencer.setDaemon(true);
+        this.sequencer.start();
+    }
+
+    public WARCWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Buffer recordInfo's header and content, and queue it to be
+     * compressed and appended. Blocks while the maximum number of records
+     * are pending.
+     *
+     * @return Future of recordInfo, with its WARC filename and offset set,
+     * once appended. Fails with the IOException if appending failed.
+     * @throws IOException if reading the record's content fails, or it is
+     * not of its given length, and its length is enforced
+     */
+    public Future<WARCRecordInfo> submit(final WARCRecordInfo recordInfo)
+    throws IOException {
+        if (recordInfo.getContentLength() == 0 &&
+                (recordInfo.getExtraHeaders() == null || recordInfo.getExtraHeaders().size() <= 0)) {
+            throw new IllegalArgumentException("Cannot write record " +
+            "of content-length zero and base headers only.");
+        }
+        String header;
+        try {
+            header = writer.createRecordHeader(recordInfo);
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE,"could not write record type: " + recordInfo.getType()
+                    + "for URL: " + recordInfo.getUrl(), e);
+            FutureTask<WARCRecordInfo> unwritten = new FutureTask<WARCRecordInfo>(
+                    new Callable<WARCRecordInfo>() {
+                        public WARCRecordInfo call() {
+                            return recordInfo;
+                        }
+                    });
+            unwritten.run();
+            return unwritten;
+        }
+
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        final byte[] record;
+        final long contentBytes;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                    (int) Math.min(MAX_INITIAL_BUFFER,
+                            recordInfo.getContentLength() + header.length() + 16));
+            bytes.write(header.getBytes(WARCConstants.WARC_HEADER_ENCODING));
+            if (recordInfo.getContentStream() != null && recordInfo.getContentLength() > 0) {
+                bytes.write(WARCWriter.CRLF_BYTES);
+                contentBytes = copyFrom(recordInfo.getContentStream(),
+                        recordInfo.getContentLength(),
+                        recordInfo.getEnforceLength(), bytes);
+            } else {
+                contentBytes = 0;
+            }
+            bytes.write(WARCWriter.CRLF_BYTES);
+            bytes.write(WARCWriter.CRLF_BYTES);
+            record = bytes.toByteArray();
+        } catch (IOException e) {
+            pending.release();
+            throw e;
+        } catch (RuntimeException e) {
+            pending.release();
+            throw e;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                pending.release();
+                throw new IOException("submit after close()");
+            }
+            final Future<byte[]> member;
+            if (writer.isCompressed()) {
+                member = compressors.submit(new Callable<byte[]>() {
+                    public byte[] call() throws IOException {
+                        return gzip(record);
+                    }
+                });
+            } else {
+                FutureTask<byte[]> uncompressed = new FutureTask<byte[]>(
+                        new Callable<byte[]>() {
+                            public byte[] call() {
+                                return record;
+                            }
+                        });
+                uncompressed.run();
+                member = uncompressed;
+            }
+            PendingRecord p = new PendingRecord(recordInfo, new Callable<WARCRecordInfo>() {
+                public WARCRecordInfo call() throws Exception {
+                    append(recordInfo, member, contentBytes, record.length);
+                    return recordInfo;
+                }
+            });
+            queue.add(p);
+            return p;
+        }
+    }
+
+    /**
+     * Wait for every record submitted so far to be appended, and flushed.
+     */
+    public void flush() throws IOException {
+        PendingRecord marker;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            marker = new PendingRecord(null, null);
+            queue.add(marker);
+        }
+        await(marker);
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Append every record submitted, then close the compression threads,
+     * the sequencer, and the WARCWriter.
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(END);
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                sequencer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        compressors.shutdown();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void await(Future<?> f) throws IOException {
+        try {
+            f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            // only record appends fail, and they report through their own Futures
+        }
+    }
+
+    /**
+     * Runs on the sequencer thread: appends records in the order submitted,
+     * flushing after each batch of those already queued
+     */
+    private void sequence() {
+        List<PendingRecord> batch = new ArrayList<PendingRecord>();
+        List<PendingRecord> flushes = new ArrayList<PendingRecord>();
+        boolean end = false;
+        while (!end) {
+            batch.clear();
+            flushes.clear();
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch);
+            for (PendingRecord p : batch) {
+                if (p == END) {
+                    end = true;
+                    break;
+                }
+                if (p.recordInfo == null) {
+                    // a flush() waiting, done once the batch is flushed
+                    flushes.add(p);
+                    continue;
+                }
+                p.run();
+                pending.release();
+            }
+            try {
+                if (failure == null) {
+                    writer.flushPreparedRecords();
+                }
+            } catch (IOException e) {
+                noteFailure(e);
+            }
+            for (PendingRecord p : flushes) {
+                p.run();
+            }
+        }
+    }
+
+    /**
+     * Runs on the sequencer thread
+     */
+    private void append(WARCRecordInfo recordInfo, Future<byte[]> member,
+            long contentBytes, long totalBytes) throws IOException {
+        byte[] prepared;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                prepared = member.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        try {
+            writer.checkSize();
+            writer.writePreparedRecord(recordInfo, prepared, contentBytes, totalBytes);
+        } catch (IOException e) {
+            noteFailure(e);
+            throw e;
+        }
+    }
+
+    private synchronized void noteFailure(IOException e) {
+        if (failure == null) {
+            logger.log(Level.SEVERE, "Failed appending to " + writer.getFile(), e);
+            failure = e;
+        }
+    }
+
+    /**
+     * @return record gzipped into a member of its own, as
+     * WriterPoolMember's compressed stream writes it
+     */
+    protected static byte[] gzip(byte[] record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(record.length / 2 + 64);
+        GZIPOutputStream gz = new GZIPOutputStream(bytes);
+        gz.write(record);
+        gz.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Buffer the content of a record, as WriterPoolMember.copyFrom() writes
+     * it
+     */
+    protected static long copyFrom(final InputStream is, final long recordLength,
+            boolean enforceLength, ByteArrayOutputStream out) throws IOException {
+        byte[] buf = new byte[4 * 1024];
+        int read;
+        long tot = 0;
+        long written = 0;
+        while ((tot < recordLength) && (read = is.read(buf)) != -1) {
+            // never write more than enforced length
+            int write = (int) Math.min(read, recordLength - tot);
+            tot += read;
+            out.write(buf, 0, write);
+            written += write;
+        }
+        if (enforceLength && tot != recordLength) {
+            throw new IOException("Read " + tot + " but expected "
+                    + recordLength);
+        }
+        return written;
+    }
+
+    /**
+     * A record queued for the sequencer, and its caller's Future
+     */
+    private static class PendingRecord extends FutureTask<WARCRecordInfo> {
+        final WARCRecordInfo recordInfo;
+
+        PendingRecord(WARCRecordInfo recordInfo, Callable<WARCRecordInfo> append) {
+            super(append == null ? NOTHING : append);
+            this.recordInfo = recordInfo;
+        }
+    }
+
+    private static final Callable<WARCRecordInfo> NOTHING = new Callable<WARCRecordInfo>() {
+        public WARCRecordInfo call() {
+            return null;
+        }
+    };
+}
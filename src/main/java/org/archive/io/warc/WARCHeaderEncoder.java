@@ -0,0 +1,268 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.io.warc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+
+import org.apache.commons.lang.StringUtils;
+import org.archive.util.anvl.Element;
+
+/**
+ * Encodes the header of a WARC record straight to bytes, in a buffer
+ * reused from record to record, giving the same bytes, and rejecting the
+ * same URLs and mimetypes, as encoding
+ * {@link WARCWriter#createRecordHeader(WARCRecordInfo)} in
+ * {@link WARCConstants#WARC_HEADER_ENCODING}.
+ *
+ * Field names, and the whole WARC-Type line of each record type, are
+ * encoded once. Values are copied a char at a time while they are ASCII,
+ * as dates, lengths, digests and record IDs always are, and only the rest
+ * of a value with other chars goes through the charset.
+ *
+ * Not thread safe: use one per thread, or per WARCWriter.
+ */
+public class WARCHeaderEncoder implements WARCConstants {
+
+    private static final Charset HEADER_CHARSET = Charset.forName(WARC_HEADER_ENCODING);
+
+    private static final byte[] CRLF_BYTES = bytes(CRLF);
+    private static final byte[] COLON_SPACE_BYTES = bytes(COLON_SPACE);
+    private static final byte[] WARC_ID_LINE = bytes(WARC_ID + CRLF);
+    private static final byte[] URI_KEY = bytes(HEADER_KEY_URI + COLON_SPACE);
+    private static final byte[] DATE_KEY = bytes(HEADER_KEY_DATE + COLON_SPACE);
+    private static final byte[] ID_KEY = bytes(HEADER_KEY_ID + COLON_SPACE + "<");
+    private static final byte[] ID_END = bytes(">" + CRLF);
+    private static final byte[] CONTENT_TYPE_KEY = bytes(CONTENT_TYPE + COLON_SPACE);
+    private static final byte[] CONTENT_LENGTH_KEY = bytes(CONTENT_LENGTH + COLON_SPACE);
+
+    /**
+     * The WARC-Type line of each record type, by ordinal
+     */
+    private static final byte[][] TYPE_LINES;
+    static {
+        WARCRecordType[] types = WARCRecordType.values();
+        TYPE_LINES = new byte[types.length][];
+        for (WARCRecordType type : types) {
+            TYPE_LINES[type.ordinal()] = bytes(HEADER_KEY_TYPE + COLON_SPACE + type + CRLF);
+        }
+    }
+
+    private byte[] buf;
+    private int len;
+
+    public WARCHeaderEncoder() {
+        this(2048);
+    }
+
+    public WARCHeaderEncoder(int initialSize) {
+        buf = new byte[initialSize];
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(HEADER_CHARSET);
+    }
+
+    /**
+     * @return the header of recordInfo, up to and including the CRLF of
+     * its Content-Length line, in a buffer which is only valid until the
+     * next call
+     * @throws IllegalArgumentException if its URL or mimetype has
+     * disallowed characters
+     */
+    public ByteBuffer encode(WARCRecordInfo recordInfo)
+    throws IllegalArgumentException {
+        len = 0;
+        put(WARC_ID_LINE);
+        put(TYPE_LINES[recordInfo.getType().ordinal()]);
+        // Do not write a subject-uri if not one present.
+        if (!StringUtils.isEmpty(recordInfo.getUrl())) {
+            put(URI_KEY);
+            putHeaderValue(recordInfo.getUrl());
+            put(CRLF_BYTES);
+        }
+        put(DATE_KEY);
+        put(recordInfo.getCreate14DigitDate());
+        put(CRLF_BYTES);
+        if (recordInfo.getExtraHeaders() != null) {
+            for (final Iterator<Element> i = recordInfo.getExtraHeaders().iterator(); i.hasNext();) {
+                Element e = i.next();
+                put(String.valueOf(e.getLabel()));
+                if (e.isValue()) {
+                    put(COLON_SPACE_BYTES);
+                    put(String.valueOf(e.getValue()));
+                } else {
+                    put((byte) ':');
+                }
+                put(CRLF_BYTES);
+            }
+        }
+        put(ID_KEY);
+        put(recordInfo.getRecordId().toString());
+        put(ID_END);
+        if (recordInfo.getContentLength() > 0) {
+            put(CONTENT_TYPE_KEY);
+            putMimetype(recordInfo.getMimetype());
+            put(CRLF_BYTES);
+        }
+        put(CONTENT_LENGTH_KEY);
+        put(recordInfo.getContentLength());
+        put(CRLF_BYTES);
+        return ByteBuffer.wrap(buf, 0, len);
+    }
+
+    private void ensure(int more) {
+        if (len + more > buf.length) {
+            byte[] bigger = new byte[Math.max(buf.length * 2, len + more)];
+            System.arraycopy(buf, 0, bigger, 0, len);
+            buf = bigger;
+        }
+    }
+
+    private void put(byte b) {
+        ensure(1);
+        buf[len++] = b;
+    }
+
+    private void put(byte[] b) {
+        ensure(b.length);
+        System.arraycopy(b, 0, buf, len, b.length);
+        len += b.length;
+    }
+
+    /**
+     * Encode s, copying it while it is ASCII, or "null" as StringBuilder
+     * would append it
+     */
+    private void put(String s) {
+        if (s == null) {
+            s = "null";
+        }
+        int n = s.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                put(bytes(s.substring(i)));
+                return;
+            }
+            buf[len++] = (byte) c;
+        }
+    }
+
+    /**
+     * Digits of a non-negative length
+     */
+    private void put(long l) {
+        if (l < 0) {
+            put(Long.toString(l));
+            return;
+        }
+        int digits = 1;
+        for (long rest = l / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensure(digits);
+        for (int i = len + digits - 1; i >= len; i--) {
+            buf[i] = (byte) ('0' + (l % 10));
+            l /= 10;
+        }
+        len += digits;
+    }
+
+    /**
+     * Check value, before encoding it
+     */
+    private void putHeaderValue(String value) {
+        put(checkHeaderValue(value));
+    }
+
+    /**
+     * Check parameter, mapping white space to single spaces, before
+     * encoding it
+     */
+    private void putMimetype(String parameter) {
+        put(checkMimetype(parameter));
+    }
+
+    // The checks of header values, also behind WARCWriter's
+
+    static void checkCharacter(final char c, final String parameter)
+    throws IllegalArgumentException {
+        // TODO: Too strict?  UNICODE control characters?
+        if (Character.isISOControl(c) || !Character.isValidCodePoint(c)) {
+            throw new IllegalArgumentException("Contains illegal character 0x" +
+                Integer.toHexString(c) + ": " + parameter);
+        }
+    }
+
+    /**
+     * @return value, if it has no white space or illegal characters
+     */
+    static String checkHeaderValue(final String value)
+    throws IllegalArgumentException {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            checkCharacter(c, value);
+            if (Character.isWhitespace(c)) {
+                throw new IllegalArgumentException("Contains disallowed white space 0x" +
+                    Integer.toHexString(c) + ": " + value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return parameter with its white space mapped to single spaces, which
+     * is parameter itself when that changes nothing
+     */
+    static String checkMimetype(final String parameter)
+    throws IllegalArgumentException {
+        StringBuilder sb = null;
+        boolean wasWhitespace = false;
+        for (int i = 0; i < parameter.length(); i++) {
+            char c = parameter.charAt(i);
+            if (Character.isWhitespace(c)) {
+                // Map all to ' ' and collapse multiples into one.
+                // TODO: Make sure white space occurs in legal location --
+                // before parameter or inside quoted-string.
+                if (wasWhitespace || (c != ' ')) {
+                    if (sb == null) {
+                        sb = new StringBuilder(parameter.length());
+                        sb.append(parameter, 0, i);
+                    }
+                    if (wasWhitespace) {
+                        continue;
+                    }
+                }
+                wasWhitespace = true;
+                c = ' ';
+            } else {
+                wasWhitespace = false;
+                checkCharacter(c, parameter);
+            }
+            if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return (sb != null) ? sb.toString() : parameter;
+    }
+}
@@ -25,6 +25,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -89,6 +90,12 @@ implements WARCConstants {
     
     /** Temporarily accumulates info on written warc records for use externally. */
     private LinkedList<WARCRecordInfo> tmpRecordLog = new LinkedList<WARCRecordInfo>();
+
+    /**
+     * Encodes headers straight to bytes, for
+     * {@link #encodeRecordHeader(WARCRecordInfo)}
+     */
+    private final WARCHeaderEncoder headerEncoder = new WARCHeaderEncoder();
     
     /**
      * Constructor.
@@ -132,49 +139,17 @@ implements WARCConstants {
     
     protected void baseCharacterCheck(final char c, final String parameter)
     throws IllegalArgumentException {
-        // TODO: Too strict?  UNICODE control characters?
-        if (Character.isISOControl(c) || !Character.isValidCodePoint(c)) {
-            throw new IllegalArgumentException("Contains illegal character 0x" +
-                Integer.toHexString(c) + ": " + parameter);
-        }
+        WARCHeaderEncoder.checkCharacter(c, parameter);
     }
     
     protected String checkHeaderValue(final String value)
     throws IllegalArgumentException {
-        for (int i = 0; i < value.length(); i++) {
-        	final char c = value.charAt(i);
-        	baseCharacterCheck(c, value);
-        	if (Character.isWhitespace(c)) {
-                throw new IllegalArgumentException("Contains disallowed white space 0x" +
-                    Integer.toHexString(c) + ": " + value);
-        	}
-        }
-        return value;
+        return WARCHeaderEncoder.checkHeaderValue(value);
     }
     
     protected String checkHeaderLineMimetypeParameter(final String parameter)
     throws IllegalArgumentException {
-    	StringBuilder sb = new StringBuilder(parameter.length());
-    	boolean wasWhitespace = false;
-        for (int i = 0; i < parameter.length(); i++) {
-        	char c = parameter.charAt(i);
-        	if (Character.isWhitespace(c)) {
-        		// Map all to ' ' and collapse multiples into one.
-        		// TODO: Make sure white space occurs in legal location --
-        		// before parameter or inside quoted-string.
-        		if (wasWhitespace) {
-        			continue;
-        		}
-        		wasWhitespace = true;
-        		c = ' ';
-        	} else {
-        		wasWhitespace = false;
-        		baseCharacterCheck(c, parameter);
-        	}
-        	sb.append(c);
-        }
-        
-        return sb.toString();
+        return WARCHeaderEncoder.checkMimetype(parameter);
     }
 
 //    protected String createRecordHeader(final String type,
@@ -213,6 +188,21 @@ implements WARCConstants {
     	return sb.toString();
     }
 
+    /**
+     * Encodes the header straight to bytes, as
+     * {@link #createRecordHeader(WARCRecordInfo)} formats it. A subclass
+     * formatting or checking headers its own way overrides this too, for
+     * instance to return
+     * <code>ByteBuffer.wrap(createRecordHeader(recordInfo).getBytes(WARC_HEADER_ENCODING))</code>.
+     * 
+     * @return the header, up to and including the CRLF of its
+     * Content-Length line, in a buffer only valid until the next call
+     */
+    protected ByteBuffer encodeRecordHeader(WARCRecordInfo recordInfo)
+    throws IOException, IllegalArgumentException {
+        return headerEncoder.encode(recordInfo);
+    }
+
     public void writeRecord(WARCRecordInfo recordInfo)
     throws IOException {
 
@@ -222,10 +212,9 @@ implements WARCConstants {
             "of content-length zero and base headers only.");
         }
 
-        String header;
+        ByteBuffer header;
         try {
-            header = createRecordHeader(recordInfo);
-
+            header = encodeRecordHeader(recordInfo);
         } catch (IllegalArgumentException e) {
             logger.log(Level.SEVERE,"could not write record type: " + recordInfo.getType() 
                     + "for URL: " + recordInfo.getUrl(), e);
@@ -237,13 +226,21 @@ implements WARCConstants {
         long startPosition;
 
     	try {
+    	    if (this.out == null) {
+    	        // Open the file, and write its warcinfo record, before
+    	        // noting where this record starts. That reuses the header
+    	        // encoder, so keep a copy of this header.
+    	        byte[] copy = new byte[header.remaining()];
+    	        header.get(copy);
+    	        header = ByteBuffer.wrap(copy);
+    	        createFile();
+    	    }
     	    startPosition = getPosition();
             preWriteRecordTasks();
 
-            // TODO: Revisit encoding of header.
-            byte[] bytes = header.getBytes(WARC_HEADER_ENCODING);
-            write(bytes);
-            totalBytes += bytes.length;
+            write(header.array(), header.arrayOffset() + header.position(),
+                    header.remaining());
+            totalBytes += header.remaining();
 
             if (recordInfo.getContentStream() != null && recordInfo.getContentLength() > 0) {
                 // Write out the header/body separator.
@@ -268,6 +265,43 @@ implements WARCConstants {
         } finally {
             postWriteRecordTasks();
         }
+        indexRecord(startPosition, totalBytes, recordInfo.getType().toString(),
+                recordInfo.getUrl());
+    }
+
+    /**
+     * Append a record already formatted elsewhere, and gzipped into a
+     * member of its own if this writer compresses, as by
+     * {@link PipelinedWARCWriter}. Sets the record's WARC filename and
+     * offset, and tallies and indexes it, as {@link #writeRecord} does.
+     *
+     * @param prepared the record's bytes as they go in the file
+     * @param contentBytes length of the record's content
+     * @param totalBytes length of the whole record, before compression
+     */
+    protected void writePreparedRecord(WARCRecordInfo recordInfo, byte[] prepared,
+            long contentBytes, long totalBytes) throws IOException {
+        if (this.out == null) {
+            createFile();
+        }
+        long startPosition = getPosition();
+        write(prepared);
+        tally(recordInfo.getType(), contentBytes, totalBytes, getPosition() - startPosition);
+        recordInfo.setWARCFilename(getFilenameWithoutOccupiedSuffix());
+        recordInfo.setWARCFileOffset(startPosition);
+        tmpRecordLog.add(recordInfo);
+        indexRecord(startPosition, totalBytes, recordInfo.getType().toString(),
+                recordInfo.getUrl());
+    }
+
+    /**
+     * Flush records appended with {@link #writePreparedRecord}, if the
+     * settings ask for frequent flushes.
+     */
+    protected void flushPreparedRecords() throws IOException {
+        if (this.out != null) {
+            flush();
+        }
     }
 
     public String getFilenameWithoutOccupiedSuffix() {
@@ -0,0 +1,136 @@
+package org.archive.resource;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.archive.format.arc.ARCConstants;
+import org.archive.format.index.RecordIndex;
+import org.archive.format.warc.WARCConstants;
+import org.archive.resource.arc.ARCResource;
+import org.archive.resource.gzip.GZIPResourceContainer;
+import org.archive.resource.warc.WARCResource;
+import org.archive.util.StreamCopy;
+import org.json.JSONObject;
+
+/**
+ * Passes on only the WARC and ARC records, from an envelope producer such
+ * as a TransformingResourceProducer, which a RecordFilter accepts.
+ *
+ * The filter sees only the record header, so the payload of a rejected
+ * record is never read. In a gzipped file, the rest of its gzip member is
+ * not inflated either if the member's length is known, from the file's
+ * RecordIndex or the member's SL extra field.
+ */
+public class FilteringResourceProducer implements ResourceProducer, ResourceConstants {
+	private ResourceProducer producer;
+	private RecordFilter filter;
+	private RecordIndex index;
+	private long numRejected = 0;
+	private long numSkippedWithoutInflating = 0;
+
+	public FilteringResourceProducer(ResourceProducer producer, RecordFilter filter) {
+		this(producer, filter, null);
+	}
+
+	/**
+	 * @param index the RecordIndex of the file, or null
+	 */
+	public FilteringResourceProducer(ResourceProducer producer, RecordFilter filter,
+			RecordIndex index) {
+		this.producer = producer;
+		this.filter = filter;
+		this.index = index;
+	}
+
+	public Resource getNext() throws ResourceParseException, IOException {
+		while(true) {
+			Resource r = producer.getNext();
+			if((r == null) || accept(r)) {
+				return r;
+			}
+			numRejected++;
+			ResourceContainer container = r.getContainer();
+			if(container instanceof GZIPResourceContainer) {
+				if(((GZIPResourceContainer) container).skipCurrentMember(index)) {
+					numSkippedWithoutInflating++;
+				}
+			} else {
+				StreamCopy.readToEOF(r.getInputStream());
+			}
+		}
+	}
+
+	protected boolean accept(Resource r) {
+		if(r instanceof WARCResource) {
+			JSONObject fields = ((WARCResource) r).getEnvelopeMetaData()
+				.optJSONObject(WARC_HEADER_METADATA);
+			if(fields == null) {
+				return true;
+			}
+			String length = getField(fields, WARCConstants.CONTENT_LENGTH);
+			long len = -1;
+			if(length != null) {
+				try {
+					len = Long.parseLong(length.trim());
+				} catch(NumberFormatException e) {
+					// unknown
+				}
+			}
+			return filter.accept(getField(fields, WARCConstants.HEADER_KEY_TYPE),
+					getField(fields, WARCConstants.CONTENT_TYPE), len);
+
+		} else if(r instanceof ARCResource) {
+			JSONObject fields = ((ARCResource) r).getEnvelopeMetaData()
+				.optJSONObject(ARC_HEADER_METADATA);
+			if(fields == null) {
+				return true;
+			}
+			String url = fields.optString(ARCConstants.URL_KEY, "");
+			String type = url.startsWith("filedesc:") ? "filedesc" : "response";
+			return filter.accept(type, fields.optString(ARCConstants.MIME_KEY, null),
+					fields.optLong(ARCConstants.DECLARED_LENGTH_KEY, -1));
+		}
+		return true;
+	}
+
+	/**
+	 * @return the value of WARC header name, matched case insensitively,
+	 * or null
+	 */
+	private static String getField(JSONObject fields, String name) {
+		String value = fields.optString(name, null);
+		if(value != null) {
+			return value;
+		}
+		Iterator<?> keys = fields.keys();
+		while(keys.hasNext()) {
+			String key = keys.next().toString();
+			if(key.equalsIgnoreCase(name)) {
+				return fields.optString(key, null);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the number of records the filter rejected
+	 */
+	public long getNumRejected() {
+		return numRejected;
+	}
+
+	/**
+	 * @return the number of rejected records skipped without inflating
+	 */
+	public long getNumSkippedWithoutInflating() {
+		return numSkippedWithoutInflating;
+	}
+
+	public void close() throws IOException {
+		producer.close();
+	}
+
+	public String getContext() {
+		return producer.getContext();
+	}
+}
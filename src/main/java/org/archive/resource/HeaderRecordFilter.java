@@ -0,0 +1,91 @@
+package org.archive.resource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * RecordFilter accepting records by type, Content-Type prefix, and
+ * maximum length. Each test is skipped if it is not set.
+ */
+public class HeaderRecordFilter implements RecordFilter {
+	private Set<String> types = null;
+	private List<String> contentTypes = null;
+	private long maxLength = -1;
+
+	public boolean accept(String type, String contentType, long length) {
+		if((types != null) && !types.contains(type)) {
+			return false;
+		}
+		if(contentTypes != null) {
+			if(contentType == null) {
+				return false;
+			}
+			String lower = contentType.toLowerCase();
+			boolean matched = false;
+			for(String prefix : contentTypes) {
+				if(lower.startsWith(prefix)) {
+					matched = true;
+					break;
+				}
+			}
+			if(!matched) {
+				return false;
+			}
+		}
+		if((maxLength >= 0) && (length > maxLength)) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the non-empty, trimmed items of a comma separated list
+	 */
+	public static List<String> split(String list) {
+		List<String> items = new ArrayList<String>();
+		for(String item : list.split(",")) {
+			item = item.trim();
+			if(item.length() > 0) {
+				items.add(item);
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * @param types the record types accepted, or null for all
+	 */
+	public void setTypes(Collection<String> types) {
+		this.types = (types == null) ? null : new HashSet<String>(types);
+	}
+
+	/**
+	 * @param contentTypes prefixes of the Content-Types accepted, matched
+	 * case insensitively, or null for all
+	 */
+	public void setContentTypes(Collection<String> contentTypes) {
+		if(contentTypes == null) {
+			this.contentTypes = null;
+			return;
+		}
+		this.contentTypes = new ArrayList<String>();
+		for(String prefix : contentTypes) {
+			this.contentTypes.add(prefix.toLowerCase());
+		}
+	}
+
+	/**
+	 * @param maxLength the longest Content-Length accepted, or -1 for any.
+	 * Records of unknown length are accepted.
+	 */
+	public void setMaxLength(long maxLength) {
+		this.maxLength = maxLength;
+	}
+
+	public long getMaxLength() {
+		return maxLength;
+	}
+}
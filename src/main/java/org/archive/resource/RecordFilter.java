@@ -0,0 +1,16 @@
+package org.archive.resource;
+
+/**
+ * Decides, from the header of a WARC or ARC record, whether the record is
+ * extracted at all. See {@link FilteringResourceProducer}.
+ */
+public interface RecordFilter {
+	/**
+	 * @param type the WARC-Type of the record. ARC records are response,
+	 * except the filedesc record at the start of each ARC file
+	 * @param contentType the record's Content-Type, or null if it has none
+	 * @param length the record's Content-Length, or -1 if it is unknown
+	 * @return true if the record should be extracted
+	 */
+	public boolean accept(String type, String contentType, long length);
+}
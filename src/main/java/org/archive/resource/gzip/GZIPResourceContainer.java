@@ -2,8 +2,11 @@ package org.archive.resource.gzip;
 
 import java.io.IOException;
 
+import org.archive.format.gzip.GZIPConstants;
 import org.archive.format.gzip.GZIPMemberSeries;
 import org.archive.format.gzip.GZIPSeriesMember;
+import org.archive.format.index.RecordIndex;
+import org.archive.format.index.RecordIndexEntry;
 import org.archive.resource.MetaData;
 import org.archive.resource.Resource;
 import org.archive.resource.ResourceContainer;
@@ -15,10 +18,16 @@ public class GZIPResourceContainer implements ResourceContainer, ResourceProduce
 	private long endOffset;
 
 	private GZIPMemberSeries series;
+	private GZIPSeriesMember member = null;
 	
 	public GZIPResourceContainer(GZIPMemberSeries series) {
 		this(series,UNLIMITED);
 	}
+	/**
+	 * @param series the members
+	 * @param endOffset no member starting at or after this offset is
+	 * returned
+	 */
 	public GZIPResourceContainer(GZIPMemberSeries series, long endOffset) {
 		this.series = series;
 		this.endOffset = endOffset;
@@ -35,7 +44,7 @@ public class GZIPResourceContainer implements ResourceContainer, ResourceProduce
 	public Resource getNext() throws ResourceParseException, IOException {
 		if(series.gotEOF()) return null;
 		if(endOffset != UNLIMITED) {
-			if(series.getOffset() > endOffset) {
+			if(series.getOffset() >= endOffset) {
 //				System.err.format("At end of region off(%d) - startoff(%d) end(%d)\n",
 //						series.getOffset(), 
 //						series.getCurrentMemberStartOffset(), endOffset);
@@ -46,10 +55,47 @@ public class GZIPResourceContainer implements ResourceContainer, ResourceProduce
 		if(member == null) {
 			return null;
 		}
+		if((endOffset != UNLIMITED) && (member.getRecordStartOffset() >= endOffset)) {
+			// belongs to the next region
+			return null;
+		}
+		this.member = member;
 		MetaData top = new MetaData();
 		return new GZIPResource(top,this,member);
 	}
 
+	/**
+	 * Move past the rest of the member last returned. Its compressed length
+	 * comes from index, if it has an entry for the member, or from the
+	 * member's SL extra field, in which case the rest is not inflated.
+	 * Otherwise, or if the member does not end where they say, it is
+	 * inflated to find its end.
+	 *
+	 * @param index the record index of the series, or null
+	 * @return true if the rest of the member was skipped without inflating
+	 */
+	public boolean skipCurrentMember(RecordIndex index) throws IOException {
+		if((member == null) || member.gotEOR() || member.wasSkipped()) {
+			return false;
+		}
+		long start = member.getRecordStartOffset();
+		long length = -1;
+		if(index != null) {
+			RecordIndexEntry entry = index.getEntry(start);
+			if(entry != null) {
+				length = entry.getCompressedLength();
+			}
+		}
+		if(length == -1) {
+			length = member.getHeader().getIntRecord(GZIPConstants.SL_RECORD);
+		}
+		if((length > 0) && series.skipCurrentMember(start + length)) {
+			return true;
+		}
+		member.skipMember();
+		return false;
+	}
+
 	public void close() throws IOException {
 		series.close();
 	}
@@ -1,6 +1,7 @@
 package org.archive.streamcontext;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 
 /**
  * Class which implements the bulk of the functionality needed for Stream
@@ -14,6 +15,12 @@ import java.io.IOException;
  * This class maintains a buffer of bytes read, and attempts to be efficient
  * about seeks within that buffer.
  * 
+ * Optionally, see setReadAhead(), a background thread keeps the next few
+ * buffers filled while the caller consumes the current one, so slow
+ * doRead()s (HDFS, HTTP) overlap with the caller's inflating and parsing.
+ * doRead() then runs on that thread, and doSeek() only while no doRead()
+ * is in progress.
+ * 
  * @author brad
  *
  */
@@ -26,6 +33,7 @@ public abstract class AbstractBufferingStream implements Stream {
 	protected byte buffer[] = null;
 	protected int bufferRemaining = 0;
 	protected int bufferCursor = 0;
+	private ReadAhead readAhead = null;
 	
 	public AbstractBufferingStream() {
 		this(0L,DEFAULT_READ_SIZE);
@@ -78,7 +86,8 @@ public abstract class AbstractBufferingStream implements Stream {
 			// either we satisfied the read request, or the buffer is empty:
 			if(len > 0) {
 				// our buffer is empty at this point, fill it up:
-				int amtReadNow = doRead(buffer,0,buffer.length);
+				int amtReadNow = (readAhead == null) ?
+						doRead(buffer,0,buffer.length) : readAhead.next();
 				if(amtReadNow == -1) {
 					atEof = true;
 					break;
@@ -109,8 +118,9 @@ public abstract class AbstractBufferingStream implements Stream {
 			} else {
 				// seeking forward beyond buffer:
 				// OPTIMIZ: are few read()s a bit rather than seek()?
-				doSeek(newOffset);
+				seek(newOffset);
 				bufferRemaining = 0;
+				bufferCursor = 0;
 			}
 			atEof = false;
 		} else if(offset > newOffset) {
@@ -121,8 +131,9 @@ public abstract class AbstractBufferingStream implements Stream {
 				bufferRemaining += amtToReverse;
 			} else {
 				// seeking backwards beyond buffer:
-				doSeek(newOffset);
+				seek(newOffset);
 				bufferRemaining = 0;
+				bufferCursor = 0;
 			}
 			atEof = false;
 		}
@@ -130,11 +141,229 @@ public abstract class AbstractBufferingStream implements Stream {
 		return newOffset;		
 	}
 	
+	private void seek(long newOffset) throws IOException {
+		if(readAhead == null) {
+			doSeek(newOffset);
+		} else {
+			readAhead.seek(newOffset);
+		}
+	}
+
+	/**
+	 * @return the number of buffers read ahead, 0 if read-ahead is off
+	 */
+	public int getReadAhead() {
+		return readAhead == null ? 0 : readAhead.buffers.length;
+	}
+
+	/**
+	 * Read up to buffers buffers ahead of the caller, on a background
+	 * thread. Seeks outside the current buffer discard whatever was read
+	 * ahead.
+	 * 
+	 * @param buffers number of buffers to read ahead, or 0 to read only
+	 * when the caller needs data
+	 */
+	public void setReadAhead(int buffers) throws IOException {
+		if(closed) {
+			throw new IOException("setReadAhead after close()");
+		}
+		if(buffers < 0) {
+			throw new IllegalArgumentException("Negative read-ahead " + buffers);
+		}
+		if(buffers == getReadAhead()) {
+			return;
+		}
+		if(readAhead != null) {
+			ReadAhead old = readAhead;
+			readAhead = null;
+			// the underlying stream is past what was read ahead:
+			if(old.stop()) {
+				doSeek(offset + bufferRemaining);
+			}
+		}
+		if(buffers > 0) {
+			readAhead = new ReadAhead(buffers, buffer.length);
+		}
+	}
+
 	public void close() throws IOException {
 		if(!closed) {
+			if(readAhead != null) {
+				readAhead.stop();
+			}
 			doClose();
 			closed = true;
 		}
 	}
-	
+
+	/**
+	 * Ring of buffers, filled by a daemon thread calling doRead() while
+	 * fewer than all of them are full. The caller takes the oldest full
+	 * buffer by swapping it with the one it has finished with, so data is
+	 * never copied.
+	 * 
+	 * A generation count, bumped by each seek, stops a doRead() which was
+	 * in progress during a seek from being taken as read after it.
+	 */
+	private class ReadAhead implements Runnable {
+		final byte[][] buffers;
+		final int[] lengths;
+		int head = 0;
+		int count = 0;
+		long generation = 0;
+		boolean fetching = false;
+		boolean discarding = false;
+		boolean eof = false;
+		boolean stopped = false;
+		IOException error = null;
+		Thread thread = null;
+
+		ReadAhead(int numBuffers, int size) {
+			buffers = new byte[numBuffers][];
+			lengths = new int[numBuffers];
+			for(int i = 0; i < numBuffers; i++) {
+				buffers[i] = new byte[size];
+			}
+		}
+
+		/**
+		 * Swap the next full buffer into buffer
+		 * 
+		 * @return the amount read into it, -1 at EOF
+		 */
+		synchronized int next() throws IOException {
+			if(thread == null) {
+				thread = new Thread(this, AbstractBufferingStream.this.getClass().getSimpleName()
+						+ " read-ahead");
+				thread.setDaemon(true);
+				thread.start();
+			}
+			while(count == 0) {
+				if(error != null) {
+					throw error;
+				}
+				if(eof) {
+					return -1;
+				}
+				waitInterruptibly();
+			}
+			byte[] full = buffers[head];
+			buffers[head] = buffer;
+			buffer = full;
+			int amt = lengths[head];
+			head = (head + 1) % buffers.length;
+			count--;
+			notifyAll();
+			return amt;
+		}
+
+		/**
+		 * Discard what was read ahead, and doSeek() once no doRead() is in
+		 * progress
+		 */
+		synchronized void seek(long newOffset) throws IOException {
+			discard();
+			try {
+				doSeek(newOffset);
+			} catch(IOException e) {
+				// don't read ahead from wherever the stream was left
+				error = e;
+				throw e;
+			} finally {
+				notifyAll();
+			}
+		}
+
+		/**
+		 * End the thread, leaving the underlying stream free to use
+		 * 
+		 * @return true if anything read ahead was discarded
+		 */
+		synchronized boolean stop() {
+			boolean discarded = (count > 0) || fetching || (error != null);
+			discard();
+			stopped = true;
+			notifyAll();
+			return discarded;
+		}
+
+		private void discard() {
+			generation++;
+			discarding = true;
+			boolean interrupted = false;
+			while(fetching) {
+				try {
+					wait();
+				} catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			discarding = false;
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			head = 0;
+			count = 0;
+			eof = false;
+			error = null;
+		}
+
+		private void waitInterruptibly() throws IOException {
+			try {
+				wait();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+
+		public void run() {
+			while(true) {
+				int slot;
+				long gen;
+				byte[] b;
+				synchronized(this) {
+					while(!stopped && (discarding || count == buffers.length
+							|| eof || error != null)) {
+						try {
+							wait();
+						} catch(InterruptedException e) {
+							// only stop() ends the thread
+						}
+					}
+					if(stopped) {
+						return;
+					}
+					slot = (head + count) % buffers.length;
+					b = buffers[slot];
+					gen = generation;
+					fetching = true;
+				}
+				int amt = -1;
+				IOException ioe = null;
+				try {
+					amt = doRead(b, 0, b.length);
+				} catch(IOException e) {
+					ioe = e;
+				} catch(RuntimeException e) {
+					ioe = new IOException(e);
+				}
+				synchronized(this) {
+					fetching = false;
+					if(gen == generation) {
+						if(ioe != null) {
+							error = ioe;
+						} else if(amt == -1) {
+							eof = true;
+						} else {
+							lengths[slot] = amt;
+							count++;
+						}
+					}
+					notifyAll();
+				}
+			}
+		}
+	}
 }
@@ -13,6 +13,11 @@ public class HDFSStream extends AbstractBufferingStream {
 		this.hdfs = hdfs;
 		doSeek(offset);
 	}
+	public HDFSStream(FSDataInputStream hdfs, long offset, int readSize) throws IOException {
+		super(offset,readSize);
+		this.hdfs = hdfs;
+		doSeek(offset);
+	}
 
 	@Override
 	public int doRead(byte[] b, int off, int len) throws IOException {
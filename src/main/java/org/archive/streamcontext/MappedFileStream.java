@@ -0,0 +1,207 @@
+package org.archive.streamcontext;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stream over a local file which is memory mapped, a window at a time, so
+ * files of any size can be read. read() copies straight from the mapping,
+ * and nextSlice() hands out the mapped bytes themselves, with no copy at
+ * all.
+ *
+ * Windows are unmapped as soon as the Stream moves off them, and on
+ * close(), rather than whenever the garbage collector gets round to it. So
+ * a slice is only valid until the next read(), nextSlice() or setOffset()
+ * outside its window, or close(): reading it after that crashes the JVM.
+ *
+ * The length of the file is taken when it is opened.
+ */
+public class MappedFileStream implements Stream {
+	private static final Logger LOG =
+		Logger.getLogger(MappedFileStream.class.getName());
+
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	// sun.misc.Unsafe.invokeCleaner(), in Java 9 and later
+	private static Object unsafe = null;
+	private static Method invokeCleaner = null;
+	static {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafe = theUnsafe.get(null);
+		} catch(Exception e) {
+			invokeCleaner = null;
+		}
+	}
+
+	private File file = null;
+	private RandomAccessFile raf = null;
+	private FileChannel channel = null;
+	private long length;
+	private int windowSize;
+	private MappedByteBuffer window = null;
+	private long windowStart = 0;
+	private long offset = 0;
+	private boolean closed = false;
+	private boolean atEof = false;
+
+	public MappedFileStream(File file)
+		throws IndexOutOfBoundsException, FileNotFoundException, IOException {
+		this(file,0L,DEFAULT_WINDOW_SIZE);
+	}
+	public MappedFileStream(File file, long offset)
+		throws IndexOutOfBoundsException, FileNotFoundException, IOException {
+		this(file,offset,DEFAULT_WINDOW_SIZE);
+	}
+	/**
+	 * @param windowSize the most bytes of the file mapped at once
+	 */
+	public MappedFileStream(File file, long offset, int windowSize)
+		throws IndexOutOfBoundsException, FileNotFoundException, IOException {
+		if((offset < 0) || (windowSize <= 0)) {
+			throw new IndexOutOfBoundsException();
+		}
+		this.file = file;
+		this.offset = offset;
+		this.windowSize = windowSize;
+		raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+		length = channel.size();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public boolean atEof() {
+		return atEof;
+	}
+
+	public long setOffset(long newOffset) throws IOException {
+		if(newOffset < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		offset = newOffset;
+		atEof = false;
+		return newOffset;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(closed) {
+			throw new IOException("Read after close()");
+		}
+		int amtRead = 0;
+		while((amtRead < len) && mapOffset()) {
+			int pos = (int) (offset - windowStart);
+			int amt = Math.min(len - amtRead, window.limit() - pos);
+			window.position(pos);
+			window.get(b, off + amtRead, amt);
+			offset += amt;
+			amtRead += amt;
+		}
+		if((amtRead == 0) && (len > 0)) {
+			atEof = true;
+			return -1;
+		}
+		return amtRead;
+	}
+
+	/**
+	 * Move past, and return, the mapped bytes at the current offset, up to
+	 * maxLength of them, and no further than the end of the window.
+	 *
+	 * @return a read-only buffer of at least one byte, or null at EOF
+	 */
+	public ByteBuffer nextSlice(int maxLength) throws IOException {
+		if(closed) {
+			throw new IOException("Read after close()");
+		}
+		if(!mapOffset()) {
+			atEof = true;
+			return null;
+		}
+		int pos = (int) (offset - windowStart);
+		int amt = Math.min(maxLength, window.limit() - pos);
+		ByteBuffer slice = window.duplicate();
+		slice.position(pos);
+		slice.limit(pos + amt);
+		offset += amt;
+		return slice.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Map the window holding offset, if it is not already
+	 *
+	 * @return false if offset is at or past the end of the file
+	 */
+	private boolean mapOffset() throws IOException {
+		if(offset >= length) {
+			return false;
+		}
+		if((window == null) || (offset < windowStart)
+				|| (offset >= windowStart + window.limit())) {
+			unmap(window);
+			window = null;
+			windowStart = offset - (offset % windowSize);
+			long size = Math.min(windowSize, length - windowStart);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, size);
+		}
+		return true;
+	}
+
+	public void close() throws IOException {
+		if(!closed) {
+			closed = true;
+			unmap(window);
+			window = null;
+			raf.close();
+		}
+	}
+
+	/**
+	 * Release the mapping of buffer now. If that is not possible on this
+	 * JVM, it is left to the garbage collector.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		if(buffer == null) {
+			return;
+		}
+		try {
+			if(invokeCleaner != null) {
+				invokeCleaner.invoke(unsafe, buffer);
+			} else {
+				// the buffer's sun.misc.Cleaner, before Java 9
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if(cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		} catch(Exception e) {
+			if(LOG.isLoggable(Level.FINE)) {
+				LOG.fine("Unable to unmap, leaving it to GC: " + e);
+			}
+		}
+	}
+}
@@ -0,0 +1,407 @@
+package org.archive.url;
+
+import java.net.URISyntaxException;
+
+/**
+ * WaybackURLKeyMaker that builds the keys of ordinary http and https urls in
+ * a single scan over the url, without going through URLParser, HandyURL and
+ * the regex based canonicalizer chain.
+ *
+ * The keys are the same as WaybackURLKeyMaker with the default
+ * (AggressiveIAURLCanonicalizer) canonicalizer. Anything the scanner does
+ * not handle itself - non-ascii characters, %-escapes that need utf-8
+ * decoding or repeated unescaping, unusual schemes or hosts, possible
+ * session ids, bad ports - falls back to WaybackURLKeyMaker, as does any
+ * other canonicalizer.
+ */
+public class FastWaybackURLKeyMaker extends WaybackURLKeyMaker {
+
+	private final static BasicURLCanonicalizer basic = new BasicURLCanonicalizer();
+
+	private final static String[] SCHEMES = {"http", "https", "ftp", "mms", "rtsp", "wais"};
+
+	private final static String[] OPAQUE_PREFIXES = {"dns:", "filedesc:", "warcinfo:"};
+
+	// Query substrings which may make URLRegexTransformer strip a session id
+	private final static String[] QUERY_SESSION_ID_MATCHES = {"jsessionid=", "phpsessid=", "sid=", "aspsessionid", "cftoken="};
+
+	private final static String PATH_SESSION_ID_MATCH = ".aspx";
+
+	private final static char[] HEX = "0123456789abcdef".toCharArray();
+
+	public FastWaybackURLKeyMaker()
+	{
+
+	}
+
+	public FastWaybackURLKeyMaker(boolean surtMode)
+	{
+		super(surtMode);
+	}
+
+	@Override
+	public String makeKey(String url) throws URISyntaxException {
+		if ((url != null) && isDefaultCanonicalizer()) {
+			String key = scanKey(url, isSurtMode());
+			if (key != null) {
+				if (isSurtMode() && (customRules != null)) {
+					key = applyCustomRules(key);
+				}
+				return key;
+			}
+		}
+		return super.makeKey(url);
+	}
+
+	protected boolean isDefaultCanonicalizer() {
+		Class<?> cls = canonicalizer.getClass();
+		return (cls == AggressiveIAURLCanonicalizer.class) || (cls == DefaultIAURLCanonicalizer.class);
+	}
+
+	/**
+	 * @return the key of url, as built by WaybackURLKeyMaker with the default
+	 * canonicalizer and no custom rules, or null if url needs the full chain
+	 */
+	static String scanKey(String url, boolean surt) {
+		if (url.startsWith("filedesc") || url.startsWith("warcinfo") || url.startsWith("dns:")) {
+			return null;
+		}
+
+		// URLParser: trim, then drop TAB, CR and LF
+		int start = 0;
+		int end = url.length();
+		while ((start < end) && (url.charAt(start) <= ' ')) {
+			start++;
+		}
+		while ((end > start) && (url.charAt(end - 1) <= ' ')) {
+			end--;
+		}
+
+		char[] buf = new char[end - start];
+		int len = 0;
+		for (int i = start; i < end; i++) {
+			char c = url.charAt(i);
+			if (c >= 0x80) {
+				return null;
+			}
+			if ((c != '\t') && (c != '\n') && (c != '\r')) {
+				buf[len++] = c;
+			}
+		}
+
+		for (String prefix : OPAQUE_PREFIXES) {
+			if (regionMatches(buf, len, 0, prefix, false)) {
+				return null;
+			}
+		}
+
+		// Scheme, defaulting to http, and extra slashes after it
+		int pos = 0;
+		int defaultPort = 80;
+		if (regionMatches(buf, len, 0, "http://", false)) {
+			pos = 7;
+		} else if (regionMatches(buf, len, 0, "https://", false)) {
+			pos = 8;
+			defaultPort = 443;
+		} else {
+			for (String scheme : SCHEMES) {
+				if (regionMatches(buf, len, 0, scheme + "://", true)) {
+					return null;
+				}
+			}
+		}
+		while ((pos < len) && (buf[pos] == '/')) {
+			pos++;
+		}
+
+		// Authority: [userinfo@]host[:port]
+		int authEnd = pos;
+		int at = -1;
+		while (authEnd < len) {
+			char c = buf[authEnd];
+			if ((c == '/') || (c == '?') || (c == '#')) {
+				break;
+			}
+			if ((c == '@') && (at < 0)) {
+				at = authEnd;
+			}
+			authEnd++;
+		}
+
+		int hostStart = (at < 0 ? pos : at + 1);
+		int hostEnd = hostStart;
+		while ((hostEnd < authEnd) && (buf[hostEnd] != ':')) {
+			hostEnd++;
+		}
+
+		int port = HandyURL.DEFAULT_PORT;
+		if (hostEnd < authEnd) {
+			int numDigits = authEnd - hostEnd - 1;
+			if ((numDigits < 1) || (numDigits > 9)) {
+				return null;
+			}
+			port = 0;
+			for (int i = hostEnd + 1; i < authEnd; i++) {
+				char c = buf[i];
+				if ((c < '0') || (c > '9')) {
+					return null;
+				}
+				port = (port * 10) + (c - '0');
+			}
+			if (port == defaultPort) {
+				port = HandyURL.DEFAULT_PORT;
+			}
+		}
+
+		String host = scanHost(buf, hostStart, hostEnd);
+		if (host == null) {
+			return null;
+		}
+
+		// Path and query
+		int pathEnd = authEnd;
+		while ((pathEnd < len) && (buf[pathEnd] != '?') && (buf[pathEnd] != '#')) {
+			pathEnd++;
+		}
+
+		String path = scanPath(buf, authEnd, pathEnd);
+		if (path == null) {
+			return null;
+		}
+
+		String query = null;
+		if ((pathEnd < len) && (buf[pathEnd] == '?')) {
+			int queryEnd = pathEnd + 1;
+			while ((queryEnd < len) && (buf[queryEnd] != '#')) {
+				queryEnd++;
+			}
+			char[] decoded = new char[queryEnd - pathEnd - 1];
+			int decodedLen = decode(buf, pathEnd + 1, queryEnd, decoded);
+			if (decodedLen < 0) {
+				return null;
+			}
+			if (decodedLen > 0) {
+				StringBuilder sb = new StringBuilder(decodedLen + 16);
+				appendEscapedLowerCase(sb, decoded, 0, decodedLen);
+				query = sb.toString();
+				for (String match : QUERY_SESSION_ID_MATCHES) {
+					if (query.indexOf(match) >= 0) {
+						return null;
+					}
+				}
+				if (query.indexOf('&') >= 0) {
+					query = IAURLCanonicalizer.alphaReorderQuery(query);
+				}
+			}
+		}
+
+		StringBuilder key = new StringBuilder(len + 8);
+		if (surt) {
+			appendSURT(key, host);
+		} else {
+			key.append(host);
+		}
+		if (port != HandyURL.DEFAULT_PORT) {
+			key.append(':').append(port);
+		}
+		if (surt) {
+			key.append(')');
+		}
+		key.append(path);
+		if (query != null) {
+			key.append('?').append(query);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Lowercase the host, drop leading, trailing and repeated dots, and
+	 * leading www, www2... labels
+	 * @return the host, or null if it has anything other than letters,
+	 * digits, '.', '-' and '_'
+	 */
+	static String scanHost(char[] buf, int start, int end) {
+		char[] host = new char[end - start];
+		int len = 0;
+		boolean onlyDigitsAndDots = true;
+
+		for (int i = start; i < end; i++) {
+			char c = buf[i];
+			if (c == '.') {
+				if ((len == 0) || (host[len - 1] == '.')) {
+					continue;
+				}
+			} else if ((c >= '0') && (c <= '9')) {
+				// digit
+			} else if ((c >= 'a') && (c <= 'z')) {
+				onlyDigitsAndDots = false;
+			} else if ((c >= 'A') && (c <= 'Z')) {
+				c = (char)(c + ('a' - 'A'));
+				onlyDigitsAndDots = false;
+			} else if ((c == '-') || (c == '_')) {
+				onlyDigitsAndDots = false;
+			} else {
+				return null;
+			}
+			host[len++] = c;
+		}
+
+		if ((len > 0) && (host[len - 1] == '.')) {
+			len--;
+		}
+		if (len == 0) {
+			return null;
+		}
+
+		if (onlyDigitsAndDots) {
+			String hostStr = new String(host, 0, len);
+			String ip = basic.attemptIPFormats(hostStr);
+			return (ip != null ? ip : hostStr);
+		}
+
+		// IAURLCanonicalizer.massageHost()
+		int hostStart = 0;
+		while (regionMatches(host, len, hostStart, "www", false)) {
+			int i = hostStart + 3;
+			while ((i < len) && (host[i] >= '0') && (host[i] <= '9')) {
+				i++;
+			}
+			if ((i < len) && (host[i] == '.')) {
+				hostStart = i + 1;
+			} else {
+				break;
+			}
+		}
+		return new String(host, hostStart, len - hostStart);
+	}
+
+	/**
+	 * Unescape, normalize, escape and lowercase the path, and drop any
+	 * trailing slash
+	 * @return the path, or null if it needs the full chain
+	 */
+	static String scanPath(char[] buf, int start, int end) {
+		char[] path = new char[end - start];
+		int len = decode(buf, start, end, path);
+		if (len < 0) {
+			return null;
+		}
+
+		// BasicURLCanonicalizer.normalizePath(): segment bounds, skipping
+		// the empty segment before the leading slash
+		int[] kept = new int[(len + 1) * 2];
+		int numKept = 0;
+		int segStart = 1;
+		for (int i = 1; i <= len; i++) {
+			if ((i < len) && (path[i] != '/')) {
+				continue;
+			}
+			int segLen = i - segStart;
+			if ((segLen == 1) && (path[segStart] == '.')) {
+				// skip
+			} else if ((segLen == 2) && (path[segStart] == '.') && (path[segStart + 1] == '.') && (numKept > 0)) {
+				numKept--;
+			} else {
+				kept[numKept * 2] = segStart;
+				kept[(numKept * 2) + 1] = i;
+				numKept++;
+			}
+			segStart = i + 1;
+		}
+
+		StringBuilder sb = new StringBuilder(len + 16);
+		sb.append('/');
+		for (int i = 0; i < numKept; i++) {
+			int segEnd = kept[(i * 2) + 1];
+			appendEscapedLowerCase(sb, path, kept[i * 2], segEnd);
+			if ((i < numKept - 1) && (segEnd > kept[i * 2])) {
+				sb.append('/');
+			}
+		}
+
+		if ((sb.length() > 1) && (sb.charAt(sb.length() - 1) == '/')) {
+			sb.setLength(sb.length() - 1);
+		}
+
+		if (sb.indexOf(PATH_SESSION_ID_MATCH) >= 0) {
+			return null;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Decode %-escapes of ascii characters from buf into out. Sequences
+	 * needing utf-8 decoding, and anything which could decode differently
+	 * when unescaped repeatedly, are left to the full chain.
+	 * @return the decoded length, or -1 if the input needs the full chain
+	 */
+	static int decode(char[] buf, int start, int end, char[] out) {
+		int len = 0;
+		for (int i = start; i < end; i++) {
+			char c = buf[i];
+			if (c == '%') {
+				if (i + 2 >= end) {
+					return -1;
+				}
+				int h1 = basic.getHex(buf[i + 1]);
+				int h2 = basic.getHex(buf[i + 2]);
+				if ((h1 < 0) || (h2 < 0)) {
+					return -1;
+				}
+				c = (char)((h1 << 4) + h2);
+				if ((c >= 0x80) || (c == '%')) {
+					return -1;
+				}
+				i += 2;
+			}
+			out[len++] = c;
+		}
+		return len;
+	}
+
+	/**
+	 * BasicURLCanonicalizer.escapeOnce() followed by toLowerCase(), for ascii
+	 */
+	static void appendEscapedLowerCase(StringBuilder sb, char[] buf, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = buf[i];
+			if ((c <= ' ') || (c == '#') || (c == '%')) {
+				sb.append('%').append(HEX[c >> 4]).append(HEX[c & 0xf]);
+			} else if ((c >= 'A') && (c <= 'Z')) {
+				sb.append((char)(c + ('a' - 'A')));
+			} else {
+				sb.append(c);
+			}
+		}
+	}
+
+	/**
+	 * URLRegexTransformer.hostToSURT()
+	 */
+	static void appendSURT(StringBuilder sb, String host) {
+		int end = host.length();
+		int dot = host.lastIndexOf('.');
+		while (dot >= 0) {
+			sb.append(host, dot + 1, end).append(',');
+			end = dot;
+			dot = host.lastIndexOf('.', end - 1);
+		}
+		sb.append(host, 0, end);
+	}
+
+	static boolean regionMatches(char[] buf, int len, int offset, String s, boolean ignoreCase) {
+		if (offset + s.length() > len) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			char c = buf[offset + i];
+			if (ignoreCase) {
+				c = Character.toLowerCase(c);
+			}
+			if (c != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,13 @@
+package org.archive.util;
+
+/**
+ * Receives named counter values, to add them to Hadoop counters, a
+ * monitoring system, or a summary line.
+ */
+public interface MetricsSink {
+	/**
+	 * @param name the counter
+	 * @param value the amount to add to it
+	 */
+	public void add(String name, long value);
+}
@@ -106,6 +106,9 @@ public class Recorder {
     
     private ReplayCharSequence replayCharSequence;
 
+    /** label of the input digests' algorithm, as in WARC headers */
+    private String digestLabel = null;
+
    
     /**
      * Create an HttpRecorder.
@@ -252,6 +255,55 @@ public class Recorder {
         return this.ris.getResponseContentLength();
     }
 
+    /**
+     * Digest input as it is recorded: everything, for the block digest,
+     * and the entity, from {@link #markContentBegin()} and less any
+     * chunked transfer-coding, for the payload digest. Call before
+     * {@link #inputWrap(InputStream)}; the values are then ready once
+     * input is recorded, without replaying it. A digest set with
+     * getRecordedInput().setDigest() is separate, and still covers the
+     * raw content, chunked or not.
+     *
+     * @param algorithm Message digest algorithm to use, or null for none.
+     */
+    public void setInputDigests(String algorithm) {
+        this.ris.setBlockDigest(algorithm);
+        this.ris.setPayloadDigest(algorithm);
+        this.digestLabel = (algorithm == null)
+            ? null : algorithm.toLowerCase().replace("-", "");
+    }
+
+    /**
+     * @return Digest of all recorded input, as sha1:BASE32 (or the chosen
+     * algorithm), or null if not digested.
+     */
+    public String getInputBlockDigest() {
+        return labelled(this.ris.getBlockDigestValue());
+    }
+
+    /**
+     * @return Digest of the recorded entity, as sha1:BASE32 (or the chosen
+     * algorithm), or null if not digested.
+     */
+    public String getInputPayloadDigest() {
+        return labelled(this.ris.getPayloadDigestValue());
+    }
+
+    private String labelled(byte[] digest) {
+        if (digest == null || digestLabel == null) {
+            return null;
+        }
+        return digestLabel + ":" + Base32.encode(digest);
+    }
+
+    /**
+     * @return Length of the recorded entity: the content less any chunked
+     * transfer-coding, before any content-encoding is undone.
+     */
+    public long getEntityLength() {
+        return this.ris.getEntityLength();
+    }
+
     /**
      * Close both input and output recorders.
      *
@@ -329,6 +381,7 @@ public class Recorder {
      */
     public void setInputIsChunked(boolean chunked) {
         this.inputIsChunked = chunked;
+        this.ris.setContentChunked(chunked);
     }
     
     protected static Set<String> SUPPORTED_ENCODINGS = new HashSet<String>();
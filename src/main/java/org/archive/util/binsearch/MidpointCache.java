@@ -0,0 +1,77 @@
+package org.archive.util.binsearch;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * Bounded, thread-safe cache of binary search probes for a SortedTextFile:
+ * maps the byte offset of a probe to the first full line following it.
+ *
+ * Every lookup against the same file starts with the same sequence of probes,
+ * so caching them means that only the last few seeks of a search actually
+ * hit the underlying (possibly remote) reader.
+ *
+ * The cache is bounded by an approximate memory budget rather than by entry
+ * count, and must be invalidated whenever the underlying file changes.
+ */
+public class MidpointCache {
+
+	// Rough per-entry cost of the map entry, Long key and String header
+	final static int ENTRY_OVERHEAD = 96;
+
+	protected final Cache<Long, String> cache;
+	protected final long maxBytes;
+
+	public MidpointCache(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+
+		this.cache = CacheBuilder.newBuilder()
+				.maximumWeight(maxBytes)
+				.weigher(new Weigher<Long, String>() {
+					@Override
+					public int weigh(Long offset, String line) {
+						return ENTRY_OVERHEAD + (line.length() * 2);
+					}
+				})
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * @return the first full line at or after offset, or null if not cached
+	 */
+	public String get(long offset)
+	{
+		return cache.getIfPresent(offset);
+	}
+
+	public void put(long offset, String line)
+	{
+		if (line != null) {
+			cache.put(offset, line);
+		}
+	}
+
+	public void invalidate()
+	{
+		cache.invalidateAll();
+	}
+
+	public long size()
+	{
+		return cache.size();
+	}
+
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	public CacheStats getStats()
+	{
+		return cache.stats();
+	}
+}
@@ -44,6 +44,8 @@ public class SortedTextFile {
 	protected SeekableLineReaderFactory factory;
 	protected int binsearchBlockSize = SeekableLineReaderFactory.BINSEARCH_BLOCK_SIZE;
 	
+	protected MidpointCache midpointCache = null;
+	
 	public SortedTextFile(SeekableLineReaderFactory factory) {
 		setFactory(factory);
 	}
@@ -75,6 +77,34 @@ public class SortedTextFile {
         } catch (IOException e) {
         	LOGGER.warning(e.toString());
         }
+		
+		if (midpointCache != null) {
+			midpointCache.invalidate();
+		}
+	}
+	
+	/**
+	 * Enable caching of binary search probes, bounded by approximately
+	 * maxBytes of heap. A value &lt;= 0 disables the cache.
+	 * The cache is cleared on every reloadFactory()
+	 */
+	public void setMidpointCacheMaxBytes(long maxBytes)
+	{
+		if (maxBytes > 0) {
+			this.midpointCache = new MidpointCache(maxBytes);
+		} else {
+			this.midpointCache = null;
+		}
+	}
+	
+	public long getMidpointCacheMaxBytes()
+	{
+		return (midpointCache != null ? midpointCache.getMaxBytes() : 0);
+	}
+	
+	public MidpointCache getMidpointCache()
+	{
+		return midpointCache;
 	}
 
 	public int getBinsearchBlockSize() {
@@ -131,13 +161,27 @@ public class SortedTextFile {
 		long mid;
 		String line;
 		
-		// TODO: implement a cache of midpoints - will make a HUGE difference
-		//       on both HTTP and HDFS
+		// Wrapped readers (eg. FieldExtractingSLR) return transformed lines,
+		// which must not be mixed with the full lines in the cache
+		MidpointCache cache = midpointCache;
+		
+		if (slr instanceof WrappedSeekableLineReader) {
+			cache = null;
+		}
+		
 	    while (max - min > 1) {
 	    	mid = min + (long)((max - min) / 2);
-	    	slr.seek(mid * blockSize);
-	    	if(mid > 0) slr.skipLine(); // probably a partial line
-	    	line = slr.readLine();
+	    	line = (cache != null ? cache.get(mid * blockSize) : null);
+	    	
+	    	if (line == null) {
+	    		slr.seek(mid * blockSize);
+	    		if(mid > 0) slr.skipLine(); // probably a partial line
+	    		line = slr.readLine();
+	    		
+	    		if (cache != null) {
+	    			cache.put(mid * blockSize, line);
+	    		}
+	    	}
 	    	
 	    	if (comparator.compare(key, line) > 0) {
 
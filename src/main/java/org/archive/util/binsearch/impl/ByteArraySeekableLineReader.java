@@ -0,0 +1,50 @@
+package org.archive.util.binsearch.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.archive.util.binsearch.AbstractSeekableLineReader;
+
+/**
+ * SeekableLineReader over an in-memory byte array, used to serve
+ * already loaded (and decompressed) blocks
+ */
+public class ByteArraySeekableLineReader extends AbstractSeekableLineReader {
+	
+	private byte[] data;
+	
+	public ByteArraySeekableLineReader(byte[] data, int blockSize) {
+		super(blockSize);
+		this.data = data;
+	}
+
+	@Override
+	protected InputStream doSeekLoad(long offset, int maxLength) throws IOException {
+		int start = (int)Math.min(offset, data.length);
+		int length = data.length - start;
+		
+		if ((maxLength > 0) && (maxLength < length)) {
+			length = maxLength;
+		}
+		
+		return new ByteArrayInputStream(data, start, length);
+	}
+
+	/**
+	 * @return the whole underlying array, for callers that can use it directly
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	@Override
+	public long getSize() throws IOException {
+		return data.length;
+	}
+
+	@Override
+	protected void doClose() throws IOException {
+		data = null;
+	}
+}
@@ -0,0 +1,39 @@
+package org.archive.util.zip;
+
+import java.util.zip.DataFormatException;
+
+/**
+ * Raw deflate (no zlib or gzip wrapper) decompressor for gzip members, so
+ * an implementation faster than java.util.zip.Inflater can be dropped in,
+ * see {@link InflaterBackends}. Each method behaves as the Inflater method
+ * of the same name.
+ */
+public interface InflaterBackend {
+	public void setInput(byte[] b, int off, int len);
+
+	public boolean needsInput();
+
+	public int inflate(byte[] b, int off, int len) throws DataFormatException;
+
+	public boolean finished();
+
+	/**
+	 * @return the number of input bytes not yet used, which follow the end
+	 * of the deflate stream once finished() is true
+	 */
+	public int getRemaining();
+
+	public long getBytesRead();
+
+	public long getBytesWritten();
+
+	/**
+	 * Make ready for a new deflate stream
+	 */
+	public void reset();
+
+	/**
+	 * Free any native resources. No other method may be called after.
+	 */
+	public void end();
+}
@@ -0,0 +1,63 @@
+package org.archive.util.zip;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.logging.Logger;
+
+/**
+ * Creates the InflaterBackend used for gzip members. The implementation is
+ * chosen at runtime, by setBackend() or the BACKEND_PROPERTY system
+ * property, naming a class with a public no-argument constructor, such as
+ * a wrapper around a native deflate library. JDKInflaterBackend is the
+ * default, and the fallback if the named class cannot be created.
+ */
+public class InflaterBackends {
+	private static final Logger LOG =
+		Logger.getLogger(InflaterBackends.class.getName());
+
+	public static final String BACKEND_PROPERTY = "org.archive.util.zip.inflater";
+
+	private static Class<? extends InflaterBackend> backend =
+		load(System.getProperty(BACKEND_PROPERTY));
+
+	private static Class<? extends InflaterBackend> load(String className) {
+		if(className != null) {
+			try {
+				return Class.forName(className).asSubclass(InflaterBackend.class);
+			} catch(ClassNotFoundException e) {
+				LOG.warning("No InflaterBackend " + className + ", using the default");
+			} catch(ClassCastException e) {
+				LOG.warning(className + " is not an InflaterBackend, using the default");
+			}
+		}
+		return JDKInflaterBackend.class;
+	}
+
+	public static InflaterBackend create() {
+		Class<? extends InflaterBackend> c = backend;
+		if(c != JDKInflaterBackend.class) {
+			try {
+				return c.getConstructor().newInstance();
+			} catch(NoSuchMethodException e) {
+				LOG.warning("Unable to create " + c.getName() + ": " + e);
+			} catch(InstantiationException e) {
+				LOG.warning("Unable to create " + c.getName() + ": " + e);
+			} catch(IllegalAccessException e) {
+				LOG.warning("Unable to create " + c.getName() + ": " + e);
+			} catch(InvocationTargetException e) {
+				LOG.warning("Unable to create " + c.getName() + ": " + e.getCause());
+			}
+		}
+		return new JDKInflaterBackend();
+	}
+
+	public static Class<? extends InflaterBackend> getBackend() {
+		return backend;
+	}
+
+	/**
+	 * @param backend the class created from now on, or null for the default
+	 */
+	public static void setBackend(Class<? extends InflaterBackend> backend) {
+		InflaterBackends.backend = (backend == null) ? JDKInflaterBackend.class : backend;
+	}
+}
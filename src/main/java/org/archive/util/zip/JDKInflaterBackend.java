@@ -0,0 +1,39 @@
+package org.archive.util.zip;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The default InflaterBackend, a java.util.zip.Inflater
+ */
+public class JDKInflaterBackend implements InflaterBackend {
+	private Inflater inflater = new Inflater(true);
+
+	public void setInput(byte[] b, int off, int len) {
+		inflater.setInput(b, off, len);
+	}
+	public boolean needsInput() {
+		return inflater.needsInput();
+	}
+	public int inflate(byte[] b, int off, int len) throws DataFormatException {
+		return inflater.inflate(b, off, len);
+	}
+	public boolean finished() {
+		return inflater.finished();
+	}
+	public int getRemaining() {
+		return inflater.getRemaining();
+	}
+	public long getBytesRead() {
+		return inflater.getBytesRead();
+	}
+	public long getBytesWritten() {
+		return inflater.getBytesWritten();
+	}
+	public void reset() {
+		inflater.reset();
+	}
+	public void end() {
+		inflater.end();
+	}
+}
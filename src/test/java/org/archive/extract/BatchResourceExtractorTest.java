@@ -0,0 +1,101 @@
+package org.archive.extract;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.archive.util.StreamCopy;
+import org.archive.util.TestUtils;
+
+import junit.framework.TestCase;
+
+public class BatchResourceExtractorTest extends TestCase {
+
+	private File moveTo(File file, File dir, String name) {
+		File dest = new File(dir, name);
+		assertTrue(file.renameTo(dest));
+		dest.deleteOnExit();
+		return dest;
+	}
+
+	private String readFile(File file) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FileInputStream in = new FileInputStream(file);
+		StreamCopy.copy(in, out);
+		in.close();
+		return out.toString("UTF-8");
+	}
+
+	public void testDirectory() throws Exception {
+		File inputDir = TestUtils.createTempDir("test-batch");
+		File a = moveTo(ParallelExtractingResourceProducerTest.writeWARC(50, new byte[0]), inputDir, "a.warc.gz");
+		File b = moveTo(ParallelExtractingResourceProducerTest.writeWARC(20, new byte[0]), inputDir, "b.warc.gz");
+		new File(inputDir, "README").createNewFile();
+		new File(inputDir, "README").deleteOnExit();
+
+		File outputDir = TestUtils.createTempDir("test-batch");
+		ByteArrayOutputStream progress = new ByteArrayOutputStream();
+		BatchResourceExtractor extractor = new BatchResourceExtractor();
+		extractor.setProgress(new PrintStream(progress, true, "UTF-8"));
+		assertEquals(0, extractor.run(new String[] {"-threads", "2", "-output", outputDir.getPath(),
+				"-cdx", inputDir.getPath()}));
+
+		File aCDX = new File(outputDir, "a.warc.cdx");
+		File bCDX = new File(outputDir, "b.warc.cdx");
+		aCDX.deleteOnExit();
+		bCDX.deleteOnExit();
+		assertEquals(2, outputDir.listFiles().length);
+		assertEquals(ParallelExtractingResourceProducerTest.extract(a, 1, "-cdx"), readFile(aCDX));
+		assertEquals(ParallelExtractingResourceProducerTest.extract(b, 1, "-cdx"), readFile(bCDX));
+
+		String report = progress.toString("UTF-8");
+		assertTrue(report, report.contains(a.getPath() + ": 51 records"));
+		assertTrue(report, report.contains(b.getPath() + ": 21 records"));
+		assertTrue(report, report.contains("Extracted 2 of 2 files"));
+	}
+
+	public void testFailureDoesNotAbortBatch() throws Exception {
+		File inputDir = TestUtils.createTempDir("test-batch");
+		File good = moveTo(ParallelExtractingResourceProducerTest.writeWARC(30, new byte[0]), inputDir, "good.warc.gz");
+		File missing = new File(inputDir, "missing.warc.gz");
+
+		File manifest = new File(inputDir, "manifest.txt");
+		manifest.deleteOnExit();
+		PrintStream ps = new PrintStream(new FileOutputStream(manifest), false, "UTF-8");
+		ps.println("# inputs");
+		ps.println(missing.getPath());
+		ps.println();
+		ps.println(good.getPath());
+		ps.close();
+
+		File outputDir = TestUtils.createTempDir("test-batch");
+		ByteArrayOutputStream progress = new ByteArrayOutputStream();
+		BatchResourceExtractor extractor = new BatchResourceExtractor();
+		extractor.setProgress(new PrintStream(progress, true, "UTF-8"));
+		assertEquals(1, extractor.run(new String[] {"-threads", "2", "-output", outputDir.getPath(),
+				"-manifest", manifest.getPath(), "-cdx"}));
+
+		File goodCDX = new File(outputDir, "good.warc.cdx");
+		goodCDX.deleteOnExit();
+		assertEquals(ParallelExtractingResourceProducerTest.extract(good, 1, "-cdx"), readFile(goodCDX));
+		assertFalse(new File(outputDir, "missing.warc.cdx").exists());
+
+		String report = progress.toString("UTF-8");
+		assertTrue(report, report.contains(missing.getPath() + ": FAILED"));
+		assertTrue(report, report.contains(good.getPath() + ": 31 records"));
+		assertTrue(report, report.contains("Extracted 1 of 2 files in"));
+		assertTrue(report, report.contains("1 failed"));
+	}
+
+	public void testOutputNames() throws Exception {
+		BatchResourceExtractor extractor = new BatchResourceExtractor();
+		assertEquals("a.warc.json", extractor.getOutputName("/x/a.warc.gz"));
+		extractor.run(new String[] {"-wat"});
+		assertEquals("a.arc.wat.gz", extractor.getOutputName("hdfs://x/a.arc.gz"));
+		extractor.run(new String[] {"-cdxURL"});
+		assertEquals("a.warc.cdx", extractor.getOutputName("a.warc"));
+	}
+}
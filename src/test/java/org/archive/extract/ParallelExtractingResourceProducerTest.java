@@ -0,0 +1,169 @@
+package org.archive.extract;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.archive.format.index.RecordIndex;
+import org.archive.format.index.RecordIndexer;
+import org.archive.format.warc.WARCFixtures;
+import org.archive.format.warc.WARCFixtures.Compression;
+import org.archive.resource.Resource;
+import org.archive.resource.ResourceProducer;
+
+import junit.framework.TestCase;
+
+public class ParallelExtractingResourceProducerTest extends TestCase {
+
+	final static Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Writes a warc.gz with a warcinfo record, then numRecords html,
+	 * binary, redirect and request records
+	 */
+	static File writeWARC(int numRecords, byte[] trailing) throws IOException {
+		return writeWARC(numRecords, trailing, Compression.GZIP);
+	}
+
+	static File writeWARC(int numRecords, byte[] trailing, Compression compression) throws IOException {
+		List<byte[]> records = new ArrayList<byte[]>();
+		Random rand = new Random(1);
+
+		records.add(WARCFixtures.warcRecord(0, "warcinfo", null, "application/warc-fields",
+				"software: test\r\nformat: WARC File Format 1.0\r\n".getBytes(UTF8)));
+
+		for (int i = 1; i <= numRecords; i++) {
+			String uri = "http://www.example" + (i % 7) + ".com/page/" + i + "?b=" + i + "&a=1";
+			switch (i % 4) {
+			case 0:
+				StringBuilder html = new StringBuilder("<html><head><title>Page " + i + "</title>");
+				if (i % 3 == 0) {
+					html.append("<meta name=\"robots\" content=\"noindex,nofollow\">");
+				}
+				html.append("</head><body>");
+				for (int j = 0; j < rand.nextInt(50); j++) {
+					html.append("<a href=\"/link/").append(rand.nextInt(1000)).append("\">link ").append(j).append("</a> ");
+				}
+				html.append("<img src=\"/img/").append(i).append(".png\"></body></html>");
+				records.add(WARCFixtures.warcRecord(i, "response", uri, "application/http; msgtype=response",
+						WARCFixtures.httpResponse("text/html; charset=utf-8", "", html.toString().getBytes(UTF8))));
+				break;
+			case 1:
+				byte[] data = new byte[rand.nextInt(20000)];
+				rand.nextBytes(data);
+				records.add(WARCFixtures.warcRecord(i, "response", uri, "application/http; msgtype=response",
+						WARCFixtures.httpResponse("image/jpeg", "", data)));
+				break;
+			case 2:
+				records.add(WARCFixtures.warcRecord(i, "response", uri, "application/http; msgtype=response",
+						WARCFixtures.httpResponse("text/html", "Location: http://example.com/moved/" + i + "\r\n", new byte[0])));
+				break;
+			default:
+				records.add(WARCFixtures.warcRecord(i, "request", uri, "application/http; msgtype=request",
+						("GET /page/" + i + " HTTP/1.1\r\nHost: example.com\r\n\r\n").getBytes(UTF8)));
+			}
+		}
+		return WARCFixtures.writeWARC("test-parallel", records, compression, trailing);
+	}
+
+	static String extract(File file, int threads, String... opts) throws Exception {
+		ResourceExtractor extractor = new ResourceExtractor();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		extractor.setOut(out);
+		String[] args = new String[opts.length + 3];
+		args[0] = "-threads";
+		args[1] = String.valueOf(threads);
+		System.arraycopy(opts, 0, args, 2, opts.length);
+		args[args.length - 1] = file.getAbsolutePath();
+		assertEquals(0, extractor.run(args));
+		return new String(out.toByteArray(), UTF8);
+	}
+
+	public void testSameCDX() throws Exception {
+		File file = writeWARC(400, new byte[0]);
+		String serial = extract(file, 1, "-cdx");
+		assertEquals(402, serial.split("\n").length);
+		assertEquals(serial, extract(file, 4, "-cdx"));
+	}
+
+	public void testSameCDXWithRecordIndex() throws Exception {
+		File file = writeWARC(300, new byte[0]);
+		String serial = extract(file, 1, "-cdx");
+		assertEquals(301, new RecordIndexer().index(file));
+		RecordIndex.getSidecar(file).deleteOnExit();
+		assertNotNull(RecordIndex.forArchive(file));
+		assertEquals(serial, extract(file, 4, "-cdx"));
+	}
+
+	public void testSameCDXWithSkipLengths() throws Exception {
+		File file = writeWARC(300, new byte[0], Compression.GZIP_SKIP_LENGTH);
+		String serial = extract(file, 1, "-cdx");
+		assertEquals(302, serial.split("\n").length);
+		assertEquals(serial, extract(file, 4, "-cdx"));
+	}
+
+	public void testSameMetaData() throws Exception {
+		File file = writeWARC(200, new byte[0]);
+
+		ByteArrayOutputStream serial = new ByteArrayOutputStream();
+		ExtractorOutput out = new DumpingExtractorOutput(serial);
+		ResourceProducer producer = new ExtractingResourceProducer(
+				ProducerUtils.getProducer(file.getAbsolutePath()), new ExtractingResourceFactoryMapper());
+		Resource r = null;
+		int count = 0;
+		while ((r = producer.getNext()) != null) {
+			out.output(r);
+			count++;
+		}
+		producer.close();
+		assertEquals(201, count);
+
+		ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+		out = new DumpingExtractorOutput(parallel);
+		ParallelExtractingResourceProducer pProducer =
+				new ParallelExtractingResourceProducer(file.getAbsolutePath(), 3);
+		// many small chunks
+		pProducer.setChunkBytes(4096);
+		while ((r = pProducer.getNext()) != null) {
+			out.output(r);
+		}
+		assertNull(pProducer.getNext());
+		pProducer.close();
+
+		assertEquals(serial.toString("UTF-8"), parallel.toString("UTF-8"));
+	}
+
+	public void testTrailingGarbage() throws Exception {
+		byte[] garbage = new byte[1000];
+		new Random(2).nextBytes(garbage);
+		File file = writeWARC(100, garbage);
+		String serial = extract(file, 1, "-cdx");
+		assertEquals(102, serial.split("\n").length);
+		assertEquals(serial, extract(file, 4, "-cdx"));
+	}
+
+	public void testCorruptMember() throws Exception {
+		File file = writeWARC(100, new byte[0]);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(raf.length() / 2);
+		raf.write(new byte[64]);
+		raf.close();
+
+		String serial = extract(file, 1, "-cdx");
+		int lines = serial.split("\n").length;
+		assertTrue((lines > 50) && (lines < 102));
+		assertEquals(serial, extract(file, 4, "-cdx"));
+	}
+
+	public void testCanProduce() throws Exception {
+		File file = writeWARC(1, new byte[0]);
+		assertTrue(ParallelExtractingResourceProducer.canProduce(file.getAbsolutePath()));
+		assertFalse(ParallelExtractingResourceProducer.canProduce(file.getAbsolutePath() + ".missing.gz"));
+		assertFalse(ParallelExtractingResourceProducer.canProduce("http://example.com/a.warc.gz"));
+	}
+}
@@ -0,0 +1,79 @@
+package org.archive.format.cdx;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ByteCDXLineTest extends TestCase {
+
+	public void testFields() {
+		ByteCDXLine line = new ByteCDXLine("com,example)/ 20100101000000 http://example.com/ text/html 200");
+		assertEquals(5, line.getNumFields());
+		assertEquals("com,example)/", line.getUrlKey());
+		assertEquals("20100101000000", line.getTimestamp());
+		assertEquals("200", line.getField(4));
+		assertEquals("-", line.getField(5));
+		assertEquals("com,example)/ 2010".length(), line.getMatchKeyEnd(4));
+		assertEquals(line.getLength(), line.getMatchKeyEnd(100));
+
+		assertTrue(line.startsWith("com,example)/ 2010".getBytes(ByteCDXLine.UTF8)));
+		assertFalse(line.startsWith("com,example)/a".getBytes(ByteCDXLine.UTF8)));
+
+		String[] others = {"", "com", "com,example)/", "com,example)/ 2011", "com,example)/a", "été"};
+		for (String other : others) {
+			int expected = Integer.signum(line.toString().compareTo(other));
+			assertEquals(expected, Integer.signum(line.compareTo(other.getBytes(ByteCDXLine.UTF8))));
+		}
+
+		ByteCDXLine copy = line.copy();
+		assertEquals(0, copy.compareTo(line));
+		assertEquals(line.toString(), copy.toString());
+	}
+
+	private List<String> readAll(ByteCDXLineCursor cursor) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		ByteCDXLine line = null;
+		while ((line = cursor.next()) != null) {
+			lines.add(line.toString());
+		}
+		cursor.close();
+		return lines;
+	}
+
+	public void testStreamCursor() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++) {
+			String line = "line" + i + " " + (i % 7 == 0 ? "" : "x") + (i % 100 == 0 ? new String(new char[300]).replace('\0', 'y') : "");
+			expected.add(line);
+			sb.append(line).append(i % 2 == 0 ? "\n" : "\r\n");
+		}
+		sb.append("last");
+		expected.add("last");
+		byte[] data = sb.toString().getBytes(ByteCDXLine.UTF8);
+
+		assertEquals(expected, readAll(new StreamByteCDXLineCursor(new ByteArrayInputStream(data), 16)));
+		assertEquals(expected, readAll(new StreamByteCDXLineCursor(data, 0, data.length)));
+	}
+
+	public void testBounds() throws IOException {
+		byte[] data = "a 1\nb 1\nb 2\nba 1\nc 1\n".getBytes(ByteCDXLine.UTF8);
+
+		List<String> lines = readAll(new BoundedByteCDXLineCursor(new StreamByteCDXLineCursor(data, 0, data.length), "b", "c", false));
+		assertEquals(3, lines.size());
+		assertEquals("b 1", lines.get(0));
+		assertEquals("ba 1", lines.get(2));
+
+		lines = readAll(BoundedByteCDXLineCursor.wrapPrefix(new StreamByteCDXLineCursor(data, 0, data.length), "b", true));
+		assertEquals(2, lines.size());
+
+		lines = readAll(BoundedByteCDXLineCursor.wrapPrefix(new StreamByteCDXLineCursor(data, 0, data.length), "b", false));
+		assertEquals(3, lines.size());
+
+		lines = readAll(new BoundedByteCDXLineCursor(new StreamByteCDXLineCursor(data, 0, data.length), null, "", false));
+		assertEquals(5, lines.size());
+	}
+}
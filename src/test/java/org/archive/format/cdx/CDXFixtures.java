@@ -0,0 +1,159 @@
+package org.archive.format.cdx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.archive.format.gzip.zipnum.ZipNumClusterBuilder;
+import org.archive.util.TestUtils;
+
+/**
+ * Generates synthetic but realistically shaped CDX data for benchmarks:
+ * many hosts with a skewed number of urls each, and a skewed number of
+ * captures per url, written either as a plain sorted CDX file or as a zipnum
+ * cluster.
+ */
+public class CDXFixtures {
+
+	final static Charset UTF8 = Charset.forName("UTF-8");
+
+	final static String[] TLDS = {"com", "org", "net", "uk,co", "de", "fr", "edu", "gov"};
+	final static String[] MIMES = {"text/html", "text/html", "text/html", "image/jpeg", "image/png", "application/javascript", "text/css"};
+	final static String[] STATUS = {"200", "200", "200", "200", "301", "302", "404", "-"};
+	final static String BASE32 = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+
+	/**
+	 * @return numLines sorted CDX 11 lines, always the same for the same seed
+	 */
+	public static List<String> generateLines(int numLines, long seed)
+	{
+		Random rand = new Random(seed);
+		List<String> lines = new ArrayList<String>(numLines);
+
+		while (lines.size() < numLines) {
+			String host = randomWord(rand, 4 + rand.nextInt(10));
+			String tld = TLDS[rand.nextInt(TLDS.length)];
+			String surt = tld + "," + host;
+			String hostName = host + "." + tld.replace(',', '.');
+
+			int numUrls = 1 + (int)Math.min(500, Math.abs(rand.nextGaussian() * 40));
+
+			for (int u = 0; (u < numUrls) && (lines.size() < numLines); u++) {
+				String path = (u == 0 ? "" : randomPath(rand));
+				String digest = randomDigest(rand);
+
+				int numCaptures = 1 + (int)Math.min(200, Math.abs(rand.nextGaussian() * 8));
+
+				for (int c = 0; (c < numCaptures) && (lines.size() < numLines); c++) {
+					if (rand.nextInt(4) == 0) {
+						digest = randomDigest(rand);
+					}
+
+					String timestamp = String.format("%04d%02d%02d%02d%02d%02d", 1996 + rand.nextInt(18), 1 + rand.nextInt(12),
+							1 + rand.nextInt(28), rand.nextInt(24), rand.nextInt(60), rand.nextInt(60));
+
+					lines.add(surt + ")/" + path + " " + timestamp + " http://" + hostName + "/" + path + " "
+							+ MIMES[rand.nextInt(MIMES.length)] + " " + STATUS[rand.nextInt(STATUS.length)] + " "
+							+ digest + " - - " + (500 + rand.nextInt(50000)) + " " + rand.nextInt(1000000000) + " "
+							+ "CRAWL-" + timestamp.substring(0, 8) + "-" + String.format("%05d", rand.nextInt(100000)) + ".warc.gz");
+				}
+			}
+		}
+
+		Collections.sort(lines);
+		return lines;
+	}
+
+	static String randomWord(Random rand, int length)
+	{
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char)('a' + rand.nextInt(26)));
+		}
+		return sb.toString();
+	}
+
+	static String randomPath(Random rand)
+	{
+		StringBuilder sb = new StringBuilder();
+		int depth = 1 + rand.nextInt(4);
+		for (int i = 0; i < depth; i++) {
+			if (i > 0) {
+				sb.append('/');
+			}
+			sb.append(randomWord(rand, 3 + rand.nextInt(8)));
+		}
+		if (rand.nextBoolean()) {
+			sb.append(".html");
+		} else if (rand.nextInt(3) == 0) {
+			sb.append("?id=").append(rand.nextInt(10000));
+		}
+		return sb.toString();
+	}
+
+	static String randomDigest(Random rand)
+	{
+		StringBuilder sb = new StringBuilder(32);
+		for (int i = 0; i < 32; i++) {
+			sb.append(BASE32.charAt(rand.nextInt(32)));
+		}
+		return sb.toString();
+	}
+
+	public static File writeCDX(List<String> lines) throws IOException
+	{
+		File cdx = File.createTempFile("fixture", ".cdx");
+		cdx.deleteOnExit();
+
+		PrintWriter pw = new PrintWriter(cdx, "UTF-8");
+		for (String line : lines) {
+			pw.print(line);
+			pw.print('\n');
+		}
+		pw.close();
+
+		return cdx;
+	}
+
+	/**
+	 * Write lines as a zipnum cluster of numParts parts with linesPerBlock lines
+	 * per gzip member, keyed by "urlkey timestamp", with ZipNumClusterBuilder
+	 * @return the ALL.summary file
+	 */
+	public static File writeZipNumCluster(List<String> lines, int linesPerBlock, int numParts) throws IOException
+	{
+		File dir = TestUtils.createTempDir("fixture-zipnum");
+
+		int numBlocks = (lines.size() + linesPerBlock - 1) / linesPerBlock;
+
+		ZipNumClusterBuilder builder = new ZipNumClusterBuilder(dir);
+		builder.setCdxLinesPerBlock(linesPerBlock);
+		builder.setBlocksPerPart(Math.max(1, (numBlocks + numParts - 1) / numParts));
+		builder.build(lines.iterator());
+
+		for (File file : dir.listFiles()) {
+			file.deleteOnExit();
+		}
+
+		return new File(dir, builder.getClusterName() + ".summary");
+	}
+
+	/**
+	 * @return count search keys "urlkey " taken from random lines
+	 */
+	public static String[] sampleKeys(List<String> lines, int count, long seed)
+	{
+		Random rand = new Random(seed);
+		String[] keys = new String[count];
+		for (int i = 0; i < count; i++) {
+			String line = lines.get(rand.nextInt(lines.size()));
+			keys[i] = line.substring(0, line.indexOf(' ') + 1);
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,97 @@
+package org.archive.format.cdx;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.archive.format.gzip.zipnum.ZipNumParams;
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.iterator.CloseableIteratorWrapper;
+
+import junit.framework.TestCase;
+
+public class MultiCDXInputSourceTest extends TestCase {
+	
+	static class TestSource implements CDXInputSource {
+		List<String> lines;
+		long delayMS;
+		boolean fail;
+		
+		TestSource(long delayMS, boolean fail, String... lines) {
+			this.lines = Arrays.asList(lines);
+			this.delayMS = delayMS;
+			this.fail = fail;
+		}
+		
+		CloseableIterator<String> open() throws IOException {
+			if (delayMS > 0) {
+				try {
+					Thread.sleep(delayMS);
+				} catch (InterruptedException e) {
+					throw new IOException(e.toString());
+				}
+			}
+			if (fail) {
+				throw new IOException("failed source");
+			}
+			return new CloseableIteratorWrapper<String>(lines.iterator());
+		}
+
+		public CloseableIterator<String> getCDXIterator(String key, String prefix, boolean exact, ZipNumParams params) throws IOException {
+			return open();
+		}
+
+		public CloseableIterator<String> getCDXIterator(String key, String start, String end, ZipNumParams params) throws IOException {
+			return open();
+		}
+
+		public long getTotalLines() {
+			return lines.size();
+		}
+	}
+	
+	private List<String> readAll(CloseableIterator<String> iter) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		while (iter.hasNext()) {
+			lines.add(iter.next());
+		}
+		iter.close();
+		return lines;
+	}
+	
+	public void testParallelInit() throws IOException {
+		List<CDXInputSource> sources = new ArrayList<CDXInputSource>();
+		sources.add(new TestSource(0, false, "a", "d", "g"));
+		sources.add(new TestSource(50, false, "b", "e"));
+		sources.add(new TestSource(0, true, "x"));
+		sources.add(new TestSource(0, false, "c", "f"));
+		
+		MultiCDXInputSource multi = new MultiCDXInputSource();
+		multi.setCdx(sources);
+		ZipNumParams params = new ZipNumParams();
+		
+		List<String> serial = readAll(multi.getCDXIterator("a", "a", "z", params));
+		assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f", "g"), serial);
+		
+		multi.setParallelThreads(4);
+		assertEquals(serial, readAll(multi.getCDXIterator("a", "a", "z", params)));
+		assertEquals(serial, readAll(multi.getCDXIterator("a", "a", false, params)));
+		
+		// Slow source is skipped
+		sources.set(1, new TestSource(2000, false, "b", "e"));
+		multi.setParallelTimeoutMS(200);
+		long start = System.currentTimeMillis();
+		assertEquals(Arrays.asList("a", "c", "d", "f", "g"), readAll(multi.getCDXIterator("a", "a", "z", params)));
+		assertTrue((System.currentTimeMillis() - start) < 1500);
+		
+		// The executor is shut down on close, and recreated if used again
+		ExecutorService executor = multi.getParallelExecutor();
+		multi.close();
+		assertTrue(executor.isShutdown());
+		sources.set(1, new TestSource(0, false, "b", "e"));
+		assertEquals(serial, readAll(multi.getCDXIterator("a", "a", "z", params)));
+		multi.close();
+	}
+}
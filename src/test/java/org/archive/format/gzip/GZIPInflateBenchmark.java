@@ -0,0 +1,151 @@
+package org.archive.format.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.archive.streamcontext.ByteArrayWrappedStream;
+import org.archive.util.StreamCopy;
+import org.archive.util.zip.InflaterBackend;
+import org.archive.util.zip.InflaterBackends;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Inflates every member of a warc.gz with GZIPMemberSeries, per
+ * InflaterBackend. PerMemberInflater is the old behaviour, a new
+ * java.util.zip.Inflater for each member.
+ *
+ * Members are generated HTML-like and random records, or those of a real
+ * file given to the forked JVM. Run with:
+ *   mvn -Pbenchmark test -Djmh.args=GZIPInflateBenchmark
+ *   mvn -Pbenchmark test -Djmh.args="GZIPInflateBenchmark -jvmArgsAppend -Dwarc=PATH"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GZIPInflateBenchmark {
+
+	final static int NUM_RECORDS = 2000;
+
+	@Param({"org.archive.util.zip.JDKInflaterBackend",
+		"org.archive.format.gzip.GZIPInflateBenchmark$PerMemberInflater"})
+	public String backend;
+
+	byte[] warc;
+	byte[] scratch = new byte[64 * 1024];
+
+	public static class PerMemberInflater implements InflaterBackend {
+		private Inflater inflater = new Inflater(true);
+
+		public void setInput(byte[] b, int off, int len) {
+			inflater.setInput(b, off, len);
+		}
+		public boolean needsInput() {
+			return inflater.needsInput();
+		}
+		public int inflate(byte[] b, int off, int len) throws DataFormatException {
+			return inflater.inflate(b, off, len);
+		}
+		public boolean finished() {
+			return inflater.finished();
+		}
+		public int getRemaining() {
+			return inflater.getRemaining();
+		}
+		public long getBytesRead() {
+			return inflater.getBytesRead();
+		}
+		public long getBytesWritten() {
+			return inflater.getBytesWritten();
+		}
+		public void reset() {
+			// left to the finalizer, as each member's own Inflater was
+			inflater = new Inflater(true);
+		}
+		public void end() {
+			inflater.end();
+		}
+	}
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setup() throws Exception {
+		// GZIPMemberSeries logs each member at INFO
+		java.util.logging.Logger.getLogger("org.archive").setLevel(java.util.logging.Level.WARNING);
+		InflaterBackends.setBackend((Class<? extends InflaterBackend>) Class.forName(backend));
+		String path = System.getProperty("warc", "");
+		if (path.length() > 0) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			FileInputStream in = new FileInputStream(new File(path));
+			StreamCopy.copy(in, bytes);
+			in.close();
+			warc = bytes.toByteArray();
+		} else {
+			warc = generate();
+		}
+	}
+
+	private byte[] generate() throws IOException {
+		Charset utf8 = Charset.forName("UTF-8");
+		Random rand = new Random(1);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPMemberWriter gzw = new GZIPMemberWriter(bytes);
+		for (int i = 0; i < NUM_RECORDS; i++) {
+			StringBuilder sb = new StringBuilder();
+			sb.append("WARC/1.0\r\nWARC-Type: response\r\nWARC-Target-URI: http://example.com/")
+				.append(i).append("\r\n\r\nHTTP/1.1 200 OK\r\nContent-Type: text/html\r\n\r\n<html><body>\n");
+			for (int j = rand.nextInt(400); j > 0; j--) {
+				sb.append("<p><a href=\"/page/").append(rand.nextInt(100000)).append("\">link ")
+					.append(j).append("</a></p>\n");
+			}
+			byte[] record = sb.toString().getBytes(utf8);
+			if (i % 4 == 0) {
+				byte[] random = new byte[rand.nextInt(50000)];
+				rand.nextBytes(random);
+				byte[] both = new byte[record.length + random.length];
+				System.arraycopy(record, 0, both, 0, record.length);
+				System.arraycopy(random, 0, both, record.length, random.length);
+				record = both;
+			}
+			gzw.write(new ByteArrayInputStream(record));
+		}
+		return bytes.toByteArray();
+	}
+
+	@Benchmark
+	public void inflate(Blackhole bh) throws IOException {
+		GZIPMemberSeries series = new GZIPMemberSeries(new ByteArrayWrappedStream(warc));
+		long total = 0;
+		GZIPSeriesMember member;
+		while ((member = series.getNextMember()) != null) {
+			int amt;
+			while ((amt = member.read(scratch, 0, scratch.length)) != -1) {
+				total += amt;
+			}
+		}
+		series.close();
+		bh.consume(total);
+	}
+}
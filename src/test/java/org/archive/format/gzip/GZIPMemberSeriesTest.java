@@ -1,22 +1,28 @@
 package org.archive.format.gzip;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.zip.Deflater;
 
 
 import org.archive.util.ByteOp;
 import org.archive.util.IAUtils;
+import org.archive.util.MetricsSink;
 import org.archive.util.TestUtils;
 import org.archive.format.gzip.GZIPFormatException;
 import org.archive.format.gzip.GZIPMemberSeries;
 import org.archive.format.gzip.GZIPSeriesMember;
+import org.archive.format.warc.WARCFixtures;
 import org.archive.streamcontext.ByteArrayWrappedStream;
+import org.archive.streamcontext.RandomAccessFileStream;
 import org.archive.streamcontext.SimpleStream;
 import org.archive.streamcontext.Stream;
 
 import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
 import com.google.common.primitives.Bytes;
 
 import junit.framework.TestCase;
@@ -291,6 +297,57 @@ public class GZIPMemberSeriesTest extends TestCase {
 
 	}	
 	
+	public void testMetrics() throws IOException {
+		InputStream is = getClass().getResourceAsStream("abcd.gz");
+		byte abcd[] = ByteStreams.toByteArray(is);
+		byte junk[] = {1, 2, 3, 4, 5};
+		GZIPMemberSeries s = new GZIPMemberSeries(
+				new ByteArrayWrappedStream(Bytes.concat(abcd, junk, abcd)), "unk", 0, false);
+		GZIPSeriesMember m;
+		while((m = s.getNextMember()) != null) {
+			TestUtils.assertStreamEquals(m,"abcd".getBytes(IAUtils.UTF8));
+		}
+		GZIPSeriesMetrics metrics = s.getMetrics();
+		assertEquals(2, metrics.getMembers());
+		assertEquals(2 * abcd.length, metrics.getCompressedBytes());
+		assertEquals(8, metrics.getUncompressedBytes());
+		assertEquals(5, metrics.getSkippedBytes());
+		assertEquals(0, metrics.getRecoveries());
+
+		// a deflate error in the first of two members
+		byte both[] = Bytes.concat(abcd,abcd);
+		for(int i = 10; i < 15; i++) {
+			both[i] = 0;
+		}
+		s = new GZIPMemberSeries(new ByteArrayWrappedStream(both), "unk", 0, false);
+		m = s.getNextMember();
+		try {
+			ByteStreams.toByteArray(m);
+			fail();
+		} catch(GZIPFormatException e) {
+			// expected
+		}
+		m = s.getNextMember();
+		TestUtils.assertStreamEquals(m,"abcd".getBytes(IAUtils.UTF8));
+		s.close();
+		assertEquals(2, s.getMetrics().getMembers());
+		assertEquals(1, s.getMetrics().getRecoveries());
+		assertEquals(4, s.getMetrics().getUncompressedBytes());
+
+		GZIPSeriesMetrics total = new GZIPSeriesMetrics();
+		total.add(metrics);
+		total.add(s.getMetrics());
+		final long[] members = new long[1];
+		total.reportTo(new MetricsSink() {
+			public void add(String name, long value) {
+				if(name.equals(GZIPSeriesMetrics.MEMBERS)) {
+					members[0] += value;
+				}
+			}
+		});
+		assertEquals(4, members[0]);
+	}
+
 	public void testDoubleBiggerDeflateErrOnFirst() throws IOException {
 		String resource = "double-single-inflate-error.gz";
 		InputStream is = getClass().getResourceAsStream(resource);
@@ -375,5 +432,41 @@ public class GZIPMemberSeriesTest extends TestCase {
 		assertTrue(s.gotEOF());
 	}
 	
+	private Stream fileStream(byte bytes[]) throws IOException {
+		File file = File.createTempFile("test-series", ".gz");
+		file.deleteOnExit();
+		Files.write(bytes, file);
+		return new RandomAccessFileStream(file);
+	}
+	
+	public void testSkipCurrentMember() throws IOException {
+		// stored members, bigger than the buffer, so skips read the stream
+		byte data[] = new byte[10000];
+		byte member[] = WARCFixtures.gzip(data, Deflater.NO_COMPRESSION);
+		byte magicOnly[] = {(byte) GZIPConstants.GZIP_MAGIC_ONE, (byte) GZIPConstants.GZIP_MAGIC_TWO};
+		byte all[] = Bytes.concat(member, member, magicOnly);
+
+		GZIPMemberSeries s = new GZIPMemberSeries(fileStream(all), "unk", 0, false);
+		GZIPSeriesMember m = s.getNextMember();
+		assertTrue(-1 != m.read());
+		assertTrue(s.skipCurrentMember(member.length));
+
+		// 2 trailing bytes are not a member, even if what was read before
+		// them left a magic in the skip buffer
+		m = s.getNextMember();
+		assertEquals(member.length, m.getRecordStartOffset());
+		assertTrue(-1 != m.read());
+		assertFalse(s.skipCurrentMember(2 * member.length));
 
+		// EOF right at the end offset
+		s = new GZIPMemberSeries(fileStream(Bytes.concat(member, member)), "unk", 0, false);
+		m = s.getNextMember();
+		assertTrue(-1 != m.read());
+		assertTrue(s.skipCurrentMember(member.length));
+		m = s.getNextMember();
+		assertTrue(-1 != m.read());
+		assertTrue(s.skipCurrentMember(2 * member.length));
+		assertNull(s.getNextMember());
+		assertTrue(s.gotEOF());
+	}
 }
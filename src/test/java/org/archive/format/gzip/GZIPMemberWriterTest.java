@@ -1,11 +1,16 @@
 package org.archive.format.gzip;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
 
+import org.archive.streamcontext.ByteArrayWrappedStream;
 import org.archive.util.IAUtils;
+import org.archive.util.StreamCopy;
 
 import junit.framework.TestCase;
 
@@ -18,4 +23,37 @@ public class GZIPMemberWriterTest extends TestCase {
 		gzw.write(new ByteArrayInputStream("Here is record 2".getBytes(IAUtils.UTF8)));
 	}
 
+	public void testWriteSkipLength() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPMemberWriter gzw = new GZIPMemberWriter(bytes);
+		gzw.setWriteSkipLength(true);
+		gzw.maxBuffer = 1000;
+		byte[] big = new byte[5000];
+		new Random(1).nextBytes(big);
+		gzw.write(new ByteArrayInputStream("Here is record 1".getBytes(IAUtils.UTF8)));
+		gzw.write(new ByteArrayInputStream(big));
+		gzw.write(new ByteArrayInputStream(new byte[0]));
+		assertEquals(bytes.size(), gzw.getBytesWritten());
+
+		// still plain gzip
+		GZIPInputStream gzis = new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals(16 + 5000, StreamCopy.readToEOF(gzis));
+
+		GZIPMemberSeries series = new GZIPMemberSeries(
+				new ByteArrayWrappedStream(bytes.toByteArray()));
+		long[] expected = new long[3];
+		long[] lengths = new long[3];
+		for(int i = 0; i < 3; i++) {
+			GZIPSeriesMember member = series.getNextMember();
+			long start = member.getRecordStartOffset();
+			expected[i] = member.getHeader().getIntRecord(GZIPConstants.SL_RECORD);
+			member.skipMember();
+			lengths[i] = series.getOffset() - start;
+		}
+		assertNull(series.getNextMember());
+		assertEquals(lengths[0], expected[0]);
+		// deflated data over maxBuffer has no SL
+		assertEquals(-1, expected[1]);
+		assertEquals(lengths[2], expected[2]);
+	}
 }
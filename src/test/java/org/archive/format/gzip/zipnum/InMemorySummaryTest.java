@@ -0,0 +1,74 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.archive.util.binsearch.SortedTextFile;
+import org.archive.util.binsearch.impl.RandomAccessFileSeekableLineReaderFactory;
+import org.archive.util.iterator.CloseableIterator;
+
+import junit.framework.TestCase;
+
+public class InMemorySummaryTest extends TestCase {
+
+	private File createSummary(int max, int step) throws IOException {
+		File summ = File.createTempFile("test-ims", ".summary");
+		summ.deleteOnExit();
+		PrintWriter pw = new PrintWriter(summ, "UTF-8");
+		for (int i = 0; i < max; i++) {
+			int val = i * step;
+			pw.print("com,example)/page" + String.format("%05d", val / 100) + " 2010" + String.format("%010d", val));
+			pw.print("\tpart-" + String.format("%05d", i / 1000));
+			pw.print("\t" + (i % 1000) * 5000L);
+			pw.print("\t5000");
+			pw.println("\t" + i);
+		}
+		pw.close();
+		return summ;
+	}
+
+	public void testLookupsMatchFile() throws IOException {
+		File summ = createSummary(5000, 7);
+		SortedTextFile file = new SortedTextFile(new RandomAccessFileSeekableLineReaderFactory(summ));
+		InMemorySummary mem = new InMemorySummary(new RandomAccessFileSeekableLineReaderFactory(summ));
+
+		assertEquals(5000, mem.getNumLines());
+
+		String[] keys = {"", "a", "com,example)/page", "com,example)/page00001 ", "com,example)/page00008 20100000000850",
+				"com,example)/page00008 20100000000854", "com,example)/page00349", "zzz"};
+
+		for (String key : keys) {
+			for (boolean lt : new boolean[]{true, false}) {
+				assertFirstLines(file.getRecordIterator(key, lt), mem.getRecordIterator(key, lt), 20);
+			}
+		}
+
+		for (int i = 0; i < 5000 * 7; i += 13) {
+			String key = "com,example)/page" + String.format("%05d", i / 100) + " 2010" + String.format("%010d", i);
+			assertFirstLines(file.getRecordIterator(key, true), mem.getRecordIterator(key, true), 2);
+		}
+
+		String[] fileRange = file.getRange("com,example)/page00005", "com,example)/page00070");
+		String[] memRange = mem.getRange("com,example)/page00005", "com,example)/page00070");
+		assertEquals(fileRange[0], memRange[0]);
+		assertEquals(fileRange[1], memRange[1]);
+
+		fileRange = file.getRange("", "");
+		memRange = mem.getRange("", "");
+		assertEquals(fileRange[0], memRange[0]);
+		assertEquals(fileRange[1], memRange[1]);
+	}
+
+	private void assertFirstLines(CloseableIterator<String> expected, CloseableIterator<String> actual, int num) throws IOException {
+		for (int i = 0; i < num; i++) {
+			assertEquals(expected.hasNext(), actual.hasNext());
+			if (!expected.hasNext()) {
+				break;
+			}
+			assertEquals(expected.next(), actual.next());
+		}
+		expected.close();
+		actual.close();
+	}
+}
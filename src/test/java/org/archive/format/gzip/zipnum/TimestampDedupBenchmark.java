@@ -0,0 +1,98 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.format.cdx.ByteCDXLine;
+import org.archive.format.cdx.ByteCDXLineCursor;
+import org.archive.format.cdx.CDXFixtures;
+import org.archive.format.cdx.StreamByteCDXLineCursor;
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.iterator.CloseableIteratorWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Timestamp dedup iterators over generated in-memory CDX lines, isolated
+ * from block loading.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimestampDedupBenchmark {
+
+	@Param({"200000"})
+	public int numLines;
+
+	// Dedup on year, day and second
+	@Param({"4", "8", "14"})
+	public int timestampDedupLength;
+
+	List<String> lines;
+	byte[] data;
+
+	@Setup
+	public void setup() throws IOException {
+		lines = CDXFixtures.generateLines(numLines, 1);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (String line : lines) {
+			out.write(line.getBytes(ByteCDXLine.UTF8));
+			out.write('\n');
+		}
+		data = out.toByteArray();
+	}
+
+	int drain(CloseableIterator<String> iter, Blackhole bh) throws IOException {
+		int count = 0;
+		while (iter.hasNext()) {
+			bh.consume(iter.next());
+			count++;
+		}
+		iter.close();
+		return count;
+	}
+
+	@Benchmark
+	public int timestamp(Blackhole bh) throws IOException {
+		return drain(new TimestampDedupIterator(new CloseableIteratorWrapper<String>(lines.iterator()), timestampDedupLength), bh);
+	}
+
+	@Benchmark
+	public int bestPick(Blackhole bh) throws IOException {
+		return drain(new TimestampBestPickDedupIterator(new CloseableIteratorWrapper<String>(lines.iterator()), timestampDedupLength), bh);
+	}
+
+	@Benchmark
+	public int custom(Blackhole bh) throws IOException {
+		return drain(new TimestampCustomDedupIterator(new CloseableIteratorWrapper<String>(lines.iterator()), timestampDedupLength), bh);
+	}
+
+	@Benchmark
+	public int timestampBytes(Blackhole bh) throws IOException {
+		ByteCDXLineCursor cursor = new TimestampDedupByteCursor(new StreamByteCDXLineCursor(data, 0, data.length), timestampDedupLength);
+		ByteCDXLine line = null;
+		int count = 0;
+		while ((line = cursor.next()) != null) {
+			bh.consume(line.getLength());
+			count++;
+		}
+		cursor.close();
+		return count;
+	}
+}
@@ -0,0 +1,75 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.archive.util.binsearch.SeekableLineReader;
+
+import junit.framework.TestCase;
+
+public class ZipNumBlockLoaderTest extends TestCase {
+	
+	public void testBlockCache() throws IOException {
+		Charset UTF8 = Charset.forName("UTF-8");
+		File main = File.createTempFile("test-znbl",".gz");
+		File summ = File.createTempFile("test-znbl",".summ");
+		main.deleteOnExit();
+		summ.deleteOnExit();
+		ZipNumWriter znw = new ZipNumWriter(new FileOutputStream(main,false), 
+				new FileOutputStream(summ,false), 10);
+		for(int i = 0; i < 100; i++) {
+			znw.addRecord(String.format("%06d\n",i).getBytes(UTF8));
+		}
+		znw.close();
+		
+		BufferedReader br = new BufferedReader(new FileReader(summ));
+		String[] parts = br.readLine().split("\t");
+		br.close();
+		
+		long offset = Long.parseLong(parts[0]);
+		int length = Integer.parseInt(parts[1]);
+		
+		ZipNumBlockLoader loader = new ZipNumBlockLoader();
+		loader.setBlockCacheMaxBytes(1024 * 1024);
+		BlockCache cache = loader.getBlockCache();
+		
+		for (int pass = 0; pass < 2; pass++) {
+			SeekableLineReader slr = loader.attemptLoadBlock(main.getAbsolutePath(), offset, length, true, true);
+			for (int i = 0; i < 10; i++) {
+				assertEquals(String.format("%06d",i), slr.readLine());
+			}
+			assertNull(slr.readLine());
+			slr.close();
+		}
+		
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+		assertTrue(cache.getSizeBytes() > 70);
+		
+		loader.closeFileFactory(main.getAbsolutePath());
+		assertEquals(0, cache.getSizeBytes());
+		
+		// Each block holds only its own lines
+		br = new BufferedReader(new FileReader(summ));
+		String summLine = null;
+		int block = 0;
+		while ((summLine = br.readLine()) != null) {
+			parts = summLine.split("\t");
+			assertEquals(String.format("%06d", block * 10), parts[2]);
+			SeekableLineReader slr = loader.attemptLoadBlock(main.getAbsolutePath(), Long.parseLong(parts[0]), Integer.parseInt(parts[1]), true, true);
+			for (int i = 0; i < 10; i++) {
+				assertEquals(String.format("%06d", block * 10 + i), slr.readLine());
+			}
+			assertNull(slr.readLine());
+			slr.close();
+			block++;
+		}
+		br.close();
+		assertEquals(10, block);
+		loader.close();
+	}
+}
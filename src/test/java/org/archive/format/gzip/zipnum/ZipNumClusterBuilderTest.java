@@ -0,0 +1,118 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.archive.util.TestUtils;
+
+import junit.framework.TestCase;
+
+public class ZipNumClusterBuilderTest extends TestCase {
+
+	private List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader br = new BufferedReader(new FileReader(file));
+		String line = null;
+		while ((line = br.readLine()) != null) {
+			lines.add(line);
+		}
+		br.close();
+		return lines;
+	}
+
+	public void testBuild() throws IOException {
+		List<String> input = new ArrayList<String>();
+		for (int i = 0; i < 1003; i++) {
+			input.add(ZipNumIndexTest.cdxLine(i));
+		}
+
+		File dir = TestUtils.createTempDir("test-znbuild");
+		ZipNumClusterBuilder builder = new ZipNumClusterBuilder(dir);
+		builder.setCdxLinesPerBlock(10);
+		builder.setBlocksPerPart(7);
+		builder.setNumThreads(3);
+		builder.setMaxPendingPerThread(1);
+		assertEquals(101, builder.build(input.iterator()));
+
+		for (File file : dir.listFiles()) {
+			file.deleteOnExit();
+		}
+
+		List<String> summary = readLines(new File(dir, "ALL.summary"));
+		assertEquals(101, summary.size());
+		assertTrue(summary.get(0).startsWith("com,example)/00000 20100000000000\tpart-00000\t0\t"));
+		assertTrue(summary.get(7).startsWith("com,example)/00017 20100000000070\tpart-00001\t0\t"));
+		assertTrue(summary.get(100).endsWith("\t100"));
+
+		List<String> partSummary = readLines(new File(dir, "part-00001.idx"));
+		assertEquals(summary.subList(7, 14), partSummary);
+
+		List<String> loc = readLines(new File(dir, "ALL.loc"));
+		assertEquals(15, loc.size());
+		assertEquals("part-00014\t" + dir.getAbsolutePath() + "/part-00014.gz", loc.get(14));
+
+		List<String> lastBlocks = readLines(new File(dir, "ALL.lastblocks"));
+		assertEquals(15, lastBlocks.size());
+		assertEquals("part-00000\t10\tcom,example)/00015 20100000000060", lastBlocks.get(0));
+		assertEquals("part-00014\t3\tcom,example)/00250 20100000001000", lastBlocks.get(14));
+
+		ZipNumIndex index = ZipNumIndex.createIndexWithSummaryPath(new File(dir, "ALL.summary").getAbsolutePath());
+		assertEquals(input, ZipNumIndexTest.readAll(index.getCDXIterator(index.getSummary().getRecordIterator(""), null)));
+
+		ZipNumCluster cluster = new ZipNumCluster();
+		cluster.setSummaryFile(new File(dir, "ALL.summary").getAbsolutePath());
+		cluster.setLocFile(new File(dir, "ALL.loc").getAbsolutePath());
+		cluster.setCdxLinesPerBlock(10);
+		cluster.init();
+		assertEquals(15, cluster.getNumBlocks());
+		assertEquals(1003, cluster.computeTotalLines());
+
+		String key = "com,example)/00100 ";
+		String end = "com,example)/00200 ";
+		List<String> range = ZipNumIndexTest.readAll(cluster.getCDXIterator(key, key, end, new ZipNumParams()));
+		assertEquals(input.subList(400, 800), range);
+	}
+
+	public void testRebuildInPlace() throws IOException {
+		List<String> input = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			input.add(ZipNumIndexTest.cdxLine(i));
+		}
+
+		File dir = TestUtils.createTempDir("test-znrebuild");
+		ZipNumClusterBuilder builder = new ZipNumClusterBuilder(dir);
+		builder.setCdxLinesPerBlock(10);
+		builder.setBlocksPerPart(5);
+		builder.build(input.iterator());
+
+		for (File file : dir.listFiles()) {
+			file.deleteOnExit();
+		}
+
+		ZipNumCluster cluster = new ZipNumCluster();
+		cluster.setSummaryFile(new File(dir, "ALL.summary").getAbsolutePath());
+		cluster.setLocFile(new File(dir, "ALL.loc").getAbsolutePath());
+		cluster.setCdxLinesPerBlock(10);
+		cluster.setCheckInterval(0);
+		cluster.init();
+		cluster.getBlockLoader().setBlockCacheMaxBytes(1024 * 1024);
+
+		String key = "com,example)/00010 ";
+		String end = "com,example)/00040 ";
+		assertEquals(input.subList(40, 160), ZipNumIndexTest.readAll(cluster.getCDXIterator(key, key, end, new ZipNumParams())));
+
+		// Same keys and block layout, different content, at the same locations
+		List<String> rebuilt = new ArrayList<String>();
+		for (String line : input) {
+			rebuilt.add(line.replace("x.warc.gz", "y.warc.gz"));
+		}
+		builder.build(rebuilt.iterator());
+		cluster.syncLoad(System.currentTimeMillis());
+
+		assertEquals(rebuilt.subList(40, 160), ZipNumIndexTest.readAll(cluster.getCDXIterator(key, key, end, new ZipNumParams())));
+	}
+}
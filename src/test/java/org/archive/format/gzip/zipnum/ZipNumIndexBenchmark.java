@@ -0,0 +1,131 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.format.cdx.ByteCDXLine;
+import org.archive.format.cdx.ByteCDXLineCursor;
+import org.archive.format.cdx.CDXFixtures;
+import org.archive.util.iterator.CloseableIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Lookups and scans against a generated local zipnum cluster: point lookups
+ * of all captures of a url, host prefix range lookups, and full scans
+ * through MultiBlockIterator and the byte-level cursor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZipNumIndexBenchmark {
+
+	final static int NUM_KEYS = 4096;
+	final static int MAX_RANGE_LINES = 1000;
+
+	@Param({"1000000"})
+	public int numLines;
+
+	@Param({"3000"})
+	public int linesPerBlock;
+
+	@Param({"0"})
+	public long blockCacheMaxBytes;
+
+	ZipNumIndex index;
+	String[] keys;
+	int next = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		List<String> lines = CDXFixtures.generateLines(numLines, 1);
+		File summary = CDXFixtures.writeZipNumCluster(lines, linesPerBlock, 4);
+		keys = CDXFixtures.sampleKeys(lines, NUM_KEYS, 2);
+
+		index = new ZipNumIndex();
+		index.setSummaryFile(summary.getAbsolutePath());
+		index.setCdxLinesPerBlock(linesPerBlock);
+		index.init();
+
+		if (blockCacheMaxBytes > 0) {
+			index.getBlockLoader().setBlockCacheMaxBytes(blockCacheMaxBytes);
+		}
+	}
+
+	String nextKey() {
+		next = (next + 1) % keys.length;
+		return keys[next];
+	}
+
+	@Benchmark
+	public int pointLookup(Blackhole bh) throws IOException {
+		String key = nextKey();
+		String urlKey = key.substring(0, key.length() - 1);
+		CloseableIterator<String> iter = index.getCDXIterator(key, key, ZipNumIndex.endKey(urlKey), new ZipNumParams());
+		int count = 0;
+		while (iter.hasNext()) {
+			bh.consume(iter.next());
+			count++;
+		}
+		iter.close();
+		return count;
+	}
+
+	@Benchmark
+	public int hostRangeLookup(Blackhole bh) throws IOException {
+		String key = nextKey();
+		String host = key.substring(0, key.indexOf(')') + 1);
+		CloseableIterator<String> iter = index.getCDXIterator(host, host, false, new ZipNumParams());
+		iter = ZipNumIndex.wrapPrefix(iter, host, false);
+		int count = 0;
+		while ((count < MAX_RANGE_LINES) && iter.hasNext()) {
+			bh.consume(iter.next());
+			count++;
+		}
+		iter.close();
+		return count;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public int scan(Blackhole bh) throws IOException {
+		CloseableIterator<String> iter = index.getCDXIterator(index.getSummary().getRecordIterator(""), new ZipNumParams());
+		int count = 0;
+		while (iter.hasNext()) {
+			bh.consume(iter.next());
+			count++;
+		}
+		iter.close();
+		return count;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public int scanBytes(Blackhole bh) throws IOException {
+		ByteCDXLineCursor cursor = index.getByteCDXCursor(index.getSummary().getRecordIterator(""), new ZipNumParams());
+		ByteCDXLine line = null;
+		int count = 0;
+		while ((line = cursor.next()) != null) {
+			bh.consume(line.getMatchKeyEnd(0));
+			count++;
+		}
+		cursor.close();
+		return count;
+	}
+}
@@ -0,0 +1,215 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.format.cdx.ByteCDXLine;
+import org.archive.format.cdx.ByteCDXLineCursor;
+import org.archive.format.cdx.CDXFixtures;
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.iterator.CloseableIteratorWrapper;
+
+import junit.framework.TestCase;
+
+public class ZipNumIndexTest extends TestCase {
+	
+	static String cdxLine(int i) {
+		return String.format("com,example)/%05d 2010%010d http://example.com/%d text/html 200 AAAA - - 100 %d x.warc.gz", i / 4, i, i / 4, i);
+	}
+	
+	/**
+	 * Write a zipnum cluster of numParts parts, with linesPerBlock cdx lines per gzip member
+	 * @return the summary file
+	 */
+	static File createCluster(int numLines, int linesPerBlock, int numParts) throws IOException {
+		List<String> lines = new ArrayList<String>(numLines);
+		for (int i = 0; i < numLines; i++) {
+			lines.add(cdxLine(i));
+		}
+		return CDXFixtures.writeZipNumCluster(lines, linesPerBlock, numParts);
+	}
+	
+	static List<String> readAll(CloseableIterator<String> iter) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		while (iter.hasNext()) {
+			lines.add(iter.next());
+		}
+		iter.close();
+		return lines;
+	}
+	
+	public void testPrefetch() throws IOException {
+		File summary = createCluster(2000, 10, 3);
+		
+		ZipNumIndex index = new ZipNumIndex();
+		index.setSummaryFile(summary.getAbsolutePath());
+		index.setCdxLinesPerBlock(10);
+		index.setPrefetchThreads(4);
+		index.init();
+		
+		String key = "com,example)/00010 ";
+		String end = "com,example)/00400 ";
+		
+		ZipNumParams params = new ZipNumParams(2, 0, 0, false);
+		List<String> expected = readAll(index.getCDXIterator(key, key, end, params));
+		assertEquals(390 * 4, expected.size());
+		params.setPrefetchBlocks(5);
+		assertEquals(expected, readAll(index.getCDXIterator(key, key, end, params)));
+		
+		// Reversed ranges of 3 blocks, each truncated to cdxLinesPerBlock lines
+		params = new ZipNumParams(3, 0, 0, true);
+		expected = readAll(index.getCDXIterator(index.getSummary().getRecordIteratorLT(key), params));
+		assertEquals(670, expected.size());
+		params.setPrefetchBlocks(5);
+		assertEquals(expected, readAll(index.getCDXIterator(index.getSummary().getRecordIteratorLT(key), params)));
+		
+		params = new ZipNumParams(1, 20, 0, false);
+		expected = readAll(index.getCDXIterator(key, key, end, params));
+		params.setPrefetchBlocks(3);
+		assertEquals(expected, readAll(index.getCDXIterator(key, key, end, params)));
+		
+		// Close before consuming
+		CloseableIterator<String> iter = index.getCDXIterator(key, key, end, params);
+		assertTrue(iter.hasNext());
+		iter.close();
+	
+		index.close();
+		assertNull(index.getPrefetchExecutor());
+	}
+	
+	public void testPrefetchWindow() throws IOException {
+		File summary = createCluster(200, 10, 1);
+	
+		final AtomicInteger submitted = new AtomicInteger();
+		ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()) {
+			@Override
+			public void execute(Runnable command) {
+				submitted.incrementAndGet();
+				super.execute(command);
+			}
+		};
+	
+		ZipNumIndex index = ZipNumIndex.createIndexWithSummaryPath(summary.getAbsolutePath());
+		index.setPrefetchExecutor(executor);
+	
+		// One load in flight besides the one being read
+		ZipNumParams params = new ZipNumParams(1, 0, 0, false);
+		params.setPrefetchBlocks(1);
+		CloseableIterator<String> iter = index.getCDXIterator("", "", "~", params);
+		assertTrue(iter.hasNext());
+		assertEquals(2, submitted.get());
+		iter.close();
+	
+		// A shared executor is left running
+		index.close();
+		assertFalse(executor.isShutdown());
+		executor.shutdown();
+	}
+	
+	public void testCoalesce() throws IOException {
+		File summary = createCluster(2000, 10, 3);
+		ZipNumIndex index = ZipNumIndex.createIndexWithSummaryPath(summary.getAbsolutePath());
+		
+		String key = "com,example)/00010 ";
+		String end = "com,example)/00400 ";
+		
+		ZipNumParams params = new ZipNumParams(1, 0, 0, false);
+		List<String> expected = readAll(index.getCDXIterator(key, key, end, params));
+		params.setCoalesceMaxGap(0);
+		assertEquals(expected, readAll(index.getCDXIterator(key, key, end, params)));
+	
+		// Reversed, each loaded range is truncated to cdxLinesPerBlock lines,
+		// so ranges are not coalesced
+		index.setCdxLinesPerBlock(10);
+		params = new ZipNumParams(1, 0, 0, true);
+		expected = readAll(index.getCDXIterator(index.getSummary().getRecordIteratorLT(key), params));
+		assertEquals(1970, expected.size());
+		params.setCoalesceMaxGap(1024);
+		params.setCoalesceMaxBytes(4096);
+		assertEquals(expected, readAll(index.getCDXIterator(index.getSummary().getRecordIteratorLT(key), params)));
+	
+		// Skip every third block, so coalesced ranges have gaps
+		List<String> summaryLines = readAll(index.getSummary().getRecordIterator(""));
+		List<String> sparse = new ArrayList<String>();
+		for (int i = 0; i < summaryLines.size(); i++) {
+			if ((i % 3) != 1) {
+				sparse.add(summaryLines.get(i));
+			}
+		}
+		
+		params = new ZipNumParams(1, 0, 0, false);
+		expected = readAll(index.getCDXIterator(new CloseableIteratorWrapper<String>(sparse.iterator()), params));
+		assertEquals(sparse.size() * 10, expected.size());
+		
+		params.setCoalesceMaxGap(1024);
+		params.setCoalesceMaxBytes(4096);
+		assertEquals(expected, readAll(index.getCDXIterator(new CloseableIteratorWrapper<String>(sparse.iterator()), params)));
+		
+		// With a block limit, and prefetching
+		ZipNumIndex prefetching = new ZipNumIndex();
+		prefetching.setSummaryFile(summary.getAbsolutePath());
+		prefetching.setPrefetchThreads(2);
+		prefetching.init();
+		
+		params = new ZipNumParams(1, 25, 0, false);
+		expected = readAll(prefetching.getCDXIterator(new CloseableIteratorWrapper<String>(sparse.iterator()), params));
+		assertEquals(250, expected.size());
+		params.setCoalesceMaxGap(1024);
+		params.setPrefetchBlocks(2);
+		assertEquals(expected, readAll(prefetching.getCDXIterator(new CloseableIteratorWrapper<String>(sparse.iterator()), params)));
+		
+		// With a block cache, blocks are loaded and cached one by one
+		index.getBlockLoader().setBlockCacheMaxBytes(1024 * 1024);
+		params = new ZipNumParams(1, 0, 0, false);
+		expected = readAll(index.getCDXIterator(new CloseableIteratorWrapper<String>(sparse.iterator()), params));
+		params.setCoalesceMaxGap(1024);
+		params.setCoalesceMaxBytes(4096);
+		assertEquals(expected, readAll(index.getCDXIterator(new CloseableIteratorWrapper<String>(sparse.iterator()), params)));
+		assertEquals(sparse.size(), index.getBlockLoader().getBlockCache().getHitCount());
+	}
+	
+	static List<String> readAll(ByteCDXLineCursor cursor) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		ByteCDXLine line = null;
+		while ((line = cursor.next()) != null) {
+			lines.add(line.toString());
+		}
+		cursor.close();
+		return lines;
+	}
+	
+	public void testByteCursor() throws IOException {
+		File summary = createCluster(2000, 10, 3);
+		ZipNumIndex index = ZipNumIndex.createIndexWithSummaryPath(summary.getAbsolutePath());
+		
+		String key = "com,example)/00010 ";
+		String end = "com,example)/00400 ";
+		
+		ZipNumParams params = new ZipNumParams(2, 0, 0, false);
+		List<String> expected = readAll(index.getCDXIterator(key, key, end, params));
+		assertEquals(expected, readAll(index.getByteCDXCursor(key, key, end, params)));
+		
+		params.setCoalesceMaxGap(0);
+		assertEquals(expected, readAll(index.getByteCDXCursor(key, key, end, params)));
+		
+		// Cached blocks are read in place
+		index.getBlockLoader().setBlockCacheMaxBytes(1024 * 1024);
+		params = new ZipNumParams(2, 0, 0, false);
+		assertEquals(expected, readAll(index.getByteCDXCursor(key, key, end, params)));
+		assertEquals(expected, readAll(index.getByteCDXCursor(key, key, end, params)));
+		assertTrue(index.getBlockLoader().getBlockCache().getHitCount() > 0);
+		
+		// Dedup on the first 12 timestamp digits, which groups every 100 lines
+		List<String> all = readAll(index.getCDXIterator(index.getSummary().getRecordIterator(""), params));
+		expected = readAll(new TimestampDedupIterator(new CloseableIteratorWrapper<String>(all.iterator()), 12));
+		assertEquals(2000 / 4, expected.size());
+		assertEquals(expected, readAll(new TimestampDedupByteCursor(index.getByteCDXCursor(index.getSummary().getRecordIterator(""), params), 12)));
+	}
+}
@@ -0,0 +1,248 @@
+package org.archive.format.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.archive.format.warc.WARCConstants.WARCRecordType;
+import org.archive.format.warc.WARCFixtures;
+import org.archive.format.warc.WARCFixtures.Compression;
+import org.archive.io.WriterPoolMember;
+import org.archive.io.arc.ARCWriter;
+import org.archive.io.arc.WriterPoolSettingsData;
+import org.archive.io.warc.WARCRecordInfo;
+import org.archive.io.warc.WARCWriter;
+import org.archive.io.warc.WARCWriterPoolSettingsData;
+import org.archive.uid.UUIDGenerator;
+import org.archive.util.StreamCopy;
+import org.archive.util.TestUtils;
+
+import junit.framework.TestCase;
+
+public class RecordIndexTest extends TestCase {
+
+	final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private byte[] warcRecord(int id, String type, String uri, int size) throws IOException {
+		byte[] block = new byte[size];
+		for (int i = 0; i < size; i++) {
+			block[i] = (byte) ('a' + (i % 26));
+		}
+		return WARCFixtures.warcRecord(id, type, uri, "text/plain", block);
+	}
+
+	private long inflatedLength(File file, RecordIndexEntry entry) throws IOException {
+		byte[] member = new byte[(int) entry.getCompressedLength()];
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		raf.seek(entry.getOffset());
+		raf.readFully(member);
+		raf.close();
+		return StreamCopy.readToEOF(new GZIPInputStream(new ByteArrayInputStream(member)));
+	}
+
+	public void testIndexer() throws IOException {
+		List<byte[]> records = new ArrayList<byte[]>();
+		List<String> uris = new ArrayList<String>();
+		records.add(warcRecord(0, "warcinfo", null, 10));
+		uris.add(null);
+		for (int i = 0; i < 50; i++) {
+			String uri = "http://example.com/" + i;
+			records.add(warcRecord(i + 1, i % 2 == 0 ? "request" : "response", uri, i * 100));
+			uris.add(uri);
+		}
+		File warc = WARCFixtures.writeWARC("test-recidx", records, Compression.GZIP);
+
+		assertEquals(51, new RecordIndexer().index(warc));
+		File sidecar = RecordIndex.getSidecar(warc);
+		sidecar.deleteOnExit();
+		assertEquals(warc.getName() + ".recidx", sidecar.getName());
+
+		RecordIndex index = RecordIndex.forArchive(warc);
+		assertNotNull(index);
+		assertEquals(51, index.size());
+		assertTrue(index.isContiguous());
+		assertTrue(index.endsAt(warc.length()));
+
+		assertEquals("warcinfo", index.get(0).getType());
+		assertEquals(RecordIndexEntry.NO_URI, index.get(0).getURIHash());
+		assertEquals("request", index.get(1).getType());
+		assertEquals("response", index.get(2).getType());
+		for (int i = 0; i < index.size(); i++) {
+			RecordIndexEntry entry = index.get(i);
+			assertEquals(records.get(i).length,
+					entry.getUncompressedLength());
+			assertEquals(entry.getUncompressedLength(), inflatedLength(warc, entry));
+			if (uris.get(i) != null) {
+				assertTrue(entry.matchesURI(uris.get(i)));
+				assertFalse(entry.matchesURI(uris.get(i) + "x"));
+			}
+			assertEquals(entry, RecordIndexEntry.parse(entry.toString()));
+		}
+
+		// a stale sidecar is ignored
+		FileOutputStream out = new FileOutputStream(warc, true);
+		out.write(new byte[10]);
+		out.close();
+		assertNull(RecordIndex.forArchive(warc));
+	}
+
+	public void testFind() {
+		List<RecordIndexEntry> entries = new ArrayList<RecordIndexEntry>();
+		for (int i = 0; i < 10; i++) {
+			entries.add(new RecordIndexEntry(i * 100, 100, 300, "response", RecordIndexEntry.hashURI("http://a/" + i)));
+		}
+		RecordIndex index = new RecordIndex(entries);
+		assertEquals(0, index.findAtOrAfter(0));
+		assertEquals(1, index.findAtOrAfter(1));
+		assertEquals(1, index.findAtOrAfter(100));
+		assertEquals(9, index.findAtOrAfter(900));
+		assertEquals(10, index.findAtOrAfter(901));
+		assertEquals(entries.get(5), index.getEntry(500));
+		assertNull(index.getEntry(501));
+		assertTrue(index.isContiguous());
+		assertTrue(index.endsAt(1000));
+
+		entries.remove(5);
+		assertFalse(new RecordIndex(entries).isContiguous());
+	}
+
+	public void testReadWrite() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		RecordIndexWriter w = new RecordIndexWriter(bytes);
+		w.add(0, 10, 20, "warcinfo", null);
+		w.add(10, 15, 40, "response", "http://example.com/");
+		w.close();
+		assertEquals(2, w.getNumEntries());
+		String text = bytes.toString("UTF-8");
+		assertTrue(text.startsWith(RecordIndex.HEADER + "\n0 10 20 warcinfo -\n10 15 40 response "));
+
+		RecordIndex index = RecordIndex.read(new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals(2, index.size());
+		assertTrue(index.get(1).matchesURI("http://example.com/"));
+
+		try {
+			RecordIndex.read(new ByteArrayInputStream("0 10 20 warcinfo\n".getBytes(UTF8)));
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testUnstorableType() throws IOException {
+		List<byte[]> records = new ArrayList<byte[]>();
+		records.add(warcRecord(0, "", "http://example.com/0", 10));
+		records.add(warcRecord(1, "odd type", "http://example.com/1", 10));
+		records.add(warcRecord(2, "tab\ttype", "http://example.com/2", 10));
+		records.add(warcRecord(3, "response", "http://example.com/3", 10));
+		File warc = WARCFixtures.writeWARC("test-recidx", records, Compression.GZIP);
+
+		assertEquals(4, new RecordIndexer().index(warc));
+		RecordIndex.getSidecar(warc).deleteOnExit();
+		RecordIndex index = RecordIndex.forArchive(warc);
+		assertNotNull(index);
+		assertEquals(4, index.size());
+		assertEquals(RecordIndexEntry.NO_TYPE, index.get(0).getType());
+		assertEquals(RecordIndexEntry.NO_TYPE, index.get(1).getType());
+		assertEquals(RecordIndexEntry.NO_TYPE, index.get(2).getType());
+		assertEquals("response", index.get(3).getType());
+		assertTrue(index.get(1).matchesURI("http://example.com/1"));
+	}
+
+	private RecordIndex indexOf(File archive) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		RecordIndexWriter w = new RecordIndexWriter(bytes);
+		new RecordIndexer(true).index(archive, w);
+		w.close();
+		return RecordIndex.read(new ByteArrayInputStream(bytes.toByteArray()));
+	}
+
+	private File writeWARC(File dir, boolean compress) throws IOException {
+		WARCWriterPoolSettingsData settings = new WARCWriterPoolSettingsData("TEST",
+				"${prefix}-${serialno}", -1, compress, Arrays.asList(dir), null, new UUIDGenerator());
+		WARCWriter writer = new WARCWriter(new AtomicInteger(), settings);
+		writer.setWriteRecordIndex(true);
+		writer.checkSize();
+		for (int i = 0; i < 20; i++) {
+			byte[] content = ("HTTP/1.0 200 OK\r\n\r\n" + i).getBytes(UTF8);
+			WARCRecordInfo info = new WARCRecordInfo();
+			info.setType(WARCRecordType.response);
+			info.setUrl("http://example.com/" + i);
+			info.setCreate14DigitDate("20120304050607");
+			info.setMimetype("application/http; msgtype=response");
+			info.setRecordId(URI.create("urn:uuid:00000000-0000-0000-0000-" + String.format("%012d", i)));
+			info.setContentStream(new ByteArrayInputStream(content));
+			info.setContentLength(content.length);
+			info.setEnforceLength(true);
+			writer.writeRecord(info);
+		}
+		File open = writer.getFile();
+		String path = open.getPath();
+		assertTrue(path.endsWith(WriterPoolMember.OCCUPIED_SUFFIX));
+		path = path.substring(0, path.length() - WriterPoolMember.OCCUPIED_SUFFIX.length());
+		assertTrue(new File(path + RecordIndex.SUFFIX + WriterPoolMember.OCCUPIED_SUFFIX).exists());
+		writer.close();
+		File warc = writer.getFile();
+		warc.deleteOnExit();
+		RecordIndex.getSidecar(warc).deleteOnExit();
+		return warc;
+	}
+
+	public void testWARCWriter() throws IOException {
+		File warc = writeWARC(TestUtils.createTempDir("test-recidx"), true);
+		assertTrue(warc.getName().endsWith(".warc.gz"));
+		RecordIndex index = RecordIndex.forArchive(warc);
+		assertNotNull(index);
+		assertEquals(21, index.size());
+		assertEquals("warcinfo", index.get(0).getType());
+		assertTrue(index.get(20).matchesURI("http://example.com/19"));
+		assertEquals(indexOf(warc).getEntries(), index.getEntries());
+	}
+
+	public void testUncompressedWARCWriter() throws IOException {
+		File warc = writeWARC(TestUtils.createTempDir("test-recidx"), false);
+		assertTrue(warc.getName().endsWith(".warc"));
+		RecordIndex index = RecordIndex.forArchive(warc);
+		assertNotNull(index);
+		assertEquals(21, index.size());
+		assertTrue(index.isContiguous());
+		for (RecordIndexEntry entry : index.getEntries()) {
+			assertEquals(entry.getCompressedLength(), entry.getUncompressedLength());
+		}
+	}
+
+	public void testARCWriter() throws IOException {
+		File dir = TestUtils.createTempDir("test-recidx");
+		WriterPoolSettingsData settings = new WriterPoolSettingsData("TEST",
+				"${prefix}-${serialno}", -1, true, Arrays.asList(dir), null);
+		ARCWriter writer = new ARCWriter(new AtomicInteger(), settings);
+		writer.setWriteRecordIndex(true);
+		for (int i = 0; i < 20; i++) {
+			byte[] content = ("HTTP/1.0 200 OK\r\n\r\n" + i).getBytes(UTF8);
+			writer.write("http://example.com/" + i, "text/plain", "127.0.0.1", 1330837567000L,
+					content.length, new ByteArrayInputStream(content));
+		}
+		writer.close();
+		File arc = writer.getFile();
+		arc.deleteOnExit();
+		RecordIndex.getSidecar(arc).deleteOnExit();
+
+		RecordIndex index = RecordIndex.forArchive(arc);
+		assertNotNull(index);
+		assertEquals(21, index.size());
+		assertEquals("filedesc", index.get(0).getType());
+		assertTrue(index.get(0).matchesURI("filedesc://" + arc.getName().replace(".gz", "")));
+		assertEquals("response", index.get(1).getType());
+		assertTrue(index.get(1).matchesURI("http://example.com/0"));
+		assertEquals(indexOf(arc).getEntries(), index.getEntries());
+	}
+}
@@ -0,0 +1,139 @@
+package org.archive.format.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.format.gzip.GZIPMemberWriter;
+
+/**
+ * Builds WARC records and files for tests: records with a given block or
+ * HTTP payload, written one per gzip member, in a few ways, or uncompressed.
+ */
+public class WARCFixtures {
+
+	public final static Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * How writeWARC() writes the records
+	 */
+	public enum Compression {
+		/** an uncompressed .warc */
+		NONE,
+		/** a gzip member per record, from GZIPMemberWriter */
+		GZIP,
+		/** as GZIP, with the SL extra field giving each member's length */
+		GZIP_SKIP_LENGTH,
+		/**
+		 * a gzip member per record, every fifth stored rather than
+		 * compressed, so the raw file contains complete gzip members which
+		 * are not records
+		 */
+		GZIP_SOME_STORED
+	}
+
+	/**
+	 * @return a WARC record with id as its Record-ID and date seconds, and
+	 * a WARC-Target-URI header unless uri is null
+	 */
+	public static byte[] warcRecord(int id, String type, String uri,
+			String contentType, byte[] block) throws IOException
+	{
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		record.write(("WARC/1.0\r\n"
+				+ "WARC-Type: " + type + "\r\n"
+				+ (uri != null ? "WARC-Target-URI: " + uri + "\r\n" : "")
+				+ "WARC-Date: 2012-03-04T05:06:" + String.format("%02d", id % 60) + "Z\r\n"
+				+ "WARC-Record-ID: <urn:uuid:00000000-0000-0000-0000-" + String.format("%012d", id) + ">\r\n"
+				+ "Content-Type: " + contentType + "\r\n"
+				+ "Content-Length: " + block.length + "\r\n\r\n").getBytes(UTF8));
+		record.write(block);
+		record.write("\r\n\r\n".getBytes(UTF8));
+		return record.toByteArray();
+	}
+
+	/**
+	 * @return an HTTP 200 response with body, extraHeader being empty or
+	 * CRLF terminated header lines
+	 */
+	public static byte[] httpResponse(String contentType, String extraHeader,
+			byte[] body) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(("HTTP/1.1 200 OK\r\nContent-Type: " + contentType + "\r\n" + extraHeader
+				+ "Content-Length: " + body.length + "\r\n\r\n").getBytes(UTF8));
+		out.write(body);
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return a record of type, for http://example.com/id, whose block is an
+	 * HTTP response with an application/octet-stream payload
+	 */
+	public static byte[] httpRecord(int id, String type, byte[] payload) throws IOException
+	{
+		return warcRecord(id, type, "http://example.com/" + id,
+				"application/http; msgtype=" + type,
+				httpResponse("application/octet-stream", "", payload));
+	}
+
+	/**
+	 * @return data as a single gzip member, at compression level
+	 */
+	public static byte[] gzip(byte[] data, final int level) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream gz = new GZIPOutputStream(bytes) {
+			{
+				def.setLevel(level);
+			}
+		};
+		gz.write(data);
+		gz.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Write records, followed by trailing, to a temporary .warc or .warc.gz
+	 * file, deleted on exit
+	 */
+	public static File writeWARC(String prefix, List<byte[]> records,
+			Compression compression, byte[] trailing) throws IOException
+	{
+		File file = File.createTempFile(prefix,
+				compression == Compression.NONE ? ".warc" : ".warc.gz");
+		file.deleteOnExit();
+		OutputStream out = new FileOutputStream(file);
+		GZIPMemberWriter gzW = new GZIPMemberWriter(out);
+		gzW.setWriteSkipLength(compression == Compression.GZIP_SKIP_LENGTH);
+		for (int i = 0; i < records.size(); i++) {
+			byte[] record = records.get(i);
+			switch (compression) {
+			case NONE:
+				out.write(record);
+				break;
+			case GZIP_SOME_STORED:
+				out.write(gzip(record, i % 5 == 0 ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION));
+				break;
+			default:
+				gzW.write(new ByteArrayInputStream(record));
+			}
+		}
+		out.write(trailing);
+		out.close();
+		return file;
+	}
+
+	public static File writeWARC(String prefix, List<byte[]> records,
+			Compression compression) throws IOException
+	{
+		return writeWARC(prefix, records, compression, new byte[0]);
+	}
+}
@@ -0,0 +1,177 @@
+package org.archive.hadoop;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.archive.format.gzip.GZIPMemberLocator;
+import org.archive.format.index.RecordIndex;
+import org.archive.format.index.RecordIndexer;
+import org.archive.format.warc.WARCFixtures;
+import org.archive.format.warc.WARCFixtures.Compression;
+import org.archive.streamcontext.RandomAccessFileStream;
+
+import junit.framework.TestCase;
+
+public class ResourceRecordReaderTest extends TestCase {
+
+	final static Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * A warc.gz of records with random, text and gzip payloads. Some
+	 * members are stored rather than compressed, so the raw file contains
+	 * complete gzip members which are not records.
+	 */
+	private File writeWARC(int numRecords) throws IOException {
+		List<byte[]> records = new ArrayList<byte[]>();
+		Random rand = new Random(3);
+		for (int i = 0; i < numRecords; i++) {
+			byte[] payload;
+			switch (i % 3) {
+			case 0:
+				payload = new byte[rand.nextInt(5000)];
+				rand.nextBytes(payload);
+				break;
+			case 1:
+				StringBuilder sb = new StringBuilder();
+				for (int j = rand.nextInt(300); j > 0; j--) {
+					sb.append("line ").append(j).append('\n');
+				}
+				payload = sb.toString().getBytes(UTF8);
+				break;
+			default:
+				payload = WARCFixtures.gzip(("inner " + i).getBytes(UTF8), Deflater.DEFAULT_COMPRESSION);
+			}
+			records.add(WARCFixtures.httpRecord(i, "response", payload));
+		}
+		return WARCFixtures.writeWARC("test-split", records, Compression.GZIP_SOME_STORED);
+	}
+
+	private TaskAttemptContext context = new TaskAttemptContext(new Configuration(), new TaskAttemptID());
+
+	private List<Long> read(File file, long start, long length) throws Exception {
+		return read(file, start, length, context);
+	}
+
+	private List<Long> read(File file, long start, long length, TaskAttemptContext context) throws Exception {
+		FileSplit split = new FileSplit(new Path(file.toURI()), start, length, null);
+		ResourceRecordReader reader = new ResourceRecordReader();
+		reader.initialize(split, context);
+		List<Long> offsets = new ArrayList<Long>();
+		while (reader.nextKeyValue()) {
+			ResourceContext key = reader.getCurrentKey();
+			assertEquals(file.getName(), key.name);
+			assertNotNull(reader.getCurrentValue());
+			offsets.add(key.offset);
+		}
+		reader.close();
+		return offsets;
+	}
+
+	private List<Long> readSplits(File file, long splitSize) throws Exception {
+		List<Long> offsets = new ArrayList<Long>();
+		for (long start = 0; start < file.length(); start += splitSize) {
+			offsets.addAll(read(file, start, Math.min(splitSize, file.length() - start)));
+		}
+		return offsets;
+	}
+
+	public void testSplits() throws Exception {
+		File file = writeWARC(200);
+		List<Long> whole = read(file, 0, file.length());
+		assertEquals(200, whole.size());
+
+		for (long splitSize : new long[] {3000, 10007, 65536, file.length() / 2}) {
+			assertEquals("split size " + splitSize, whole, readSplits(file, splitSize));
+		}
+
+		// splits starting exactly on, or one byte after, a member boundary
+		long boundary = whole.get(100);
+		List<Long> split = read(file, 0, boundary);
+		split.addAll(read(file, boundary, file.length() - boundary));
+		assertEquals(whole, split);
+		split = read(file, 0, boundary + 1);
+		split.addAll(read(file, boundary + 1, file.length() - boundary - 1));
+		assertEquals(whole, split);
+
+		// with a record index, the same splits
+		new RecordIndexer().index(file);
+		RecordIndex.getSidecar(file).deleteOnExit();
+		assertEquals(whole, readSplits(file, 4096));
+	}
+
+	public void testReadAhead() throws Exception {
+		File file = writeWARC(100);
+		List<Long> whole = read(file, 0, file.length());
+		Configuration conf = new Configuration();
+		conf.setInt(ResourceRecordReader.READ_AHEAD_BUFFERS, 3);
+		conf.setInt(ResourceRecordReader.READ_AHEAD_SIZE, 8192);
+		TaskAttemptContext readAhead = new TaskAttemptContext(conf, new TaskAttemptID());
+		assertEquals(whole, read(file, 0, file.length(), readAhead));
+		List<Long> split = read(file, 0, 20000, readAhead);
+		split.addAll(read(file, 20000, file.length() - 20000, readAhead));
+		assertEquals(whole, split);
+	}
+
+	public void testLocator() throws Exception {
+		File file = writeWARC(30);
+		List<Long> whole = read(file, 0, file.length());
+		RandomAccessFileStream stream = new RandomAccessFileStream(file);
+		GZIPMemberLocator locator = new GZIPMemberLocator(GZIPMemberLocator.WARC_CHECK);
+		GZIPMemberLocator anyMember = new GZIPMemberLocator(null);
+		int falseStarts = 0;
+		for (int i = 1; i < whole.size(); i++) {
+			long from = whole.get(i - 1) + 1;
+			assertEquals(whole.get(i).longValue(), locator.findMemberStart(stream, from, file.length()));
+			if (anyMember.findMemberStart(stream, from, file.length()) != whole.get(i)) {
+				falseStarts++;
+			}
+		}
+		// stored records contain whole inner gzip members, found without
+		// the check
+		assertTrue(falseStarts > 0);
+		assertEquals(-1, locator.findMemberStart(stream, whole.get(29) + 1, file.length()));
+		assertEquals(-1, locator.findMemberStart(stream, 1, whole.get(1)));
+		stream.close();
+	}
+
+	public void testRecordFilter() throws Exception {
+		File file = writeWARC(30);
+		List<Long> whole = read(file, 0, file.length());
+		Configuration conf = new Configuration();
+		conf.set(ResourceRecordReader.RECORD_FILTER_TYPES, "response");
+		TaskAttemptContext filtered = new TaskAttemptContext(conf, new TaskAttemptID());
+		assertEquals(whole, read(file, 0, file.length(), filtered));
+
+		// only the short records
+		conf.setLong(ResourceRecordReader.RECORD_FILTER_MAX_LENGTH, 1000);
+		List<Long> expected = new ArrayList<Long>();
+		ResourceRecordReader reader = new ResourceRecordReader();
+		reader.initialize(new FileSplit(new Path(file.toURI()), 0, file.length(), null), context);
+		while (reader.nextKeyValue()) {
+			long length = Long.parseLong(reader.getCurrentValue().getJSONObject("Envelope")
+					.getJSONObject("WARC-Header-Metadata").getString("Content-Length"));
+			if (length <= 1000) {
+				expected.add(reader.getCurrentKey().offset);
+			}
+		}
+		reader.close();
+		assertTrue(expected.size() > 0);
+		assertTrue(expected.size() < whole.size());
+		filtered = new TaskAttemptContext(conf, new TaskAttemptID());
+		assertEquals(expected, read(file, 0, file.length(), filtered));
+
+		conf.set(ResourceRecordReader.RECORD_FILTER_TYPES, "request");
+		filtered = new TaskAttemptContext(conf, new TaskAttemptID());
+		assertTrue(read(file, 0, file.length(), filtered).isEmpty());
+	}
+}
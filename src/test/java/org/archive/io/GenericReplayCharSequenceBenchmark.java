@@ -0,0 +1,119 @@
+package org.archive.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A ReplayCharSequence of 8MB of recorded UTF-8 HTML, past a 256K char
+ * prefix buffer: reading only the start of it, scanning all of it for
+ * links with a regex, and reading chars at random.
+ *
+ * Run with:
+ *   mvn -Pbenchmark test -Djmh.args=GenericReplayCharSequenceBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenericReplayCharSequenceBenchmark {
+
+	final static Charset UTF8 = Charset.forName("UTF-8");
+	final static int BUFFER_SIZE = 512 * 1024;
+	final static Pattern LINK = Pattern.compile("href=\"([^\"]*)\"");
+
+	File dir;
+	byte[] buffer;
+	long size;
+	String backing;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		dir = File.createTempFile("bench-replay", "");
+		dir.delete();
+		dir.mkdir();
+		Random rand = new Random(1);
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 8 * 1024 * 1024) {
+			sb.append("<p>Some text, été, ").append(rand.nextInt())
+				.append(" <a href=\"http://example.com/").append(rand.nextInt(1000)).append("\">link</a></p>\n");
+		}
+		byte[] all = sb.toString().getBytes(UTF8);
+		size = all.length;
+		buffer = new byte[BUFFER_SIZE];
+		System.arraycopy(all, 0, buffer, 0, BUFFER_SIZE);
+		backing = new File(dir, "bench.ris").getPath();
+		OutputStream out = new FileOutputStream(backing);
+		out.write(all, BUFFER_SIZE, all.length - BUFFER_SIZE);
+		out.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		org.apache.commons.io.FileUtils.deleteDirectory(dir);
+	}
+
+	private ReplayCharSequence open() throws IOException {
+		ReplayInputStream replay = new ReplayInputStream(buffer, size, 0, backing);
+		ReplayCharSequence seq = new GenericReplayCharSequence(replay,
+				BUFFER_SIZE / 2, new File(dir, "bench.ros").getPath(), UTF8);
+		replay.close();
+		return seq;
+	}
+
+	@Benchmark
+	public int prefix() throws IOException {
+		ReplayCharSequence seq = open();
+		int sum = 0;
+		for (int i = 0; i < 100000; i++) {
+			sum += seq.charAt(i);
+		}
+		seq.close();
+		return sum;
+	}
+
+	@Benchmark
+	public int regex() throws IOException {
+		ReplayCharSequence seq = open();
+		Matcher m = LINK.matcher(seq);
+		int links = 0;
+		while (m.find()) {
+			links++;
+		}
+		seq.close();
+		return links;
+	}
+
+	@Benchmark
+	public int random() throws IOException {
+		ReplayCharSequence seq = open();
+		Random rand = new Random(2);
+		int sum = 0;
+		for (int i = 0; i < 1000; i++) {
+			sum += seq.charAt(rand.nextInt(seq.length()));
+		}
+		seq.close();
+		return sum;
+	}
+}
@@ -0,0 +1,205 @@
+package org.archive.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+public class GenericReplayCharSequenceTest extends TestCase {
+
+	final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private File dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("test-replay", "");
+		dir.delete();
+		dir.mkdir();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		org.apache.commons.io.FileUtils.deleteDirectory(dir);
+	}
+
+	/**
+	 * Text of mixed width chars, with some malformed bytes when encoded
+	 */
+	private byte[] content(int chars, Charset charset) throws IOException {
+		Random rand = new Random(chars);
+		String[] pieces = {"<a href=\"x\">", "plain text ", "été ", "日本語 ", "😀", "\n"};
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < chars) {
+			sb.append(pieces[rand.nextInt(pieces.length)]);
+		}
+		byte[] bytes = sb.toString().getBytes(charset);
+		if (charset.equals(UTF8)) {
+			for (int i = 0; i < 20; i++) {
+				bytes[rand.nextInt(bytes.length)] = (byte) 0xff;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * A replay of bytes, the first part from a buffer and the rest from a
+	 * backing file, positioned after a leading header
+	 */
+	private ReplayInputStream replay(byte[] header, byte[] content) throws IOException {
+		byte[] all = new byte[header.length + content.length];
+		System.arraycopy(header, 0, all, 0, header.length);
+		System.arraycopy(content, 0, all, header.length, content.length);
+		int bufferSize = Math.min(all.length, 65536);
+		File backing = new File(dir, "test.ris");
+		OutputStream out = new FileOutputStream(backing);
+		out.write(all, bufferSize, all.length - bufferSize);
+		out.close();
+		ReplayInputStream replay = new ReplayInputStream(Arrays.copyOf(all, 65536),
+				all.length, header.length, backing.getPath());
+		replay.setToResponseBodyStart();
+		return replay;
+	}
+
+	private void check(InputStream in, byte[] content, int prefixMax, Charset charset) throws IOException {
+		String expected = new String(content, charset);
+		GenericReplayCharSequence seq = new GenericReplayCharSequence(in, prefixMax,
+				new File(dir, "test.ros").getPath(), charset);
+		in.close();
+
+		// forward a bit, without needing the length
+		for (int i = 0; i < Math.min(200000, expected.length()); i += 7) {
+			assertEquals(expected.charAt(i), seq.charAt(i));
+		}
+		assertEquals(expected.length(), seq.length());
+		Random rand = new Random(1);
+		for (int i = 0; i < 2000 && expected.length() > 0; i++) {
+			int index = rand.nextInt(expected.length());
+			assertEquals("at " + index, expected.charAt(index), seq.charAt(index));
+		}
+		assertEquals(expected, seq.toString());
+		try {
+			seq.charAt(expected.length());
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+
+		Matcher m = Pattern.compile("plain text").matcher(seq);
+		Matcher e = Pattern.compile("plain text").matcher(expected);
+		int found = 0;
+		while (e.find()) {
+			assertTrue(m.find());
+			assertEquals(e.start(), m.start());
+			found++;
+		}
+		assertFalse(m.find());
+		assertTrue(found > 0 || expected.length() < 2000);
+
+		seq.close();
+		assertFalse(seq.isOpen());
+		assertNoDecodings();
+	}
+
+	private void assertNoDecodings() {
+		for (String name : dir.list()) {
+			assertTrue(name, name.equals("test.ris"));
+		}
+	}
+
+	public void testReplay() throws IOException {
+		byte[] content = content(500000, UTF8);
+		byte[] header = "HTTP/1.0 200 OK\r\n\r\n".getBytes(UTF8);
+		check(replay(header, content), content, 1000, UTF8);
+		// prefix ending part way through a surrogate pair, most likely
+		check(replay(header, content), content, 4099, UTF8);
+		check(replay(header, content), content, 0, UTF8);
+	}
+
+	/**
+	 * The recording, buffer and backing file, being overwritten for the
+	 * next one does not change a sequence still open
+	 */
+	public void testRecordingReused() throws IOException {
+		byte[] content = content(300000, UTF8);
+		String expected = new String(content, UTF8);
+		byte[] buffer = new byte[65536];
+		System.arraycopy(content, 0, buffer, 0, buffer.length);
+		File backing = new File(dir, "test.ris");
+		OutputStream out = new FileOutputStream(backing);
+		out.write(content, buffer.length, content.length - buffer.length);
+		out.close();
+		ReplayInputStream replay = new ReplayInputStream(buffer, content.length, 0, backing.getPath());
+		replay.setToResponseBodyStart();
+		GenericReplayCharSequence seq = new GenericReplayCharSequence(replay, 1000,
+				new File(dir, "test.ros").getPath(), UTF8);
+		replay.close();
+
+		Arrays.fill(buffer, (byte) 'x');
+		out = new FileOutputStream(backing);
+		byte[] next = new byte[content.length];
+		Arrays.fill(next, (byte) 'y');
+		out.write(next);
+		out.close();
+
+		for (int i = expected.length() - 1; i >= 0; i -= 5) {
+			assertEquals(expected.charAt(i), seq.charAt(i));
+		}
+		assertEquals(expected, seq.toString());
+		seq.close();
+		assertNoDecodings();
+	}
+
+	public void testLengthFirst() throws IOException {
+		byte[] content = content(400000, UTF8);
+		String expected = new String(content, UTF8);
+		GenericReplayCharSequence seq = new GenericReplayCharSequence(
+				replay(new byte[0], content), 1000, new File(dir, "test.ros").getPath(), UTF8);
+		assertEquals(expected.length(), seq.length());
+		for (int i = expected.length() - 1; i >= 0; i -= 3) {
+			assertEquals(expected.charAt(i), seq.charAt(i));
+		}
+		assertEquals(expected, seq.toString());
+		seq.close();
+	}
+
+	public void testStream() throws IOException {
+		byte[] content = content(300000, UTF8);
+		check(new ByteArrayInputStream(content), content, 5000, UTF8);
+	}
+
+	public void testSingleByte() throws IOException {
+		Charset latin1 = Charset.forName("ISO-8859-1");
+		byte[] content = content(300000, UTF8);
+		check(replay(new byte[0], content), content, 1000, latin1);
+		check(new ByteArrayInputStream(content), content, 1000, latin1);
+	}
+
+	public void testMultibyte() throws IOException {
+		Charset sjis = Charset.forName("Shift_JIS");
+		byte[] content = content(200000, sjis);
+		check(new ByteArrayInputStream(content), content, 1000, sjis);
+	}
+
+	public void testDecodedToFile() throws IOException {
+		// byte order mark: decoded up front, as before
+		Charset utf16 = Charset.forName("UTF-16");
+		byte[] content = content(200000, utf16);
+		check(replay(new byte[0], content), content, 1000, utf16);
+	}
+
+	public void testPrefixOnly() throws IOException {
+		byte[] content = content(800, UTF8);
+		check(replay(new byte[10], content), content, 1000, UTF8);
+		check(new ByteArrayInputStream(new byte[0]), new byte[0], 1000, UTF8);
+	}
+}
@@ -0,0 +1,64 @@
+package org.archive.io;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Many threads borrowing and returning writers of a WriterPool, with a
+ * little work while each is borrowed, with and without thread affinity.
+ *
+ * Run with:
+ *   mvn -Pbenchmark test -Djmh.args=WriterPoolBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class WriterPoolBenchmark {
+
+	@Param({"false", "true"})
+	public boolean threadAffinity;
+
+	@Param({"4"})
+	public int maxActive;
+
+	WriterPoolTest.TestPool pool;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		java.util.logging.Logger.getLogger("org.archive").setLevel(java.util.logging.Level.WARNING);
+		pool = new WriterPoolTest.TestPool(maxActive, 1);
+		pool.setThreadAffinity(threadAffinity);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.close();
+	}
+
+	@Benchmark
+	public void borrowAndReturn() throws IOException {
+		WriterPoolMember writer = pool.borrowFile();
+		Blackhole.consumeCPU(200);
+		pool.returnFile(writer);
+	}
+}
@@ -0,0 +1,184 @@
+package org.archive.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.io.arc.WriterPoolSettingsData;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import junit.framework.TestCase;
+
+public class WriterPoolTest extends TestCase {
+
+	static class TestMember extends WriterPoolMember {
+		AtomicBoolean inUse = new AtomicBoolean();
+		boolean oversize = false;
+		boolean closed = false;
+
+		TestMember(AtomicInteger serialNo, WriterPoolSettings settings) {
+			super(serialNo, settings, "test");
+		}
+
+		@Override
+		public boolean isOversize() {
+			return oversize;
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+		}
+	}
+
+	static class TestPool extends WriterPool {
+		List<TestMember> made = Collections.synchronizedList(new ArrayList<TestMember>());
+
+		TestPool(int maxActive, int maxWait) {
+			super(new AtomicInteger(), new WriterPoolSettingsData("TEST", "${prefix}", -1,
+					false, new ArrayList<File>(), null), maxActive, maxWait);
+		}
+
+		@Override
+		protected WriterPoolMember makeWriter() {
+			TestMember member = new TestMember(serialNo, settings);
+			made.add(member);
+			return member;
+		}
+	}
+
+	private TestMember borrowInOtherThread(final TestPool pool) throws Exception {
+		final TestMember[] borrowed = new TestMember[1];
+		Thread t = new Thread() {
+			public void run() {
+				try {
+					borrowed[0] = (TestMember) pool.borrowFile();
+					pool.returnFile(borrowed[0]);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		t.start();
+		t.join();
+		return borrowed[0];
+	}
+
+	private void checkAffinity(boolean affinity) throws Exception {
+		TestPool pool = new TestPool(2, 5);
+		pool.setThreadAffinity(affinity);
+		TestMember a = (TestMember) pool.borrowFile();
+		// made while a is borrowed, and returned first
+		TestMember b = borrowInOtherThread(pool);
+		assertNotSame(a, b);
+		pool.returnFile(a);
+		assertEquals(2, pool.getNumIdle());
+		for (int i = 0; i < 5; i++) {
+			TestMember again = (TestMember) pool.borrowFile();
+			if (affinity) {
+				assertSame(a, again);
+			} else {
+				// the writer idle longest
+				assertSame(i % 2 == 0 ? b : a, again);
+			}
+			pool.returnFile(again);
+		}
+		assertEquals(2, pool.made.size());
+		pool.close();
+		assertTrue(a.closed && b.closed);
+	}
+
+	public void testThreadAffinity() throws Exception {
+		checkAffinity(false);
+		checkAffinity(true);
+		TestPool pool = new TestPool(2, 5);
+		pool.returnFile(pool.borrowFile());
+		try {
+			pool.setThreadAffinity(true);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private void checkConcurrent(boolean affinity) throws Exception {
+		final TestPool pool = new TestPool(3, 1);
+		pool.setThreadAffinity(affinity);
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			Thread thread = new Thread() {
+				public void run() {
+					try {
+						for (int i = 0; i < 300; i++) {
+							TestMember m = (TestMember) pool.borrowFile();
+							assertTrue(m.inUse.compareAndSet(false, true));
+							Thread.yield();
+							m.inUse.set(false);
+							pool.returnFile(m);
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(Collections.emptyList(), errors);
+		assertTrue(pool.made.size() <= 3);
+		assertEquals(pool.made.size(), pool.getNumIdle());
+		assertEquals(0, pool.getNumActive());
+
+		JSONObject metrics = pool.jsonMetrics();
+		assertEquals(2400, metrics.getLong("borrows"));
+		assertEquals(pool.made.size(), metrics.getLong("writersCreated"));
+		assertEquals(affinity, metrics.getBoolean("threadAffinity"));
+		JSONArray status = pool.jsonStatus();
+		assertEquals(pool.made.size(), status.length());
+		long borrows = 0;
+		for (int i = 0; i < status.length(); i++) {
+			borrows += status.getJSONObject(i).getLong("borrows");
+			double occupancy = status.getJSONObject(i).getDouble("occupancy");
+			assertTrue(occupancy > 0 && occupancy <= 1);
+		}
+		assertEquals(2400, borrows);
+		assertEquals(pool.made.size(), pool.getNumIdle());
+		pool.close();
+		assertEquals(pool.made.size(), pool.jsonMetrics().getLong("writersClosed"));
+	}
+
+	public void testConcurrentBorrows() throws Exception {
+		checkConcurrent(false);
+		checkConcurrent(true);
+	}
+
+	public void testMaxActiveCeiling() throws Exception {
+		TestPool pool = new TestPool(1, 5);
+		pool.setMaxActiveCeiling(3);
+		TestMember a = (TestMember) pool.borrowFile();
+		// waits until recent borrow waits pass half of maxWait
+		TestMember b = borrowInOtherThread(pool);
+		assertNotSame(a, b);
+		assertEquals(2, pool.getMaxActive());
+		assertTrue(pool.jsonMetrics().getLong("writersNeeded") >= 2);
+
+		// retired, with no demand since it was made
+		TestMember c = (TestMember) pool.borrowFile();
+		assertSame(b, c);
+		c.oversize = true;
+		pool.returnFile(c);
+		assertTrue(c.closed);
+		assertEquals(1, pool.getMaxActive());
+		pool.returnFile(a);
+		pool.close();
+	}
+}
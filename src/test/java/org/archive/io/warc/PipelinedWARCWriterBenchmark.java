@@ -0,0 +1,149 @@
+package org.archive.io.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.format.warc.WARCConstants.WARCRecordType;
+import org.archive.uid.UUIDGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Several fetcher threads writing records to one compressed WARC file:
+ * each holding the WARCWriter for the whole writeRecord(), as with a
+ * WriterPool of one, against submitting them to a PipelinedWARCWriter.
+ *
+ * Run with:
+ *   mvn -Pbenchmark test -Djmh.args=PipelinedWARCWriterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelinedWARCWriterBenchmark {
+
+	final static int NUM_RECORDS = 400;
+
+	@Param({"4"})
+	public int threads;
+
+	File dir;
+	byte[][] contents;
+	ExecutorService fetchers;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		dir = File.createTempFile("bench-pipelined", "");
+		dir.delete();
+		dir.mkdir();
+		Random rand = new Random(1);
+		contents = new byte[NUM_RECORDS][];
+		for (int i = 0; i < NUM_RECORDS; i++) {
+			StringBuilder sb = new StringBuilder("HTTP/1.0 200 OK\r\n\r\n");
+			for (int j = 30000; j > 0; j--) {
+				sb.append((char) ('a' + rand.nextInt(26)));
+			}
+			contents[i] = sb.toString().getBytes("UTF-8");
+		}
+		fetchers = Executors.newFixedThreadPool(threads);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		fetchers.shutdown();
+		dir.delete();
+	}
+
+	private WARCWriter newWriter() {
+		WARCWriterPoolSettingsData settings = new WARCWriterPoolSettingsData("BENCH",
+				"${prefix}-${serialno}", -1, true, Arrays.asList(dir), null, new UUIDGenerator());
+		return new WARCWriter(new AtomicInteger(), settings);
+	}
+
+	private WARCRecordInfo record(int i) {
+		WARCRecordInfo info = new WARCRecordInfo();
+		info.setType(WARCRecordType.response);
+		info.setUrl("http://example.com/" + i);
+		info.setCreate14DigitDate("20120304050607");
+		info.setMimetype("application/http; msgtype=response");
+		info.setRecordId(URI.create("urn:uuid:00000000-0000-0000-0000-" + String.format("%012d", i)));
+		info.setContentStream(new ByteArrayInputStream(contents[i]));
+		info.setContentLength(contents[i].length);
+		info.setEnforceLength(true);
+		return info;
+	}
+
+	private void run(final Writes writes) throws Exception {
+		List<Future<Void>> done = new ArrayList<Future<Void>>();
+		for (int t = 0; t < threads; t++) {
+			final int first = t;
+			done.add(fetchers.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					for (int i = first; i < NUM_RECORDS; i += threads) {
+						writes.write(record(i));
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> f : done) {
+			f.get();
+		}
+	}
+
+	interface Writes {
+		void write(WARCRecordInfo info) throws IOException;
+	}
+
+	@Benchmark
+	public void serial() throws Exception {
+		final WARCWriter writer = newWriter();
+		run(new Writes() {
+			public void write(WARCRecordInfo info) throws IOException {
+				synchronized (writer) {
+					writer.checkSize();
+					writer.writeRecord(info);
+				}
+			}
+		});
+		writer.close();
+		writer.getFile().delete();
+	}
+
+	@Benchmark
+	public void pipelined() throws Exception {
+		final PipelinedWARCWriter pipelined = new PipelinedWARCWriter(newWriter(), threads);
+		run(new Writes() {
+			public void write(WARCRecordInfo info) throws IOException {
+				pipelined.submit(info);
+			}
+		});
+		pipelined.close();
+		pipelined.getWriter().getFile().delete();
+	}
+}
@@ -0,0 +1,235 @@
+package org.archive.io.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.format.index.RecordIndex;
+import org.archive.format.index.RecordIndexEntry;
+import org.archive.format.warc.WARCConstants.WARCRecordType;
+import org.archive.uid.UUIDGenerator;
+import org.archive.util.TestUtils;
+
+import junit.framework.TestCase;
+
+public class PipelinedWARCWriterTest extends TestCase {
+
+	final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private WARCWriter newWriter(File dir, boolean compress) {
+		WARCWriterPoolSettingsData settings = new WARCWriterPoolSettingsData("TEST",
+				"${prefix}-${serialno}", -1, compress, Arrays.asList(dir), null, new UUIDGenerator());
+		WARCWriter writer = new WARCWriter(new AtomicInteger(), settings);
+		writer.setWriteRecordIndex(true);
+		return writer;
+	}
+
+	private WARCRecordInfo record(int i) {
+		Random rand = new Random(i);
+		StringBuilder sb = new StringBuilder("HTTP/1.0 200 OK\r\n\r\n");
+		for (int j = rand.nextInt(20000); j > 0; j--) {
+			sb.append((char) ('a' + rand.nextInt(26)));
+		}
+		byte[] content = sb.toString().getBytes(UTF8);
+		WARCRecordInfo info = new WARCRecordInfo();
+		info.setType(WARCRecordType.response);
+		info.setUrl("http://example.com/" + i);
+		info.setCreate14DigitDate("20120304050607");
+		info.setMimetype("application/http; msgtype=response");
+		info.setRecordId(URI.create("urn:uuid:00000000-0000-0000-0000-" + String.format("%012d", i)));
+		info.setContentStream(new ByteArrayInputStream(content));
+		info.setContentLength(content.length);
+		info.setEnforceLength(true);
+		return info;
+	}
+
+	private byte[] readFrom(File file, long offset) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		byte[] bytes = new byte[(int) (raf.length() - offset)];
+		raf.seek(offset);
+		raf.readFully(bytes);
+		raf.close();
+		return bytes;
+	}
+
+	private void checkSameAsSerial(boolean compress) throws Exception {
+		WARCWriter serial = newWriter(TestUtils.createTempDir("test-pipelined"), compress);
+		long serialStart = -1;
+		for (int i = 0; i < 50; i++) {
+			serial.checkSize();
+			WARCRecordInfo info = record(i);
+			serial.writeRecord(info);
+			if (i == 0) {
+				serialStart = info.getWARCFileOffset();
+			}
+		}
+		serial.close();
+
+		WARCWriter writer = newWriter(TestUtils.createTempDir("test-pipelined"), compress);
+		PipelinedWARCWriter pipelined = new PipelinedWARCWriter(writer, 3, 5);
+		List<Future<WARCRecordInfo>> futures = new ArrayList<Future<WARCRecordInfo>>();
+		for (int i = 0; i < 50; i++) {
+			futures.add(pipelined.submit(record(i)));
+		}
+		pipelined.flush();
+		Map<String, Map<String, Long>> stats = writer.getTmpStats();
+		assertEquals(51, WARCWriter.getStat(stats, WARCWriter.TOTALS, WARCWriter.NUM_RECORDS));
+		assertEquals(WARCWriter.getStat(serial.getTmpStats(), "response", WARCWriter.TOTAL_BYTES),
+				WARCWriter.getStat(stats, "response", WARCWriter.TOTAL_BYTES));
+		assertEquals(WARCWriter.getStat(serial.getTmpStats(), "response", WARCWriter.CONTENT_BYTES),
+				WARCWriter.getStat(stats, "response", WARCWriter.CONTENT_BYTES));
+		pipelined.close();
+
+		long start = futures.get(0).get().getWARCFileOffset();
+		assertTrue(Arrays.equals(readFrom(serial.getFile(), serialStart),
+				readFrom(writer.getFile(), start)));
+		RecordIndex serialIndex = RecordIndex.forArchive(serial.getFile());
+		RecordIndex index = RecordIndex.forArchive(writer.getFile());
+		assertEquals(51, index.size());
+		for (int i = 0; i < 50; i++) {
+			WARCRecordInfo info = futures.get(i).get();
+			assertEquals(writer.getFile().getName(), info.getWARCFilename());
+			RecordIndexEntry entry = index.get(i + 1);
+			assertEquals(entry.getOffset(), info.getWARCFileOffset().longValue());
+			assertTrue(entry.matchesURI(info.getUrl()));
+			RecordIndexEntry serialEntry = serialIndex.get(i + 1);
+			assertEquals(serialEntry.getCompressedLength(), entry.getCompressedLength());
+			assertEquals(serialEntry.getUncompressedLength(), entry.getUncompressedLength());
+		}
+	}
+
+	public void testSameAsSerial() throws Exception {
+		checkSameAsSerial(true);
+		checkSameAsSerial(false);
+	}
+
+	public void testManyThreads() throws Exception {
+		WARCWriter writer = newWriter(TestUtils.createTempDir("test-pipelined"), true);
+		final PipelinedWARCWriter pipelined = new PipelinedWARCWriter(writer, 4);
+		final Map<Integer, Future<WARCRecordInfo>> futures =
+			new HashMap<Integer, Future<WARCRecordInfo>>();
+		final List<Exception> errors = new ArrayList<Exception>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 6; t++) {
+			final int base = t * 30;
+			Thread thread = new Thread() {
+				public void run() {
+					try {
+						for (int i = base; i < base + 30; i++) {
+							Future<WARCRecordInfo> f = pipelined.submit(record(i));
+							synchronized (futures) {
+								futures.put(i, f);
+							}
+						}
+					} catch (Exception e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, errors.size());
+		pipelined.close();
+
+		RecordIndex index = RecordIndex.forArchive(writer.getFile());
+		assertEquals(181, index.size());
+		assertTrue(index.isContiguous());
+		for (int i = 0; i < 180; i++) {
+			WARCRecordInfo info = futures.get(i).get();
+			RecordIndexEntry entry = index.getEntry(info.getWARCFileOffset());
+			assertNotNull(entry);
+			assertTrue(entry.matchesURI("http://example.com/" + i));
+		}
+		try {
+			pipelined.submit(record(0));
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testBadLength() throws Exception {
+		PipelinedWARCWriter pipelined = new PipelinedWARCWriter(newWriter(TestUtils.createTempDir("test-pipelined"), true), 1);
+		WARCRecordInfo info = record(1);
+		info.setContentLength(info.getContentLength() + 1);
+		try {
+			pipelined.submit(info);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		// the failed record doesn't hold up the others
+		for (int i = 0; i < 10; i++) {
+			assertNotNull(pipelined.submit(record(i)).get().getWARCFileOffset());
+		}
+		pipelined.close();
+	}
+	/**
+	 * A writer whose group-commit flush is slow, or fails
+	 */
+	private WARCWriter slowFlushingWriter(File dir, final boolean fail) {
+		WARCWriterPoolSettingsData settings = new WARCWriterPoolSettingsData("TEST",
+				"${prefix}-${serialno}", -1, true, Arrays.asList(dir), null, new UUIDGenerator());
+		return new WARCWriter(new AtomicInteger(), settings) {
+			@Override
+			protected void flushPreparedRecords() throws IOException {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				if (fail) {
+					throw new IOException("disk full");
+				}
+				super.flushPreparedRecords();
+			}
+		};
+	}
+
+	public void testFlushWaitsForDisk() throws Exception {
+		WARCWriter writer = slowFlushingWriter(TestUtils.createTempDir("test-pipelined"), false);
+		PipelinedWARCWriter pipelined = new PipelinedWARCWriter(writer, 2);
+		for (int i = 0; i < 5; i++) {
+			pipelined.submit(record(i));
+		}
+		pipelined.flush();
+		assertTrue(writer.getPosition() > 0);
+		assertEquals(writer.getPosition(), writer.getFile().length());
+		pipelined.close();
+	}
+
+	public void testFlushFailure() throws Exception {
+		WARCWriter writer = slowFlushingWriter(TestUtils.createTempDir("test-pipelined"), true);
+		PipelinedWARCWriter pipelined = new PipelinedWARCWriter(writer, 2);
+		pipelined.submit(record(1));
+		try {
+			pipelined.flush();
+			fail();
+		} catch (IOException e) {
+			assertEquals("disk full", e.getMessage());
+		}
+		try {
+			pipelined.close();
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package org.archive.io.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.format.warc.WARCConstants.WARCRecordType;
+import org.archive.uid.UUIDGenerator;
+
+import junit.framework.TestCase;
+
+public class WARCHeaderEncoderTest extends TestCase {
+
+	private WARCWriter writer = new WARCWriter(new AtomicInteger(),
+			new WARCWriterPoolSettingsData("TEST", "${prefix}", -1, false,
+					Arrays.asList(new File(".")), null, new UUIDGenerator()));
+
+	private WARCHeaderEncoder encoder = new WARCHeaderEncoder(16);
+
+	private WARCRecordInfo info(WARCRecordType type, String url, String mimetype, long length) {
+		WARCRecordInfo info = new WARCRecordInfo();
+		info.setType(type);
+		info.setUrl(url);
+		info.setCreate14DigitDate("2012-03-04T05:06:07Z");
+		info.setMimetype(mimetype);
+		info.setRecordId(new UUIDGenerator().getRecordID());
+		info.setContentLength(length);
+		return info;
+	}
+
+	private void checkSame(WARCRecordInfo info) throws IOException {
+		byte[] expected = writer.createRecordHeader(info).getBytes(WARCConstants.WARC_HEADER_ENCODING);
+		ByteBuffer got = encoder.encode(info);
+		byte[] gotBytes = new byte[got.remaining()];
+		got.get(gotBytes);
+		assertEquals(new String(expected, "UTF-8"), new String(gotBytes, "UTF-8"));
+		assertTrue(Arrays.equals(expected, gotBytes));
+	}
+
+	private void checkRejected(WARCRecordInfo info) {
+		String message = null;
+		try {
+			writer.createRecordHeader(info);
+			fail();
+		} catch (IllegalArgumentException e) {
+			message = e.getMessage();
+		}
+		try {
+			encoder.encode(info);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(message, e.getMessage());
+		}
+	}
+
+	public void testSameAsCreateRecordHeader() throws IOException {
+		for (WARCRecordType type : WARCRecordType.values()) {
+			checkSame(info(type, "http://example.com/" + type, "text/html", 1234567890123L));
+		}
+		checkSame(info(WARCRecordType.response, null, "text/html", 0));
+		checkSame(info(WARCRecordType.response, "", null, 0));
+		// non-ASCII URL, mimetype and header values
+		checkSame(info(WARCRecordType.response, "http://example.com/été/日本",
+				"text/html;  charset=\"é\"\t\t q=1", 7));
+		checkSame(info(WARCRecordType.request, "http://example.com/", "text/plain   ;\n x=y", 9));
+		WARCRecordInfo info = info(WARCRecordType.revisit, "dns:example.com", "text/dns", 100);
+		info.addExtraHeader(WARCConstants.HEADER_KEY_IP, "127.0.0.1");
+		info.addExtraHeader(WARCConstants.HEADER_KEY_PAYLOAD_DIGEST, "sha1:3I42H3S6NNFQ2MSVX7XZKYAYSCX5QBYJ");
+		info.addExtraHeader("X-Note", "café\r\n folded");
+		checkSame(info);
+		info.setCreate14DigitDate(null);
+		checkSame(info);
+
+		// longer than the buffer grows to at first
+		StringBuilder sb = new StringBuilder("http://example.com/");
+		for (int i = 0; i < 5000; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		checkSame(info(WARCRecordType.response, sb.toString(), "text/html", 10));
+	}
+
+	public void testMimetype() {
+		String plain = "text/html; charset=UTF-8";
+		assertSame(plain, WARCHeaderEncoder.checkMimetype(plain));
+		assertEquals("text/plain ; x=y", WARCHeaderEncoder.checkMimetype("text/plain   ;\n x=y"));
+		assertEquals("text/html; q=1", WARCHeaderEncoder.checkMimetype("text/html;\tq=1"));
+		assertEquals(" a ", WARCHeaderEncoder.checkMimetype("\t\ta \r\n"));
+	}
+
+	public void testRejected() {
+		checkRejected(info(WARCRecordType.response, "http://example.com/a b", "text/html", 1));
+		checkRejected(info(WARCRecordType.response, "http://example.com/\u0001", "text/html", 1));
+		checkRejected(info(WARCRecordType.response, "http://example.com/", "text/html\u0001", 1));
+		checkRejected(info(WARCRecordType.response, "http://example.com/", "text/é\u0001", 1));
+	}
+
+	public void testOverriddenHeader() throws IOException {
+		File dir = File.createTempFile("test-header", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		WARCWriter custom = new WARCWriter(new AtomicInteger(),
+				new WARCWriterPoolSettingsData("TEST", "${prefix}", -1, false,
+						Arrays.asList(dir), null, new UUIDGenerator())) {
+			@Override
+			protected String createRecordHeader(WARCRecordInfo metaRecord) {
+				return super.createRecordHeader(metaRecord) + "X-Custom: yes\r\n";
+			}
+			
+			@Override
+			protected ByteBuffer encodeRecordHeader(WARCRecordInfo recordInfo) throws IOException {
+				return ByteBuffer.wrap(createRecordHeader(recordInfo).getBytes(WARC_HEADER_ENCODING));
+			}
+		};
+		WARCRecordInfo info = info(WARCRecordType.resource, "http://example.com/", "text/plain", 2);
+		info.setContentStream(new ByteArrayInputStream("hi".getBytes("UTF-8")));
+		custom.writeRecord(info);
+		custom.close();
+		File f = custom.getFile();
+		f.deleteOnExit();
+		byte[] bytes = org.apache.commons.io.FileUtils.readFileToByteArray(f);
+		// the warcinfo record and this one
+		String s = new String(bytes, "UTF-8");
+		assertEquals(2, s.split("X-Custom: yes\r\n", -1).length - 1);
+		assertEquals(info.getWARCFileOffset().longValue(), s.lastIndexOf("WARC/1.0"));
+	}
+}
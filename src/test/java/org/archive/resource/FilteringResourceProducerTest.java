@@ -0,0 +1,117 @@
+package org.archive.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.archive.extract.ExtractingResourceFactoryMapper;
+import org.archive.extract.ExtractingResourceProducer;
+import org.archive.format.index.RecordIndex;
+import org.archive.format.index.RecordIndexEntry;
+import org.archive.format.index.RecordIndexer;
+import org.archive.format.warc.WARCFixtures;
+import org.archive.format.warc.WARCFixtures.Compression;
+import org.archive.resource.producer.WARCFile;
+import org.archive.util.StreamCopy;
+
+import junit.framework.TestCase;
+
+public class FilteringResourceProducerTest extends TestCase {
+
+	private File writeWARC(boolean skipLength) throws IOException {
+		List<byte[]> records = new ArrayList<byte[]>();
+		Random rand = new Random(7);
+		for (int i = 0; i < 40; i++) {
+			byte[] payload = new byte[rand.nextInt(20000)];
+			rand.nextBytes(payload);
+			records.add(WARCFixtures.httpRecord(i, i % 3 == 0 ? "request" : "response", payload));
+		}
+		return WARCFixtures.writeWARC("test-filter", records,
+				skipLength ? Compression.GZIP_SKIP_LENGTH : Compression.GZIP);
+	}
+
+	private List<String> extract(File file, RecordFilter filter, RecordIndex index,
+			long[] skipped) throws Exception {
+		ResourceProducer producer = new WARCFile().getGZResourceProducer(file);
+		FilteringResourceProducer filtering = null;
+		if (filter != null) {
+			filtering = new FilteringResourceProducer(producer, filter, index);
+			producer = filtering;
+		}
+		producer = new ExtractingResourceProducer(producer, new ExtractingResourceFactoryMapper());
+		List<String> records = new ArrayList<String>();
+		Resource r;
+		while ((r = producer.getNext()) != null) {
+			StreamCopy.readToEOF(r.getInputStream());
+			records.add(r.getMetaData().getTopMetaData().toString());
+		}
+		producer.close();
+		if (filtering != null) {
+			skipped[0] = filtering.getNumRejected();
+			skipped[1] = filtering.getNumSkippedWithoutInflating();
+		}
+		return records;
+	}
+
+	private List<String> responses(List<String> records) {
+		List<String> responses = new ArrayList<String>();
+		for (String record : records) {
+			if (record.contains("\"WARC-Type\":\"response\"")) {
+				responses.add(record);
+			}
+		}
+		return responses;
+	}
+
+	public void testFilter() throws Exception {
+		HeaderRecordFilter filter = new HeaderRecordFilter();
+		filter.setTypes(Arrays.asList("response"));
+		long[] skipped = new long[2];
+
+		// without a known member length, rejected members are inflated
+		File file = writeWARC(false);
+		List<String> all = extract(file, null, null, null);
+		assertEquals(40, all.size());
+		List<String> expected = responses(all);
+		assertEquals(26, expected.size());
+		assertEquals(expected, extract(file, filter, null, skipped));
+		assertEquals(14, skipped[0]);
+		assertEquals(0, skipped[1]);
+
+		// with SL fields, the same records without inflating the others
+		File slFile = writeWARC(true);
+		assertTrue(slFile.length() > file.length());
+		List<String> slAll = extract(slFile, null, null, null);
+		assertEquals(40, slAll.size());
+		assertEquals(responses(slAll), extract(slFile, filter, null, skipped));
+		assertEquals(14, skipped[0]);
+		assertEquals(14, skipped[1]);
+
+		// with a record index
+		new RecordIndexer().index(file);
+		RecordIndex.getSidecar(file).deleteOnExit();
+		RecordIndex index = RecordIndex.forArchive(file);
+		assertEquals(expected, extract(file, filter, index, skipped));
+		assertEquals(14, skipped[1]);
+
+		// wrong lengths in the index are noticed, and the member inflated
+		List<RecordIndexEntry> wrong = new ArrayList<RecordIndexEntry>();
+		for (RecordIndexEntry e : index.getEntries()) {
+			wrong.add(new RecordIndexEntry(e.getOffset(), e.getCompressedLength() - 1,
+					e.getUncompressedLength(), e.getType(), e.getURIHash()));
+		}
+		assertEquals(expected, extract(file, filter, new RecordIndex(wrong), skipped));
+		assertEquals(0, skipped[1]);
+
+		filter = new HeaderRecordFilter();
+		filter.setMaxLength(10000);
+		filter.setContentTypes(Arrays.asList("Application/HTTP"));
+		List<String> small = extract(slFile, filter, null, skipped);
+		assertTrue(small.size() > 0);
+		assertEquals(40, small.size() + skipped[0]);
+		assertEquals(skipped[0], skipped[1]);
+	}
+}
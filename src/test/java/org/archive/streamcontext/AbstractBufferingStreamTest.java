@@ -0,0 +1,175 @@
+package org.archive.streamcontext;
+
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class AbstractBufferingStreamTest extends TestCase {
+
+	/**
+	 * In-memory stream returning short reads, which checks that doRead()
+	 * and doSeek() never overlap
+	 */
+	static class ShortReadStream extends AbstractBufferingStream {
+		byte[] data;
+		int pos = 0;
+		Random rand = new Random(7);
+		int busy = 0;
+		int failAt = -1;
+		boolean closedUnder = false;
+
+		ShortReadStream(byte[] data, int readSize) {
+			super(0, readSize);
+			this.data = data;
+		}
+
+		private synchronized void enter() {
+			if(busy++ != 0) {
+				throw new IllegalStateException("concurrent doRead/doSeek");
+			}
+		}
+
+		private synchronized void exit() {
+			busy--;
+		}
+
+		@Override
+		public int doRead(byte[] b, int off, int len) throws IOException {
+			enter();
+			try {
+				if(pos == failAt) {
+					throw new IOException("failing at " + pos);
+				}
+				if(pos >= data.length) {
+					return -1;
+				}
+				int amt = Math.min(data.length - pos, 1 + rand.nextInt(len));
+				System.arraycopy(data, pos, b, off, amt);
+				pos += amt;
+				Thread.yield();
+				return amt;
+			} finally {
+				exit();
+			}
+		}
+
+		@Override
+		public void doSeek(long offset) throws IOException {
+			enter();
+			pos = (int) offset;
+			exit();
+		}
+
+		@Override
+		public void doClose() throws IOException {
+			closedUnder = true;
+		}
+	}
+
+	private byte[] random(int size) {
+		byte[] data = new byte[size];
+		new Random(3).nextBytes(data);
+		return data;
+	}
+
+	private void checkReads(AbstractBufferingStream stream, byte[] data) throws IOException {
+		Random rand = new Random(11);
+		byte[] got = new byte[2000];
+		for(int i = 0; i < 2000; i++) {
+			if(rand.nextInt(4) == 0) {
+				long offset = stream.getOffset();
+				// near the current offset, so also within the buffer
+				offset += rand.nextInt(10) == 0 ? rand.nextInt(data.length) - offset
+						: rand.nextInt(200) - 100;
+				stream.setOffset(Math.max(0, Math.min(offset, data.length + 5)));
+			}
+			long offset = stream.getOffset();
+			int len = 1 + rand.nextInt(got.length - 1);
+			int amt = stream.read(got, 0, len);
+			if(offset >= data.length) {
+				assertEquals(-1, amt);
+				continue;
+			}
+			assertTrue(amt > 0);
+			assertEquals(offset + amt, stream.getOffset());
+			for(int j = 0; j < amt; j++) {
+				assertEquals(data[(int) offset + j], got[j]);
+			}
+		}
+	}
+
+	public void testReadAhead() throws IOException {
+		byte[] data = random(50000);
+		ShortReadStream plain = new ShortReadStream(data, 500);
+		checkReads(plain, data);
+		plain.close();
+
+		ShortReadStream stream = new ShortReadStream(data, 500);
+		stream.setReadAhead(3);
+		assertEquals(3, stream.getReadAhead());
+		checkReads(stream, data);
+
+		// turned off part way, reading carries on where it was
+		stream.setOffset(1234);
+		byte[] got = new byte[100];
+		assertEquals(100, stream.read(got, 0, 100));
+		stream.setReadAhead(0);
+		assertEquals(0, stream.getReadAhead());
+		int total = 0;
+		int amt;
+		byte[] rest = new byte[data.length];
+		while((amt = stream.read(rest, total, rest.length - total)) != -1) {
+			total += amt;
+		}
+		assertEquals(data.length - 1334, total);
+		for(int i = 0; i < total; i++) {
+			assertEquals(data[1334 + i], rest[i]);
+		}
+		stream.close();
+		assertTrue(stream.closedUnder);
+	}
+
+	public void testReadAheadError() throws IOException {
+		byte[] data = random(10000);
+		ShortReadStream stream = new ShortReadStream(data, 1000) {
+			@Override
+			public int doRead(byte[] b, int off, int len) throws IOException {
+				// whole buffers, so the failure offset is reached exactly
+				int amt = super.doRead(b, off, len);
+				while(amt > 0 && amt < len && pos < data.length && pos != failAt) {
+					int more = super.doRead(b, off + amt, len - amt);
+					if(more == -1) {
+						break;
+					}
+					amt += more;
+				}
+				return amt;
+			}
+		};
+		stream.failAt = 3000;
+		stream.setReadAhead(2);
+		byte[] got = new byte[1000];
+		assertEquals(1000, stream.read(got, 0, 1000));
+		assertEquals(1000, stream.read(got, 0, 1000));
+		assertEquals(1000, stream.read(got, 0, 1000));
+		try {
+			stream.read(got, 0, 1000);
+			fail();
+		} catch(IOException e) {
+			assertEquals("failing at 3000", e.getMessage());
+		}
+		// a seek clears the error
+		stream.failAt = -1;
+		stream.setOffset(500);
+		assertEquals(1000, stream.read(got, 0, 1000));
+		assertEquals(data[500], got[0]);
+		stream.close();
+		try {
+			stream.read(got, 0, 1);
+			fail();
+		} catch(IOException e) {
+			// expected
+		}
+	}
+}
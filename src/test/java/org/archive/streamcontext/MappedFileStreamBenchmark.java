@@ -0,0 +1,171 @@
+package org.archive.streamcontext;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.format.gzip.GZIPMemberSeries;
+import org.archive.format.gzip.GZIPSeriesMember;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * MappedFileStream against RandomAccessFileStream over a generated local
+ * file: sequential reads, reads at random offsets, and inflating the gzip
+ * members of the file with GZIPMemberSeries. The mapped stream's slices
+ * are read sequentially too.
+ *
+ * Run with:
+ *   mvn -Pbenchmark test -Djmh.args=MappedFileStreamBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappedFileStreamBenchmark {
+
+	final static int NUM_SEEKS = 10000;
+
+	@Param({"67108864"})
+	public int fileSize;
+
+	@Param({"4096"})
+	public int readSize;
+
+	File file;
+	File gzFile;
+	long[] seeks;
+	byte[] buf;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		java.util.logging.Logger.getLogger("org.archive").setLevel(java.util.logging.Level.WARNING);
+		Random rand = new Random(1);
+		byte[] data = new byte[fileSize];
+		for (int i = 0; i < data.length; i++) {
+			// compressible, but not trivially
+			data[i] = (byte) ('a' + rand.nextInt(8));
+		}
+		file = File.createTempFile("bench-mapped", ".bin");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(data);
+		out.close();
+
+		gzFile = File.createTempFile("bench-mapped", ".gz");
+		gzFile.deleteOnExit();
+		out = new FileOutputStream(gzFile);
+		for (int off = 0; off < data.length; off += 20000) {
+			GZIPOutputStream gz = new GZIPOutputStream(out);
+			gz.write(data, off, Math.min(20000, data.length - off));
+			gz.finish();
+		}
+		out.close();
+
+		seeks = new long[NUM_SEEKS];
+		for (int i = 0; i < seeks.length; i++) {
+			seeks[i] = (long) (rand.nextDouble() * (fileSize - readSize));
+		}
+		buf = new byte[readSize];
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+		gzFile.delete();
+	}
+
+	private long readAll(Stream stream) throws IOException {
+		long total = 0;
+		int amt;
+		while ((amt = stream.read(buf, 0, buf.length)) != -1) {
+			total += amt;
+		}
+		stream.close();
+		return total;
+	}
+
+	private long readSeeks(Stream stream) throws IOException {
+		long total = 0;
+		for (long seek : seeks) {
+			stream.setOffset(seek);
+			total += stream.read(buf, 0, buf.length);
+		}
+		stream.close();
+		return total;
+	}
+
+	private long inflate(Stream stream) throws IOException {
+		GZIPMemberSeries series = new GZIPMemberSeries(stream);
+		long total = 0;
+		GZIPSeriesMember member;
+		while ((member = series.getNextMember()) != null) {
+			int amt;
+			while ((amt = member.read(buf, 0, buf.length)) != -1) {
+				total += amt;
+			}
+		}
+		series.close();
+		return total;
+	}
+
+	@Benchmark
+	public void sequentialRandomAccess(Blackhole bh) throws IOException {
+		bh.consume(readAll(new RandomAccessFileStream(file)));
+	}
+
+	@Benchmark
+	public void sequentialMapped(Blackhole bh) throws IOException {
+		bh.consume(readAll(new MappedFileStream(file)));
+	}
+
+	@Benchmark
+	public void sequentialMappedSlices(Blackhole bh) throws IOException {
+		MappedFileStream stream = new MappedFileStream(file);
+		long total = 0;
+		ByteBuffer slice;
+		while ((slice = stream.nextSlice(readSize)) != null) {
+			total += slice.get(slice.limit() - 1);
+		}
+		stream.close();
+		bh.consume(total);
+	}
+
+	@Benchmark
+	public void seeksRandomAccess(Blackhole bh) throws IOException {
+		bh.consume(readSeeks(new RandomAccessFileStream(file)));
+	}
+
+	@Benchmark
+	public void seeksMapped(Blackhole bh) throws IOException {
+		bh.consume(readSeeks(new MappedFileStream(file)));
+	}
+
+	@Benchmark
+	public void inflateRandomAccess(Blackhole bh) throws IOException {
+		bh.consume(inflate(new RandomAccessFileStream(gzFile)));
+	}
+
+	@Benchmark
+	public void inflateMapped(Blackhole bh) throws IOException {
+		bh.consume(inflate(new MappedFileStream(gzFile)));
+	}
+}
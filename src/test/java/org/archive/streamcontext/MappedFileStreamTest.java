@@ -0,0 +1,126 @@
+package org.archive.streamcontext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.format.gzip.GZIPMemberSeries;
+import org.archive.format.gzip.GZIPSeriesMember;
+import org.archive.util.StreamCopy;
+
+import junit.framework.TestCase;
+
+public class MappedFileStreamTest extends TestCase {
+
+	private File writeFile(byte[] data) throws IOException {
+		File file = File.createTempFile("test-mapped", ".bin");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(data);
+		out.close();
+		return file;
+	}
+
+	private byte[] random(int size) {
+		byte[] data = new byte[size];
+		new Random(5).nextBytes(data);
+		return data;
+	}
+
+	public void testRead() throws IOException {
+		byte[] data = random(10000);
+		File file = writeFile(data);
+		// windows much smaller than the file
+		MappedFileStream stream = new MappedFileStream(file, 0, 999);
+		assertEquals(data.length, stream.getLength());
+		byte[] all = new byte[data.length + 10];
+		int total = 0;
+		int amt;
+		while ((amt = stream.read(all, total, Math.min(1234, all.length - total))) != -1) {
+			total += amt;
+		}
+		assertEquals(data.length, total);
+		assertTrue(stream.atEof());
+		assertTrue(Arrays.equals(data, Arrays.copyOf(all, total)));
+
+		Random rand = new Random(1);
+		for (int i = 0; i < 200; i++) {
+			int offset = rand.nextInt(data.length + 10);
+			int len = rand.nextInt(3000);
+			byte[] got = new byte[len];
+			stream.setOffset(offset);
+			assertFalse(stream.atEof());
+			amt = stream.read(got, 0, len);
+			if (offset >= data.length) {
+				assertEquals(len == 0 ? 0 : -1, amt);
+				continue;
+			}
+			assertEquals(Math.min(len, data.length - offset), amt);
+			assertEquals(offset + amt, stream.getOffset());
+			for (int j = 0; j < amt; j++) {
+				assertEquals(data[offset + j], got[j]);
+			}
+		}
+		stream.close();
+		try {
+			stream.read(new byte[1], 0, 1);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+
+		stream = new MappedFileStream(file, 5000);
+		byte[] got = new byte[10];
+		assertEquals(10, stream.read(got, 0, 10));
+		assertTrue(Arrays.equals(Arrays.copyOfRange(data, 5000, 5010), got));
+		stream.close();
+	}
+
+	public void testSlices() throws IOException {
+		byte[] data = random(5000);
+		File file = writeFile(data);
+		MappedFileStream stream = new MappedFileStream(file, 0, 1024);
+		ByteArrayOutputStream got = new ByteArrayOutputStream();
+		ByteBuffer slice;
+		while ((slice = stream.nextSlice(300)) != null) {
+			assertTrue(slice.remaining() > 0);
+			assertTrue(slice.remaining() <= 300);
+			assertTrue(slice.isReadOnly());
+			byte[] b = new byte[slice.remaining()];
+			slice.get(b);
+			got.write(b);
+		}
+		assertTrue(stream.atEof());
+		assertTrue(Arrays.equals(data, got.toByteArray()));
+
+		// no further than the end of the window
+		stream.setOffset(1000);
+		assertEquals(24, stream.nextSlice(300).remaining());
+		assertEquals(1024, stream.getOffset());
+		stream.close();
+	}
+
+	public void testGZIPMemberSeries() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (int i = 0; i < 20; i++) {
+			GZIPOutputStream gz = new GZIPOutputStream(bytes);
+			gz.write(random(i * 500));
+			gz.finish();
+		}
+		File file = writeFile(bytes.toByteArray());
+		GZIPMemberSeries series = new GZIPMemberSeries(new MappedFileStream(file, 0, 4096));
+		GZIPSeriesMember member;
+		int i = 0;
+		while ((member = series.getNextMember()) != null) {
+			assertEquals(i * 500, StreamCopy.readToEOF(member));
+			i++;
+		}
+		assertEquals(20, i);
+		series.close();
+	}
+}
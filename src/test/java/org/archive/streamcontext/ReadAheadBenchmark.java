@@ -0,0 +1,125 @@
+package org.archive.streamcontext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.format.gzip.GZIPMemberSeries;
+import org.archive.format.gzip.GZIPSeriesMember;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Inflating a series of gzip members, as in a WARC scan, from a stream
+ * whose reads each take a fixed latency, like HDFS or HTTP, with and
+ * without AbstractBufferingStream read-ahead.
+ *
+ * Run with:
+ *   mvn -Pbenchmark test -Djmh.args=ReadAheadBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadAheadBenchmark {
+
+	/**
+	 * In-memory stream which waits latencyMicros on each read
+	 */
+	static class SlowStream extends AbstractBufferingStream {
+		byte[] data;
+		int pos = 0;
+		long latencyNanos;
+
+		SlowStream(byte[] data, int readSize, long latencyNanos) {
+			super(0, readSize);
+			this.data = data;
+			this.latencyNanos = latencyNanos;
+		}
+
+		@Override
+		public int doRead(byte[] b, int off, int len) throws IOException {
+			if(pos >= data.length) {
+				return -1;
+			}
+			long until = System.nanoTime() + latencyNanos;
+			while(System.nanoTime() < until) {
+				LockSupport.parkNanos(until - System.nanoTime());
+			}
+			int amt = Math.min(data.length - pos, len);
+			System.arraycopy(data, pos, b, off, amt);
+			pos += amt;
+			return amt;
+		}
+
+		@Override
+		public void doSeek(long offset) throws IOException {
+			pos = (int) offset;
+		}
+
+		@Override
+		public void doClose() throws IOException {
+		}
+	}
+
+	@Param({"0", "4"})
+	public int readAhead;
+
+	@Param({"5000"})
+	public int latencyMicros;
+
+	@Param({"262144"})
+	public int readSize;
+
+	byte[] gz;
+	byte[] buf = new byte[8192];
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		java.util.logging.Logger.getLogger("org.archive").setLevel(java.util.logging.Level.WARNING);
+		Random rand = new Random(1);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] record = new byte[20000];
+		for(int i = 0; i < 800; i++) {
+			for(int j = 0; j < record.length; j++) {
+				record[j] = (byte) ('a' + rand.nextInt(16));
+			}
+			GZIPOutputStream out = new GZIPOutputStream(bytes);
+			out.write(record);
+			out.finish();
+		}
+		gz = bytes.toByteArray();
+	}
+
+	@Benchmark
+	public long inflate() throws IOException {
+		SlowStream stream = new SlowStream(gz, readSize, latencyMicros * 1000L);
+		stream.setReadAhead(readAhead);
+		GZIPMemberSeries series = new GZIPMemberSeries(stream);
+		long total = 0;
+		GZIPSeriesMember member;
+		while((member = series.getNextMember()) != null) {
+			int amt;
+			while((amt = member.read(buf, 0, buf.length)) != -1) {
+				total += amt;
+			}
+		}
+		series.close();
+		return total;
+	}
+}
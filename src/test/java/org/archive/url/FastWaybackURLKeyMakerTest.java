@@ -0,0 +1,140 @@
+package org.archive.url;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.archive.format.cdx.CDXFixtures;
+
+import junit.framework.TestCase;
+
+public class FastWaybackURLKeyMakerTest extends TestCase {
+
+	final static String[] SCHEMES = {"", "", "http://", "http://", "https://", "HTTP://", "Https://", "ftp://",
+		"http:///", "https:////", "//", "http:/", "mailto:", "dns:", "filedesc:", " http://", "\thttp://"};
+
+	final static String[] USERINFO = {"", "", "", "user@", "user:pass@", "@", "a@b@"};
+
+	final static String[] HOSTS = {"www.example.com", "example.com", "WWW2.Example.COM", "www.www1.foo.org",
+		"www.", "www", "wwwx.com", "example.com.", "..a..b..", ".", "a_b-c.net", "localhost", "192.168.1.1",
+		"192.168.001.1", "0300.0250.0.1", "0300.0250.0", "3232235777", "99999999999", "1.2.3", "256.1.1.1",
+		"09.1.1.1", "xn--bcher-kva.de", "bücher.de", "ex%41mple.com", "example%2ecom", "exa mple.com",
+		"0123456789012345678901234567890123456789012345678901234567890123456789.com", "a.b.c.d.e.f", ""};
+
+	final static String[] PORTS = {"", "", "", ":80", ":443", ":8080", ":0080", ":", ":abc", ":-1", ":0",
+		":99999999999"};
+
+	final static String[] PATHS = {"", "/", "/", "/a/b/", "/index.html", "/A/B.HTML", "/a/./b/../c", "//a//b//",
+		"/a//../b", "/../..", "/a/b/..", "/.", "/%2e%2E/x", "/A%2FB", "/%7Euser/", "/%25%32%35", "/%2541",
+		"/caf%C3%A9", "/%E9", "/%", "/%4", "/%zz", "/sp ace", "/x%23y", "/x%20y", "/a\u0001b", "/foo.aspx",
+		"/(S(abcdefghijklmnopqrstuvwx))/page.aspx", "/été", "/a?b", "/a\\b", "/~x/y;z", "/%3f"};
+
+	final static String[] QUERIES = {"", "", "", "?", "?a", "?b&a", "?a=2&b&a=1", "?A=%20x", "?x=%26y&z",
+		"?jsessionid=0123456789abcdef0123456789abcdef", "?sid=0123456789abcdef0123456789abcdef&x=1",
+		"?cfid=1&cftoken=2", "?%", "?q=a+b", "?q=%C3%A9", "?a=&a", "?&&", "?=", "?Z=1&a=2&B=3", "?x=/y?z"};
+
+	final static String[] FRAGMENTS = {"", "", "#frag", "#a#b", "#", "#?x"};
+
+	final static String MUTATION_CHARS = "%/.:@?#&= AZaz09-_\t\né ";
+
+	protected String pick(Random rand, String[] choices) {
+		return choices[rand.nextInt(choices.length)];
+	}
+
+	protected List<String> generateURLs(int count, long seed) {
+		Random rand = new Random(seed);
+		List<String> urls = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(pick(rand, SCHEMES));
+			sb.append(pick(rand, USERINFO));
+			sb.append(pick(rand, HOSTS));
+			sb.append(pick(rand, PORTS));
+			sb.append(pick(rand, PATHS));
+			if (rand.nextInt(4) == 0) {
+				sb.append(pick(rand, PATHS));
+			}
+			sb.append(pick(rand, QUERIES));
+			sb.append(pick(rand, FRAGMENTS));
+
+			int mutations = (rand.nextInt(3) == 0 ? rand.nextInt(4) : 0);
+			for (int j = 0; j < mutations; j++) {
+				int at = rand.nextInt(sb.length() + 1);
+				sb.insert(at, MUTATION_CHARS.charAt(rand.nextInt(MUTATION_CHARS.length())));
+			}
+			if (rand.nextInt(20) == 0) {
+				sb.append(' ');
+			}
+			urls.add(sb.toString());
+		}
+		return urls;
+	}
+
+	protected String keyOrError(URLKeyMaker km, String url) {
+		try {
+			return km.makeKey(url);
+		} catch (URISyntaxException e) {
+			return "URISyntaxException";
+		}
+	}
+
+	protected void checkSameKeys(boolean surtMode, List<String> urls) {
+		WaybackURLKeyMaker expected = new WaybackURLKeyMaker(surtMode);
+		FastWaybackURLKeyMaker actual = new FastWaybackURLKeyMaker(surtMode);
+		int scanned = 0;
+		for (String url : urls) {
+			assertEquals("key of [" + url + "]", keyOrError(expected, url), keyOrError(actual, url));
+			if (FastWaybackURLKeyMaker.scanKey(url, surtMode) != null) {
+				scanned++;
+			}
+		}
+		// the generated urls are mostly awkward ones, but plenty should still
+		// take the fast path
+		assertTrue(scanned > urls.size() / 10);
+	}
+
+	public void testSameKeys() {
+		List<String> urls = generateURLs(50000, 1);
+		checkSameKeys(true, urls);
+		checkSameKeys(false, urls);
+	}
+
+	public void testSameKeysCDXFixtures() {
+		List<String> urls = new ArrayList<String>();
+		for (String line : CDXFixtures.generateLines(20000, 2)) {
+			urls.add(line.split(" ")[2]);
+		}
+		checkSameKeys(true, urls);
+		for (String url : urls) {
+			assertNotNull(url, FastWaybackURLKeyMaker.scanKey(url, true));
+		}
+	}
+
+	public void testMakeKey() throws URISyntaxException {
+		FastWaybackURLKeyMaker km = new FastWaybackURLKeyMaker();
+		assertEquals("-", km.makeKey(null));
+		assertEquals("-", km.makeKey(""));
+		assertEquals("dskgfljsdlkgjslkj)/", km.makeKey("dskgfljsdlkgjslkj"));
+		assertEquals("filedesc:foo.arc.gz", km.makeKey("filedesc:foo.arc.gz"));
+		assertEquals("warcinfo:foo.warc.gz", km.makeKey("warcinfo:foo.warc.gz"));
+		assertEquals("com,alexa)", km.makeKey("dns:alexa.com"));
+		assertEquals("org,archive)/", km.makeKey("http://archive.org/"));
+		assertEquals("org,archive)/goo", km.makeKey("http://archive.org/goo/"));
+		assertEquals("org,archive)/goo", km.makeKey("http://archive.org/goo/?"));
+		assertEquals("org,archive)/goo?a&b", km.makeKey("http://archive.org/goo/?b&a"));
+		assertEquals("org,archive)/goo?a=1&a=2&b", km.makeKey("http://archive.org/goo/?a=2&b&a=1"));
+		assertEquals("org,archive:8080)/a/c?x=%20y", km.makeKey("https://WWW.Archive.org:8080/a/b/../C/?X=%20Y#top"));
+		assertEquals("1,1,168,192)/", km.makeKey("http://192.168.001.1"));
+
+		assertEquals("org,archive:8080)/a/c?x=%20y", FastWaybackURLKeyMaker.scanKey("https://WWW.Archive.org:8080/a/b/../C/?X=%20Y#top", true));
+		assertNull(FastWaybackURLKeyMaker.scanKey("http://bücher.de/", true));
+		assertNull(FastWaybackURLKeyMaker.scanKey("http://example.com/caf%C3%A9", true));
+	}
+
+	public void testOtherCanonicalizer() throws URISyntaxException {
+		FastWaybackURLKeyMaker km = new FastWaybackURLKeyMaker();
+		km.setCanonicalizer(new NonMassagingIAURLCanonicalizer());
+		assertEquals("com,example,www)/", km.makeKey("http://www.example.com/"));
+	}
+}
@@ -0,0 +1,84 @@
+package org.archive.url;
+
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.format.cdx.CDXFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Urlkeys of the urls of generated CDX lines, varied with the usual noise -
+ * case, www prefixes, default ports, unsorted queries, fragments - with the
+ * regex based WaybackURLKeyMaker chain and FastWaybackURLKeyMaker.
+ *
+ * Run with:
+ *   mvn -Pbenchmark test -Djmh.args=URLKeyMakerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class URLKeyMakerBenchmark {
+
+	final static int NUM_URLS = 1 << 14;
+
+	String[] urls;
+
+	WaybackURLKeyMaker chain = new WaybackURLKeyMaker();
+	FastWaybackURLKeyMaker singlePass = new FastWaybackURLKeyMaker();
+
+	@Setup
+	public void setup() {
+		Random rand = new Random(1);
+		List<String> lines = CDXFixtures.generateLines(NUM_URLS, 1);
+		urls = new String[lines.size()];
+
+		for (int i = 0; i < urls.length; i++) {
+			String url = lines.get(i).split(" ")[2];
+			switch (rand.nextInt(6)) {
+			case 0:
+				int hostEnd = url.indexOf('/', 7);
+				url = "http://WWW." + url.substring(7, hostEnd).toUpperCase() + url.substring(hostEnd);
+				break;
+			case 1:
+				url = url.replaceFirst("(//[^/]+)", "$1:80");
+				break;
+			case 2:
+				url = url + (url.indexOf('?') < 0 ? "?" : "&") + "b=2&a=1";
+				break;
+			case 3:
+				url = url + "#top";
+				break;
+			}
+			urls[i] = url;
+		}
+	}
+
+	@Benchmark
+	public void chain(Blackhole bh) throws URISyntaxException {
+		for (String url : urls) {
+			bh.consume(chain.makeKey(url));
+		}
+	}
+
+	@Benchmark
+	public void singlePass(Blackhole bh) throws URISyntaxException {
+		for (String url : urls) {
+			bh.consume(singlePass.makeKey(url));
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package org.archive.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Recording a 4MB chunked response, which overflows to the backing file,
+ * and getting its block and payload digests: by replaying the recording
+ * afterwards, against digesting while recording.
+ *
+ * Run with:
+ *   mvn -Pbenchmark test -Djmh.args=RecorderDigestBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecorderDigestBenchmark {
+
+	File dir;
+	byte[] response;
+	int headerLength;
+	byte[] buf = new byte[16 * 1024];
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		dir = File.createTempFile("bench-recorder", "");
+		dir.delete();
+		dir.mkdir();
+		byte[] header = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes("ASCII");
+		headerLength = header.length;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(header);
+		Random rand = new Random(1);
+		byte[] chunk = new byte[8192];
+		for (int i = 0; i < 512; i++) {
+			rand.nextBytes(chunk);
+			out.write("2000\r\n".getBytes("ASCII"));
+			out.write(chunk);
+			out.write("\r\n".getBytes("ASCII"));
+		}
+		out.write("0\r\n\r\n".getBytes("ASCII"));
+		response = out.toByteArray();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		org.apache.commons.io.FileUtils.deleteDirectory(dir);
+	}
+
+	private Recorder record(boolean streaming) throws IOException {
+		Recorder recorder = new Recorder(dir, "bench", 16384, 65536);
+		recorder.setInputDigests(streaming ? "SHA1" : null);
+		InputStream in = recorder.inputWrap(new ByteArrayInputStream(response));
+		IOUtils.readFully(in, new byte[headerLength]);
+		recorder.markContentBegin();
+		recorder.setInputIsChunked(true);
+		while (in.read(buf) != -1) {
+			continue;
+		}
+		recorder.close();
+		return recorder;
+	}
+
+	private byte[] digest(InputStream in) throws Exception {
+		MessageDigest digest = MessageDigest.getInstance("SHA1");
+		int count;
+		while ((count = in.read(buf)) != -1) {
+			digest.update(buf, 0, count);
+		}
+		in.close();
+		return digest.digest();
+	}
+
+	@Benchmark
+	public int replay() throws Exception {
+		Recorder recorder = record(false);
+		byte[] block = digest(recorder.getReplayInputStream());
+		byte[] payload = digest(recorder.getEntityReplayInputStream());
+		recorder.cleanup();
+		return block.length + payload.length;
+	}
+
+	@Benchmark
+	public int streaming() throws Exception {
+		Recorder recorder = record(true);
+		int n = recorder.getInputBlockDigest().length() + recorder.getInputPayloadDigest().length();
+		recorder.cleanup();
+		return n;
+	}
+}
@@ -0,0 +1,180 @@
+package org.archive.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+
+import junit.framework.TestCase;
+
+public class RecorderTest extends TestCase {
+
+	private File dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("test-recorder", "");
+		dir.delete();
+		dir.mkdir();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		org.apache.commons.io.FileUtils.deleteDirectory(dir);
+	}
+
+	private static String sha1(byte[] data) throws Exception {
+		return "sha1:" + Base32.encode(MessageDigest.getInstance("SHA1").digest(data));
+	}
+
+	private byte[] entity(int length) {
+		byte[] entity = new byte[length];
+		new Random(length).nextBytes(entity);
+		return entity;
+	}
+
+	private byte[] chunked(byte[] entity) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Random rand = new Random(1);
+		for (int at = 0; at < entity.length;) {
+			int n = Math.min(1 + rand.nextInt(5000), entity.length - at);
+			out.write((Integer.toHexString(n) + (at == 0 ? ";ext=1" : "") + "\r\n").getBytes("ASCII"));
+			out.write(entity, at, n);
+			out.write("\r\n".getBytes("ASCII"));
+			at += n;
+		}
+		out.write("0\r\nX-Trailer: yes\r\n\r\n".getBytes("ASCII"));
+		return out.toByteArray();
+	}
+
+	private static final byte[] HEADER = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes();
+
+	/**
+	 * Record header then body, reading in pieces of readSize, setting
+	 * chunked before or after reading the body
+	 */
+	private Recorder record(byte[] body, int readSize, boolean chunked, boolean late) throws Exception {
+		Recorder recorder = new Recorder(dir, "test", 1024, 4096);
+		recorder.setInputDigests("SHA1");
+		ByteArrayOutputStream all = new ByteArrayOutputStream();
+		all.write(HEADER);
+		all.write(body);
+		InputStream in = recorder.inputWrap(new ByteArrayInputStream(all.toByteArray()));
+		byte[] buf = new byte[readSize];
+		IOUtils.readFully(in, new byte[HEADER.length]);
+		recorder.markContentBegin();
+		if (chunked && !late) {
+			recorder.setInputIsChunked(true);
+		}
+		while (in.read(buf) != -1) {
+			continue;
+		}
+		if (chunked && late) {
+			recorder.setInputIsChunked(true);
+		}
+		recorder.close();
+		return recorder;
+	}
+
+	private void checkChunked(int readSize, boolean late) throws Exception {
+		byte[] entity = entity(40000);
+		byte[] body = chunked(entity);
+		Recorder recorder = record(body, readSize, true, late);
+		ByteArrayOutputStream all = new ByteArrayOutputStream();
+		all.write(HEADER);
+		all.write(body);
+		assertEquals(sha1(all.toByteArray()), recorder.getInputBlockDigest());
+		assertEquals(entity.length, recorder.getEntityLength());
+		assertEquals(sha1(entity), recorder.getInputPayloadDigest());
+		// as replay would have it
+		assertTrue(java.util.Arrays.equals(entity, IOUtils.toByteArray(recorder.getEntityReplayInputStream())));
+		recorder.cleanup();
+	}
+
+	public void testChunked() throws Exception {
+		checkChunked(8192, false);
+		checkChunked(1, false);
+		checkChunked(7, false);
+	}
+
+	public void testChunkedLearnedLate() throws Exception {
+		checkChunked(8192, true);
+	}
+
+	public void testNotChunked() throws Exception {
+		byte[] entity = entity(30000);
+		Recorder recorder = record(entity, 1000, false, false);
+		assertEquals(entity.length, recorder.getEntityLength());
+		assertEquals(sha1(entity), recorder.getInputPayloadDigest());
+		recorder.cleanup();
+	}
+
+	public void testMalformedChunks() throws Exception {
+		byte[] body = "5\r\nhello\r\nzz\r\nworld".getBytes("ASCII");
+		Recorder recorder = record(body, 3, true, false);
+		// the raw message body instead
+		assertEquals(sha1(body), recorder.getInputPayloadDigest());
+		assertEquals(body.length, recorder.getEntityLength());
+		recorder.cleanup();
+	}
+
+	/**
+	 * Chunked or not, a digest set on the recorded input covers the raw
+	 * message body, as it always has, with or without setInputDigests()
+	 */
+	public void testDigestUnchangedByChunked() throws Exception {
+		byte[] entity = entity(20000);
+		byte[] body = chunked(entity);
+		for (int i = 0; i < 2; i++) {
+			Recorder recorder = new Recorder(dir, "test", 1024, 4096);
+			if (i == 1) {
+				recorder.setInputDigests("SHA1");
+			}
+			recorder.getRecordedInput().setDigest("SHA1");
+			ByteArrayOutputStream all = new ByteArrayOutputStream();
+			all.write(HEADER);
+			all.write(body);
+			InputStream in = recorder.inputWrap(new ByteArrayInputStream(all.toByteArray()));
+			IOUtils.readFully(in, new byte[HEADER.length]);
+			recorder.markContentBegin();
+			recorder.setInputIsChunked(true);
+			IOUtils.toByteArray(in);
+			recorder.close();
+			assertEquals(sha1(body), "sha1:" + Base32.encode(recorder.getRecordedInput().getDigestValue()));
+			assertEquals(entity.length, recorder.getEntityLength());
+			if (i == 1) {
+				assertEquals(sha1(entity), recorder.getInputPayloadDigest());
+			} else {
+				assertNull(recorder.getInputPayloadDigest());
+			}
+			recorder.cleanup();
+		}
+	}
+
+	public void testReuse() throws Exception {
+		Recorder recorder = new Recorder(dir, "test", 1024, 4096);
+		recorder.setInputDigests("SHA-1");
+		for (int i = 0; i < 2; i++) {
+			byte[] entity = entity(100 + i);
+			ByteArrayOutputStream all = new ByteArrayOutputStream();
+			all.write(HEADER);
+			all.write(chunked(entity));
+			InputStream in = recorder.inputWrap(new ByteArrayInputStream(all.toByteArray()));
+			IOUtils.readFully(in, new byte[HEADER.length]);
+			recorder.markContentBegin();
+			recorder.setInputIsChunked(true);
+			IOUtils.toByteArray(in);
+			recorder.close();
+			assertEquals(sha1(all.toByteArray()), recorder.getInputBlockDigest());
+			assertEquals(sha1(entity), recorder.getInputPayloadDigest());
+			assertEquals(entity.length, recorder.getEntityLength());
+			recorder.endReplays();
+		}
+		recorder.cleanup();
+	}
+}
@@ -1,5 +1,6 @@
 package org.archive.util;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
@@ -37,4 +38,15 @@ public class TestUtils extends TestCase {
 		assertEquals(got.length,b.length);
 		assertTrue(ByteOp.cmp(got,b));
 	}
+	/**
+	 * @return a new, empty temporary directory, deleted on exit if it is
+	 * empty by then
+	 */
+	public static File createTempDir(String prefix) throws IOException {
+		File dir = File.createTempFile(prefix, "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		return dir;
+	}
 }
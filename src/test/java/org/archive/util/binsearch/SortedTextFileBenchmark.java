@@ -0,0 +1,107 @@
+package org.archive.util.binsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.format.cdx.CDXFixtures;
+import org.archive.util.binsearch.impl.MappedSeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.NIOSeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.NIOSeekableLineReaderFactory.NIOType;
+import org.archive.util.binsearch.impl.RandomAccessFileSeekableLineReaderFactory;
+import org.archive.util.iterator.CloseableIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Binary search lookups against a generated sorted CDX file, through each
+ * local SeekableLineReader implementation. A JMH counterpart of the
+ * command-line SeekCDXBenchmarker, on generated data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortedTextFileBenchmark {
+
+	final static int NUM_KEYS = 4096;
+
+	@Param({"raf", "nio", "nio-mmap", "mapped"})
+	public String reader;
+
+	@Param({"1000000"})
+	public int numLines;
+
+	@Param({"8192"})
+	public int blockSize;
+
+	SeekableLineReaderFactory factory;
+	SortedTextFile file;
+	String[] keys;
+	int next = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		List<String> lines = CDXFixtures.generateLines(numLines, 1);
+		File cdx = CDXFixtures.writeCDX(lines);
+		keys = CDXFixtures.sampleKeys(lines, NUM_KEYS, 2);
+
+		if (reader.equals("raf")) {
+			factory = new RandomAccessFileSeekableLineReaderFactory(cdx, blockSize);
+		} else if (reader.equals("nio")) {
+			factory = new NIOSeekableLineReaderFactory(cdx, blockSize, NIOType.PLAIN);
+		} else if (reader.equals("nio-mmap")) {
+			factory = new NIOSeekableLineReaderFactory(cdx, blockSize, NIOType.MMAP);
+		} else if (reader.equals("mapped")) {
+			factory = new MappedSeekableLineReaderFactory(cdx, blockSize);
+		} else {
+			throw new IllegalArgumentException(reader);
+		}
+
+		file = new SortedTextFile(factory);
+		file.setBinsearchBlockSize(blockSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		factory.close();
+	}
+
+	String nextKey() {
+		next = (next + 1) % keys.length;
+		return keys[next];
+	}
+
+	@Benchmark
+	public void lookupFirstLine(Blackhole bh) throws IOException {
+		CloseableIterator<String> iter = file.getRecordIterator(nextKey());
+		if (iter.hasNext()) {
+			bh.consume(iter.next());
+		}
+		iter.close();
+	}
+
+	@Benchmark
+	public void lookupTenLines(Blackhole bh) throws IOException {
+		CloseableIterator<String> iter = file.getRecordIterator(nextKey());
+		for (int i = 0; (i < 10) && iter.hasNext(); i++) {
+			bh.consume(iter.next());
+		}
+		iter.close();
+	}
+}
@@ -55,6 +55,36 @@ public class SortedTextFileTest extends TestCase {
 //		test.delete();
 	}
 
+	public void testMidpointCache() throws IOException {
+		File test = File.createTempFile("test-stf", ".tmp");
+		test.deleteOnExit();
+		int max = 100000;
+		createFile(test,max);
+		RandomAccessFileSeekableLineReaderFactory factory = 
+			new RandomAccessFileSeekableLineReaderFactory(test);
+		SortedTextFile ff = new SortedTextFile(factory);
+		ff.setMidpointCacheMaxBytes(1024 * 1024);
+		
+		checkFirst(ff,false,formatS(12355),formatS(12355));
+		long misses = ff.getMidpointCache().getStats().missCount();
+		assertTrue(misses > 0);
+		assertEquals(0, ff.getMidpointCache().getStats().hitCount());
+		
+		// Same key, all probes should now be cached
+		checkFirst(ff,true,formatS(12355),formatS(12354));
+		assertEquals(misses, ff.getMidpointCache().getStats().missCount());
+		assertEquals(misses, ff.getMidpointCache().getStats().hitCount());
+		
+		checkFirst(ff,false,formatS(0),formatS(0));
+		checkFirst(ff,false,formatS(max-1),formatS(max-1));
+		checkFirst(ff,false,formatS(max+1),null);
+		
+		ff.reloadFactory();
+		assertEquals(0, ff.getMidpointCache().size());
+		checkFirst(ff,false,formatS(12355),formatS(12355));
+		test.delete();
+	}
+
 	private void checkFirst(SortedTextFile stf, boolean lt, String key, String want) throws IOException {
 		CloseableIterator<String> itr = stf.getRecordIterator(key, lt);
 		if(want == null) {
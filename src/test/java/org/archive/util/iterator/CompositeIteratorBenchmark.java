@@ -0,0 +1,93 @@
+package org.archive.util.iterator;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Merges k sorted inputs of CDX-like lines, TOTAL lines in all, with the
+ * PriorityQueue based SortedCompositeIterator and the LoserTreeCompositeIterator.
+ *
+ * Run with:
+ *   mvn -Pbenchmark test -Djmh.args=CompositeIteratorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositeIteratorBenchmark {
+
+	final static int TOTAL = 1 << 16;
+
+	final static Comparator<String> comparator = new Comparator<String>() {
+		public int compare(String o1, String o2) {
+			return o1.compareTo(o2);
+		}
+	};
+
+	@Param({"2", "16", "256"})
+	public int k;
+
+	String[][] inputs;
+
+	@Setup
+	public void setup() {
+		Random rand = new Random(k);
+		inputs = new String[k][];
+		for (int i = 0; i < k; i++) {
+			String[] input = new String[TOTAL / k];
+			for (int j = 0; j < input.length; j++) {
+				int page = rand.nextInt(TOTAL);
+				input[j] = "com,example)/page" + page + " 2010" + String.format("%010d", rand.nextInt(Integer.MAX_VALUE))
+						+ " http://example.com/page" + page + " text/html 200 AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA - - 1234 5678 example.warc.gz";
+			}
+			Arrays.sort(input);
+			inputs[i] = input;
+		}
+	}
+
+	@Benchmark
+	public void priorityQueue(Blackhole bh) {
+		SortedCompositeIterator<String> itr = new SortedCompositeIterator<String>(k, comparator);
+		for (String[] input : inputs) {
+			itr.addIterator(Arrays.asList(input).iterator());
+		}
+		while (itr.hasNext()) {
+			bh.consume(itr.next());
+		}
+	}
+
+	@Benchmark
+	public void loserTree(Blackhole bh) {
+		LoserTreeCompositeIterator<String> itr = new LoserTreeCompositeIterator<String>(k, comparator);
+		for (String[] input : inputs) {
+			itr.addIterator(Arrays.asList(input).iterator());
+		}
+		while (itr.hasNext()) {
+			bh.consume(itr.next());
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(CompositeIteratorBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,117 @@
+package org.archive.util.iterator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LoserTreeCompositeIteratorTest extends TestCase {
+
+	private final static Comparator<String> comparator = new Comparator<String>() {
+		public int compare(String o1, String o2) {
+			return o1.compareTo(o2);
+		}
+	};
+
+	private List<List<String>> createInputs(Random rand, int k) {
+		List<List<String>> inputs = new ArrayList<List<String>>();
+		for (int i = 0; i < k; i++) {
+			List<String> input = new ArrayList<String>();
+			int size = rand.nextInt(50);
+			for (int j = 0; j < size; j++) {
+				input.add(String.format("%04d", rand.nextInt(1000)));
+			}
+			Collections.sort(input);
+			inputs.add(input);
+		}
+		return inputs;
+	}
+
+	public void testMatchesSortedCompositeIterator() throws IOException {
+		Random rand = new Random(42);
+		for (int k : new int[]{0, 1, 2, 3, 5, 16, 17, 100}) {
+			List<List<String>> inputs = createInputs(rand, k);
+			SortedCompositeIterator<String> expected = new SortedCompositeIterator<String>(comparator);
+			LoserTreeCompositeIterator<String> actual = new LoserTreeCompositeIterator<String>(comparator);
+			for (List<String> input : inputs) {
+				expected.addIterator(input.iterator());
+				actual.addIterator(input.iterator());
+			}
+			while (expected.hasNext()) {
+				assertTrue(actual.hasNext());
+				assertEquals(expected.next(), actual.next());
+			}
+			assertFalse(actual.hasNext());
+			actual.close();
+		}
+	}
+
+	public void testStableOnTies() {
+		Comparator<String> firstChar = new Comparator<String>() {
+			public int compare(String o1, String o2) {
+				return o1.charAt(0) - o2.charAt(0);
+			}
+		};
+		LoserTreeCompositeIterator<String> itr = new LoserTreeCompositeIterator<String>(firstChar);
+		itr.addIterator(Arrays.asList("a1", "b1").iterator());
+		itr.addIterator(Arrays.asList("a2", "b2").iterator());
+		itr.addIterator(Arrays.asList("a3").iterator());
+		assertEquals("a1", itr.next());
+		assertEquals("a2", itr.next());
+		assertEquals("a3", itr.next());
+		assertEquals("b1", itr.next());
+		assertEquals("b2", itr.next());
+		assertFalse(itr.hasNext());
+		try {
+			itr.next();
+			fail();
+		} catch (NoSuchElementException e) {
+		}
+	}
+
+	public void testAddAfterStart() {
+		LoserTreeCompositeIterator<String> itr = new LoserTreeCompositeIterator<String>(comparator);
+		itr.addIterator(Arrays.asList("1", "5").iterator());
+		assertEquals("1", itr.next());
+		assertEquals("5", itr.next());
+		assertFalse(itr.hasNext());
+		itr.addIterator(Arrays.asList("2", "6").iterator());
+		itr.addIterator(Arrays.asList("3").iterator());
+		assertEquals("2", itr.next());
+		assertEquals("3", itr.next());
+		assertEquals("6", itr.next());
+		assertFalse(itr.hasNext());
+	}
+
+	public void testClose() throws IOException {
+		final int[] closed = new int[1];
+		LoserTreeCompositeIterator<String> itr = new LoserTreeCompositeIterator<String>(comparator);
+		for (final String s : new String[]{"a", "b", "c"}) {
+			final Iterator<String> inner = Collections.singletonList(s).iterator();
+			itr.addIterator(new CloseableIterator<String>() {
+				public boolean hasNext() {
+					return inner.hasNext();
+				}
+				public String next() {
+					return inner.next();
+				}
+				public void remove() {
+				}
+				public void close() {
+					closed[0]++;
+				}
+			});
+		}
+		assertEquals("a", itr.next());
+		assertEquals(1, closed[0]);
+		itr.close();
+		assertEquals(3, closed[0]);
+	}
+}
@@ -0,0 +1,90 @@
+package org.archive.util.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.format.gzip.GZIPMemberSeries;
+import org.archive.format.gzip.GZIPSeriesMember;
+import org.archive.streamcontext.ByteArrayWrappedStream;
+import org.archive.util.StreamCopy;
+
+import junit.framework.TestCase;
+
+public class InflaterBackendsTest extends TestCase {
+
+	static int created = 0;
+	static int ended = 0;
+
+	public static class CountingBackend extends JDKInflaterBackend {
+		public CountingBackend() {
+			created++;
+		}
+		public void end() {
+			ended++;
+			super.end();
+		}
+	}
+
+	public static class FailingBackend extends JDKInflaterBackend {
+		public FailingBackend() throws IOException {
+			throw new IOException("no native library");
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		InflaterBackends.setBackend(null);
+	}
+
+	private byte[] members(int count) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (int i = 0; i < count; i++) {
+			GZIPOutputStream gz = new GZIPOutputStream(bytes);
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0; j <= i * 10; j++) {
+				sb.append("member ").append(i).append('\n');
+			}
+			gz.write(sb.toString().getBytes(Charset.forName("UTF-8")));
+			gz.finish();
+		}
+		return bytes.toByteArray();
+	}
+
+	public void testBackend() throws IOException {
+		assertEquals(JDKInflaterBackend.class, InflaterBackends.getBackend());
+		InflaterBackends.setBackend(CountingBackend.class);
+		assertTrue(InflaterBackends.create() instanceof CountingBackend);
+		created = 0;
+		ended = 0;
+
+		GZIPMemberSeries series = new GZIPMemberSeries(new ByteArrayWrappedStream(members(5)));
+		List<GZIPSeriesMember> members = new ArrayList<GZIPSeriesMember>();
+		List<Long> lengths = new ArrayList<Long>();
+		GZIPSeriesMember member;
+		while ((member = series.getNextMember()) != null) {
+			lengths.add(StreamCopy.readToEOF(member));
+			members.add(member);
+		}
+		series.close();
+		// one inflater, reused by each member
+		assertEquals(1, created);
+		assertEquals(1, ended);
+		assertEquals(5, members.size());
+		for (int i = 0; i < members.size(); i++) {
+			assertEquals(lengths.get(i).longValue(), members.get(i).getUncompressedBytesRead());
+			assertEquals(-1, members.get(i).read());
+		}
+
+		InflaterBackends.setBackend(null);
+		assertTrue(InflaterBackends.create() instanceof JDKInflaterBackend);
+	}
+
+	public void testFallback() {
+		InflaterBackends.setBackend(FailingBackend.class);
+		assertTrue(InflaterBackends.create() instanceof JDKInflaterBackend);
+	}
+}